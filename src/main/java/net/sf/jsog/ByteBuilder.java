@@ -0,0 +1,207 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A growable byte buffer, shared by the binary encoders and the JSON writer.
+ *
+ * <p>The buffer and length are left open to the package so hot loops can
+ * call {@link #ensure(int)} once and then {@link #put(int)} or store bytes
+ * directly.</p>
+ * @author jrodriguez
+ */
+class ByteBuilder {
+
+    /**
+     * The buffer.
+     */
+    byte[] buffer;
+
+    /**
+     * The number of bytes written.
+     */
+    int length;
+
+    /**
+     * Creates an empty buffer with a default capacity.
+     */
+    ByteBuilder() {
+        this(256);
+    }
+
+    /**
+     * Creates an empty buffer.
+     * @param capacity the initial capacity.
+     */
+    ByteBuilder(final int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * Makes room for more bytes.
+     * @param count the number of bytes needed.
+     * @throws IllegalArgumentException if the buffer would exceed 2GB.
+     */
+    final void ensure(final int count) {
+        if (count > Integer.MAX_VALUE - length) {
+            throw new IllegalArgumentException(
+                    "The output is too large for a byte array.");
+        }
+        if (length + count > buffer.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(buffer.length * 2L, length + count));
+            byte[] bigger = new byte[capacity];
+            System.arraycopy(buffer, 0, bigger, 0, length);
+            buffer = bigger;
+        }
+    }
+
+    /**
+     * Stores a single byte without checking the capacity. Call
+     * {@link #ensure(int)} first.
+     * @param b the byte.
+     */
+    final void put(final int b) {
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * Writes a single byte.
+     * @param b the byte.
+     */
+    final void write(final int b) {
+        ensure(1);
+        buffer[length++] = (byte) b;
+    }
+
+    /**
+     * Writes bytes.
+     * @param bytes the bytes.
+     */
+    final void write(final byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes part of an array of bytes.
+     * @param bytes the bytes.
+     * @param offset the index of the first byte to write.
+     * @param count the number of bytes to write.
+     */
+    final void write(final byte[] bytes, final int offset, final int count) {
+        ensure(count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+    }
+
+    /**
+     * Writes a fixed width big-endian value.
+     * @param value the value.
+     * @param bytes the number of bytes to write.
+     */
+    final void writeBigEndian(final long value, final int bytes) {
+        ensure(bytes);
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            buffer[length++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Writes ASCII text, one byte per character.
+     * @param ascii the text.
+     * @see #isAscii(String)
+     */
+    final void writeAscii(final String ascii) {
+        int count = ascii.length();
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            buffer[length++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    /**
+     * Writes ASCII characters, one byte per character.
+     * @param chars the characters.
+     * @param count the number of characters.
+     */
+    final void writeAscii(final char[] chars, final int count) {
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            buffer[length++] = (byte) chars[i];
+        }
+    }
+
+    /**
+     * Copies the bytes written.
+     * @return the bytes.
+     */
+    final byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Writes the bytes written to a stream.
+     * @param out the stream.
+     * @throws IOException if writing fails.
+     */
+    final void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    /**
+     * Checks whether a string is plain ASCII, so its characters can be
+     * written as they are.
+     * @param string the string.
+     * @return true if every character is below 0x80.
+     */
+    static boolean isAscii(final String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes a string as UTF-8.
+     * @param string the string.
+     * @return the UTF-8 bytes.
+     */
+    static byte[] utf8(final String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+}
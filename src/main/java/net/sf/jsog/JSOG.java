@@ -26,6 +26,7 @@
 package net.sf.jsog;
 
 import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -42,11 +43,13 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonParser.Feature;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
+import org.codehaus.jackson.util.CharTypes;
 
 /**
  * JavaScript Object Graph.
@@ -78,10 +81,55 @@ public class JSOG implements Cloneable, Serializable {
         }
     }
 
+    /**
+     * Where a value that isn't a JSOG is stored in an object or array.
+     *
+     * A JSOG wrapping such a value writes its new value back here when it's
+     * replaced, so coercing the wrapper changes the container too.
+     * @see #coerce(Object)
+     */
+    private static final class Slot {
+
+        /**
+         * The Map, List or Entry holding the value.
+         */
+        private final Object container;
+
+        /**
+         * The key or index of the value, or null for an Entry.
+         */
+        private final Object key;
+
+        /**
+         * Constructs a new Slot.
+         * @param container the Map, List or Entry holding the value.
+         * @param key the key or index of the value, or null for an Entry.
+         */
+        Slot(final Object container, final Object key) {
+            this.container = container;
+            this.key = key;
+        }
+
+        /**
+         * Replaces the value in its container.
+         * @param newValue the new value.
+         */
+        @SuppressWarnings("unchecked")
+        void store(final Object newValue) {
+            if (key instanceof String) {
+                ((Map<String, Object>) container).put((String) key, newValue);
+            } else if (key instanceof Integer) {
+                ((List<Object>) container).set((Integer) key, newValue);
+            } else {
+                ((Entry<String, Object>) container).setValue(newValue);
+            }
+        }
+    }
+
     /**
      * Wraps Entry<String,Object> objects so they return proper JSOGs.
      */
-    private static final class ObjectEntry implements Entry<String, JSOG> {
+    static final class ObjectEntry implements Entry<String, JSOG> {
 
         /**
          * The wrapped entry.
@@ -109,7 +157,7 @@ public class JSOG implements Cloneable, Serializable {
          * @return the wrapped value of the getValue method on the entry.
          */
         public JSOG getValue() {
-            return wrap(entry.getValue());
+            return wrapStored(entry, null, entry.getValue());
         }
 
         /**
@@ -194,11 +242,21 @@ public class JSOG implements Cloneable, Serializable {
      */
     private final class ArrayIterator implements Iterator<JSOG> {
 
+        /**
+         * The backing List.
+         */
+        private List<Object> list;
+
         /**
          * The backing iterator.
          */
         private Iterator<Object> it;
 
+        /**
+         * The index of the next element.
+         */
+        private int index;
+
         /**
          * For fail-fast.
          */
@@ -210,7 +268,8 @@ public class JSOG implements Cloneable, Serializable {
         @SuppressWarnings("unchecked")
         ArrayIterator() {
             expectedModCount = modCount;
-            it = ((List<Object>) value).iterator();
+            list = (List<Object>) value;
+            it = list.iterator();
         }
 
         /**
@@ -230,7 +289,9 @@ public class JSOG implements Cloneable, Serializable {
                 throw new ConcurrentModificationException();
             }
 
-            return wrap(it.next());
+            Object element = it.next();
+            int i = index++;
+            return frozen ? wrap(element) : wrapStored(list, i, element);
         }
 
         /**
@@ -238,6 +299,7 @@ public class JSOG implements Cloneable, Serializable {
          */
         public void remove() {
             it.remove();
+            index--;
         }
 
     }
@@ -318,6 +380,17 @@ public class JSOG implements Cloneable, Serializable {
         return value instanceof Map<?, ?>;
     }
 
+    /**
+     * Tests if a value can be stored in a JSOG by {@link #put(String, Object)}
+     * or {@link #add(Object)}.
+     * @param value the value to test.
+     * @return true if the value is a primitive, JSOG, Map or List.
+     */
+    static boolean isStorable(final Object value) {
+        return isPrimitive(value) || value instanceof JSOG
+                || isObject(value) || isArray(value);
+    }
+
     /**
      * Converts a primitive into a JsonNode.
      * @param primitive the object to convert.
@@ -364,50 +437,184 @@ public class JSOG implements Cloneable, Serializable {
     }
 
     /**
-     * Converts an object to a JsonNode.
-     * @param value the value to convert.
+     * Converts a primitive, null, lazy scalar or raw JSON value to a JsonNode.
+     * @param jsog the JSOG holding the value.
      * @return A JsonNode representing the value.
-     * @throws IllegalStateException if the value could not be converted.
      */
-    private static JsonNode toJsonNode(final Object value) {
-        if (value instanceof JSOG) {
+    private static JsonNode scalarAsNode(final JSOG jsog) {
+        Object value = jsog.unresolvedValue();
 
-            // The value is another JSON, delegate to it's toJsonNode.
-            return ((JSOG) value).toJsonNode();
-        } else if (isArray(value)) {
+        // Raw JSON is parsed, as it would be by any other access
+        if (value instanceof RawJson) {
+            return jsog.toJsonNode();
+        }
 
-            // This is an array, return an array node containing it's values.
+        // Decode lazy scalars, without keeping the result
+        if (value instanceof LazyScalar) {
+            return getPrimitiveAsNode(((LazyScalar) value).decode());
+        }
 
-            // Create an array node to store the values
-            ArrayNode node = JACKSON_OBJECT_MAPPER.createArrayNode();
+        // This is a primitive, convert it and return it.
+        return getPrimitiveAsNode(value);
+    }
 
-            // Add the values to the array node
-            @SuppressWarnings("unchecked")
-            List<Object> list = (List<Object>) value;
-            for (Object item : list) {
-                node.add(toJsonNode(item));
-            }
+    /**
+     * Builds a JsonNode tree from a traversal.
+     */
+    private static final class JsonNodeBuilder
+            implements JsogTraversal.NodeVisitor {
 
-            return node;
-        } else if (isObject(value)) {
+        /**
+         * The enclosing container nodes.
+         */
+        private final List<JsonNode> stack = new ArrayList<JsonNode>();
 
-            // This is an object, return an object node containing it's values.
+        /**
+         * The root node.
+         */
+        private JsonNode root;
+
+        @Override
+        public boolean enter(final Object key, final Object container) {
+            JsonNode node = isObject(JsogTraversal.valueOf(container))
+                    ? JACKSON_OBJECT_MAPPER.createObjectNode()
+                    : JACKSON_OBJECT_MAPPER.createArrayNode();
+            attach(key, node);
+            stack.add(node);
+            return true;
+        }
 
-            // Create an object node to store the values
-            ObjectNode node = JACKSON_OBJECT_MAPPER.createObjectNode();
+        @Override
+        public void leave(final Object key, final Object container) {
+            stack.remove(stack.size() - 1);
+        }
+
+        @Override
+        public void value(final Object key, final Object value) {
+            attach(key, value instanceof JSOG
+                    ? scalarAsNode(JsogTraversal.innermost((JSOG) value))
+                    : getPrimitiveAsNode(value));
+        }
 
-            // Add the values to the object node
-            @SuppressWarnings("unchecked")
-            Map<String, Object> map = (Map<String, Object>) value;
-            for (Entry<String, Object> entry : map.entrySet()) {
-                node.put(entry.getKey(), toJsonNode(entry.getValue()));
+        /**
+         * Adds a node to the enclosing container.
+         * @param key the key or index of the node, or null for the root.
+         * @param node the node.
+         */
+        private void attach(final Object key, final JsonNode node) {
+            if (stack.isEmpty()) {
+                root = node;
+            } else if (key instanceof String) {
+                ((ObjectNode) stack.get(stack.size() - 1))
+                        .put((String) key, node);
+            } else {
+                ((ArrayNode) stack.get(stack.size() - 1)).add(node);
             }
+        }
+    }
 
-            return node;
+    /**
+     * Appends the JSON representation of a primitive, null, lazy scalar or
+     * raw JSON value.
+     *
+     * The output is identical to that of the value's JsonNode, except that
+     * lazy scalars and raw JSON are copied verbatim rather than decoded and
+     * re-encoded.
+     * @param sb the StringBuilder to append to.
+     * @param value the value.
+     */
+    private static void appendScalar(final StringBuilder sb,
+                                     final Object value) {
+        if (value instanceof LazyScalar) {
+            ((LazyScalar) value).appendTo(sb);
+        } else if (value instanceof RawJson) {
+            ((RawJson) value).appendTo(sb);
+        } else if (value instanceof String) {
+            sb.append('"');
+            CharTypes.appendQuoted(sb, (String) value);
+            sb.append('"');
+        } else if (value == null) {
+            sb.append("null");
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof Double) {
+            sb.append(ShortestDecimal.toString((Double) value));
+        } else if (value instanceof Float) {
+            sb.append(ShortestDecimal.toString((Float) value));
+        } else {
+            sb.append(getPrimitiveAsNode(value).toString());
         }
+    }
 
-        // This is a primitive, convert it and return it.
-        return getPrimitiveAsNode(value);
+    /**
+     * Appends the JSON representation of a traversal.
+     */
+    private static final class JsonAppender
+            implements JsogTraversal.NodeVisitor {
+
+        /**
+         * The StringBuilder to append to.
+         */
+        private final StringBuilder sb;
+
+        /**
+         * True if the next value must be preceded by a comma.
+         */
+        private boolean comma;
+
+        /**
+         * Constructs a new JsonAppender.
+         * @param sb the StringBuilder to append to.
+         */
+        JsonAppender(final StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        @Override
+        public boolean enter(final Object key, final Object container) {
+            prefix(key);
+            sb.append(isObject(JsogTraversal.valueOf(container)) ? '{' : '[');
+            comma = false;
+            return true;
+        }
+
+        @Override
+        public void leave(final Object key, final Object container) {
+            sb.append(isObject(JsogTraversal.valueOf(container)) ? '}' : ']');
+            comma = true;
+        }
+
+        @Override
+        public void value(final Object key, final Object value) {
+            prefix(key);
+            appendScalar(sb, JsogTraversal.valueOf(value));
+            comma = true;
+        }
+
+        /**
+         * Appends the separator and key preceding a value.
+         * @param key the key or index of the value, or null for the root.
+         */
+        private void prefix(final Object key) {
+            if (comma) {
+                sb.append(',');
+            }
+            if (key instanceof String) {
+                sb.append('"');
+                CharTypes.appendQuoted(sb, (String) key);
+                sb.append("\":");
+            }
+        }
+    }
+
+    /**
+     * Gets the JsonFactory used to parse JSOGs.
+     * @return the shared, accomodating JsonFactory.
+     */
+    static JsonFactory getJsonFactory() {
+        return JACKSON_OBJECT_MAPPER.getJsonFactory();
     }
 
     /**
@@ -423,8 +630,13 @@ public class JSOG implements Cloneable, Serializable {
             return new JSOG();
         }
 
-        // Otherwise, try and parse it.
-        return new JSOG(JACKSON_OBJECT_MAPPER.readTree(jsonString));
+        // Otherwise, try and parse it, without recursing into nested values
+        JsonParser parser = getJsonFactory().createJsonParser(jsonString);
+        try {
+            return JsogReader.read(parser);
+        } finally {
+            parser.close();
+        }
     }
 
     /**
@@ -432,8 +644,27 @@ public class JSOG implements Cloneable, Serializable {
      * @return a new empty JSOG array.
      */
     public static JSOG array() {
-        JSOG jsog = new JSOG();
-        jsog.value = new ArrayList<Object>();
+        JSOG jsog = newNode();
+        jsog.value = newList();
+        return jsog;
+    }
+
+    /**
+     * Creates a new array JSOG with room for a number of elements.
+     *
+     * This avoids repeatedly growing the backing List when the size of the
+     * array is known in advance.
+     * @param capacity the expected number of elements.
+     * @return a new empty JSOG array.
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public static JSOG arrayWithCapacity(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                    "Illegal capacity: " + capacity);
+        }
+        JSOG jsog = newNode();
+        jsog.value = newList(capacity);
         return jsog;
     }
 
@@ -458,8 +689,27 @@ public class JSOG implements Cloneable, Serializable {
      * @return a new empty JSOG object.
      */
     public static JSOG object() {
-        JSOG jsog = new JSOG();
-        jsog.value = new LinkedHashMap<String, Object>();
+        JSOG jsog = newNode();
+        jsog.value = newMap();
+        return jsog;
+    }
+
+    /**
+     * Creates a new object JSOG with room for a number of entries.
+     *
+     * This avoids repeatedly rehashing the backing Map when the size of the
+     * object is known in advance.
+     * @param capacity the expected number of entries.
+     * @return a new empty JSOG object.
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public static JSOG objectWithCapacity(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException(
+                    "Illegal capacity: " + capacity);
+        }
+        JSOG jsog = newNode();
+        jsog.value = newMap(capacity);
         return jsog;
     }
 
@@ -509,43 +759,89 @@ public class JSOG implements Cloneable, Serializable {
      * @param dst the destination JSOG.
      */
     public static void merge(final JSOG src, final JSOG dst) {
-        if (src.isObject()) {
-            for (String key : src.keySet()) {
+        src.resolveRaw();
+        JsogTraversal.walk(src, new Merger(dst));
+    }
+
+    /**
+     * Merges a traversal into a destination JSOG.
+     *
+     * @see #merge(JSOG, JSOG)
+     */
+    private static final class Merger implements JsogTraversal.NodeVisitor {
 
-                // If the source value is a primitive, just set it
-                JSOG srcKey = src.get(key);
-                if (srcKey.isPrimitive()) {
-                    dst.put(key, srcKey.value);
-                } else {
+        /**
+         * The destination JSOG.
+         */
+        private final JSOG dst;
 
-                    // It's not a primitive, we need to recurse
-                    merge(src.get(key), dst.get(key));
-                }
+        /**
+         * The destinations of the enclosing containers.
+         */
+        private final List<JSOG> stack = new ArrayList<JSOG>();
+
+        /**
+         * Constructs a new Merger.
+         * @param dst the destination JSOG.
+         */
+        Merger(final JSOG dst) {
+            this.dst = dst;
+        }
+
+        @Override
+        public boolean enter(final Object key, final Object container) {
+            JSOG target;
+            if (key == null) {
+                target = dst;
+            } else if (key instanceof String) {
+                target = stack.get(stack.size() - 1).get((String) key);
+            } else {
+
+                // Array values are added when they're complete
+                target = stack.get(stack.size() - 1).newChild();
             }
-        } else if (src.isArray()) {
 
             // Make an array on the destination side if needed
             // This allows even empty arrays to be merged
-            if (!dst.isArray()) {
-                dst.value = new ArrayList<Object>(); // This is a slightly hacky
+            if (isArray(JsogTraversal.valueOf(container))
+                    && !target.isArray()) {
+                target.checkMutable();
+                target.value = target.newChildList(); // Slightly hacky
+            }
+
+            stack.add(target);
+            return true;
+        }
+
+        @Override
+        public void leave(final Object key, final Object container) {
+            JSOG target = stack.remove(stack.size() - 1);
+            if (key instanceof Integer) {
+                stack.get(stack.size() - 1).add(target);
             }
+        }
 
-            for (int i = 0; i < src.size(); i++) {
+        @Override
+        public void value(final Object key, final Object value) {
+            if (key == null) {
+                dst.set(wrap(value).getValue());
+                return;
+            }
 
-                // If the source value is a primitive, just set it
-                JSOG srcKey = src.get(i);
-                if (srcKey.isPrimitive()) {
-                    dst.add(srcKey.value);
-                } else {
+            // Primitives are copied; lazy scalars and raw JSON are shared
+            Object copy = JsogTraversal.valueOf(value);
+            if (copy instanceof LazyScalar) {
+                copy = lazy((LazyScalar) copy);
+            } else if (copy instanceof RawJson) {
+                copy = raw((RawJson) copy);
+            }
 
-                    // It's not a primitive, we need to recurse
-                    JSOG value = new JSOG();
-                    merge(src.get(i), value);
-                    dst.add(value);
-                }
+            JSOG target = stack.get(stack.size() - 1);
+            if (key instanceof String) {
+                target.put((String) key, copy);
+            } else {
+                target.add(copy);
             }
-        } else {
-            dst.set(src.getValue());
         }
     }
 
@@ -634,32 +930,537 @@ public class JSOG implements Cloneable, Serializable {
     }
 
     /**
-     * Wraps a value in a JSOG, if it is not already wrapped.
-     * @param value the value to wrap
-     * @return the wrapped value.
+     * Creates a JSOG holding raw JSON.
+     * @param raw the raw JSON.
+     * @return the JSOG.
+     */
+    static JSOG raw(final RawJson raw) {
+        JSOG jsog = newNode();
+        jsog.value = raw;
+        return jsog;
+    }
+
+    /**
+     * Creates a JSOG from a fragment of serialized JSON, which is written out
+     * verbatim.
+     *
+     * <p>The fragment is checked to be a single, valid JSON value, but isn't
+     * parsed into JSOGs. Serializing the JSOG, or a JSOG containing it,
+     * copies the fragment as it is, so cached or pre-rendered documents can
+     * be embedded without being parsed and re-serialized. The fragment is
+     * parsed only if the JSOG is read or modified.</p>
+     * @param json the fragment.
+     * @return a JSOG holding the fragment.
+     * @throws IllegalArgumentException if the fragment is not valid JSON.
+     * @throws NullPointerException if the fragment is null.
+     */
+    public static JSOG raw(final String json) {
+        return raw(RawJson.of(json, true));
+    }
+
+    /**
+     * Creates a JSOG from a fragment of UTF-8 encoded JSON, which is written
+     * out verbatim.
+     *
+     * The array is used without copying, and must not be modified afterwards.
+     * @param json the fragment.
+     * @return a JSOG holding the fragment.
+     * @throws IllegalArgumentException if the fragment is not valid JSON.
+     * @throws NullPointerException if the fragment is null.
+     * @see #raw(String)
+     */
+    public static JSOG raw(final byte[] json) {
+        return raw(RawJson.of(json, true));
+    }
+
+    /**
+     * Creates a JSOG from a trusted fragment of serialized JSON, without
+     * validating it.
+     *
+     * The fragment must be a single, valid JSON value, or the output of any
+     * JSOG containing it will be invalid.
+     * @param json the fragment.
+     * @return a JSOG holding the fragment.
+     * @throws NullPointerException if the fragment is null.
+     * @see #raw(String)
+     */
+    public static JSOG rawTrusted(final String json) {
+        return raw(RawJson.of(json, false));
+    }
+
+    /**
+     * Creates a JSOG from a trusted fragment of UTF-8 encoded JSON, without
+     * validating it.
+     *
+     * The array is used without copying, and must not be modified afterwards.
+     * The fragment must be a single, valid JSON value, or the output of any
+     * JSOG containing it will be invalid.
+     * @param json the fragment.
+     * @return a JSOG holding the fragment.
+     * @throws NullPointerException if the fragment is null.
+     * @see #raw(String)
+     */
+    public static JSOG rawTrusted(final byte[] json) {
+        return raw(RawJson.of(json, false));
+    }
+
+    /**
+     * Creates a JSOG holding a lazy scalar.
+     * @param scalar the lazy scalar.
+     * @return the JSOG.
+     */
+    static JSOG lazy(final LazyScalar scalar) {
+        JSOG jsog = newNode();
+        jsog.value = scalar;
+        return jsog;
+    }
+
+    /**
+     * Wraps a value in a JSOG, if it is not already wrapped.
+     *
+     * Maps and Lists, which may be nested in adopted collections, are used
+     * as the backing storage of the new JSOG. The wrapper is never drawn from
+     * an arena, since the value it wraps may outlive the arena's scope.
+     * @param value the value to wrap
+     * @return the wrapped value.
+     * @see #wrap(Map)
+     */
+    static JSOG wrap(final Object value) {
+        if (value instanceof JSOG) {
+            return (JSOG) value;
+        } else if (isObject(value) || isArray(value)) {
+            JSOG jsog = new JSOG();
+            jsog.value = value;
+            return jsog;
+        } else {
+            return new JSOG().set(value);
+        }
+    }
+
+    /**
+     * Wraps a value stored in an object or array.
+     *
+     * Unlike {@link #wrap(Object)}, a value which isn't a JSOG gets a wrapper
+     * which writes back to the container when the value is replaced, so
+     * coercing the wrapper, or setting its value, changes the container as
+     * it would for a stored JSOG.
+     * @param container the Map, List or Entry holding the value.
+     * @param key the key or index of the value, or null for an Entry.
+     * @param stored the stored value.
+     * @return the wrapped value.
+     */
+    static JSOG wrapStored(final Object container, final Object key,
+                           final Object stored) {
+        JSOG jsog = wrap(stored);
+        if (!(stored instanceof JSOG)) {
+            jsog.slot = new Slot(container, key);
+        }
+        return jsog;
+    }
+
+    /**
+     * Creates an object JSOG backed by an existing Map, without copying it.
+     *
+     * <p>The Map becomes the JSOG's storage: changes to either are visible
+     * through the other, and the Map must accept whatever the JSOG is used
+     * to put into it. Iteration order follows the Map's.</p>
+     *
+     * <p>Values may be primitives, JSOGs, or nested Maps and Lists of the
+     * same, which are wrapped the same way when they're accessed. Replacing
+     * a value through its wrapper, including coercing it to another type,
+     * replaces it in the containing Map or List. Other values aren't checked
+     * until the JSOG is serialized, which then throws
+     * IllegalArgumentException.</p>
+     * @param map the Map to adopt.
+     * @return a JSOG backed by the Map.
+     * @throws NullPointerException if the Map is null.
+     */
+    public static JSOG wrap(final Map<String, ?> map) {
+        if (map == null) {
+            throw new NullPointerException("map is null");
+        }
+        return wrap((Object) map);
+    }
+
+    /**
+     * Creates an array JSOG backed by an existing List, without copying it.
+     *
+     * <p>The List becomes the JSOG's storage: changes to either are visible
+     * through the other, and the List must accept whatever the JSOG is used
+     * to add to it.</p>
+     *
+     * <p>Elements may be primitives, JSOGs, or nested Maps and Lists of the
+     * same, which are wrapped the same way when they're accessed. Replacing
+     * a value through its wrapper, including coercing it to another type,
+     * replaces it in the containing Map or List. Other values aren't checked
+     * until the JSOG is serialized, which then throws
+     * IllegalArgumentException.</p>
+     * @param list the List to adopt.
+     * @return a JSOG backed by the List.
+     * @throws NullPointerException if the List is null.
+     * @see #wrap(Map)
+     */
+    public static JSOG wrap(final List<?> list) {
+        if (list == null) {
+            throw new NullPointerException("list is null");
+        }
+        return wrap((Object) list);
+    }
+
+    /**
+     * Creates an object JSOG that reads through several layers of objects,
+     * without copying them.
+     *
+     * <p>The first layer is the top layer. Keys are looked up from the top
+     * layer down, and the first layer with the key provides its value.
+     * Objects present in several layers are merged the same way, key by key;
+     * any other value, including an array, hides the values beneath it.</p>
+     *
+     * <p>Modifications go to the top layer, which may be null: it becomes an
+     * object on the first write. Nested objects are created in the top layer
+     * as they're written to. Removing a key removes it from the top layer
+     * only, so a lower layer's value may show through. The lower layers are
+     * never modified: arrays taken from them are copied into the top layer
+     * when they, or any value in them, are first written to.</p>
+     *
+     * <p>Lookups cost one Map lookup per layer, and iteration visits the keys
+     * of every layer. Use {@link #materialize()} to flatten the layers into
+     * an ordinary JSOG.</p>
+     * @param layers the layers, top layer first.
+     * @return a JSOG reading through the layers.
+     * @throws IllegalArgumentException if there are no layers, or a layer is
+     *                                  not an object or null.
+     * @throws NullPointerException if a layer is null.
+     */
+    @SuppressWarnings("unchecked")
+    public static JSOG overlay(final JSOG... layers) {
+        if (layers.length == 0) {
+            throw new IllegalArgumentException("No layers given.");
+        }
+
+        List<Map<String, Object>> lower = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < layers.length; i++) {
+            JSOG layer = layers[i];
+            if (layer.isNull()) {
+                continue;
+            }
+            if (!layer.isObject()) {
+                throw new IllegalArgumentException(
+                        "Layer " + i + " is not an object or null.");
+            }
+            if (i > 0) {
+                lower.add((Map<String, Object>) layer.rawValue());
+            }
+        }
+
+        JSOG jsog = newNode();
+        jsog.value = new OverlayMap(null, null, layers[0], lower);
+        return jsog;
+    }
+
+    /**
+     * Creates a JSOG from the current thread's arena, if one is open.
+     * @return a new, null JSOG.
+     * @see JsogArena
+     */
+    static JSOG newNode() {
+        JsogArena arena = JsogArena.current();
+        return arena == null ? new JSOG() : arena.node();
+    }
+
+    /**
+     * Creates a JSOG drawn from an arena.
+     * @param arena the arena.
+     * @return a new, null JSOG owned by the arena.
+     */
+    static JSOG arenaNode(final JsogArena arena) {
+        JSOG jsog = new JSOG();
+        jsog.arena = arena;
+        return jsog;
+    }
+
+    /**
+     * Gets the arena from which this JSOG's descendants are drawn.
+     *
+     * Only JSOGs drawn from the open arena have their descendants drawn from
+     * it too, so a JSOG which outlives the scope never holds nodes, Lists or
+     * Maps which are recycled when the scope closes.
+     * @return this JSOG's arena, if it's open on the current thread, or null.
+     */
+    private JsogArena ownArena() {
+        JsogArena owner = arena;
+        return owner != null && owner == JsogArena.current() ? owner : null;
+    }
+
+    /**
+     * Creates a JSOG to be stored in this JSOG.
+     * @return a new, null JSOG, from this JSOG's arena if it has one.
+     * @see #ownArena()
+     */
+    final JSOG newChild() {
+        JsogArena owner = ownArena();
+        return owner == null ? new JSOG() : owner.node();
+    }
+
+    /**
+     * Creates a backing List for this JSOG.
+     * @return a new, empty List, from this JSOG's arena if it has one.
+     * @see #ownArena()
+     */
+    private List<Object> newChildList() {
+        JsogArena owner = ownArena();
+        return owner == null ? new ArrayList<Object>() : owner.list();
+    }
+
+    /**
+     * Creates a backing Map for this JSOG.
+     * @return a new, empty Map, from this JSOG's arena if it has one.
+     * @see #ownArena()
+     */
+    private Map<String, Object> newChildMap() {
+        JsogArena owner = ownArena();
+        return owner == null
+                ? new LinkedHashMap<String, Object>()
+                : owner.map();
+    }
+
+    /**
+     * Creates a backing List from the current thread's arena, if one is open.
+     * @return a new, empty List.
+     */
+    private static List<Object> newList() {
+        JsogArena arena = JsogArena.current();
+        return arena == null ? new ArrayList<Object>() : arena.list();
+    }
+
+    /**
+     * Creates a presized backing List, from the current thread's arena if
+     * one is open.
+     * @param capacity the expected number of elements.
+     * @return a new, empty List.
+     */
+    private static List<Object> newList(final int capacity) {
+        JsogArena arena = JsogArena.current();
+        if (arena == null) {
+            return new ArrayList<Object>(capacity);
+        }
+        ArrayList<Object> list = (ArrayList<Object>) arena.list();
+        list.ensureCapacity(capacity);
+        return list;
+    }
+
+    /**
+     * Creates a backing Map from the current thread's arena, if one is open.
+     * @return a new, empty Map.
+     */
+    private static Map<String, Object> newMap() {
+        JsogArena arena = JsogArena.current();
+        return arena == null
+                ? new LinkedHashMap<String, Object>()
+                : arena.map();
+    }
+
+    /**
+     * Creates a presized backing Map, from the current thread's arena if one
+     * is open.
+     *
+     * Recycled Maps are used as they are, since their tables have usually
+     * grown already.
+     * @param capacity the expected number of entries.
+     * @return a new, empty Map.
+     */
+    private static Map<String, Object> newMap(final int capacity) {
+        JsogArena arena = JsogArena.current();
+        return arena == null
+                ? new LinkedHashMap<String, Object>(
+                        (int) (capacity / 0.75f) + 1)
+                : arena.map();
+    }
+
+    /**
+     * The value of this  JSOG.
+     */
+    private Object value = null;
+
+    /**
+     * The number of times this JSOG has been structurally modified
+     * Structural modifications are those that change the number of mappings in
+     * the JSOG or otherwise modify its internal structure (e.g., add, put,
+     * remove). This field is used to make iterators on Collection-views of
+     * the JSOG fail-fast.
+     * @see ConcurrentModificationException
+     */
+    private transient volatile int modCount = 0;
+
+    /**
+     * The arena this JSOG was drawn from, or null if it wasn't.
+     */
+    private transient JsogArena arena;
+
+    /**
+     * Where the value this JSOG wraps is stored, if it isn't a JSOG.
+     * @see #wrapStored(Object, Object, Object)
+     */
+    private transient Slot slot;
+
+    /**
+     * The value of JSOGs released by a debugging arena.
+     * @see JsogArena#setDebug(boolean)
+     */
+    private static final Object RELEASED = new Object();
+
+    /**
+     * Whether this JSOG is frozen, and may be shared.
+     * @see #dedupe()
+     */
+    private boolean frozen = false;
+
+    /**
+     * Gets the raw value of this JSOG, which may be a backing List or Map.
+     * @return the raw value.
+     */
+    final Object rawValue() {
+        resolve();
+        return value;
+    }
+
+    /**
+     * Gets the raw value of this JSOG, without modifying it.
+     *
+     * Unlike {@link #rawValue()}, raw JSON and lazy scalars are decoded into
+     * a temporary value and aren't stored, so raw JSON is still written
+     * verbatim afterwards, and concurrent readers don't race.
+     * @return the decoded raw value.
+     */
+    final Object decodedValue() {
+        Object current = value;
+        if (current instanceof LazyScalar) {
+            return ((LazyScalar) current).decode();
+        } else if (current instanceof RawJson) {
+            return ((RawJson) current).parse().unresolvedValue();
+        }
+        checkLive();
+        return current;
+    }
+
+    /**
+     * Gets the raw value of this JSOG, without decoding lazy scalars.
+     * @return the raw value, which may be a LazyScalar.
+     */
+    final Object unresolvedValue() {
+        checkLive();
+        return value;
+    }
+
+    /**
+     * Decodes the value of this JSOG, if it's a lazy scalar or raw JSON.
+     */
+    private void resolve() {
+        if (value instanceof LazyScalar) {
+            value = ((LazyScalar) value).decode();
+        } else {
+            resolveRaw();
+        }
+    }
+
+    /**
+     * Parses the value of this JSOG, if it's raw JSON.
+     *
+     * Unlike lazy scalars, raw JSON may be an array or object, so it must be
+     * parsed before the type of this JSOG can be known.
+     */
+    private void resolveRaw() {
+        if (value instanceof RawJson) {
+            value = ((RawJson) value).parse().unresolvedValue();
+        } else {
+            checkLive();
+        }
+    }
+
+    /**
+     * Ensures this JSOG hasn't been released by a debugging arena.
+     * @throws IllegalStateException if the JSOG has been released.
+     */
+    private void checkLive() {
+        if (value == RELEASED) {
+            throw new IllegalStateException(
+                    "The JSOG was used after its arena was closed.");
+        }
+    }
+
+    /**
+     * Releases this JSOG, so it can be recycled by an arena.
+     * @param poison true to make any further use of this JSOG fail.
+     */
+    final void release(final boolean poison) {
+        value = poison ? RELEASED : null;
+        slot = null;
+        frozen = false;
+        modCount++;
+    }
+
+    /**
+     * Replaces the value of this JSOG with one of another type, writing it
+     * back to the container holding the value this JSOG wraps, if any.
+     * @param newValue the new raw value.
+     */
+    private void coerce(final Object newValue) {
+        value = newValue;
+        if (slot != null) {
+            slot.store(newValue);
+        }
+    }
+
+    /**
+     * Replaces the raw value of this JSOG.
+     * @param newValue the new raw value, which may be a backing List or Map.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
+     */
+    final void setRawValue(final Object newValue) {
+        checkMutable();
+        value = newValue;
+        modCount++;
+    }
+
+    /**
+     * Creates a frozen JSOG.
+     *
+     * The backing List or Map, if any, is made unmodifiable. The caller must
+     * not keep a reference to it.
+     * @param rawValue the raw value of the JSOG.
+     * @return the frozen JSOG.
      */
-    private static JSOG wrap(final Object value) {
-        if (value instanceof JSOG) {
-            return (JSOG) value;
+    static JSOG frozen(final Object rawValue) {
+        JSOG jsog = new JSOG();
+        if (rawValue instanceof Map<?, ?>) {
+            jsog.value = Collections.unmodifiableMap((Map<?, ?>) rawValue);
+        } else if (rawValue instanceof List<?>) {
+            jsog.value = Collections.unmodifiableList((List<?>) rawValue);
         } else {
-            return new JSOG(value);
+            jsog.value = rawValue;
         }
+        jsog.frozen = true;
+        return jsog;
     }
 
     /**
-     * The value of this  JSOG.
+     * Ensures this JSOG may be modified.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
-    private Object value = null;
+    private void checkMutable() {
+        resolveRaw();
+        if (frozen) {
+            throw new UnsupportedOperationException("The JSOG is frozen.");
+        }
+    }
 
     /**
-     * The number of times this JSOG has been structurally modified
-     * Structural modifications are those that change the number of mappings in
-     * the JSOG or otherwise modify its internal structure (e.g., add, put,
-     * remove). This field is used to make iterators on Collection-views of
-     * the JSOG fail-fast.
-     * @see ConcurrentModificationException
+     * Gets the structural modification count, for fail-fast iteration.
+     * @return the modification count.
      */
-    private transient volatile int modCount = 0;
+    final int getModCount() {
+        return modCount;
+    }
 
     /**
      * Constructs a new JSOG object from a JsonNode.
@@ -668,21 +1469,60 @@ public class JSOG implements Cloneable, Serializable {
      * deserialized.
      */
     private JSOG(final JsonNode jsonNode) {
+
+        // Fill in the tree with an explicit stack, so deep nesting is safe
+        List<JSOG> parents = new ArrayList<JSOG>();
+        List<Iterator<?>> children = new ArrayList<Iterator<?>>();
+        Iterator<?> it = setNode(jsonNode);
+        if (it != null) {
+            parents.add(this);
+            children.add(it);
+        }
+
+        while (!parents.isEmpty()) {
+            int top = parents.size() - 1;
+            it = children.get(top);
+            if (!it.hasNext()) {
+                parents.remove(top);
+                children.remove(top);
+                continue;
+            }
+
+            JSOG parent = parents.get(top);
+            JSOG child = new JSOG();
+            Object next = it.next();
+            if (next instanceof JsonNode) {
+                parent.add(child);
+                it = child.setNode((JsonNode) next);
+            } else {
+                @SuppressWarnings("unchecked")
+                Entry<String, JsonNode> entry = (Entry<String, JsonNode>) next;
+                parent.put(entry.getKey(), child);
+                it = child.setNode(entry.getValue());
+            }
+
+            if (it != null) {
+                parents.add(child);
+                children.add(it);
+            }
+        }
+    }
+
+    /**
+     * Sets the value of this JSOG from a JsonNode, except for the values of
+     * arrays and objects.
+     * @param jsonNode the JsonNode.
+     * @return the elements or fields of an array or object, or null.
+     * @throws UnsupportedOperationException if the JsonNode could not be
+     * deserialized.
+     */
+    private Iterator<?> setNode(final JsonNode jsonNode) {
         if (jsonNode.isArray()) {
-            ArrayNode array = (ArrayNode) jsonNode;
-            Iterator<JsonNode> it = array.getElements();
             value = new ArrayList<Object>();
-            while (it.hasNext()) {
-                add(new JSOG(it.next()));
-            }
+            return ((ArrayNode) jsonNode).getElements();
         } else if (jsonNode.isObject()) {
-            ObjectNode object = (ObjectNode) jsonNode;
-            Iterator<Entry<String, JsonNode>> it = object.getFields();
             value = new LinkedHashMap<String, Object>();
-            while (it.hasNext()) {
-                Entry<String, JsonNode> entry = it.next();
-                put(entry.getKey(), new JSOG(entry.getValue()));
-            }
+            return ((ObjectNode) jsonNode).getFields();
         } else if (jsonNode.isNull()) {
             set(null);
         } else if (jsonNode.isBoolean()) {
@@ -703,6 +1543,7 @@ public class JSOG implements Cloneable, Serializable {
             throw new UnsupportedOperationException(
                     "Could not deserialize node: " + jsonNode);
         }
+        return null;
     }
 
     /**
@@ -731,6 +1572,7 @@ public class JSOG implements Cloneable, Serializable {
      * @return true if the value is null or is assignable from the type.
      */
     private boolean isValueType(final Class<?> type) {
+        resolve();
 
         // Don't do any more work than necessary
         if (value == null) {
@@ -750,6 +1592,7 @@ public class JSOG implements Cloneable, Serializable {
      * @return true if the object is null.
      */
     public final boolean isNull() {
+        resolveRaw();
         return value == null;
     }
 
@@ -774,7 +1617,8 @@ public class JSOG implements Cloneable, Serializable {
      * @return true if the object is a primitive.
      */
     public final boolean isPrimitive() {
-        return isPrimitive(value);
+        resolveRaw();
+        return value instanceof LazyScalar || isPrimitive(value);
     }
 
     /**
@@ -782,6 +1626,7 @@ public class JSOG implements Cloneable, Serializable {
      * @return true if the value is an array.
      */
     public final boolean isArray() {
+        resolveRaw();
         return isArray(value);
     }
 
@@ -790,6 +1635,7 @@ public class JSOG implements Cloneable, Serializable {
      * @return true if the value is an object.
      */
     public final boolean isObject() {
+        resolveRaw();
         return isObject(value);
     }
 
@@ -797,26 +1643,30 @@ public class JSOG implements Cloneable, Serializable {
      * Treats this node as an array and adds the value to it.
      *
      * If this node is not an array, any previous values will be lost.
+     * Maps and Lists are adopted without copying, as by {@link #wrap(Map)}.
      * @param newValue the value to add.
      * @return the current JSOG object.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     @SuppressWarnings("unchecked")
     public final JSOG add(final Object newValue) {
+        checkMutable();
 
         // Make sure it's a primitive
-        if (isPrimitive(newValue) || newValue instanceof JSOG) {
+        if (isPrimitive(newValue) || newValue instanceof JSOG
+                || isObject(newValue) || isArray(newValue)) {
 
             // If the current value isn't a list, create one
             List<Object> list;
             try {
                 list = (List<Object>) this.value;
             } catch (ClassCastException e) {
-                list = new ArrayList<Object>();
-                this.value = list;
+                list = newChildList();
+                coerce(list);
             }
             if (list == null) {
-                list = new ArrayList<Object>();
-                this.value = list;
+                list = newChildList();
+                coerce(list);
             }
 
             list.add(newValue);
@@ -850,34 +1700,61 @@ public class JSOG implements Cloneable, Serializable {
         return this;
     }
 
+    /**
+     * Treats this node as an array and appends the elements of another array
+     * JSOG to it in a single operation.
+     *
+     * If this node is not an array, any previous values will be lost.
+     * @param array the array whose elements are to be appended.
+     * @throws IllegalStateException if the source is not an array.
+     */
+    @SuppressWarnings("unchecked")
+    final void appendAll(final JSOG array) {
+        checkMutable();
+        if (!array.isArray()) {
+            throw new IllegalStateException("The JSOG is not an array.");
+        }
+
+        if (!isArray()) {
+            coerce(newChildList());
+        }
+
+        ((List<Object>) value).addAll((List<Object>) array.value);
+        modCount++;
+    }
+
     /**
      * Treats this node as an array and adds the value to it at the
      * specified index.
      *
      * If this node is not an array, any previous values will be lost.
+     * Maps and Lists are adopted without copying, as by {@link #wrap(Map)}.
      * @param newValue the value to add.
      * @param index the index at which the specified element is to be inserted
      * @return the current JSOG object.
      * @throws IndexOutOfBoundsException if the index is out of range
      *                                   (index < 0 || index > size())
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     @SuppressWarnings("unchecked")
     public final JSOG add(final int index, final Object newValue) {
+        checkMutable();
 
         // Make sure it's a primitive
-        if (isPrimitive(newValue) || newValue instanceof JSOG) {
+        if (isPrimitive(newValue) || newValue instanceof JSOG
+                || isObject(newValue) || isArray(newValue)) {
 
             // If the current value isn't a list, create one
             List<Object> list;
             try {
                 list = (List<Object>) this.value;
             } catch (ClassCastException e) {
-                list = new ArrayList<Object>();
-                this.value = list;
+                list = newChildList();
+                coerce(list);
             }
             if (list == null) {
-                list = new ArrayList<Object>();
-                this.value = list;
+                list = newChildList();
+                coerce(list);
             }
 
             list.add(index, newValue);
@@ -892,15 +1769,67 @@ public class JSOG implements Cloneable, Serializable {
         }
     }
 
+    /**
+     * Replaces an element of a JSOG array, padding it with nulls if the index
+     * is past its end.
+     *
+     * Implicitly converts this JSOG to an array.
+     * Maps and Lists are adopted without copying, as by {@link #wrap(Map)}.
+     * @param index the index of the element, which may count from the end.
+     * @param newValue the value to store.
+     * @return the current JSOG object.
+     * @throws IndexOutOfBoundsException if a negative index is out of range.
+     * @throws IllegalArgumentException if the value is not a primitive, JSOG,
+     * Map or List.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
+     */
+    @SuppressWarnings("unchecked")
+    final JSOG setElement(final int index, final Object newValue) {
+        checkMutable();
+        resolveRaw();
+
+        // Make sure it's a primitive
+        if (isPrimitive(newValue) || newValue instanceof JSOG
+                || isObject(newValue) || isArray(newValue)) {
+
+            // If the current value isn't a list, create one
+            if (!(this.value instanceof List<?>)) {
+                coerce(newChildList());
+            }
+            List<Object> list = (List<Object>) this.value;
+
+            int i = index < 0 ? index + list.size() : index;
+            if (i < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index
+                        + ", Size: " + list.size());
+            }
+            while (list.size() <= i) {
+                list.add(null);
+            }
+            list.set(i, newValue);
+            modCount++;
+
+            return this;
+        } else {
+            throw new IllegalArgumentException(
+                    "This method applies only to primitive"
+                    + " types and other JSOG objects, not: "
+                    + newValue.getClass().toString());
+        }
+    }
+
     /**
      * Adds a value to a JSOG object.
      *
      * Implicitly converts this JSOG to an object.
+     * Maps and Lists are adopted without copying, as by {@link #wrap(Map)}.
      * @param key the key in which to store the value.
      * @param newValue the primitive value to store.
      * @return this JSOG.
-     * @throws IllegalArgumentException if value is not a primitive or JSOG.
+     * @throws IllegalArgumentException if value is not a primitive, JSOG,
+     * Map or List.
      * @throws NullPointerException if key is null.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     @SuppressWarnings("unchecked")
     public final JSOG put(final String key,
@@ -909,21 +1838,23 @@ public class JSOG implements Cloneable, Serializable {
         if (key == null) {
             throw new NullPointerException("key is null");
         }
+        checkMutable();
 
         // Make sure it's a primitive
-        if (isPrimitive(newValue) || newValue instanceof JSOG) {
+        if (isPrimitive(newValue) || newValue instanceof JSOG
+                || isObject(newValue) || isArray(newValue)) {
 
             // If the current value isn't a map, create one
             Map<String, Object> map;
             try {
                 map = (Map<String, Object>) this.value;
             } catch (ClassCastException e) {
-                map = new LinkedHashMap<String, Object>();
-                this.value = map;
+                map = newChildMap();
+                coerce(map);
             }
             if (map == null) {
-                map = new LinkedHashMap<String, Object>();
-                this.value = map;
+                map = newChildMap();
+                coerce(map);
             }
 
             map.put(key, newValue);
@@ -945,7 +1876,8 @@ public class JSOG implements Cloneable, Serializable {
      * @param key the key in which to store the value.
      * @param newValue the primitive value to store.
      * @return this JSOG.
-     * @throws IllegalArgumentException if value is not a primitive or JSOG.
+     * @throws IllegalArgumentException if value is not a primitive, JSOG,
+     * Map or List.
      * @throws NullPointerException if key is null.
      */
     public final JSOG put(final Enum<?> key,
@@ -962,7 +1894,8 @@ public class JSOG implements Cloneable, Serializable {
      * the values will have been put.
      * @param values A map of keys and primitives to store.
      * @return this JSOG.
-     * @throws IllegalArgumentException if a value is not a primitive or JSOG.
+     * @throws IllegalArgumentException if a value is not a primitive, JSOG,
+     * Map or List.
      * @throws NullPointerException if key is null.
      */
     public final JSOG putAll(final Map<String, Object> values) {
@@ -978,10 +1911,12 @@ public class JSOG implements Cloneable, Serializable {
      * @param newValue the primitive value to set.
      * @return this JSOG object.
      * @throws IllegalArgumentException if the value is not a primitive.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     public final JSOG set(final Object newValue) {
+        checkMutable();
         if (isPrimitive(newValue) || newValue instanceof JSOG) {
-            this.value = newValue;
+            coerce(newValue);
             return this;
         } else {
             throw new IllegalArgumentException(
@@ -995,6 +1930,8 @@ public class JSOG implements Cloneable, Serializable {
      * Navigates to an object field. If the field does not exist, it is created.
      *
      * Using this method, you can easily navigate the object graph of a JSOG.
+     * If this JSOG is frozen, missing fields aren't created; a new, detached
+     * JSOG is returned instead.
      * @param key the object key.
      * @return the JSOG object identified by the key.
      */
@@ -1009,8 +1946,13 @@ public class JSOG implements Cloneable, Serializable {
         // If this object doesn't have a value yet, coerce it to an object
         if (isNull()) {
 
+            // Frozen JSOGs can't be coerced, so navigate to a detached JSOG
+            if (frozen) {
+                return new JSOG();
+            }
+
             // We need to put a JSOG object into that key so we can navigate
-            JSOG jsog = new JSOG();
+            JSOG jsog = newChild();
             put(key, jsog);
 
             // Return the new JSOG object so it can be navigated.
@@ -1033,12 +1975,16 @@ public class JSOG implements Cloneable, Serializable {
 
             // The key already exists. Wrap it in a JSOG, if necessary, so we
             // can navigate.
-            return wrap(theValue);
+            return frozen ? wrap(theValue) : wrapStored(map, key, theValue);
+        } else if (frozen) {
+
+            // The key doesn't exist, and can't be created
+            return new JSOG();
         } else {
 
             // The key doesn't exist
             // We need to put a JSOG object into that key so we can navigate
-            JSOG jsog = new JSOG();
+            JSOG jsog = newChild();
             put(key, jsog);
 
             // Return our new JSOG object
@@ -1064,6 +2010,7 @@ public class JSOG implements Cloneable, Serializable {
      */
     @SuppressWarnings("unchecked")
     public final JSOG get(final int index) {
+        resolveRaw();
         List<Object> list;
         try {
             list = (List<Object>) value;
@@ -1075,7 +2022,7 @@ public class JSOG implements Cloneable, Serializable {
         }
 
         Object theValue = list.get(index);
-        return wrap(theValue);
+        return frozen ? wrap(theValue) : wrapStored(list, index, theValue);
     }
 
     /**
@@ -1087,6 +2034,7 @@ public class JSOG implements Cloneable, Serializable {
      * @see List#indexOf(Object)
      */
     public final int indexOf(final Object value) {
+        resolveRaw();
         List<Object> list;
         try {
             list = (List<Object>) this.value;
@@ -1108,6 +2056,7 @@ public class JSOG implements Cloneable, Serializable {
      * @see List#contains(Object)
      */
     public final boolean contains(final Object value) {
+        resolveRaw();
         List<Object> list;
         try {
             list = (List<Object>) this.value;
@@ -1158,9 +2107,11 @@ public class JSOG implements Cloneable, Serializable {
      * @param key the object key.
      * @return the value that was removed, or null if the key does not exist.
      * @throws IllegalStateException if the JSOG is not an object.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     @SuppressWarnings("unchecked")
     public final Object remove(final String key) {
+        checkMutable();
         Map<String, Object> map;
         try {
             map = (Map<String, Object>) value;
@@ -1187,9 +2138,11 @@ public class JSOG implements Cloneable, Serializable {
      * @return the value that was removed.
      * @throws IndexOutOfBoundsException if the specified index is greater than
      * the size of the array.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     @SuppressWarnings("unchecked")
     public final Object remove(final int index) {
+        checkMutable();
         List<Object> list;
         try {
             list = (List<Object>) value;
@@ -1206,15 +2159,17 @@ public class JSOG implements Cloneable, Serializable {
      * If this is a value JSOG, it's set to null. If this is an array JSOG, it's
      * values are removed. If this is an object JSOG, it's entries are removed.
      * @return this JSOG.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
      */
     @SuppressWarnings("unchecked")
     public final JSOG clear() {
+        checkMutable();
         if (isObject()) {
             ((Map<String, Object>) value).clear();
         } else if (isArray()) {
             ((List<Object>) value).clear();
         } else {
-            value = null;
+            coerce(null);
         }
 
         return this;
@@ -1326,6 +2281,53 @@ public class JSOG implements Cloneable, Serializable {
         };
     }
 
+    /**
+     * Gets a splittable iterator for the values in an array JSOG.
+     *
+     * The spliterator reads the backing storage directly and knows its exact
+     * size, so it can be split into balanced halves for parallel processing.
+     * @return a value spliterator.
+     * @throws IllegalStateException if the JSOG is not an array or null.
+     * @see JsogCollectors#collect(JsogSpliterator, JsogCollector,
+     * java.util.concurrent.ExecutorService, int)
+     */
+    public final JsogSpliterator<JSOG> arraySpliterator() {
+        if (isNull()) {
+            return JsogSpliterator.array(this, Collections.emptyList());
+        }
+
+        if (!isArray()) {
+            // Not an array...
+            throw new IllegalStateException(
+                    "The value of this JSOG is not an array.");
+        }
+
+        return JsogSpliterator.array(this, (List<?>) value);
+    }
+
+    /**
+     * Gets a splittable iterator for the entries in an object JSOG.
+     *
+     * The entries are captured in a single pass when the spliterator is
+     * created, after which it knows its exact size and can be split into
+     * balanced halves for parallel processing.
+     * @return an entry spliterator.
+     * @throws IllegalStateException if the JSOG is not an object or null.
+     */
+    public final JsogSpliterator<Entry<String, JSOG>> objectSpliterator() {
+        if (isNull()) {
+            return JsogSpliterator.object(this, Collections.emptyMap());
+        }
+
+        if (!isObject()) {
+            // Not an object...
+            throw new IllegalStateException(
+                    "The value of this JSOG is not an object.");
+        }
+
+        return JsogSpliterator.object(this, (Map<?, ?>) value);
+    }
+
     /**
      * Gets the value of this JSOG.
      * @return the value of this JSOG.
@@ -1333,6 +2335,7 @@ public class JSOG implements Cloneable, Serializable {
     public final Object getValue() {
 
         // We can only get the values of primitives and other JSOG values
+        resolve();
         if (!isPrimitive() && !(value instanceof JSOG)) {
             throw new IllegalStateException(
                     "The value is not a primitive or JSOG");
@@ -1673,8 +2676,8 @@ public class JSOG implements Cloneable, Serializable {
     /**
      * Evaluates a path expression.
      *
-     * Note: This method always recompiles the path expression. If you will be
-     * using the same path multiple times, consider using a compiled JsogPath.
+     * Note: Compiled path expressions are cached, up to the cache's maximum
+     * size. Keeping a compiled JsogPath still saves the cache lookup.
      *
      * <p>
      * This is ALPHA quality code. The API is unlikely to change, and there are
@@ -1703,12 +2706,50 @@ public class JSOG implements Cloneable, Serializable {
         return path.evaluate(this);
     }
 
+    /**
+     * Gets an Iterable for the values matched by a path expression, which
+     * may use wildcards, recursive descent, slices, unions and filters.
+     * @param path the path expression to evaluate.
+     * @return an Iterable over the matching values.
+     * @see JsogPath#iterator(JSOG)
+     */
+    public Iterable<JSOG> pathIterable(String path) {
+        return JsogPath.compile(path).iterable(this);
+    }
+
+    /**
+     * Gets an Iterable for the values matched by a path expression.
+     * @param path the path expression to evaluate.
+     * @return an Iterable over the matching values.
+     * @see JsogPath#iterator(JSOG)
+     */
+    public Iterable<JSOG> pathIterable(JsogPath path) {
+        return path.iterable(this);
+    }
+
     /**
      * Converts this JSOG to a JsonNode.
      * @return a JsonNode representing this JSOG.
      */
     public final JsonNode toJsonNode() {
-        return toJsonNode(value);
+        resolveRaw();
+        JsonNodeBuilder builder = new JsonNodeBuilder();
+        JsogTraversal.walk(this, builder);
+        return builder.root;
+    }
+
+    /**
+     * Visits the values of this JSOG, depth first.
+     *
+     * The traversal doesn't recurse, so documents may be nested to any
+     * depth.
+     * @param visitor the visitor.
+     * @return this JSOG.
+     * @see JsogVisitor
+     */
+    public final JSOG accept(final JsogVisitor visitor) {
+        JsogTraversal.walk(this, visitor);
+        return this;
     }
 
     /**
@@ -1723,15 +2764,87 @@ public class JSOG implements Cloneable, Serializable {
         return this;
     }
 
+    /**
+     * Gets a plain Java view of this JSOG, without copying it.
+     *
+     * <p>Objects are viewed as unmodifiable Maps, arrays as unmodifiable
+     * Lists, and nested values are viewed the same way when they're
+     * accessed. Primitives are returned as they are, and null JSOGs as
+     * null.</p>
+     *
+     * <p>Views read through to this JSOG, so they reflect later changes to
+     * it.</p>
+     * @return a Map, List, primitive, or null.
+     * @see #wrap(Map)
+     */
+    public final Object toPlainJava() {
+        return PlainJava.view(this);
+    }
+
+    /**
+     * Tests if this JSOG is frozen.
+     *
+     * Frozen JSOGs can't be modified, and may be shared by several parents.
+     * @return true if this JSOG is frozen.
+     * @see #dedupe()
+     */
+    public final boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Deduplicates the values of this JSOG.
+     *
+     * <p>Structurally equal values (same types, same keys in the same order,
+     * same elements) are replaced by a single shared instance, which cuts
+     * memory use in proportion to the redundancy of the document. Object
+     * keys and strings are shared the same way.</p>
+     *
+     * <p>Every value of this JSOG is frozen by this operation: attempts to
+     * modify them throw UnsupportedOperationException. This JSOG itself
+     * remains modifiable, and {@link #clone()} returns a fully modifiable
+     * copy. Lazy scalars are decoded.</p>
+     * @return this JSOG.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
+     */
+    public final JSOG dedupe() {
+        checkMutable();
+        new JsogDeduplicator().dedupeValues(this);
+        return this;
+    }
+
+    /**
+     * Flattens an overlay into an ordinary object JSOG.
+     *
+     * The merged view of the layers is copied into this JSOG, which no
+     * longer reads through them. Other JSOGs are left unchanged.
+     * @return this JSOG.
+     * @throws UnsupportedOperationException if this JSOG is frozen.
+     * @see #overlay(JSOG...)
+     */
+    public final JSOG materialize() {
+        checkMutable();
+        if (value instanceof OverlayMap) {
+            setRawValue(new JSOG().merge(this).value);
+        }
+        return this;
+    }
+
     @Override
     public final String toString() {
-        return toJsonNode().toString();
+        checkLive();
+        StringBuilder sb = new StringBuilder();
+        JsogTraversal.walk(this, new JsonAppender(sb));
+        return sb.toString();
     }
 
     @Override
     public final int hashCode() {
+        checkLive();
+        Hasher hasher = new Hasher();
+        JsogTraversal.walk(this, hasher);
         int hash = 7;
-        hash = 53 * hash + (this.value != null ? this.value.hashCode() : 0);
+        hash = 53 * hash + hasher.hash;
         return hash;
     }
 
@@ -1753,68 +2866,285 @@ public class JSOG implements Cloneable, Serializable {
             return false;
         }
         final JSOG that = (JSOG) obj;
+        this.resolveRaw();
+        that.resolveRaw();
+
+        EqualityChecker checker = new EqualityChecker(that);
+        JsogTraversal.walk(this, checker);
+        return checker.equal;
+    }
+
+    /**
+     * Compares the values of two JSOGs, if the first is not an array or
+     * object.
+     * @param a the first JSOG.
+     * @param b the second JSOG.
+     * @return true if they're loosely equal.
+     * @see #equals(Object)
+     */
+    private static boolean scalarEquals(final JSOG a, final JSOG b) {
+        a.resolveRaw();
+        b.resolveRaw();
 
         // Are the values identical?
-        if (this.value != that.value) {
+        if (a.value == b.value) {
+            return true;
+        }
+
+        // No. Are they both null?
+        if (a.value == null) {
+
+            // No, they're different
+            return false;
+        }
+
+        // If they're primitives, we can directly compare them
+        if (a.isPrimitive()) {
+            return a.getStringValue().equals(b.getStringValue());
+        }
+
+        // Raw JSON may hold anything
+        return a.equals(b);
+    }
+
+    /**
+     * Compares a traversal against another JSOG.
+     *
+     * @see #equals(Object)
+     */
+    private static final class EqualityChecker
+            implements JsogTraversal.NodeVisitor {
+
+        /**
+         * The JSOG being compared against.
+         */
+        private final JSOG that;
 
-            // No. Are they both null?
-            if (this.value == null && that.value != null) {
+        /**
+         * The raw counterparts of the enclosing containers.
+         */
+        private final List<Object> stack = new ArrayList<Object>();
+
+        /**
+         * False once a difference has been found.
+         */
+        private boolean equal = true;
+
+        /**
+         * Constructs a new EqualityChecker.
+         * @param that the JSOG being compared against.
+         */
+        EqualityChecker(final JSOG that) {
+            this.that = that;
+        }
 
-                // No, they're different
+        @Override
+        public boolean enter(final Object key, final Object container) {
+            if (!equal) {
                 return false;
             }
 
-            // If they're primitives, we can directly compare them
-            if (isPrimitive()) {
-                return getStringValue().equals(that.getStringValue());
+            // Identical containers needn't be visited
+            Object value = JsogTraversal.valueOf(container);
+            Object other = resolved(counterpart(key));
+            if (value == other) {
+                return false;
             }
 
-            // If they're arrays, check each value of the array
-            if (isArray()) {
+            // Different types or sizes means they're non-equal
+            boolean sameType = isArray(value)
+                    ? isArray(other)
+                    : isObject(other);
+            if (!sameType || size(value) != size(other)) {
+                equal = false;
+                return false;
+            }
 
-                // Different types or sizes means they're non-equal
-                if (!that.isArray() || size() != that.size()) {
-                    return false;
-                }
+            stack.add(other);
+            return true;
+        }
 
-                // Check each value
-                for (int i = 0; i < size(); i++) {
-                    JSOG thisValue = this.get(i);
-                    JSOG thatValue = that.get(i);
+        @Override
+        public void leave(final Object key, final Object container) {
+            stack.remove(stack.size() - 1);
+        }
 
-                    // Are they different?
-                    if (!thisValue.equals(thatValue)) {
-                        return false;
-                    }
-                }
+        @Override
+        public void value(final Object key, final Object value) {
+            if (!equal) {
+                return;
             }
 
-            // If they're objects, check each value of the object
-            if (isObject()) {
+            // Plain primitives are compared without wrapping them
+            Object a = JsogTraversal.valueOf(value);
+            Object other = counterpart(key);
+            Object b = JsogTraversal.valueOf(other);
+            if (isPlain(a) && isPlain(b)) {
+                equal = a.equals(b) || a.toString().equals(b.toString());
+            } else {
+                equal = scalarEquals(
+                        JsogTraversal.innermost(wrap(value)),
+                        other == null
+                                ? new JSOG()
+                                : JsogTraversal.innermost(wrap(other)));
+            }
+        }
 
-                // Different types or sizes means they're non-equal
-                if (!that.isObject() || size() != that.size()) {
-                    return false;
-                }
+        /**
+         * Tests if a raw value is a String, Number or Boolean.
+         * @param value the raw value.
+         * @return true if it can be compared by its string form.
+         */
+        private static boolean isPlain(final Object value) {
+            return value instanceof String || value instanceof Number
+                    || value instanceof Boolean;
+        }
+
+        /**
+         * Gets the size of a raw container.
+         * @param value a Map or List.
+         * @return the number of entries or elements.
+         */
+        private static int size(final Object value) {
+            return value instanceof Map<?, ?>
+                    ? ((Map<?, ?>) value).size()
+                    : ((List<?>) value).size();
+        }
+
+        /**
+         * Gets the raw value of a node, parsing raw JSON.
+         * @param node a JSOG or a raw value, or null.
+         * @return the raw value.
+         */
+        private static Object resolved(final Object node) {
+            if (!(node instanceof JSOG)) {
+                return node;
+            }
+            JSOG inner = JsogTraversal.innermost((JSOG) node);
+            inner.resolveRaw();
+            return inner.value;
+        }
+
+        /**
+         * Gets the node being compared against.
+         * @param key the key or index of the value, or null for the root.
+         * @return the counterpart of the value, null if it's missing.
+         */
+        @SuppressWarnings("unchecked")
+        private Object counterpart(final Object key) {
+            if (key == null) {
+                return that;
+            }
+
+            Object parent = stack.get(stack.size() - 1);
+            if (key instanceof String) {
+                return ((Map<String, Object>) parent).get(key);
+            } else {
+                return ((List<Object>) parent).get((Integer) key);
+            }
+        }
+    }
+
+    /**
+     * Hashes a traversal.
+     *
+     * Values are hashed the same whether they're stored as JSOGs or raw
+     * values, and containers the way Maps and Lists are.
+     * @see #hashCode()
+     */
+    private static final class Hasher implements JsogTraversal.NodeVisitor {
+
+        /**
+         * The hashes of the enclosing containers, so far.
+         */
+        private int[] hashes = new int[16];
+
+        /**
+         * Whether each enclosing container is an object.
+         */
+        private boolean[] objects = new boolean[16];
+
+        /**
+         * The number of enclosing containers.
+         */
+        private int depth;
+
+        /**
+         * The hash of the root value.
+         */
+        private int hash;
+
+        @Override
+        public boolean enter(final Object key, final Object container) {
+            if (depth == hashes.length) {
+                int[] moreHashes = new int[depth * 2];
+                System.arraycopy(hashes, 0, moreHashes, 0, depth);
+                hashes = moreHashes;
+                boolean[] moreObjects = new boolean[depth * 2];
+                System.arraycopy(objects, 0, moreObjects, 0, depth);
+                objects = moreObjects;
+            }
+            objects[depth] = isObject(JsogTraversal.valueOf(container));
+            hashes[depth] = objects[depth] ? 0 : 1;
+            depth++;
+            return true;
+        }
 
-                // Check each value
-                for (String key : this.keySet()) {
-                    JSOG thisValue = this.get(key);
-                    JSOG thatValue = that.get(key);
+        @Override
+        public void leave(final Object key, final Object container) {
+            depth--;
+            add(key, hashes[depth]);
+        }
 
-                    // Are they different?
-                    if (!thisValue.equals(thatValue)) {
-                        return false;
-                    }
+        @Override
+        public void value(final Object key, final Object value) {
+            Object raw = value;
+            if (value instanceof JSOG) {
+                raw = JsogTraversal.innermost((JSOG) value).decodedValue();
+
+                // Raw JSON may turn out to be a container
+                if (JsogTraversal.isContainer(raw)) {
+                    Hasher hasher = new Hasher();
+                    JsogTraversal.walk(wrap(raw), hasher);
+                    add(key, hasher.hash);
+                    return;
                 }
             }
+            add(key, raw == null ? 0 : raw.hashCode());
+        }
+
+        /**
+         * Adds a value's hash to its container's.
+         * @param key the key or index of the value, or null for the root.
+         * @param valueHash the value's hash.
+         */
+        private void add(final Object key, final int valueHash) {
+            if (depth == 0) {
+                hash = valueHash;
+            } else if (objects[depth - 1]) {
+                hashes[depth - 1] += key.hashCode() ^ valueHash;
+            } else {
+                hashes[depth - 1] = 31 * hashes[depth - 1] + valueHash;
+            }
         }
-        return true;
     }
 
     @Override
     public final JSOG clone() {
-        return new JSOG().merge(this);
+        return newNode().merge(this);
+    }
+
+    /**
+     * Replaces this JSOG with its compact serialized form.
+     *
+     * The whole tree is written as a single block, rather than as a graph of
+     * JSOGs, collections and boxed primitives.
+     * @return the serialized form.
+     * @throws ObjectStreamException never.
+     * @see JsogExternalForm
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new JsogExternalForm(this);
     }
 
 }
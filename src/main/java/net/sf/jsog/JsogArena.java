@@ -0,0 +1,300 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles JSOG nodes and their backing Lists and Maps between scopes.
+ *
+ * <p>While an arena is open on a thread, JSOGs created on that thread by
+ * {@link JsogParser}, the {@link JSOG#array()} and {@link JSOG#object()}
+ * factories, and {@link JSOG#clone()}, are drawn from the arena, as are the
+ * JSOGs, Lists and Maps those JSOGs create implicitly, in methods such as
+ * {@link JSOG#get(String)} and {@link JSOG#put(String, Object)}. When the
+ * arena is closed they're all released at once and reused by the next
+ * scope, which saves allocation and young-generation collection for
+ * request-scoped documents:</p>
+ *
+ * <pre>
+ * JsogArena arena = JsogArena.forCurrentThread();
+ * arena.open();
+ * try {
+ *     JSOG request = parser.parse(body);
+ *     ...
+ * } finally {
+ *     arena.close();
+ * }
+ * </pre>
+ *
+ * <p>JSOGs created in a scope must not be used once it's closed: they will
+ * be cleared, and later reused for unrelated documents. In debug mode,
+ * nothing is reused; released JSOGs are poisoned instead, and any use of
+ * them throws IllegalStateException.</p>
+ *
+ * <p>JSOGs created with a constructor, or before the scope opened, are
+ * never drawn from an arena, and neither is anything they create: modifying
+ * a long-lived JSOG inside a scope is safe. Wrappers around values already
+ * stored in a JSOG aren't drawn from an arena either.</p>
+ *
+ * <p>An arena may be open on only one thread at a time, and each thread may
+ * have only one open arena.</p>
+ * @author jrodriguez
+ */
+public final class JsogArena {
+
+    /**
+     * The number of arenas open on any thread. Lets JSOG creation skip the
+     * thread-local lookup when no arenas are in use.
+     */
+    private static final AtomicInteger OPEN = new AtomicInteger();
+
+    /**
+     * The arena open on each thread.
+     */
+    private static final ThreadLocal<JsogArena> CURRENT =
+            new ThreadLocal<JsogArena>();
+
+    /**
+     * The default arena for each thread.
+     */
+    private static final ThreadLocal<JsogArena> DEFAULT =
+            new ThreadLocal<JsogArena>() {
+                @Override
+                protected JsogArena initialValue() {
+                    return new JsogArena();
+                }
+            };
+
+    /**
+     * Lists and Maps larger than this aren't recycled, so one large
+     * document doesn't pin its storage.
+     */
+    private static final int MAX_RECYCLED_SIZE = 1024;
+
+    /**
+     * The nodes created in the current scope.
+     */
+    private final List<JSOG> nodes = new ArrayList<JSOG>();
+
+    /**
+     * The Lists created in the current scope.
+     */
+    private final List<List<Object>> lists = new ArrayList<List<Object>>();
+
+    /**
+     * The Maps created in the current scope.
+     */
+    private final List<Map<String, Object>> maps =
+            new ArrayList<Map<String, Object>>();
+
+    /**
+     * Nodes available for reuse.
+     */
+    private final List<JSOG> freeNodes = new ArrayList<JSOG>();
+
+    /**
+     * Lists available for reuse.
+     */
+    private final List<List<Object>> freeLists =
+            new ArrayList<List<Object>>();
+
+    /**
+     * Maps available for reuse.
+     */
+    private final List<Map<String, Object>> freeMaps =
+            new ArrayList<Map<String, Object>>();
+
+    /**
+     * The thread on which the arena is open, or null if it's closed.
+     */
+    private Thread owner;
+
+    /**
+     * Whether released nodes are poisoned rather than reused.
+     */
+    private boolean debug = false;
+
+    /**
+     * The maximum number of each kind of object kept for reuse.
+     */
+    private int maxPooled = 1 << 16;
+
+    /**
+     * Gets the default arena for the current thread.
+     * @return the thread's arena.
+     */
+    public static JsogArena forCurrentThread() {
+        return DEFAULT.get();
+    }
+
+    /**
+     * Gets the arena open on the current thread.
+     * @return the open arena, or null if there isn't one.
+     */
+    static JsogArena current() {
+        return OPEN.get() == 0 ? null : CURRENT.get();
+    }
+
+    /**
+     * Enables debug mode.
+     *
+     * In debug mode, nothing is reused, and JSOGs released by
+     * {@link #close()} throw IllegalStateException when used. Defaults to
+     * false.
+     * @param debug true to detect use after close.
+     */
+    public void setDebug(final boolean debug) {
+        this.debug = debug;
+    }
+
+    /**
+     * Sets the maximum number of nodes, Lists and Maps kept for reuse.
+     *
+     * Defaults to 65536 of each.
+     * @param maxPooled the maximum number of each kind of object.
+     * @throws IllegalArgumentException if maxPooled is negative.
+     */
+    public void setMaxPooled(final int maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException(
+                    "maxPooled must not be negative: " + maxPooled);
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Tests if this arena is open.
+     * @return true if the arena is open.
+     */
+    public boolean isOpen() {
+        return owner != null;
+    }
+
+    /**
+     * Opens this arena on the current thread.
+     * @throws IllegalStateException if this arena is already open, or the
+     * thread already has an open arena.
+     */
+    public void open() {
+        if (owner != null) {
+            throw new IllegalStateException("The arena is already open.");
+        }
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException(
+                    "The thread already has an open arena.");
+        }
+
+        owner = Thread.currentThread();
+        CURRENT.set(this);
+        OPEN.incrementAndGet();
+    }
+
+    /**
+     * Closes this arena, releasing every JSOG created while it was open.
+     * @throws IllegalStateException if the arena isn't open on the current
+     * thread.
+     */
+    public void close() {
+        if (owner != Thread.currentThread()) {
+            throw new IllegalStateException(
+                    "The arena is not open on this thread.");
+        }
+
+        CURRENT.remove();
+        OPEN.decrementAndGet();
+        owner = null;
+
+        for (JSOG node : nodes) {
+            node.release(debug);
+            if (!debug && freeNodes.size() < maxPooled) {
+                freeNodes.add(node);
+            }
+        }
+        nodes.clear();
+
+        for (List<Object> list : lists) {
+            if (!debug && list.size() <= MAX_RECYCLED_SIZE
+                    && freeLists.size() < maxPooled) {
+                list.clear();
+                freeLists.add(list);
+            }
+        }
+        lists.clear();
+
+        for (Map<String, Object> map : maps) {
+            if (!debug && map.size() <= MAX_RECYCLED_SIZE
+                    && freeMaps.size() < maxPooled) {
+                map.clear();
+                freeMaps.add(map);
+            }
+        }
+        maps.clear();
+    }
+
+    /**
+     * Gets a null JSOG.
+     * @return a new or recycled JSOG.
+     */
+    JSOG node() {
+        int free = freeNodes.size();
+        JSOG node = free == 0
+                ? JSOG.arenaNode(this)
+                : freeNodes.remove(free - 1);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Gets an empty List.
+     * @return a new or recycled List.
+     */
+    List<Object> list() {
+        int free = freeLists.size();
+        List<Object> list = free == 0
+                ? new ArrayList<Object>()
+                : freeLists.remove(free - 1);
+        lists.add(list);
+        return list;
+    }
+
+    /**
+     * Gets an empty Map.
+     * @return a new or recycled Map.
+     */
+    Map<String, Object> map() {
+        int free = freeMaps.size();
+        Map<String, Object> map = free == 0
+                ? new LinkedHashMap<String, Object>()
+                : freeMaps.remove(free - 1);
+        maps.add(map);
+        return map;
+    }
+}
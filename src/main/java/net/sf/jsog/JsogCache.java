@@ -0,0 +1,528 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache of JSOGs, bounded by their estimated size.
+ *
+ * <p>Each JSOG is weighed by {@link JsogSizeEstimator} when it's added, and
+ * entries are evicted once the total weight exceeds the maximum. Eviction is
+ * segmented LRU: new entries go into a probationary segment, and are
+ * promoted to a protected segment when they're read again. Entries are
+ * evicted from the probationary segment first, so a burst of one-off
+ * entries can't flush out the working set.</p>
+ *
+ * <p>The cache is split into independently locked partitions by key hash,
+ * each holding an equal share of the maximum weight.</p>
+ *
+ * <p>JSOGs are cached by reference, and are weighed only when they're
+ * added. Don't modify a cached JSOG; clone it instead.</p>
+ * @param <K> the key type.
+ * @author jrodriguez
+ */
+public class JsogCache<K> {
+
+    /**
+     * The default number of partitions.
+     */
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The share of each partition's weight reserved for protected entries,
+     * in percent.
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * A cached JSOG.
+     */
+    private static final class Node {
+
+        /**
+         * The JSOG.
+         */
+        private final JSOG value;
+
+        /**
+         * The estimated size of the JSOG.
+         */
+        private final long weight;
+
+        /**
+         * When the entry was added, per {@link JsogCache#currentTime()}.
+         */
+        private final long created;
+
+        /**
+         * Whether the entry is in the protected segment.
+         */
+        private boolean promoted;
+
+        /**
+         * Constructs a new Node.
+         * @param value the JSOG.
+         * @param weight the estimated size of the JSOG.
+         * @param created when the entry was added.
+         */
+        Node(final JSOG value, final long weight, final long created) {
+            this.value = value;
+            this.weight = weight;
+            this.created = created;
+        }
+    }
+
+    /**
+     * An independently locked partition of the cache.
+     * @param <K> the key type.
+     */
+    private static final class Partition<K> extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Entries which haven't been read since they were added, or which
+         * were demoted from the protected segment, least recent first.
+         */
+        private final LinkedHashMap<K, Node> probation =
+                new LinkedHashMap<K, Node>(16, 0.75f, true);
+
+        /**
+         * Entries which have been read since they were added, least recent
+         * first.
+         */
+        private final LinkedHashMap<K, Node> protect =
+                new LinkedHashMap<K, Node>(16, 0.75f, true);
+
+        /**
+         * The total weight of the probationary entries.
+         */
+        private long probationWeight;
+
+        /**
+         * The total weight of the protected entries.
+         */
+        private long protectedWeight;
+    }
+
+    /**
+     * The partitions.
+     */
+    private final Partition<K>[] partitions;
+
+    /**
+     * The maximum weight of each partition.
+     */
+    private final long partitionWeight;
+
+    /**
+     * The maximum weight of each partition's protected segment.
+     */
+    private final long protectedWeight;
+
+    /**
+     * How long entries live after they're added, in nanoseconds, or 0 if they
+     * don't expire.
+     */
+    private volatile long expireAfterWrite = 0;
+
+    /**
+     * The number of hits.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of misses.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The number of evictions, including expirations.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructs a new JsogCache.
+     * @param maximumWeight the maximum total weight of the cache, in bytes.
+     */
+    public JsogCache(final long maximumWeight) {
+        this(maximumWeight, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructs a new JsogCache.
+     * @param maximumWeight the maximum total weight of the cache, in bytes.
+     * @param concurrencyLevel the number of independently locked partitions.
+     * @throws IllegalArgumentException if maximumWeight is negative or
+     * concurrencyLevel isn't positive.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public JsogCache(final long maximumWeight, final int concurrencyLevel) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException(
+                    "maximumWeight must not be negative: " + maximumWeight);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException(
+                    "concurrencyLevel must be positive: " + concurrencyLevel);
+        }
+
+        // Round the partition count up to a power of two
+        int count = 1;
+        while (count < concurrencyLevel) {
+            count <<= 1;
+        }
+
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition<K>();
+        }
+        partitionWeight = maximumWeight / count;
+        protectedWeight = partitionWeight * PROTECTED_PERCENT / 100;
+    }
+
+    /**
+     * Sets how long entries live after they're added.
+     *
+     * Expired entries are never returned. Defaults to 0, meaning entries
+     * don't expire.
+     * @param duration the lifetime, or 0 for no expiry.
+     * @param unit the unit of the duration.
+     */
+    public void setExpireAfterWrite(final long duration, final TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException(
+                    "duration must not be negative: " + duration);
+        }
+        this.expireAfterWrite = unit.toNanos(duration);
+    }
+
+    /**
+     * Gets the current time.
+     * @return the current time, in nanoseconds.
+     */
+    long currentTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Gets the partition for a key.
+     * @param key the key.
+     * @return the partition.
+     * @throws IllegalArgumentException if the key is null.
+     */
+    private Partition<K> partition(final Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is required.");
+        }
+
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return partitions[h & (partitions.length - 1)];
+    }
+
+    /**
+     * Tests if a node has expired.
+     * @param node the node.
+     * @param now the current time.
+     * @return true if the node has expired.
+     */
+    private boolean isExpired(final Node node, final long now) {
+        long lifetime = expireAfterWrite;
+        return lifetime > 0 && now - node.created >= lifetime;
+    }
+
+    /**
+     * Gets a cached JSOG.
+     * @param key the key.
+     * @return the JSOG, or null if it isn't cached.
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public JSOG get(final K key) {
+        Partition<K> p = partition(key);
+        p.lock();
+        try {
+            Node node = p.protect.get(key);
+            if (node == null) {
+                node = p.probation.get(key);
+            }
+
+            if (node == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            if (isExpired(node, currentTime())) {
+                removeNode(p, key, node);
+                evictions.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+
+            if (!node.promoted) {
+                promote(p, key, node);
+            }
+            hits.incrementAndGet();
+            return node.value;
+        } finally {
+            p.unlock();
+        }
+    }
+
+    /**
+     * Adds a JSOG to the cache, replacing any JSOG cached under the key.
+     *
+     * A JSOG heavier than a partition's share of the maximum weight isn't
+     * cached.
+     * @param key the key.
+     * @param value the JSOG.
+     * @throws IllegalArgumentException if the key or value is null.
+     */
+    public void put(final K key, final JSOG value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key and value are required.");
+        }
+
+        long weight = JsogSizeEstimator.estimate(value);
+        Partition<K> p = partition(key);
+        p.lock();
+        try {
+            remove(p, key);
+            if (weight > partitionWeight) {
+                evictions.incrementAndGet();
+                return;
+            }
+
+            p.probation.put(key, new Node(value, weight, currentTime()));
+            p.probationWeight += weight;
+            evict(p);
+        } finally {
+            p.unlock();
+        }
+    }
+
+    /**
+     * Removes a JSOG from the cache.
+     * @param key the key.
+     * @return the JSOG, or null if it wasn't cached.
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public JSOG remove(final K key) {
+        Partition<K> p = partition(key);
+        p.lock();
+        try {
+            Node node = remove(p, key);
+            return node == null ? null : node.value;
+        } finally {
+            p.unlock();
+        }
+    }
+
+    /**
+     * Removes every JSOG from the cache.
+     */
+    public void clear() {
+        for (Partition<K> p : partitions) {
+            p.lock();
+            try {
+                p.probation.clear();
+                p.protect.clear();
+                p.probationWeight = 0;
+                p.protectedWeight = 0;
+            } finally {
+                p.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes a key from a partition.
+     * @param p the partition, which must be locked.
+     * @param key the key.
+     * @return the removed node, or null if there wasn't one.
+     */
+    private Node remove(final Partition<K> p, final Object key) {
+        Node node = p.probation.remove(key);
+        if (node != null) {
+            p.probationWeight -= node.weight;
+            return node;
+        }
+
+        node = p.protect.remove(key);
+        if (node != null) {
+            p.protectedWeight -= node.weight;
+        }
+        return node;
+    }
+
+    /**
+     * Removes a node from its segment.
+     * @param p the partition, which must be locked.
+     * @param key the key.
+     * @param node the node.
+     */
+    private void removeNode(final Partition<K> p, final K key,
+                            final Node node) {
+        if (node.promoted) {
+            p.protect.remove(key);
+            p.protectedWeight -= node.weight;
+        } else {
+            p.probation.remove(key);
+            p.probationWeight -= node.weight;
+        }
+    }
+
+    /**
+     * Moves a probationary node to the protected segment, demoting the least
+     * recently used protected nodes if it's full.
+     * @param p the partition, which must be locked.
+     * @param key the key.
+     * @param node the node.
+     */
+    private void promote(final Partition<K> p, final K key, final Node node) {
+        p.probation.remove(key);
+        p.probationWeight -= node.weight;
+        node.promoted = true;
+        p.protect.put(key, node);
+        p.protectedWeight += node.weight;
+
+        Iterator<Entry<K, Node>> it =
+                p.protect.entrySet().iterator();
+        while (p.protectedWeight > protectedWeight && it.hasNext()) {
+            Entry<K, Node> eldest = it.next();
+            if (eldest.getValue() == node) {
+                break;
+            }
+            it.remove();
+            Node demoted = eldest.getValue();
+            demoted.promoted = false;
+            p.protectedWeight -= demoted.weight;
+            p.probation.put(eldest.getKey(), demoted);
+            p.probationWeight += demoted.weight;
+        }
+    }
+
+    /**
+     * Evicts least recently used nodes until a partition is within its
+     * weight, probationary nodes first.
+     * @param p the partition, which must be locked.
+     */
+    private void evict(final Partition<K> p) {
+        Iterator<Node> it = p.probation.values().iterator();
+        while (p.probationWeight + p.protectedWeight > partitionWeight
+                && it.hasNext()) {
+            Node node = it.next();
+            it.remove();
+            p.probationWeight -= node.weight;
+            evictions.incrementAndGet();
+        }
+
+        it = p.protect.values().iterator();
+        while (p.probationWeight + p.protectedWeight > partitionWeight
+                && it.hasNext()) {
+            Node node = it.next();
+            it.remove();
+            p.protectedWeight -= node.weight;
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of cached JSOGs.
+     * @return the number of entries, including any which have expired but
+     * haven't been removed yet.
+     */
+    public int size() {
+        int size = 0;
+        for (Partition<K> p : partitions) {
+            p.lock();
+            try {
+                size += p.probation.size() + p.protect.size();
+            } finally {
+                p.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total estimated size of the cached JSOGs.
+     * @return the total weight, in bytes.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Partition<K> p : partitions) {
+            p.lock();
+            try {
+                weight += p.probationWeight + p.protectedWeight;
+            } finally {
+                p.unlock();
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Gets the number of lookups which found a JSOG.
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups which didn't find a JSOG.
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of JSOGs evicted or expired.
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the fraction of lookups which found a JSOG.
+     * @return the hit rate, or 1 if there haven't been any lookups.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+}
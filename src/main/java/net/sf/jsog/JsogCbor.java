@@ -0,0 +1,856 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Encodes and decodes JSOGs as CBOR (RFC 7049).
+ *
+ * <p>CBOR is a binary encoding of the JSON data model. It's considerably
+ * cheaper to produce and consume than JSON text, since numbers are written
+ * in binary and strings and containers are length-prefixed.</p>
+ *
+ * <p>Values are encoded as follows:</p>
+ * <ul>
+ *   <li>Byte, Short, Integer, Long and Character as integers</li>
+ *   <li>BigInteger as an integer, or a bignum if it does not fit in 64
+ *       bits</li>
+ *   <li>BigDecimal as a decimal fraction</li>
+ *   <li>Float and Double as single and double precision floats</li>
+ *   <li>Boolean, String and null as their CBOR equivalents</li>
+ *   <li>Arrays and objects as definite-length arrays and maps</li>
+ * </ul>
+ *
+ * <p>The decoder accepts any well-formed CBOR. Integers are decoded to the
+ * smallest of Integer, Long and BigInteger, as when parsing JSON, and
+ * half-precision floats to Float. Byte strings are decoded to Base64 text,
+ * undefined to null, and unknown tags are ignored. Items nested more than
+ * 1000 deep, trailing data after the item, lengths of 2^63 or more,
+ * and decimal fractions whose exponent doesn't fit a BigDecimal scale, are
+ * rejected. The encoder refuses to write items nested deeper than the
+ * decoder accepts.</p>
+ * @author jrodriguez
+ */
+public final class JsogCbor {
+
+    /**
+     * The CBOR media type.
+     */
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    /**
+     * The deepest nesting of arrays, maps and tags the decoders accept, and
+     * the encoders write.
+     *
+     * Decoding recurses once per level, so this keeps hostile input from
+     * overflowing the stack.
+     */
+    static final int MAX_DEPTH = 1000;
+
+    /**
+     * Major type: unsigned integer.
+     */
+    private static final int UNSIGNED = 0;
+
+    /**
+     * Major type: negative integer.
+     */
+    private static final int NEGATIVE = 1;
+
+    /**
+     * Major type: byte string.
+     */
+    private static final int BYTES = 2;
+
+    /**
+     * Major type: text string.
+     */
+    private static final int TEXT = 3;
+
+    /**
+     * Major type: array.
+     */
+    private static final int ARRAY = 4;
+
+    /**
+     * Major type: map.
+     */
+    private static final int MAP = 5;
+
+    /**
+     * Major type: tag.
+     */
+    private static final int TAG = 6;
+
+    /**
+     * Major type: simple values and floats.
+     */
+    private static final int SIMPLE = 7;
+
+    /**
+     * Additional information: indefinite length.
+     */
+    private static final int INDEFINITE = 31;
+
+    /**
+     * The break stop code.
+     */
+    private static final int BREAK = 0xFF;
+
+    /**
+     * Tag: positive bignum.
+     */
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+
+    /**
+     * Tag: negative bignum.
+     */
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+
+    /**
+     * Tag: decimal fraction.
+     */
+    private static final int TAG_DECIMAL_FRACTION = 4;
+
+    /**
+     * The Base64 alphabet, for decoding byte strings.
+     */
+    private static final char[] BASE64 =
+            ("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            + "0123456789+/").toCharArray();
+
+    /**
+     * The smallest unsigned 64-bit value which does not fit in a long.
+     */
+    private static final BigInteger UNSIGNED_LONG_OFFSET =
+            BigInteger.ONE.shiftLeft(64);
+
+    /**
+     * Encodes JSOG values into a growable buffer.
+     */
+    private static final class Encoder extends ByteBuilder {
+
+        /**
+         * The number of items enclosing the one being written, counted the
+         * way the decoder counts them.
+         */
+        private int depth;
+
+        /**
+         * Checks that an item will be accepted by the decoder.
+         * @param items the number of nested items the value is written as.
+         * @throws IllegalArgumentException if the item would be nested
+         * deeper than the decoder accepts.
+         */
+        private void checkDepth(final int items) {
+            if (depth + items > MAX_DEPTH) {
+                throw new IllegalArgumentException(
+                        "Could not encode JSOG nested deeper than "
+                        + MAX_DEPTH);
+            }
+        }
+
+        /**
+         * Writes an initial byte and its argument, in the shortest form.
+         * @param major the major type.
+         * @param argument the argument, treated as unsigned.
+         */
+        private void writeHeader(final int major, final long argument) {
+            int type = major << 5;
+            if (argument >= 0 && argument < 24) {
+                write(type | (int) argument);
+            } else if (argument >= 0 && argument < 0x100) {
+                write(type | 24);
+                writeBigEndian(argument, 1);
+            } else if (argument >= 0 && argument < 0x10000) {
+                write(type | 25);
+                writeBigEndian(argument, 2);
+            } else if (argument >= 0 && argument < 0x100000000L) {
+                write(type | 26);
+                writeBigEndian(argument, 4);
+            } else {
+                write(type | 27);
+                writeBigEndian(argument, 8);
+            }
+        }
+
+        /**
+         * Writes an integer.
+         * @param value the integer.
+         */
+        private void writeLong(final long value) {
+            if (value >= 0) {
+                writeHeader(UNSIGNED, value);
+            } else {
+                writeHeader(NEGATIVE, ~value);
+            }
+        }
+
+        /**
+         * Writes an integer of any size.
+         * @param value the integer.
+         */
+        private void writeBigInteger(final BigInteger value) {
+            if (value.bitLength() < 64) {
+                writeLong(value.longValue());
+                return;
+            }
+
+            // Negative values are encoded as -1 - n
+            boolean negative = value.signum() < 0;
+            BigInteger magnitude = negative
+                    ? value.negate().subtract(BigInteger.ONE) : value;
+
+            // The full unsigned 64 bit range fits in a plain integer
+            if (magnitude.bitLength() <= 64) {
+                writeHeader(negative ? NEGATIVE : UNSIGNED,
+                            magnitude.longValue());
+                return;
+            }
+
+            writeHeader(TAG, negative
+                    ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+
+            // Strip the sign byte
+            byte[] bytes = magnitude.toByteArray();
+            int offset = bytes[0] == 0 ? 1 : 0;
+            writeHeader(BYTES, bytes.length - offset);
+            write(bytes, offset, bytes.length - offset);
+        }
+
+        /**
+         * Writes a text string.
+         * @param string the string.
+         */
+        private void writeString(final String string) {
+            // Fast path for ASCII
+            if (isAscii(string)) {
+                writeHeader(TEXT, string.length());
+                writeAscii(string);
+                return;
+            }
+
+            byte[] bytes = utf8(string);
+            writeHeader(TEXT, bytes.length);
+            write(bytes);
+        }
+
+        /**
+         * Writes a JSOG value.
+         * @param value the raw value of a JSOG.
+         * @throws IllegalArgumentException if the value can't be encoded,
+         * or is nested too deep.
+         */
+        @SuppressWarnings("unchecked")
+        private void writeValue(final Object value) {
+            if (value instanceof JSOG) {
+                writeValue(((JSOG) value).decodedValue());
+                return;
+            }
+
+            // Decimal fractions are a tag holding an array of two integers
+            checkDepth(value instanceof BigDecimal ? 3 : 1);
+            if (value == null) {
+                write((SIMPLE << 5) | 22);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Map<?, ?>) {
+                Map<String, Object> map = (Map<String, Object>) value;
+                writeHeader(MAP, map.size());
+                depth++;
+                for (Entry<String, Object> entry : map.entrySet()) {
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+                depth--;
+            } else if (value instanceof List<?>) {
+                List<Object> list = (List<Object>) value;
+                writeHeader(ARRAY, list.size());
+                depth++;
+                for (Object item : list) {
+                    writeValue(item);
+                }
+                depth--;
+            } else if (value instanceof Boolean) {
+                write((SIMPLE << 5) | ((Boolean) value ? 21 : 20));
+            } else if (value instanceof Integer
+                    || value instanceof Long
+                    || value instanceof Short
+                    || value instanceof Byte) {
+                writeLong(((Number) value).longValue());
+            } else if (value instanceof Double) {
+                write((SIMPLE << 5) | 27);
+                writeBigEndian(
+                        Double.doubleToLongBits((Double) value), 8);
+            } else if (value instanceof Float) {
+                write((SIMPLE << 5) | 26);
+                writeBigEndian(Float.floatToIntBits((Float) value), 4);
+            } else if (value instanceof BigInteger) {
+                writeBigInteger((BigInteger) value);
+            } else if (value instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal) value;
+                writeHeader(TAG, TAG_DECIMAL_FRACTION);
+                writeHeader(ARRAY, 2);
+                writeLong(-(long) decimal.scale());
+                writeBigInteger(decimal.unscaledValue());
+            } else if (value instanceof Character) {
+                writeLong((Character) value);
+            } else {
+                throw new IllegalArgumentException(
+                        "Could not encode object of type "
+                        + value.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Decodes CBOR items from a byte array.
+     */
+    private static final class Decoder {
+
+        /**
+         * The encoded bytes.
+         */
+        private final byte[] data;
+
+        /**
+         * The read position.
+         */
+        private int position;
+
+        /**
+         * The end of the encoded bytes.
+         */
+        private final int end;
+
+        /**
+         * The number of items being read, outermost first.
+         */
+        private int depth;
+
+        /**
+         * Constructs a new Decoder.
+         * @param data the encoded bytes.
+         * @param offset the position of the first byte.
+         * @param length the number of bytes.
+         */
+        Decoder(final byte[] data, final int offset, final int length) {
+            this.data = data;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        /**
+         * Reads an unsigned byte.
+         * @return the byte.
+         * @throws EOFException if the input is exhausted.
+         */
+        private int read() throws EOFException {
+            if (position >= end) {
+                throw new EOFException(
+                        "Unexpected end-of-input at offset " + position);
+            }
+            return data[position++] & 0xFF;
+        }
+
+        /**
+         * Reads a big-endian value.
+         * @param bytes the number of bytes.
+         * @return the value.
+         * @throws EOFException if the input is exhausted.
+         */
+        private long readBigEndian(final int bytes) throws EOFException {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+
+        /**
+         * Reads the argument of an initial byte.
+         * @param info the additional information of the initial byte.
+         * @return the argument, as an unsigned value.
+         * @throws IOException if the argument is malformed.
+         */
+        private long readArgument(final int info) throws IOException {
+            if (info < 24) {
+                return info;
+            } else if (info == 24) {
+                return readBigEndian(1);
+            } else if (info == 25) {
+                return readBigEndian(2);
+            } else if (info == 26) {
+                return readBigEndian(4);
+            } else if (info == 27) {
+                return readBigEndian(8);
+            }
+            throw new IOException("Malformed argument at offset "
+                    + (position - 1));
+        }
+
+        /**
+         * Reads the length of a definite-length item.
+         * @param info the additional information of the initial byte.
+         * @return the length.
+         * @throws IOException if the length is malformed or too large.
+         */
+        private int readLength(final int info) throws IOException {
+            long length = readArgument(info);
+            if (length < 0 || length > end - position) {
+                throw new IOException("Invalid length " + length
+                        + " at offset " + position);
+            }
+            return (int) length;
+        }
+
+        /**
+         * Reads the number of items in a definite-length array or map.
+         *
+         * A count too large for the data is left to fail when the data runs
+         * out, but one which doesn't fit in a long can't be counted down.
+         * @param info the additional information of the initial byte.
+         * @return the count.
+         * @throws IOException if the count is malformed or too large.
+         */
+        private long readCount(final int info) throws IOException {
+            long count = readArgument(info);
+            if (count < 0) {
+                throw new IOException("Invalid length " + count
+                        + " at offset " + position);
+            }
+            return count;
+        }
+
+        /**
+         * Reads the contents of a byte or text string.
+         * @param major the major type of the string.
+         * @param info the additional information of the initial byte.
+         * @return the bytes of the string.
+         * @throws IOException if the string is malformed.
+         */
+        private byte[] readStringBytes(final int major, final int info)
+                throws IOException {
+            if (info != INDEFINITE) {
+                int length = readLength(info);
+                byte[] bytes = new byte[length];
+                System.arraycopy(data, position, bytes, 0, length);
+                position += length;
+                return bytes;
+            }
+
+            // Concatenate the chunks
+            ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+            for (int ib = read(); ib != BREAK; ib = read()) {
+                if (ib >>> 5 != major || (ib & 0x1F) == INDEFINITE) {
+                    throw new IOException("Invalid string chunk at offset "
+                            + (position - 1));
+                }
+                int length = readLength(ib & 0x1F);
+                chunks.write(data, position, length);
+                position += length;
+            }
+            return chunks.toByteArray();
+        }
+
+        /**
+         * Reads an unsigned integer argument as a number.
+         * @param argument the argument.
+         * @param negative true if this is a negative integer.
+         * @return the Integer, Long, or BigInteger value.
+         */
+        private static Object toInteger(final long argument,
+                                        final boolean negative) {
+            if (argument < 0) {
+
+                // Doesn't fit in a long
+                BigInteger big = BigInteger.valueOf(argument)
+                        .add(UNSIGNED_LONG_OFFSET);
+                return negative
+                     ? big.add(BigInteger.ONE).negate()
+                     : big;
+            }
+
+            long value = negative ? ~argument : argument;
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        /**
+         * Reads the only data item in the input.
+         * @return the JSOG.
+         * @throws IOException if the item is malformed, or followed by more
+         * data.
+         */
+        JSOG readDocument() throws IOException {
+            JSOG jsog = readItem();
+            if (position != end) {
+                throw new IOException("Unexpected data after the item at"
+                        + " offset " + position);
+            }
+            return jsog;
+        }
+
+        /**
+         * Reads a data item as a JSOG.
+         * @return the JSOG.
+         * @throws IOException if the item is malformed.
+         */
+        JSOG readItem() throws IOException {
+            Object value = readValue();
+            return value instanceof JSOG ? (JSOG) value : new JSOG(value);
+        }
+
+        /**
+         * Reads a data item.
+         * @return the value of the item, either a primitive or a JSOG.
+         * @throws IOException if the item is malformed.
+         */
+        private Object readValue() throws IOException {
+            if (depth == MAX_DEPTH) {
+                throw new IOException("Nesting deeper than " + MAX_DEPTH
+                        + " at offset " + position);
+            }
+
+            depth++;
+            try {
+                return readNested();
+            } finally {
+                depth--;
+            }
+        }
+
+        /**
+         * Reads a data item, at the current depth.
+         * @return the value of the item, either a primitive or a JSOG.
+         * @throws IOException if the item is malformed.
+         */
+        private Object readNested() throws IOException {
+            int ib = read();
+            int major = ib >>> 5;
+            int info = ib & 0x1F;
+
+            switch (major) {
+                case UNSIGNED:
+                    return toInteger(readArgument(info), false);
+
+                case NEGATIVE:
+                    return toInteger(readArgument(info), true);
+
+                case BYTES:
+                    return base64(readStringBytes(BYTES, info));
+
+                case TEXT:
+                    return new String(readStringBytes(TEXT, info), "UTF-8");
+
+                case ARRAY:
+                    JSOG array = JSOG.array();
+                    if (info == INDEFINITE) {
+                        while (peek() != BREAK) {
+                            array.add(readItem());
+                        }
+                        position++;
+                    } else {
+                        for (long i = readCount(info); i > 0; i--) {
+                            array.add(readItem());
+                        }
+                    }
+                    return array;
+
+                case MAP:
+                    JSOG object = JSOG.object();
+                    if (info == INDEFINITE) {
+                        while (peek() != BREAK) {
+                            object.put(readKey(), readItem());
+                        }
+                        position++;
+                    } else {
+                        for (long i = readCount(info); i > 0; i--) {
+                            object.put(readKey(), readItem());
+                        }
+                    }
+                    return object;
+
+                case TAG:
+                    return readTagged(readArgument(info));
+
+                default:
+                    return readSimple(info);
+            }
+        }
+
+        /**
+         * Peeks at the next byte.
+         * @return the next byte.
+         * @throws EOFException if the input is exhausted.
+         */
+        private int peek() throws EOFException {
+            int b = read();
+            position--;
+            return b;
+        }
+
+        /**
+         * Reads a map key.
+         * @return the key as a string.
+         * @throws IOException if the key is malformed or not a scalar.
+         */
+        private String readKey() throws IOException {
+            Object key = readValue();
+            if (key instanceof JSOG) {
+                throw new IOException("Map keys must be scalars.");
+            }
+            return String.valueOf(key);
+        }
+
+        /**
+         * Reads a tagged item.
+         * @param tag the tag.
+         * @return the value.
+         * @throws IOException if the item is malformed.
+         */
+        private Object readTagged(final long tag) throws IOException {
+            if ((tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM)
+                    && peek() >>> 5 == BYTES) {
+                int ib = read();
+                BigInteger magnitude = new BigInteger(1,
+                        readStringBytes(BYTES, ib & 0x1F));
+                return tag == TAG_POSITIVE_BIGNUM
+                     ? magnitude
+                     : magnitude.add(BigInteger.ONE).negate();
+            }
+
+            int start = position;
+            Object value = readValue();
+
+            if (tag == TAG_DECIMAL_FRACTION) {
+                return toDecimal(value, start);
+            }
+
+            // Unknown tags are ignored
+            return value;
+        }
+
+        /**
+         * Converts the [exponent, mantissa] pair of a decimal fraction.
+         * @param value the pair.
+         * @param offset the offset of the pair, for error messages.
+         * @return the decimal.
+         * @throws IOException if the pair isn't two integers, or the exponent
+         * is out of range for a BigDecimal scale.
+         */
+        private static BigDecimal toDecimal(final Object value,
+                                            final int offset)
+                throws IOException {
+            if (value instanceof JSOG) {
+                JSOG pair = (JSOG) value;
+                if (pair.isArray() && pair.size() == 2) {
+                    Object exponent = pair.get(0).rawValue();
+                    Object mantissa = pair.get(1).rawValue();
+                    if ((exponent instanceof Integer
+                            || exponent instanceof Long)
+                            && (mantissa instanceof Integer
+                            || mantissa instanceof Long
+                            || mantissa instanceof BigInteger)) {
+
+                        // The scale is the negated exponent, as an int
+                        long scale = -((Number) exponent).longValue();
+                        if (scale >= Integer.MIN_VALUE
+                                && scale <= Integer.MAX_VALUE) {
+                            return new BigDecimal(
+                                    pair.get(1).getBigIntegerValue(),
+                                    (int) scale);
+                        }
+                    }
+                }
+            }
+            throw new IOException("Invalid decimal fraction at offset "
+                    + offset);
+        }
+
+        /**
+         * Reads a simple value or float.
+         * @param info the additional information of the initial byte.
+         * @return the value.
+         * @throws IOException if the value is malformed.
+         */
+        private Object readSimple(final int info) throws IOException {
+            switch (info) {
+                case 20:
+                    return Boolean.FALSE;
+                case 21:
+                    return Boolean.TRUE;
+                case 22:
+                case 23:
+                    return null;
+                case 25:
+                    return halfToFloat((int) readBigEndian(2));
+                case 26:
+                    return Float.intBitsToFloat((int) readBigEndian(4));
+                case 27:
+                    return Double.longBitsToDouble(readBigEndian(8));
+                default:
+                    throw new IOException("Unsupported simple value "
+                            + info + " at offset " + (position - 1));
+            }
+        }
+    }
+
+    /**
+     * Static use only.
+     */
+    private JsogCbor() {
+    }
+
+    /**
+     * Encodes a JSOG as CBOR.
+     * @param jsog the JSOG to encode.
+     * @return the encoded bytes.
+     * @throws IllegalArgumentException if a value can't be encoded, or is
+     * nested deeper than the decoder accepts.
+     */
+    public static byte[] encode(final JSOG jsog) {
+        Encoder encoder = new Encoder();
+        encoder.writeValue(jsog);
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Encodes a JSOG as CBOR, writing it to a stream.
+     * @param jsog the JSOG to encode.
+     * @param out the stream to write to.
+     * @throws IOException if the stream can't be written.
+     * @throws IllegalArgumentException if a value can't be encoded, or is
+     * nested deeper than the decoder accepts.
+     */
+    public static void encode(final JSOG jsog, final OutputStream out)
+            throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeValue(jsog);
+        encoder.writeTo(out);
+    }
+
+    /**
+     * Decodes a CBOR data item as a JSOG.
+     * @param data the encoded bytes.
+     * @return the decoded JSOG, or a null JSOG if there is no data.
+     * @throws IOException if the data is not a single well-formed CBOR
+     * item.
+     */
+    public static JSOG decode(final byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * Decodes a CBOR data item as a JSOG.
+     * @param data the encoded bytes.
+     * @param offset the position of the first byte.
+     * @param length the number of bytes.
+     * @return the decoded JSOG, or a null JSOG if there is no data.
+     * @throws IOException if the data is not a single well-formed CBOR
+     * item.
+     */
+    public static JSOG decode(final byte[] data,
+                              final int offset,
+                              final int length) throws IOException {
+        if (length == 0) {
+            return new JSOG();
+        }
+
+        return new Decoder(data, offset, length).readDocument();
+    }
+
+    /**
+     * Decodes a CBOR data item from a stream.
+     *
+     * The stream is read to its end.
+     * @param in the stream to read from.
+     * @return the decoded JSOG, or a null JSOG if there is no data.
+     * @throws IOException if the stream can't be read, or the data is not
+     * a single well-formed CBOR item.
+     */
+    public static JSOG decode(final InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return decode(bytes.toByteArray());
+    }
+
+    /**
+     * Converts an IEEE 754 half-precision value to a float.
+     * @param bits the half-precision bits.
+     * @return the float value.
+     */
+    private static float halfToFloat(final int bits) {
+        int exponent = (bits >> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * (float) Math.pow(2, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+        }
+        return (bits & 0x8000) == 0 ? value : -value;
+    }
+
+    /**
+     * Encodes bytes as Base64 text.
+     * @param bytes the bytes.
+     * @return the Base64 text.
+     */
+    private static String base64(final byte[] bytes) {
+        StringBuilder sb = new StringBuilder((bytes.length + 2) / 3 * 4);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int b0 = bytes[i] & 0xFF;
+            int b1 = i + 1 < bytes.length ? bytes[i + 1] & 0xFF : 0;
+            int b2 = i + 2 < bytes.length ? bytes[i + 2] & 0xFF : 0;
+            sb.append(BASE64[b0 >> 2]);
+            sb.append(BASE64[((b0 << 4) | (b1 >> 4)) & 0x3F]);
+            sb.append(i + 1 < bytes.length
+                      ? BASE64[((b1 << 2) | (b2 >> 6)) & 0x3F] : '=');
+            sb.append(i + 2 < bytes.length ? BASE64[b2 & 0x3F] : '=');
+        }
+        return sb.toString();
+    }
+
+}
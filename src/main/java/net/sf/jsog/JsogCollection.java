@@ -0,0 +1,565 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory collection of JSOG documents, identified by a path, with
+ * secondary indexes on other paths.
+ *
+ * <p>Queries are {@link JsogPredicate}s. Equality, IN-list and range
+ * conditions on indexed paths (or equality on the id path) are answered
+ * from the indexes. AND conditions intersect whatever their indexed parts
+ * select, and test the rest on each remaining document. OR conditions use
+ * the indexes only if every part can. Anything else scans the whole
+ * collection.</p>
+ *
+ * <p>Any number of threads may read the collection while one writes to it.
+ * Documents are stored as frozen copies: {@link #insert(JSOG)} and
+ * {@link #update(JSOG)} copy the whole tree, parsing raw JSON, decoding lazy
+ * scalars and sharing equal values as {@link JSOG#dedupe()} does, and
+ * freeze every node. Readers get the frozen copies, so nothing they do can
+ * modify them or put the indexes out of date; {@link JSOG#get(String)} on a
+ * missing key returns a detached JSOG rather than adding one. The inserted
+ * JSOG is left as it was, and changing it later doesn't affect the
+ * collection. Use {@link JSOG#clone()} to get a modifiable copy, and
+ * {@link #update(JSOG)} to replace a document.</p>
+ * @author jrodriguez
+ */
+public final class JsogCollection {
+
+    /**
+     * A secondary index.
+     */
+    private static final class Index {
+
+        /**
+         * The indexed path.
+         */
+        private final JsogPath path;
+
+        /**
+         * The ids of the documents, by key.
+         */
+        private final Map<Object, Set<Object>> hash =
+                new HashMap<Object, Set<Object>>();
+
+        /**
+         * The same id sets, for non-null keys, in key order.
+         */
+        private final TreeMap<Object, Set<Object>> sorted =
+                new TreeMap<Object, Set<Object>>(JsogIndex.ORDER);
+
+        /**
+         * The key of each document, by id.
+         */
+        private final Map<Object, Object> keys = new HashMap<Object, Object>();
+
+        /**
+         * Constructs a new Index.
+         * @param path the indexed path.
+         */
+        Index(final JsogPath path) {
+            this.path = path;
+        }
+
+        /**
+         * Adds a document.
+         * @param id the document's id.
+         * @param key the document's key.
+         */
+        void add(final Object id, final Object key) {
+            Set<Object> ids = hash.get(key);
+            if (ids == null) {
+                ids = new HashSet<Object>(2);
+                hash.put(key, ids);
+                if (key != null) {
+                    sorted.put(key, ids);
+                }
+            }
+            ids.add(id);
+            keys.put(id, key);
+        }
+
+        /**
+         * Removes a document.
+         * @param id the document's id.
+         */
+        void remove(final Object id) {
+            Object key = keys.remove(id);
+            Set<Object> ids = hash.get(key);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                hash.remove(key);
+                if (key != null) {
+                    sorted.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * The ids selected by a condition.
+     */
+    private static final class Plan {
+
+        /**
+         * The ids.
+         */
+        private final Set<Object> ids;
+
+        /**
+         * Whether every id matches, so the documents needn't be tested.
+         */
+        private final boolean exact;
+
+        /**
+         * Constructs a new Plan.
+         * @param ids the ids.
+         * @param exact whether every id matches.
+         */
+        Plan(final Set<Object> ids, final boolean exact) {
+            this.ids = ids;
+            this.exact = exact;
+        }
+    }
+
+    /**
+     * Orders plans by the number of ids they select.
+     */
+    private static final Comparator<Plan> SMALLEST = new Comparator<Plan>() {
+        @Override
+        public int compare(final Plan a, final Plan b) {
+            return a.ids.size() - b.ids.size();
+        }
+    };
+
+    /**
+     * The path of each document's id.
+     */
+    private final JsogPath idPath;
+
+    /**
+     * The documents, by id.
+     */
+    private final Map<Object, JSOG> documents =
+            new LinkedHashMap<Object, JSOG>();
+
+    /**
+     * The secondary indexes, by path.
+     */
+    private final Map<String, Index> indexes =
+            new LinkedHashMap<String, Index>();
+
+    /**
+     * Guards the documents and indexes.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs a new JsogCollection.
+     * @param idPath the path of each document's id.
+     * @throws IllegalArgumentException if the path is not definite.
+     */
+    public JsogCollection(final JsogPath idPath) {
+        if (!idPath.isDefinite()) {
+            throw new IllegalArgumentException(
+                    "The path " + idPath + " may match several values.");
+        }
+        this.idPath = idPath;
+    }
+
+    /**
+     * Constructs a new JsogCollection.
+     * @param idPath the path expression of each document's id.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     */
+    public JsogCollection(final String idPath) {
+        this(JsogPath.compile(idPath));
+    }
+
+    /**
+     * Declares a secondary index, and indexes the existing documents.
+     *
+     * Declaring an index that already exists has no effect.
+     * @param path the path expression to index.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or a document's value at the path is an object or
+     *         array.
+     */
+    public void createIndex(final String path) {
+        JsogPath compiled = JsogPath.compile(path);
+        if (!compiled.isDefinite()) {
+            throw new IllegalArgumentException(
+                    "The path " + compiled + " may match several values.");
+        }
+
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            String name = compiled.toString();
+            if (indexes.containsKey(name)) {
+                return;
+            }
+
+            Index index = new Index(compiled);
+            for (Map.Entry<Object, JSOG> entry : documents.entrySet()) {
+                index.add(entry.getKey(),
+                          JsogIndex.keyOf(compiled, entry.getValue()));
+            }
+            indexes.put(name, index);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Drops a secondary index.
+     * @param path the indexed path expression.
+     * @return true if the index existed.
+     * @throws IllegalArgumentException if the path is invalid.
+     */
+    public boolean dropIndex(final String path) {
+        String name = JsogPath.compile(path).toString();
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            return indexes.remove(name) != null;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Inserts a frozen copy of a document.
+     * @param document the document.
+     * @throws IllegalArgumentException if the document has no id, or an
+     *         indexed value is an object or array.
+     * @throws IllegalStateException if a document with the same id exists.
+     */
+    public void insert(final JSOG document) {
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            JSOG frozen = freeze(document);
+            Object id = idOf(frozen);
+            if (documents.containsKey(id)) {
+                throw new IllegalStateException(
+                        "A document with id " + id + " already exists.");
+            }
+            Object[] keys = keysOf(frozen);
+            documents.put(id, frozen);
+            index(id, keys);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Replaces a document with a frozen copy of one with the same id.
+     * @param document the new document.
+     * @return the previous, frozen document.
+     * @throws IllegalArgumentException if the document has no id, or an
+     *         indexed value is an object or array.
+     * @throws IllegalStateException if no document has the same id.
+     */
+    public JSOG update(final JSOG document) {
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            JSOG frozen = freeze(document);
+            Object id = idOf(frozen);
+            if (!documents.containsKey(id)) {
+                throw new IllegalStateException(
+                        "No document with id " + id + " exists.");
+            }
+            Object[] keys = keysOf(frozen);
+            unindex(id);
+            index(id, keys);
+            return documents.put(id, frozen);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Deletes a document.
+     * @param id the document's id.
+     * @return the deleted, frozen document, or null if there was none.
+     * @throws IllegalArgumentException if the id is not a primitive.
+     */
+    public JSOG delete(final Object id) {
+        Object key = JsogIndex.normalize(id);
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            JSOG document = documents.remove(key);
+            if (document != null) {
+                unindex(key);
+            }
+            return document;
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Deletes every document. The indexes remain declared.
+     */
+    public void clear() {
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            documents.clear();
+            for (Index index : indexes.values()) {
+                index.hash.clear();
+                index.sorted.clear();
+                index.keys.clear();
+            }
+        } finally {
+            write.unlock();
+        }
+    }
+
+    /**
+     * Gets a document.
+     * @param id the document's id.
+     * @return the frozen document, or null if there is none.
+     * @throws IllegalArgumentException if the id is not a primitive.
+     */
+    public JSOG get(final Object id) {
+        Object key = JsogIndex.normalize(id);
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            return documents.get(key);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of documents.
+     * @return the number of documents.
+     */
+    public int size() {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            return documents.size();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Finds the documents matching a condition.
+     * @param predicate the condition.
+     * @return the matching frozen documents, in no particular order.
+     */
+    public List<JSOG> find(final JsogPredicate predicate) {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            Plan plan = plan(predicate);
+            Collection<Object> ids = plan == null
+                    ? documents.keySet()
+                    : plan.ids;
+
+            List<JSOG> found = new ArrayList<JSOG>();
+            for (Object id : ids) {
+                JSOG document = documents.get(id);
+                if (document != null
+                        && ((plan != null && plan.exact)
+                            || predicate.matches(document))) {
+                    found.add(document);
+                }
+            }
+            return found;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    /**
+     * Finds the ids selected by a condition, using the indexes.
+     * @param predicate the condition.
+     * @return the ids, or null if the indexes can't answer the condition.
+     */
+    private Plan plan(final JsogPredicate predicate) {
+        if (predicate instanceof JsogPredicate.In) {
+            JsogPredicate.In in = (JsogPredicate.In) predicate;
+            if (in.path.toString().equals(idPath.toString())) {
+                return new Plan(in.values, true);
+            }
+
+            Index index = indexes.get(in.path.toString());
+            if (index == null) {
+                return null;
+            }
+            Set<Object> ids = new HashSet<Object>();
+            for (Object value : in.values) {
+                Set<Object> matched = index.hash.get(value);
+                if (matched != null) {
+                    ids.addAll(matched);
+                }
+            }
+            return new Plan(ids, true);
+        } else if (predicate instanceof JsogPredicate.Range) {
+            JsogPredicate.Range range = (JsogPredicate.Range) predicate;
+            Index index = indexes.get(range.path.toString());
+            if (index == null) {
+                return null;
+            }
+            Set<Object> ids = new HashSet<Object>();
+            for (Map.Entry<Object, Set<Object>> entry
+                    : index.sorted.tailMap(range.start()).entrySet()) {
+                if (range.past(entry.getKey())) {
+                    break;
+                } else if (range.accepts(entry.getKey())) {
+                    ids.addAll(entry.getValue());
+                }
+            }
+            return new Plan(ids, true);
+        } else if (predicate instanceof JsogPredicate.And) {
+            List<Plan> plans = new ArrayList<Plan>();
+            boolean exact = true;
+            JsogPredicate[] parts = ((JsogPredicate.And) predicate).predicates;
+            for (JsogPredicate part : parts) {
+                Plan plan = plan(part);
+                if (plan == null) {
+                    exact = false;
+                } else {
+                    plans.add(plan);
+                    exact &= plan.exact;
+                }
+            }
+            if (plans.isEmpty()) {
+                return null;
+            }
+
+            // Intersect, starting from the most selective part
+            Collections.sort(plans, SMALLEST);
+            Set<Object> ids = new LinkedHashSet<Object>(plans.get(0).ids);
+            for (int i = 1; i < plans.size() && !ids.isEmpty(); i++) {
+                ids.retainAll(plans.get(i).ids);
+            }
+            return new Plan(ids, exact);
+        } else if (predicate instanceof JsogPredicate.Or) {
+            Set<Object> ids = new LinkedHashSet<Object>();
+            boolean exact = true;
+            JsogPredicate[] parts = ((JsogPredicate.Or) predicate).predicates;
+            for (JsogPredicate part : parts) {
+                Plan plan = plan(part);
+                if (plan == null) {
+                    return null;
+                }
+                ids.addAll(plan.ids);
+                exact &= plan.exact;
+            }
+            return new Plan(ids, exact);
+        }
+        return null;
+    }
+
+    /**
+     * Makes a frozen copy of a document.
+     * @param document the document.
+     * @return the copy, with every node frozen.
+     * @see JsogDeduplicator#canonical(JSOG)
+     */
+    private static JSOG freeze(final JSOG document) {
+        return new JsogDeduplicator().canonical(document);
+    }
+
+    /**
+     * Gets the id of a document.
+     * @param document the document.
+     * @return the normalized id.
+     * @throws IllegalArgumentException if the document has no id.
+     */
+    private Object idOf(final JSOG document) {
+        Object id = JsogIndex.keyOf(idPath, document);
+        if (id == null) {
+            throw new IllegalArgumentException(
+                    "The document has no id at " + idPath + ".");
+        }
+        return id;
+    }
+
+    /**
+     * Gets the keys of a document for each index.
+     * @param document the document.
+     * @return the normalized keys, in index order.
+     * @throws IllegalArgumentException if a key is an object or array.
+     */
+    private Object[] keysOf(final JSOG document) {
+        Object[] keys = new Object[indexes.size()];
+        int i = 0;
+        for (Index index : indexes.values()) {
+            keys[i++] = JsogIndex.keyOf(index.path, document);
+        }
+        return keys;
+    }
+
+    /**
+     * Adds a document to the indexes.
+     * @param id the document's id.
+     * @param keys the document's keys, in index order.
+     */
+    private void index(final Object id, final Object[] keys) {
+        int i = 0;
+        for (Index index : indexes.values()) {
+            index.add(id, keys[i++]);
+        }
+    }
+
+    /**
+     * Removes a document from the indexes.
+     * @param id the document's id.
+     */
+    private void unindex(final Object id) {
+        for (Index index : indexes.values()) {
+            index.remove(id);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+/**
+ * Accumulates elements into a JSOG.
+ *
+ * <p>Partial results may be accumulated independently, for example on
+ * different threads, and then combined in encounter order.</p>
+ * @param <T> the type of the elements.
+ * @author jrodriguez
+ * @see JsogCollectors
+ */
+public interface JsogCollector<T> {
+
+    /**
+     * Creates a new, empty result container.
+     * @return the result container.
+     */
+    JSOG supply();
+
+    /**
+     * Accumulates an element into a result container.
+     * @param container the result container.
+     * @param element the element.
+     */
+    void accumulate(JSOG container, T element);
+
+    /**
+     * Combines two partial results.
+     * @param left the result of the earlier elements.
+     * @param right the result of the later elements.
+     * @return the combined result, which may be either argument.
+     */
+    JSOG combine(JSOG left, JSOG right);
+
+}
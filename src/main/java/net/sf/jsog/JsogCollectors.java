@@ -0,0 +1,256 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Common {@link JsogCollector} implementations, and methods to apply them.
+ * @author jrodriguez
+ */
+public final class JsogCollectors {
+
+    /**
+     * Collects elements into an array JSOG.
+     * @param <T> the element type.
+     */
+    private static final class ArrayCollector<T> implements JsogCollector<T> {
+
+        public JSOG supply() {
+            return JSOG.array();
+        }
+
+        public void accumulate(final JSOG container, final T element) {
+            container.add(element);
+        }
+
+        public JSOG combine(final JSOG left, final JSOG right) {
+            left.appendAll(right);
+            return left;
+        }
+    }
+
+    /**
+     * Collects elements into an object JSOG.
+     * @param <T> the element type.
+     */
+    private static final class ObjectCollector<T> implements JsogCollector<T> {
+
+        /**
+         * Computes the keys.
+         */
+        private final JsogFunction<? super T, String> keyFunction;
+
+        /**
+         * Computes the values.
+         */
+        private final JsogFunction<? super T, ?> valueFunction;
+
+        /**
+         * Constructs a new ObjectCollector.
+         * @param keyFunction computes the keys.
+         * @param valueFunction computes the values.
+         */
+        ObjectCollector(final JsogFunction<? super T, String> keyFunction,
+                        final JsogFunction<? super T, ?> valueFunction) {
+            this.keyFunction = keyFunction;
+            this.valueFunction = valueFunction;
+        }
+
+        public JSOG supply() {
+            return JSOG.object();
+        }
+
+        public void accumulate(final JSOG container, final T element) {
+            put(container, keyFunction.apply(element),
+                valueFunction.apply(element));
+        }
+
+        @SuppressWarnings("unchecked")
+        public JSOG combine(final JSOG left, final JSOG right) {
+            Map<String, Object> map = (Map<String, Object>) right.rawValue();
+            for (Entry<String, Object> entry : map.entrySet()) {
+                put(left, entry.getKey(), entry.getValue());
+            }
+            return left;
+        }
+
+        /**
+         * Puts a value, rejecting duplicate keys.
+         * @param container the object JSOG.
+         * @param key the key.
+         * @param value the value.
+         * @throws IllegalStateException if the key is already present.
+         */
+        private static void put(final JSOG container,
+                                final String key,
+                                final Object value) {
+            if (container.hasKey(key)) {
+                throw new IllegalStateException("Duplicate key: " + key);
+            }
+            container.put(key, value);
+        }
+    }
+
+    /**
+     * Static use only.
+     */
+    private JsogCollectors() {
+    }
+
+    /**
+     * Returns a collector that adds each element to an array JSOG.
+     *
+     * The elements must be primitives or JSOGs. Partial results are combined
+     * by appending the later array's backing storage in one operation.
+     * @param <T> the element type.
+     * @return the collector.
+     */
+    public static <T> JsogCollector<T> toArray() {
+        return new ArrayCollector<T>();
+    }
+
+    /**
+     * Returns a collector that puts each element into an object JSOG.
+     *
+     * The computed values must be primitives or JSOGs.
+     * @param <T> the element type.
+     * @param keyFunction computes each element's key.
+     * @param valueFunction computes each element's value.
+     * @return the collector.
+     * @throws IllegalStateException when collecting, if two elements have the
+     * same key.
+     */
+    public static <T> JsogCollector<T> toObject(
+            final JsogFunction<? super T, String> keyFunction,
+            final JsogFunction<? super T, ?> valueFunction) {
+        return new ObjectCollector<T>(keyFunction, valueFunction);
+    }
+
+    /**
+     * Collects the remaining elements of an iterator.
+     * @param <T> the element type.
+     * @param elements the elements.
+     * @param collector the collector.
+     * @return the result.
+     */
+    public static <T> JSOG collect(final Iterator<? extends T> elements,
+                                   final JsogCollector<T> collector) {
+        JSOG result = collector.supply();
+        while (elements.hasNext()) {
+            collector.accumulate(result, elements.next());
+        }
+        return result;
+    }
+
+    /**
+     * Collects the remaining elements of a spliterator in parallel.
+     *
+     * The spliterator is split into up to the specified number of parts, each
+     * part is accumulated on the executor, and the partial results are
+     * combined in encounter order.
+     * @param <T> the element type.
+     * @param elements the elements.
+     * @param collector the collector.
+     * @param executor the executor on which the parts are accumulated.
+     * @param parallelism the maximum number of parts.
+     * @return the result.
+     * @throws IllegalStateException if interrupted while waiting for the
+     * partial results.
+     */
+    public static <T> JSOG collect(final JsogSpliterator<? extends T> elements,
+                                   final JsogCollector<T> collector,
+                                   final ExecutorService executor,
+                                   final int parallelism) {
+
+        // Split the elements into parts, keeping them in encounter order
+        List<Iterator<? extends T>> parts =
+                new ArrayList<Iterator<? extends T>>();
+        parts.add(elements);
+        boolean split = true;
+        while (split && parts.size() < parallelism) {
+            split = false;
+            for (int i = 0; i < parts.size() && parts.size() < parallelism;
+                    i++) {
+                JsogSpliterator<? extends T> part =
+                        (JsogSpliterator<? extends T>) parts.get(i);
+                JsogSpliterator<? extends T> prefix = part.trySplit();
+                if (prefix != null) {
+                    parts.add(i++, prefix);
+                    split = true;
+                }
+            }
+        }
+
+        // Accumulate each part
+        List<Future<JSOG>> results = new ArrayList<Future<JSOG>>();
+        for (final Iterator<? extends T> part : parts) {
+            results.add(executor.submit(new Callable<JSOG>() {
+                public JSOG call() {
+                    return collect(part, collector);
+                }
+            }));
+        }
+
+        // Combine the results in order
+        JSOG result = null;
+        try {
+            for (Future<JSOG> future : results) {
+                JSOG partial = future.get();
+                result = result == null
+                       ? partial
+                       : collector.combine(result, partial);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while collecting.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<JSOG> future : results) {
+                future.cancel(true);
+            }
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,361 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Replaces structurally equal JSOGs with a single, frozen instance.
+ *
+ * <p>Values are canonicalized bottom-up, so by the time a container is
+ * looked up its children are already canonical, and equal children are the
+ * same instance. That lets containers be hashed and compared by the
+ * identity of their children, in time proportional to their size rather
+ * than to the size of their subtrees. Nested containers are kept on a stack
+ * rather than recursed into.</p>
+ *
+ * <p>A deduplicator may be used for several JSOGs, which will then share
+ * values with one another. It is not thread-safe.</p>
+ * @author jrodriguez
+ * @see JSOG#dedupe()
+ */
+final class JsogDeduplicator {
+
+    /**
+     * A canonical value, hashed and compared structurally.
+     */
+    private static final class Key {
+
+        /**
+         * The raw value: a Map or List of canonical children, or a
+         * primitive.
+         */
+        private final Object value;
+
+        /**
+         * The structural hash code.
+         */
+        private final int hash;
+
+        /**
+         * Constructs a new Key.
+         * @param value the raw value, whose children must be canonical.
+         */
+        Key(final Object value) {
+            this.value = value;
+
+            int h;
+            if (value instanceof Map<?, ?>) {
+                h = 0x4D41;
+                for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    h = 31 * h + entry.getKey().hashCode();
+                    h = 31 * h + childHash(entry.getValue());
+                }
+            } else if (value instanceof List<?>) {
+                h = 0x4C49;
+                for (Object item : (List<?>) value) {
+                    h = 31 * h + childHash(item);
+                }
+            } else {
+                h = childHash(value);
+            }
+            this.hash = h;
+        }
+
+        /**
+         * Hashes a canonical child.
+         * @param child the child.
+         * @return the hash code.
+         */
+        private static int childHash(final Object child) {
+            if (child instanceof JSOG) {
+                return System.identityHashCode(child);
+            }
+            return child == null ? 0 : child.hashCode();
+        }
+
+        /**
+         * Compares two canonical children.
+         * @param a the first child.
+         * @param b the second child.
+         * @return true if the children are equal.
+         */
+        private static boolean childEquals(final Object a, final Object b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null
+                    || a instanceof JSOG || b instanceof JSOG) {
+                return false;
+            }
+
+            // Integer 1 and Long 1 are different values, for instance
+            return a.getClass() == b.getClass() && a.equals(b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            if (hash != that.hash) {
+                return false;
+            }
+
+            if (value instanceof Map<?, ?>) {
+                if (!(that.value instanceof Map<?, ?>)) {
+                    return false;
+                }
+                Map<?, ?> a = (Map<?, ?>) value;
+                Map<?, ?> b = (Map<?, ?>) that.value;
+                if (a.size() != b.size()) {
+                    return false;
+                }
+
+                // Key order is significant, since it's serialized
+                Iterator<? extends Entry<?, ?>> ia = a.entrySet().iterator();
+                Iterator<? extends Entry<?, ?>> ib = b.entrySet().iterator();
+                while (ia.hasNext()) {
+                    Entry<?, ?> ea = ia.next();
+                    Entry<?, ?> eb = ib.next();
+                    if (!ea.getKey().equals(eb.getKey())
+                            || !childEquals(ea.getValue(), eb.getValue())) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (value instanceof List<?>) {
+                if (!(that.value instanceof List<?>)) {
+                    return false;
+                }
+                List<?> a = (List<?>) value;
+                List<?> b = (List<?>) that.value;
+                if (a.size() != b.size()) {
+                    return false;
+                }
+                for (int i = 0; i < a.size(); i++) {
+                    if (!childEquals(a.get(i), b.get(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            return !(that.value instanceof Map<?, ?>)
+                    && !(that.value instanceof List<?>)
+                    && childEquals(value, that.value);
+        }
+    }
+
+    /**
+     * A container being canonicalized.
+     */
+    private static final class Frame {
+
+        /**
+         * The entries or elements left to copy.
+         */
+        private final Iterator<?> items;
+
+        /**
+         * The copy, a LinkedHashMap or ArrayList.
+         */
+        private final Object copy;
+
+        /**
+         * The key of the entry being copied, if the container is a Map.
+         */
+        private String key;
+
+        /**
+         * Constructs a new Frame.
+         * @param value the Map or List.
+         */
+        Frame(final Object value) {
+            if (value instanceof Map<?, ?>) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                items = map.entrySet().iterator();
+                copy = new LinkedHashMap<String, Object>(
+                        (int) (map.size() / 0.75f) + 1);
+            } else {
+                List<?> list = (List<?>) value;
+                items = list.iterator();
+                copy = new ArrayList<Object>(list.size());
+            }
+        }
+
+        /**
+         * Adds a canonical child to the copy.
+         * @param child the child.
+         */
+        @SuppressWarnings("unchecked")
+        void add(final Object child) {
+            if (copy instanceof Map<?, ?>) {
+                ((Map<String, Object>) copy).put(key, child);
+            } else {
+                ((List<Object>) copy).add(child);
+            }
+        }
+    }
+
+    /**
+     * The canonical JSOGs.
+     */
+    private final Map<Key, JSOG> nodes = new HashMap<Key, JSOG>();
+
+    /**
+     * The canonical primitives, including object keys.
+     */
+    private final Map<Object, Object> primitives =
+            new HashMap<Object, Object>();
+
+    /**
+     * Deduplicates the values of a JSOG, leaving the JSOG itself modifiable.
+     * @param jsog the JSOG.
+     */
+    void dedupeValues(final JSOG jsog) {
+        Object value = jsog.rawValue();
+        if (value instanceof Map<?, ?> || value instanceof List<?>) {
+            jsog.setRawValue(container(value, false));
+        } else if (value instanceof JSOG) {
+            jsog.setRawValue(canonical((JSOG) value));
+        }
+    }
+
+    /**
+     * Gets the canonical instance of a JSOG.
+     * @param jsog the JSOG.
+     * @return a frozen JSOG, structurally equal to the argument.
+     */
+    JSOG canonical(final JSOG jsog) {
+        Object value = raw(jsog);
+        if (value instanceof Map<?, ?> || value instanceof List<?>) {
+            return (JSOG) container(value, true);
+        }
+        return node(primitive(value));
+    }
+
+    /**
+     * Copies a Map or List and everything in it, replacing the children
+     * with canonical ones.
+     * @param value the Map or List.
+     * @param freeze true to return the canonical JSOG of the copy.
+     * @return the canonical JSOG, or the copy itself, sized exactly.
+     */
+    private Object container(final Object value, final boolean freeze) {
+        List<Frame> stack = new ArrayList<Frame>();
+        stack.add(new Frame(value));
+        while (true) {
+            Frame frame = stack.get(stack.size() - 1);
+            if (frame.items.hasNext()) {
+                Object child = frame.items.next();
+                if (child instanceof Entry<?, ?>) {
+                    Entry<?, ?> entry = (Entry<?, ?>) child;
+                    frame.key = (String) primitive(entry.getKey());
+                    child = entry.getValue();
+                }
+
+                Object raw = child instanceof JSOG ? raw((JSOG) child) : child;
+                if (raw instanceof Map<?, ?> || raw instanceof List<?>) {
+                    stack.add(new Frame(raw));
+                } else if (child instanceof JSOG) {
+                    frame.add(node(primitive(raw)));
+                } else if (raw instanceof LazyScalar) {
+                    frame.add(primitive(((LazyScalar) raw).decode()));
+                } else {
+                    frame.add(primitive(raw));
+                }
+                continue;
+            }
+
+            // Bottom-up, so the children are already canonical
+            stack.remove(stack.size() - 1);
+            if (stack.isEmpty()) {
+                return freeze ? node(frame.copy) : frame.copy;
+            }
+            stack.get(stack.size() - 1).add(node(frame.copy));
+        }
+    }
+
+    /**
+     * Gets the raw value of a JSOG, looking through JSOGs wrapping JSOGs,
+     * which serialize the same as the inner one.
+     * @param jsog the JSOG.
+     * @return the raw value.
+     */
+    private static Object raw(final JSOG jsog) {
+        Object value = jsog.rawValue();
+        while (value instanceof JSOG) {
+            value = ((JSOG) value).rawValue();
+        }
+        return value;
+    }
+
+    /**
+     * Gets the canonical JSOG for a rebuilt value.
+     * @param rebuilt a primitive, or a Map or List of canonical children.
+     * @return the frozen JSOG.
+     */
+    private JSOG node(final Object rebuilt) {
+        Key key = new Key(rebuilt);
+        JSOG existing = nodes.get(key);
+        if (existing == null) {
+            existing = JSOG.frozen(rebuilt);
+            nodes.put(key, existing);
+        }
+        return existing;
+    }
+
+    /**
+     * Gets the canonical instance of a primitive.
+     * @param value the primitive.
+     * @return an equal primitive of the same type.
+     */
+    private Object primitive(final Object value) {
+        if (value == null || value instanceof Boolean) {
+            return value;
+        }
+
+        Object existing = primitives.get(value);
+        if (existing == null || existing.getClass() != value.getClass()) {
+            primitives.put(value, value);
+            return value;
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,672 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.StreamCorruptedException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The serialized form of a JSOG.
+ *
+ * <p>JSOGs are replaced by this class when serialized, so that a whole tree
+ * is written as a single block of bytes instead of a graph of JSOGs, maps,
+ * lists and boxed primitives with their class descriptors. The block starts
+ * with a format version, followed by the root value. Each value is a one
+ * byte tag followed by its payload:</p>
+ * <ul>
+ *   <li>integers are written as zig-zag varints</li>
+ *   <li>floats and doubles as their raw bits</li>
+ *   <li>strings as UTF-8, and subsequent occurrences of the same string
+ *       (keys in particular) as a varint reference to the first one</li>
+ *   <li>arrays and objects as a varint size followed by their contents</li>
+ * </ul>
+ *
+ * <p>The tree is reconstructed as if it had been parsed; the exact type of
+ * each primitive is preserved, but JSOGs which appear more than once in a
+ * tree are read back as distinct copies. As with CBOR, arrays and objects
+ * may be nested at most 1000 deep.</p>
+ * @author jrodriguez
+ */
+final class JsogExternalForm implements Externalizable {
+
+    /**
+     * The class version, for serialization purposes.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The current format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The most bytes read from the stream at a time, so a corrupt length
+     * can't allocate more than the stream actually holds.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Tag: null.
+     */
+    private static final int NULL = 0;
+
+    /**
+     * Tag: Boolean.FALSE.
+     */
+    private static final int FALSE = 1;
+
+    /**
+     * Tag: Boolean.TRUE.
+     */
+    private static final int TRUE = 2;
+
+    /**
+     * Tag: Integer.
+     */
+    private static final int INTEGER = 3;
+
+    /**
+     * Tag: Long.
+     */
+    private static final int LONG = 4;
+
+    /**
+     * Tag: Double.
+     */
+    private static final int DOUBLE = 5;
+
+    /**
+     * Tag: a string seen for the first time.
+     */
+    private static final int STRING = 6;
+
+    /**
+     * Tag: a reference to a previous string.
+     */
+    private static final int STRING_REF = 7;
+
+    /**
+     * Tag: array.
+     */
+    private static final int ARRAY = 8;
+
+    /**
+     * Tag: object.
+     */
+    private static final int OBJECT = 9;
+
+    /**
+     * Tag: BigInteger.
+     */
+    private static final int BIG_INTEGER = 10;
+
+    /**
+     * Tag: BigDecimal.
+     */
+    private static final int BIG_DECIMAL = 11;
+
+    /**
+     * Tag: Float.
+     */
+    private static final int FLOAT = 12;
+
+    /**
+     * Tag: Short.
+     */
+    private static final int SHORT = 13;
+
+    /**
+     * Tag: Byte.
+     */
+    private static final int BYTE = 14;
+
+    /**
+     * Tag: Character.
+     */
+    private static final int CHARACTER = 15;
+
+    /**
+     * The JSOG being written or read.
+     */
+    private JSOG jsog;
+
+    /**
+     * Constructs a new JsogExternalForm, for deserialization.
+     */
+    public JsogExternalForm() {
+
+    }
+
+    /**
+     * Constructs a new JsogExternalForm, for serialization.
+     * @param jsog the JSOG to serialize.
+     */
+    JsogExternalForm(final JSOG jsog) {
+        this.jsog = jsog;
+    }
+
+    @Override
+    public void writeExternal(final ObjectOutput out) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.writeVarint(VERSION);
+        encoder.writeValue(jsog);
+        out.writeInt(encoder.length);
+        out.write(encoder.buffer, 0, encoder.length);
+    }
+
+    @Override
+    public void readExternal(final ObjectInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new StreamCorruptedException(
+                    "Invalid JSOG length: " + length);
+        }
+
+        ByteBuilder data = new ByteBuilder(Math.min(length, CHUNK_SIZE));
+        while (data.length < length) {
+            int count = Math.min(length - data.length, CHUNK_SIZE);
+            data.ensure(count);
+            in.readFully(data.buffer, data.length, count);
+            data.length += count;
+        }
+
+        Decoder decoder = new Decoder(data.buffer, data.length);
+        int version = decoder.readVarint();
+        if (version != VERSION) {
+            throw new InvalidObjectException(
+                    "Unsupported JSOG serialization version: " + version);
+        }
+
+        jsog = decoder.readJsog();
+        if (decoder.position != length) {
+            throw new StreamCorruptedException(
+                    "Unexpected data after JSOG at offset "
+                    + decoder.position);
+        }
+    }
+
+    /**
+     * Replaces this object with the JSOG it holds, when deserialized.
+     * @return the JSOG.
+     * @throws ObjectStreamException never.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return jsog;
+    }
+
+    /**
+     * Encodes JSOG values into a growable buffer.
+     */
+    private static final class Encoder extends ByteBuilder {
+
+        /**
+         * The index of each string written so far.
+         */
+        private final Map<String, Integer> strings =
+                new HashMap<String, Integer>();
+
+        /**
+         * The number of arrays and objects being written.
+         */
+        private int depth;
+
+        /**
+         * Enters an array or object.
+         * @throws IllegalArgumentException if it's nested too deep to be
+         * read back.
+         */
+        private void enter() {
+            if (depth == JsogCbor.MAX_DEPTH) {
+                throw new IllegalArgumentException(
+                        "Could not serialize JSOG nested deeper than "
+                        + JsogCbor.MAX_DEPTH);
+            }
+            depth++;
+        }
+
+        /**
+         * Writes an unsigned varint, seven bits at a time.
+         * @param value the value, treated as unsigned.
+         */
+        private void writeVarint(final long value) {
+            ensure(10);
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            buffer[length++] = (byte) remaining;
+        }
+
+        /**
+         * Writes a signed varint, zig-zag encoded so small negative values
+         * stay small.
+         * @param value the value.
+         */
+        private void writeSignedVarint(final long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes a string, or a reference to it if it was written before.
+         * @param string the string.
+         */
+        private void writeString(final String string) {
+            Integer index = strings.get(string);
+            if (index != null) {
+                write(STRING_REF);
+                writeVarint(index);
+                return;
+            }
+            strings.put(string, strings.size());
+
+            write(STRING);
+
+            // Fast path for ASCII
+            if (isAscii(string)) {
+                writeVarint(string.length());
+                writeAscii(string);
+                return;
+            }
+
+            byte[] bytes = utf8(string);
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        /**
+         * Writes a BigInteger as its length and two's complement bytes.
+         * @param value the value.
+         */
+        private void writeBigInteger(final BigInteger value) {
+            byte[] bytes = value.toByteArray();
+            writeVarint(bytes.length);
+            write(bytes);
+        }
+
+        /**
+         * Writes a JSOG value.
+         * @param value the raw value of a JSOG.
+         * @throws IllegalArgumentException if the value can't be encoded,
+         * or is nested too deep.
+         */
+        @SuppressWarnings("unchecked")
+        private void writeValue(final Object value) {
+            if (value instanceof JSOG) {
+                writeValue(((JSOG) value).decodedValue());
+            } else if (value == null) {
+                write(NULL);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Map<?, ?>) {
+                Map<String, Object> map = (Map<String, Object>) value;
+                write(OBJECT);
+                writeVarint(map.size());
+                enter();
+                for (Entry<String, Object> entry : map.entrySet()) {
+                    writeString(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+                depth--;
+            } else if (value instanceof List<?>) {
+                List<Object> list = (List<Object>) value;
+                write(ARRAY);
+                writeVarint(list.size());
+                enter();
+                for (Object item : list) {
+                    writeValue(item);
+                }
+                depth--;
+            } else if (value instanceof Boolean) {
+                write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer) {
+                write(INTEGER);
+                writeSignedVarint((Integer) value);
+            } else if (value instanceof Long) {
+                write(LONG);
+                writeSignedVarint((Long) value);
+            } else if (value instanceof Double) {
+                write(DOUBLE);
+                writeBigEndian(
+                        Double.doubleToRawLongBits((Double) value), 8);
+            } else if (value instanceof Float) {
+                write(FLOAT);
+                writeBigEndian(Float.floatToRawIntBits((Float) value), 4);
+            } else if (value instanceof BigInteger) {
+                write(BIG_INTEGER);
+                writeBigInteger((BigInteger) value);
+            } else if (value instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal) value;
+                write(BIG_DECIMAL);
+                writeSignedVarint(decimal.scale());
+                writeBigInteger(decimal.unscaledValue());
+            } else if (value instanceof Short) {
+                write(SHORT);
+                writeSignedVarint((Short) value);
+            } else if (value instanceof Byte) {
+                write(BYTE);
+                writeSignedVarint((Byte) value);
+            } else if (value instanceof Character) {
+                write(CHARACTER);
+                writeVarint((Character) value);
+            } else {
+                throw new IllegalArgumentException(
+                        "Could not serialize object of type "
+                        + value.getClass().getName());
+            }
+        }
+    }
+
+    /**
+     * Decodes JSOG values from a byte array.
+     */
+    private static final class Decoder {
+
+        /**
+         * The encoded bytes.
+         */
+        private final byte[] data;
+
+        /**
+         * The end of the encoded bytes.
+         */
+        private final int end;
+
+        /**
+         * The read position.
+         */
+        private int position;
+
+        /**
+         * The number of arrays and objects being read.
+         */
+        private int depth;
+
+        /**
+         * The strings read so far, by index.
+         */
+        private final List<String> strings = new ArrayList<String>();
+
+        /**
+         * Constructs a new Decoder.
+         * @param data the encoded bytes.
+         * @param end the end of the encoded bytes.
+         */
+        Decoder(final byte[] data, final int end) {
+            this.data = data;
+            this.end = end;
+        }
+
+        /**
+         * Reads an unsigned byte.
+         * @return the byte.
+         * @throws StreamCorruptedException if the input is exhausted.
+         */
+        private int read() throws StreamCorruptedException {
+            if (position >= end) {
+                throw new StreamCorruptedException(
+                        "Unexpected end of JSOG at offset " + position);
+            }
+            return data[position++] & 0xFF;
+        }
+
+        /**
+         * Reads bytes.
+         * @param count the number of bytes.
+         * @return the bytes.
+         * @throws StreamCorruptedException if the input is exhausted.
+         */
+        private byte[] read(final int count) throws StreamCorruptedException {
+            if (count < 0 || count > end - position) {
+                throw new StreamCorruptedException(
+                        "Invalid length " + count + " at offset " + position);
+            }
+            byte[] bytes = new byte[count];
+            System.arraycopy(data, position, bytes, 0, count);
+            position += count;
+            return bytes;
+        }
+
+        /**
+         * Reads an unsigned varint.
+         * @return the value.
+         * @throws StreamCorruptedException if the varint is malformed.
+         */
+        private long readLongVarint() throws StreamCorruptedException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException(
+                    "Malformed varint at offset " + position);
+        }
+
+        /**
+         * Reads an unsigned varint which must fit in an int.
+         * @return the value.
+         * @throws StreamCorruptedException if the varint is malformed.
+         */
+        private int readVarint() throws StreamCorruptedException {
+            long value = readLongVarint();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException(
+                        "Value out of range at offset " + position);
+            }
+            return (int) value;
+        }
+
+        /**
+         * Reads a zig-zag encoded signed varint.
+         * @return the value.
+         * @throws StreamCorruptedException if the varint is malformed.
+         */
+        private long readSignedVarint() throws StreamCorruptedException {
+            long value = readLongVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a fixed width big-endian value.
+         * @param bytes the number of bytes.
+         * @return the value.
+         * @throws StreamCorruptedException if the input is exhausted.
+         */
+        private long readBigEndian(final int bytes)
+                throws StreamCorruptedException {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+
+        /**
+         * Reads a BigInteger.
+         * @return the value.
+         * @throws StreamCorruptedException if the input is malformed.
+         */
+        private BigInteger readBigInteger() throws StreamCorruptedException {
+            byte[] bytes = read(readVarint());
+            if (bytes.length == 0) {
+                throw new StreamCorruptedException(
+                        "Empty BigInteger at offset " + position);
+            }
+            return new BigInteger(bytes);
+        }
+
+        /**
+         * Reads a string or string reference, given its tag.
+         * @param tag the tag.
+         * @return the string.
+         * @throws StreamCorruptedException if the input is malformed.
+         */
+        private String readString(final int tag)
+                throws StreamCorruptedException {
+            if (tag == STRING_REF) {
+                int index = readVarint();
+                if (index >= strings.size()) {
+                    throw new StreamCorruptedException(
+                            "Invalid string reference at offset " + position);
+                }
+                return strings.get(index);
+            }
+
+            if (tag != STRING) {
+                throw new StreamCorruptedException(
+                        "Expected a string at offset " + (position - 1));
+            }
+
+            int count = readVarint();
+            if (count > end - position) {
+                throw new StreamCorruptedException(
+                        "Invalid length " + count + " at offset " + position);
+            }
+
+            // Fast path for ASCII
+            boolean ascii = true;
+            for (int i = position; i < position + count && ascii; i++) {
+                ascii = data[i] >= 0;
+            }
+
+            String string;
+            if (ascii) {
+                char[] chars = new char[count];
+                for (int i = 0; i < count; i++) {
+                    chars[i] = (char) data[position + i];
+                }
+                position += count;
+                string = new String(chars);
+            } else {
+                try {
+                    string = new String(read(count), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(
+                            "UTF-8 is not supported.", e);
+                }
+            }
+
+            strings.add(string);
+            return string;
+        }
+
+        /**
+         * Reads a value into a JSOG.
+         * @return the JSOG.
+         * @throws StreamCorruptedException if the input is malformed.
+         */
+        private JSOG readJsog() throws StreamCorruptedException {
+            int tag = read();
+            if ((tag == ARRAY || tag == OBJECT)
+                    && depth == JsogCbor.MAX_DEPTH) {
+                throw new StreamCorruptedException("Nesting deeper than "
+                        + JsogCbor.MAX_DEPTH + " at offset " + (position - 1));
+            }
+
+            switch (tag) {
+                case ARRAY:
+                    int length = readVarint();
+                    JSOG array = JSOG.array();
+                    depth++;
+                    for (int i = 0; i < length; i++) {
+                        array.add(readJsog());
+                    }
+                    depth--;
+                    return array;
+                case OBJECT:
+                    int size = readVarint();
+                    JSOG object = JSOG.object();
+                    depth++;
+                    for (int i = 0; i < size; i++) {
+                        object.put(readString(read()), readJsog());
+                    }
+                    depth--;
+                    return object;
+                default:
+                    return new JSOG(readPrimitive(tag));
+            }
+        }
+
+        /**
+         * Reads a primitive value, given its tag.
+         * @param tag the tag.
+         * @return the value.
+         * @throws StreamCorruptedException if the input is malformed.
+         */
+        private Object readPrimitive(final int tag)
+                throws StreamCorruptedException {
+            switch (tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return Boolean.FALSE;
+                case TRUE:
+                    return Boolean.TRUE;
+                case INTEGER:
+                    return (int) readSignedVarint();
+                case LONG:
+                    return readSignedVarint();
+                case DOUBLE:
+                    return Double.longBitsToDouble(readBigEndian(8));
+                case FLOAT:
+                    return Float.intBitsToFloat((int) readBigEndian(4));
+                case STRING:
+                case STRING_REF:
+                    return readString(tag);
+                case BIG_INTEGER:
+                    return readBigInteger();
+                case BIG_DECIMAL:
+                    int scale = (int) readSignedVarint();
+                    return new BigDecimal(readBigInteger(), scale);
+                case SHORT:
+                    return (short) readSignedVarint();
+                case BYTE:
+                    return (byte) readSignedVarint();
+                case CHARACTER:
+                    return (char) readVarint();
+                default:
+                    throw new StreamCorruptedException("Unknown tag " + tag
+                            + " at offset " + (position - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,627 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A secondary index over the elements of a JSOG array, keyed by a path
+ * evaluated on each element.
+ *
+ * <p>Equality lookups use a hash index, and take constant time. Range
+ * lookups use a sorted index, built the first time it's needed, and take
+ * logarithmic time. Keys are compared by value, so <code>5</code>,
+ * <code>5L</code> and <code>5.0</code> are the same key. Integral keys are
+ * held as Longs rather than BigDecimals, which keeps them cheap to hash and
+ * compare. Elements without a key, or with a null key, are indexed under
+ * null, and are left out of range lookups.</p>
+ *
+ * <p>The index keeps itself up to date as elements are added to, replaced
+ * in or removed from the array, through any JSOG method. It does so by
+ * taking over the array's backing List. Changes to the key of an element
+ * that is already in the array aren't seen; call {@link #rebuild()} after
+ * making them. If the array is given a new value altogether, the index is
+ * rebuilt on its next lookup. The List stays installed until the index is
+ * closed, so {@link #close()} an index once it's no longer needed.</p>
+ *
+ * <p>Like JSOGs, indexes are not thread safe.</p>
+ * @author jrodriguez
+ */
+public final class JsogIndex {
+
+    /**
+     * Orders normalized keys: Booleans, then Numbers, then Strings.
+     */
+    static final Comparator<Object> ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(final Object a, final Object b) {
+            int rank = rank(a) - rank(b);
+            if (rank != 0) {
+                return rank;
+            } else if (a instanceof Boolean) {
+                return ((Boolean) a).compareTo((Boolean) b);
+            } else if (a instanceof String) {
+                return ((String) a).compareTo((String) b);
+            } else if (a instanceof Long && b instanceof Long) {
+                return ((Long) a).compareTo((Long) b);
+            } else if (a instanceof Double || b instanceof Double) {
+                return Double.compare(((Number) a).doubleValue(),
+                                      ((Number) b).doubleValue());
+            } else {
+                return decimal(a).compareTo(decimal(b));
+            }
+        }
+    };
+
+    /**
+     * The array backing list, which updates the index as it's modified.
+     */
+    private final class IndexedList extends AbstractList<Object>
+            implements RandomAccess {
+
+        /**
+         * The list that was backing the array.
+         */
+        private List<Object> target;
+
+        /**
+         * Constructs a new IndexedList.
+         * @param target the list that was backing the array.
+         */
+        IndexedList(final List<Object> target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object get(final int index) {
+            return target.get(index);
+        }
+
+        @Override
+        public int size() {
+            return target.size();
+        }
+
+        @Override
+        public Object set(final int index, final Object element) {
+            Object key = keyOf(keyPath, element);
+            Object old = target.set(index, element);
+            unindex(old);
+            index(key, element);
+            return old;
+        }
+
+        @Override
+        public void add(final int index, final Object element) {
+            Object key = keyOf(keyPath, element);
+            target.add(index, element);
+            modCount++;
+            index(key, element);
+        }
+
+        @Override
+        public Object remove(final int index) {
+            Object old = target.remove(index);
+            modCount++;
+            unindex(old);
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            target.clear();
+            modCount++;
+            reset();
+        }
+    }
+
+    /**
+     * The indexed array.
+     */
+    private final JSOG array;
+
+    /**
+     * The path of the key in each element.
+     */
+    private final JsogPath keyPath;
+
+    /**
+     * The array's backing list, or null if the array is frozen.
+     */
+    private IndexedList list;
+
+    /**
+     * The elements, by key.
+     */
+    private final Map<Object, List<Object>> hash =
+            new HashMap<Object, List<Object>>();
+
+    /**
+     * The elements with non-null keys, in key order, or null until a range
+     * lookup needs them.
+     */
+    private TreeMap<Object, List<Object>> sorted;
+
+    /**
+     * The number of elements indexed.
+     */
+    private int size;
+
+    /**
+     * Whether the index has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new JsogIndex, and indexes the array.
+     * @param array the array to index. A null JSOG becomes an empty array.
+     * @param keyPath the path of the key in each element.
+     * @throws IllegalArgumentException if the path is not definite, or an
+     *         element's key is an object or array.
+     * @throws IllegalStateException if the JSOG is not an array.
+     */
+    public JsogIndex(final JSOG array, final JsogPath keyPath) {
+        if (!keyPath.isDefinite()) {
+            throw new IllegalArgumentException(
+                    "The path " + keyPath + " may match several values.");
+        }
+        this.array = array;
+        this.keyPath = keyPath;
+        rebuild();
+    }
+
+    /**
+     * Constructs a new JsogIndex, and indexes the array.
+     * @param array the array to index. A null JSOG becomes an empty array.
+     * @param keyPath the path expression of the key in each element.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or an element's key is an object or array.
+     * @throws IllegalStateException if the JSOG is not an array.
+     */
+    public JsogIndex(final JSOG array, final String keyPath) {
+        this(array, JsogPath.compile(keyPath));
+    }
+
+    /**
+     * Gets the indexed array.
+     * @return the array.
+     */
+    public JSOG getArray() {
+        return array;
+    }
+
+    /**
+     * Gets the path of the key in each element.
+     * @return the key path.
+     */
+    public JsogPath getKeyPath() {
+        return keyPath;
+    }
+
+    /**
+     * Gets the number of elements indexed.
+     * @return the number of elements.
+     * @throws IllegalStateException if the index is closed.
+     */
+    public int size() {
+        sync();
+        return size;
+    }
+
+    /**
+     * Re-indexes every element of the array.
+     *
+     * This is needed only after changing the key of an element that was
+     * already in the array.
+     * @throws IllegalArgumentException if an element's key is an object or
+     *         array.
+     * @throws IllegalStateException if the JSOG is not an array, or the
+     *         index is closed.
+     */
+    @SuppressWarnings("unchecked")
+    public void rebuild() {
+        checkOpen();
+        Object raw = array.rawValue();
+        if (raw == null && !array.isFrozen()) {
+            raw = new ArrayList<Object>();
+            array.setRawValue(raw);
+        } else if (!(raw instanceof List<?>)) {
+            throw new IllegalStateException("The JSOG is not an array.");
+        }
+
+        // Every list in a chain of indexes holds the same elements
+        List<Object> elements = (List<Object>) raw;
+        List<Object> keys = new ArrayList<Object>(elements.size());
+        for (Object element : elements) {
+            keys.add(keyOf(keyPath, element));
+        }
+
+        reset();
+        for (int i = 0; i < keys.size(); i++) {
+            index(keys.get(i), elements.get(i));
+        }
+
+        // Frozen arrays can't change, so they don't need watching
+        if (array.isFrozen()) {
+            list = null;
+        } else if (!watching(elements)) {
+            list = new IndexedList(elements);
+            array.setRawValue(list);
+        }
+    }
+
+    /**
+     * Stops maintaining the index, and gives the array back the List that
+     * was backing it.
+     *
+     * Indexes created on the array before or after this one keep working.
+     * Closing an index twice does nothing.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        reset();
+        if (list == null) {
+            return;
+        }
+
+        // Unlink this index's list, wherever it is in the chain
+        Object current = array.rawValue();
+        if (current == list) {
+            array.setRawValue(list.target);
+        } else {
+            while (current instanceof JsogIndex.IndexedList) {
+                IndexedList outer = (IndexedList) current;
+                if (outer.target == list) {
+                    outer.target = list.target;
+                    break;
+                }
+                current = outer.target;
+            }
+        }
+        list = null;
+    }
+
+    /**
+     * Tests if this index's list is still backing the array, possibly
+     * under the lists of indexes created later.
+     * @param elements the array's raw value.
+     * @return true if this index is still notified of changes.
+     */
+    private boolean watching(final Object elements) {
+        Object current = elements;
+        while (current instanceof JsogIndex.IndexedList) {
+            if (current == list) {
+                return true;
+            }
+            current = ((IndexedList) current).target;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the elements with a key.
+     * @param key the key: a primitive, or null.
+     * @return the elements, in the order they were indexed.
+     * @throws IllegalStateException if the index is closed.
+     */
+    public List<JSOG> get(final Object key) {
+        sync();
+        return wrapAll(hash.get(normalize(key)));
+    }
+
+    /**
+     * Gets an element with a key.
+     * @param key the key: a primitive, or null.
+     * @return the first element indexed with the key, or null if there is
+     *         none.
+     * @throws IllegalStateException if the index is closed.
+     */
+    public JSOG getFirst(final Object key) {
+        sync();
+        List<Object> bucket = hash.get(normalize(key));
+        return bucket == null ? null : JSOG.wrap(bucket.get(0));
+    }
+
+    /**
+     * Tests if any element has a key.
+     * @param key the key: a primitive, or null.
+     * @return true if an element has the key.
+     * @throws IllegalStateException if the index is closed.
+     */
+    public boolean containsKey(final Object key) {
+        sync();
+        return hash.containsKey(normalize(key));
+    }
+
+    /**
+     * Gets the elements with keys in a range, in key order.
+     * @param from the lowest key, or null for no lower bound.
+     * @param fromInclusive whether elements with the lowest key are included.
+     * @param to the highest key, or null for no upper bound.
+     * @param toInclusive whether elements with the highest key are included.
+     * @return the elements, in key order.
+     * @throws IllegalArgumentException if a bound is not a primitive.
+     * @throws IllegalStateException if the index is closed.
+     */
+    public List<JSOG> range(final Object from, final boolean fromInclusive,
+                            final Object to, final boolean toInclusive) {
+        sync();
+        if (sorted == null) {
+            sorted = new TreeMap<Object, List<Object>>(ORDER);
+            for (Map.Entry<Object, List<Object>> entry : hash.entrySet()) {
+                if (entry.getKey() != null) {
+                    sorted.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Object low = normalize(from);
+        Object high = normalize(to);
+        if (low != null && high != null && ORDER.compare(low, high) > 0) {
+            return Collections.emptyList();
+        }
+
+        // Sorted maps only offer inclusive lower and exclusive upper bounds
+        SortedMap<Object, List<Object>> view = sorted;
+        if (low != null) {
+            view = view.tailMap(low);
+        }
+        if (high != null) {
+            view = view.headMap(high);
+        }
+
+        List<JSOG> result = new ArrayList<JSOG>();
+        for (Map.Entry<Object, List<Object>> entry : view.entrySet()) {
+            if (low == null || fromInclusive
+                    || ORDER.compare(entry.getKey(), low) != 0) {
+                result.addAll(wrapAll(entry.getValue()));
+            }
+        }
+        if (high != null && toInclusive && sorted.containsKey(high)
+                && (low == null || fromInclusive
+                    || ORDER.compare(low, high) != 0)) {
+            result.addAll(wrapAll(sorted.get(high)));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the elements with keys in a range, in key order.
+     * @param from the lowest key, inclusive, or null for no lower bound.
+     * @param to the highest key, exclusive, or null for no upper bound.
+     * @return the elements, in key order.
+     * @throws IllegalArgumentException if a bound is not a primitive.
+     * @throws IllegalStateException if the index is closed.
+     */
+    public List<JSOG> range(final Object from, final Object to) {
+        return range(from, true, to, false);
+    }
+
+    /**
+     * Rebuilds the index if the array was given a new value.
+     * @throws IllegalStateException if the index is closed.
+     */
+    private void sync() {
+        checkOpen();
+        if (list != null && !watching(array.rawValue())) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Ensures the index hasn't been closed.
+     * @throws IllegalStateException if it has.
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The index is closed.");
+        }
+    }
+
+    /**
+     * Empties the index.
+     */
+    private void reset() {
+        hash.clear();
+        sorted = null;
+        size = 0;
+    }
+
+    /**
+     * Adds an element to the index.
+     * @param key the element's normalized key.
+     * @param element the element.
+     */
+    private void index(final Object key, final Object element) {
+        List<Object> bucket = hash.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<Object>(1);
+            hash.put(key, bucket);
+            if (sorted != null && key != null) {
+                sorted.put(key, bucket);
+            }
+        }
+        bucket.add(element);
+        size++;
+    }
+
+    /**
+     * Removes an element from the index.
+     * @param element the element.
+     */
+    private void unindex(final Object element) {
+        Object key = keyOf(keyPath, element);
+        List<Object> bucket = hash.get(key);
+        if (bucket == null) {
+            return;
+        }
+
+        // The same element, or failing that an equal one
+        int i = 0;
+        while (i < bucket.size() && bucket.get(i) != element) {
+            i++;
+        }
+        if (i == bucket.size()) {
+            i = bucket.indexOf(element);
+            if (i < 0) {
+                return;
+            }
+        }
+
+        bucket.remove(i);
+        size--;
+        if (bucket.isEmpty()) {
+            hash.remove(key);
+            if (sorted != null && key != null) {
+                sorted.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a key path on an element.
+     * @param path the key path.
+     * @param element the element, a JSOG or a raw value.
+     * @return the normalized key, or null if it's missing.
+     * @throws IllegalArgumentException if the key is an object or array.
+     */
+    static Object keyOf(final JsogPath path, final Object element) {
+        Object key = path.find(element);
+        Object value = key == null ? null : JsogPath.unwrap(key);
+        if (value instanceof LazyScalar) {
+            value = ((LazyScalar) value).decode();
+        } else if (value instanceof Map<?, ?> || value instanceof List<?>) {
+            throw new IllegalArgumentException("The key " + path
+                    + " is not a primitive: " + JSOG.wrap(key));
+        }
+        return normalize(value);
+    }
+
+    /**
+     * Normalizes a key, so equal values are equal objects.
+     * @param key a primitive.
+     * @return a Boolean, Long, BigDecimal, Double (for infinities and NaN),
+     *         String, or null.
+     * @throws IllegalArgumentException if the key is not a primitive.
+     */
+    static Object normalize(final Object key) {
+        if (key == null || key instanceof Boolean || key instanceof String
+                || key instanceof Long) {
+            return key;
+        } else if (key instanceof Character) {
+            return key.toString();
+        } else if (key instanceof Integer || key instanceof Short
+                || key instanceof Byte) {
+            return Long.valueOf(((Number) key).longValue());
+        } else if (key instanceof Double || key instanceof Float) {
+            double d = ((Number) key).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                return Double.valueOf(d);
+            }
+            return normalize(new BigDecimal(key.toString()));
+        } else if (key instanceof BigInteger) {
+            BigInteger i = (BigInteger) key;
+            return i.bitLength() < 64
+                    ? (Object) Long.valueOf(i.longValue())
+                    : (Object) new BigDecimal(i);
+        } else if (key instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) key;
+            if (d.signum() == 0) {
+                return Long.valueOf(0);
+            }
+            d = d.stripTrailingZeros();
+
+            // Any integer in the range of a long, however it's written
+            if (d.scale() <= 0 && (long) d.precision() - d.scale() <= 19) {
+                try {
+                    return Long.valueOf(d.longValueExact());
+                } catch (ArithmeticException e) {
+                    return d;
+                }
+            }
+            return d;
+        } else {
+            throw new IllegalArgumentException(
+                    "Keys must be primitives, not: " + key.getClass());
+        }
+    }
+
+    /**
+     * Ranks the kinds of key.
+     * @param key a normalized key.
+     * @return the rank.
+     */
+    static int rank(final Object key) {
+        if (key instanceof Boolean) {
+            return 0;
+        } else if (key instanceof Number) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    /**
+     * Converts a normalized numeric key to a BigDecimal.
+     * @param key a Long or BigDecimal.
+     * @return the BigDecimal.
+     */
+    private static BigDecimal decimal(final Object key) {
+        return key instanceof Long
+                ? BigDecimal.valueOf((Long) key)
+                : (BigDecimal) key;
+    }
+
+    /**
+     * Wraps the elements of a bucket.
+     * @param bucket the bucket, or null.
+     * @return the elements as JSOGs.
+     */
+    private static List<JSOG> wrapAll(final List<Object> bucket) {
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        List<JSOG> result = new ArrayList<JSOG>(bucket.size());
+        for (Object element : bucket) {
+            result.add(JSOG.wrap(element));
+        }
+        return result;
+    }
+}
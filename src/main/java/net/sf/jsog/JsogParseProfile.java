@@ -0,0 +1,236 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Learns the sizes of the arrays and objects in a family of documents, so
+ * later parses can presize them.
+ *
+ * <p>Sizes are recorded by position, such as <code>items[].tags</code>:
+ * object fields by key, and array elements all together. Each position's
+ * capacity hint follows the largest recent size, decaying slowly when
+ * documents shrink.</p>
+ *
+ * <p>Use one profile per document shape, such as per endpoint. Documents
+ * whose objects are keyed by data rather than by schema would create
+ * positions without end, so the number of positions is bounded; beyond the
+ * bound, containers are created at their default sizes.</p>
+ *
+ * <p>Profiles are thread-safe.</p>
+ * @author jrodriguez
+ * @see JsogParser#setProfiling(boolean)
+ */
+public final class JsogParseProfile {
+
+    /**
+     * A position in the documents, and the sizes seen there.
+     */
+    static final class Position {
+
+        /**
+         * Sets the position of array elements atomically.
+         */
+        private static final AtomicReferenceFieldUpdater<Position, Position>
+                ELEMENTS = AtomicReferenceFieldUpdater.newUpdater(
+                        Position.class, Position.class, "elements");
+
+        /**
+         * The profile this position belongs to.
+         */
+        private final JsogParseProfile profile;
+
+        /**
+         * The positions of object fields, by key.
+         */
+        private final ConcurrentMap<String, Position> fields =
+                new ConcurrentHashMap<String, Position>(4);
+
+        /**
+         * The position of array elements, once seen.
+         */
+        private volatile Position elements;
+
+        /**
+         * The capacity hint.
+         */
+        private volatile int hint;
+
+        /**
+         * Constructs a new Position.
+         * @param profile the profile it belongs to.
+         */
+        Position(final JsogParseProfile profile) {
+            this.profile = profile;
+        }
+
+        /**
+         * Gets the position of an object field.
+         * @param key the field's key.
+         * @return the position, or null if the profile is full.
+         */
+        Position field(final String key) {
+            Position position = fields.get(key);
+            if (position == null && profile.reserve()) {
+                position = new Position(profile);
+                Position existing = fields.putIfAbsent(key, position);
+                if (existing != null) {
+                    profile.count.decrementAndGet();
+                    position = existing;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Gets the position of array elements.
+         * @return the position, or null if the profile is full.
+         */
+        Position elements() {
+            Position position = elements;
+            if (position == null && profile.reserve()) {
+                position = new Position(profile);
+                if (!ELEMENTS.compareAndSet(this, null, position)) {
+                    profile.count.decrementAndGet();
+                    position = elements;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * Gets the capacity hint.
+         * @return the expected size of the container at this position.
+         */
+        int hint() {
+            return hint;
+        }
+
+        /**
+         * Records the size of a container at this position.
+         * @param size the size.
+         */
+        void record(final int size) {
+            int current = hint;
+            hint = Math.max(size, current - (current >> 3));
+        }
+    }
+
+    /**
+     * The position of the root.
+     */
+    private final Position root = new Position(this);
+
+    /**
+     * The number of positions.
+     */
+    private final AtomicInteger count = new AtomicInteger(1);
+
+    /**
+     * The maximum number of positions.
+     */
+    private volatile int maxPositions = 4096;
+
+    /**
+     * Sets the maximum number of positions recorded.
+     *
+     * Defaults to 4096.
+     * @param maxPositions the maximum number of positions.
+     */
+    public void setMaxPositions(final int maxPositions) {
+        this.maxPositions = maxPositions;
+    }
+
+    /**
+     * Gets the number of positions recorded.
+     * @return the number of positions.
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Gets the capacity hint for a position.
+     * @param path the position, such as <code>items[].tags</code>.
+     * @return the capacity hint, or 0 if the position hasn't been seen.
+     * @throws IllegalArgumentException if the position is malformed.
+     */
+    public int getHint(final String path) {
+        Position position = root;
+        int i = 0;
+        int length = path.length();
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                if (!path.startsWith("[]", i)) {
+                    throw new IllegalArgumentException(
+                            "Invalid position: " + path);
+                }
+                position = position == null ? null : position.elements;
+                i += 2;
+            } else {
+                if (c == '.') {
+                    i++;
+                }
+                int end = i;
+                while (end < length
+                        && path.charAt(end) != '.'
+                        && path.charAt(end) != '[') {
+                    end++;
+                }
+                position = position == null
+                        ? null
+                        : position.fields.get(path.substring(i, end));
+                i = end;
+            }
+        }
+        return position == null ? 0 : position.hint;
+    }
+
+    /**
+     * Gets the position of the root.
+     * @return the root position.
+     */
+    Position root() {
+        return root;
+    }
+
+    /**
+     * Reserves room for a new position.
+     * @return true if there's room.
+     */
+    private boolean reserve() {
+        if (count.incrementAndGet() > maxPositions) {
+            count.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,816 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * A configurable JSOG parser.
+ *
+ * <p>Besides plain parsing, this parser can split large inputs into batches
+ * which are parsed concurrently. Top-level arrays are split on their element
+ * boundaries by a structural pre-scan, and newline delimited JSON (NDJSON) is
+ * split on line boundaries. Each batch is parsed on the configured executor,
+ * and the results are assembled in their original order.</p>
+ *
+ * <p>If no executor is configured, the batches are parsed on the calling
+ * thread. Input is consumed as a stream either way, so only a bounded number
+ * of unparsed batches are held in memory at once.</p>
+ *
+ * <p>Instances are thread-safe once configured.</p>
+ * @author jrodriguez
+ */
+public class JsogParser {
+
+    /**
+     * Scanner state: outside of strings and comments.
+     */
+    private static final int NORMAL = 0;
+
+    /**
+     * Scanner state: inside a string.
+     */
+    private static final int STRING = 1;
+
+    /**
+     * Scanner state: the previous character was an escape within a string.
+     */
+    private static final int ESCAPE = 2;
+
+    /**
+     * Scanner state: the previous character may have started a comment.
+     */
+    private static final int SLASH = 3;
+
+    /**
+     * Scanner state: inside a line comment.
+     */
+    private static final int LINE_COMMENT = 4;
+
+    /**
+     * Scanner state: inside a block comment.
+     */
+    private static final int BLOCK_COMMENT = 5;
+
+    /**
+     * Scanner state: the previous character may have ended a block comment.
+     */
+    private static final int BLOCK_STAR = 6;
+
+    /**
+     * Scanner event: an ordinary character.
+     */
+    private static final int CHARACTER = 0;
+
+    /**
+     * Scanner event: the opening bracket of the top-level array.
+     */
+    private static final int OPEN = 1;
+
+    /**
+     * Scanner event: a comma separating top-level array elements.
+     */
+    private static final int SEPARATOR = 2;
+
+    /**
+     * Scanner event: the closing bracket of the top-level array.
+     */
+    private static final int CLOSE = 3;
+
+    /**
+     * Finds the element boundaries of a top-level array.
+     *
+     * Strings, escapes and comments are tracked so that structural characters
+     * within them are ignored. Everything else is left to the real parser.
+     */
+    private static final class Scanner {
+
+        /**
+         * The current state.
+         */
+        private int state = NORMAL;
+
+        /**
+         * The character that opened the current string.
+         */
+        private char quote;
+
+        /**
+         * The nesting depth within the top-level array, or -1 if the array
+         * has not been opened yet.
+         */
+        private int depth = -1;
+
+        /**
+         * Whether there has been nothing but whitespace and comments since
+         * the array was opened, or since the last separator.
+         */
+        private boolean blank;
+
+        /**
+         * Whether a separator has been seen.
+         */
+        private boolean separated;
+
+        /**
+         * Whether the array has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Scans the next character.
+         * @param c the character.
+         * @return the scanner event for the character.
+         * @throws IOException if the input does not begin with an array, an
+         * element is missing, or anything but whitespace and comments
+         * follows the array.
+         */
+        int scan(final char c) throws IOException {
+            switch (state) {
+                case STRING:
+                    if (c == '\\') {
+                        state = ESCAPE;
+                    } else if (c == quote) {
+                        state = NORMAL;
+                    }
+                    return CHARACTER;
+
+                case ESCAPE:
+                    state = STRING;
+                    return CHARACTER;
+
+                case LINE_COMMENT:
+                    if (c == '\n' || c == '\r') {
+                        state = NORMAL;
+                    }
+                    return CHARACTER;
+
+                case BLOCK_COMMENT:
+                    if (c == '*') {
+                        state = BLOCK_STAR;
+                    }
+                    return CHARACTER;
+
+                case BLOCK_STAR:
+                    if (c == '/') {
+                        state = NORMAL;
+                    } else if (c != '*') {
+                        state = BLOCK_COMMENT;
+                    }
+                    return CHARACTER;
+
+                case SLASH:
+                    if (c == '/') {
+                        state = LINE_COMMENT;
+                        return CHARACTER;
+                    } else if (c == '*') {
+                        state = BLOCK_COMMENT;
+                        return CHARACTER;
+                    }
+
+                    // Not a comment after all, let the parser complain
+                    if (closed) {
+                        throw new IOException("Unexpected character `/'"
+                                + " after the array.");
+                    }
+                    state = NORMAL;
+                    return scanNormal(c);
+
+                default:
+                    return scanNormal(c);
+            }
+        }
+
+        /**
+         * Scans a character outside of strings and comments.
+         * @param c the character.
+         * @return the scanner event for the character.
+         * @throws IOException if the input does not begin with an array, an
+         * element is missing, or anything but whitespace and comments
+         * follows the array.
+         */
+        private int scanNormal(final char c) throws IOException {
+            if (c == '/') {
+                state = SLASH;
+                return CHARACTER;
+            }
+            if (Character.isWhitespace(c)) {
+                return CHARACTER;
+            }
+
+            // Only whitespace and comments may precede or follow the array
+            if (depth < 0) {
+                if (c == '[') {
+                    depth = 0;
+                    blank = true;
+                    return OPEN;
+                }
+                throw new IOException("Unexpected character `" + c
+                        + "'. Expected a top-level array.");
+            }
+            if (closed) {
+                throw new IOException("Unexpected character `" + c
+                        + "' after the array.");
+            }
+
+            // Batches are split at separators, so check for missing
+            // elements here rather than leave it to the batch parser
+            if (depth == 0 && (c == ',' || c == ']' || c == '}')) {
+                if (blank && (c == ',' || separated)) {
+                    throw new IOException("Unexpected character `" + c
+                            + "'. Expected a value.");
+                }
+                if (c == ',') {
+                    blank = true;
+                    separated = true;
+                    return SEPARATOR;
+                }
+                closed = true;
+                return CLOSE;
+            }
+            blank = false;
+
+            if (c == '"' || c == '\'') {
+                state = STRING;
+                quote = c;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                depth--;
+            }
+
+            return CHARACTER;
+        }
+    }
+
+    /**
+     * Parses batches in order and assembles their elements into one array.
+     */
+    private final class Assembler {
+
+        /**
+         * The assembled array.
+         */
+        private final JSOG result = JSOG.array();
+
+        /**
+         * Batches which have been submitted but not yet assembled.
+         */
+        private final LinkedList<Future<JSOG>> pending =
+                new LinkedList<Future<JSOG>>();
+
+        /**
+         * The profile for the batches, or null.
+         */
+        private final JsogParseProfile profile;
+
+        /**
+         * Constructs a new Assembler.
+         * @param profile the profile for the batches, or null.
+         */
+        Assembler(final JsogParseProfile profile) {
+            this.profile = profile;
+        }
+
+        /**
+         * Submits a batch for parsing.
+         *
+         * If too many batches are pending, this blocks until the oldest ones
+         * have been assembled.
+         * @param batch a serialized JSON array.
+         * @throws IOException if a batch could not be parsed.
+         */
+        void submit(final String batch) throws IOException {
+            Callable<JSOG> task = new Callable<JSOG>() {
+                public JSOG call() throws IOException {
+                    return parseValue(batch, profile);
+                }
+            };
+
+            if (executor == null) {
+                FutureTask<JSOG> future = new FutureTask<JSOG>(task);
+                future.run();
+                pending.add(future);
+            } else {
+                pending.add(executor.submit(task));
+            }
+
+            while (pending.size() > maxPendingBatches) {
+                assembleNext();
+            }
+        }
+
+        /**
+         * Waits for all of the pending batches and returns the result.
+         * @return the assembled array.
+         * @throws IOException if a batch could not be parsed.
+         */
+        JSOG finish() throws IOException {
+            while (!pending.isEmpty()) {
+                assembleNext();
+            }
+
+            return result;
+        }
+
+        /**
+         * Cancels any pending batches.
+         */
+        void cancel() {
+            for (Future<JSOG> future : pending) {
+                future.cancel(true);
+            }
+            pending.clear();
+        }
+
+        /**
+         * Waits for the oldest pending batch and appends its elements.
+         * @throws IOException if the batch could not be parsed.
+         */
+        private void assembleNext() throws IOException {
+            Future<JSOG> future = pending.removeFirst();
+            try {
+                result.appendAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                        "Interrupted while waiting for a batch.");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Parses a single JSON value on the calling thread.
+     * @param json the serialized JSON.
+     * @param profile the profile to use and update, or null for none.
+     * @return the resulting JSOG.
+     * @throws IOException if the JSON could not be parsed, or anything but
+     * whitespace and comments follows the value.
+     */
+    private JSOG parseValue(final String json,
+                            final JsogParseProfile profile)
+            throws IOException {
+        JsonParser parser = JSOG.getJsonFactory().createJsonParser(json);
+        try {
+            JSOG jsog =
+                    JsogReader.read(parser, lazyScalars ? json : null, profile);
+            if (parser.nextToken() != null) {
+                throw new IOException("Unexpected content after the value at"
+                        + " line " + parser.getCurrentLocation().getLineNr()
+                        + ".");
+            }
+            return jsog;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * The executor on which batches are parsed, or null for the calling
+     * thread.
+     */
+    private volatile ExecutorService executor;
+
+    /**
+     * The approximate number of characters in each batch.
+     */
+    private volatile int batchSize = 1 << 16;
+
+    /**
+     * The maximum number of batches waiting to be assembled.
+     */
+    private volatile int maxPendingBatches =
+            Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * The minimum length of a string before {@link #parse(String)} splits it.
+     */
+    private volatile int parallelThreshold = 1 << 20;
+
+    /**
+     * Whether numbers and strings are decoded lazily.
+     */
+    private volatile boolean lazyScalars;
+
+    /**
+     * The profiles for each document shape, or null if not profiling.
+     */
+    private volatile ConcurrentMap<String, JsogParseProfile> profiles;
+
+    /**
+     * Whether parsed JSOGs are deduplicated.
+     */
+    private volatile boolean deduplicate;
+
+    /**
+     * Enables deduplication of parsed JSOGs.
+     *
+     * When enabled, every parse result is passed through
+     * {@link JSOG#dedupe()}, so structurally equal values share one frozen
+     * instance. This suits large, repetitive documents which are read but not
+     * modified. Lazy scalars are decoded by deduplication. Defaults to false.
+     * @param deduplicate true to deduplicate parsed JSOGs.
+     */
+    public void setDeduplicate(final boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Enables lazy decoding of numbers and strings.
+     *
+     * <p>When enabled, numbers and double-quoted strings are kept as slices
+     * of the input until their value is first read, and are written out
+     * verbatim by {@link JSOG#toString()} if they never are. This saves time
+     * and memory for documents whose values are mostly passed through, at
+     * the cost of retaining the input text while any such slice remains
+     * undecoded.</p>
+     *
+     * <p>Defaults to false.</p>
+     * @param lazyScalars true to decode numbers and strings lazily.
+     */
+    public void setLazyScalars(final boolean lazyScalars) {
+        this.lazyScalars = lazyScalars;
+    }
+
+    /**
+     * Enables presizing of arrays and objects from previous parses.
+     *
+     * <p>When enabled, the sizes of the arrays and objects parsed are
+     * recorded in a {@link JsogParseProfile}, and later parses of the same
+     * shape create them with that capacity. Documents passed to
+     * {@link #parse(String, String)} are profiled by the given shape ID;
+     * all others share one profile.</p>
+     *
+     * <p>Defaults to false. Disabling profiling discards the profiles.</p>
+     * @param profiling true to profile parses.
+     */
+    public void setProfiling(final boolean profiling) {
+        if (!profiling) {
+            profiles = null;
+        } else if (profiles == null) {
+            profiles = new ConcurrentHashMap<String, JsogParseProfile>();
+        }
+    }
+
+    /**
+     * Gets the profile for a document shape.
+     * @param shapeId the shape ID, or null for the shared profile.
+     * @return the profile, or null if profiling is disabled.
+     */
+    public JsogParseProfile getProfile(final String shapeId) {
+        ConcurrentMap<String, JsogParseProfile> map = profiles;
+        if (map == null) {
+            return null;
+        }
+
+        String key = shapeId == null ? "" : shapeId;
+        JsogParseProfile profile = map.get(key);
+        if (profile == null) {
+            profile = new JsogParseProfile();
+            JsogParseProfile existing = map.putIfAbsent(key, profile);
+            if (existing != null) {
+                profile = existing;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Sets the executor on which batches are parsed.
+     *
+     * Defaults to null, in which case batches are parsed on the calling
+     * thread. The executor is not shut down by this parser.
+     * @param executor the executor to use.
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the approximate number of characters in each batch.
+     *
+     * A batch is closed at the first element boundary after it reaches this
+     * size. Defaults to 65536.
+     * @param batchSize the batch size, in characters.
+     * @throws IllegalArgumentException if the batch size is not positive.
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(
+                    "The batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the maximum number of batches waiting to be assembled.
+     *
+     * Reading pauses while this many batches are pending, which bounds the
+     * amount of unparsed input held in memory. Defaults to twice the number
+     * of available processors.
+     * @param maxPendingBatches the maximum number of pending batches.
+     * @throws IllegalArgumentException if the value is not positive.
+     */
+    public void setMaxPendingBatches(final int maxPendingBatches) {
+        if (maxPendingBatches <= 0) {
+            throw new IllegalArgumentException(
+                    "The maximum number of pending batches must be positive.");
+        }
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    /**
+     * Sets the minimum length of a string before {@link #parse(String)}
+     * parses it in parallel.
+     *
+     * Defaults to 1048576 characters.
+     * @param parallelThreshold the threshold, in characters.
+     */
+    public void setParallelThreshold(final int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Parses a serialized JSON string.
+     *
+     * If an executor is configured and the string is a top-level array of at
+     * least the parallel threshold in length, it's parsed in parallel.
+     * @param json the serialized JSON string.
+     * @return a JSOG representing the parsed string.
+     * @throws IOException if unable to parse the string, or anything but
+     * whitespace and comments follows its value.
+     * @see JSOG#parse(String)
+     */
+    public JSOG parse(final String json) throws IOException {
+        return parse(json, null);
+    }
+
+    /**
+     * Parses a serialized JSON string of a particular shape.
+     *
+     * Identical to {@link #parse(String)}, except that when profiling is
+     * enabled, the document is presized from, and recorded in, the profile
+     * for its shape.
+     * @param json the serialized JSON string.
+     * @param shapeId identifies documents of the same shape, such as the
+     * endpoint they come from, or null for the shared profile.
+     * @return a JSOG representing the parsed string.
+     * @throws IOException if unable to parse the string, or anything but
+     * whitespace and comments follows its value.
+     * @see #setProfiling(boolean)
+     */
+    public JSOG parse(final String json, final String shapeId)
+            throws IOException {
+
+        // If there's nothing to parse, create an empty JSON object.
+        if (json == null || json.length() == 0) {
+            return new JSOG();
+        }
+
+        JsogParseProfile profile = getProfile(shapeId);
+        if (executor != null
+                && json.length() >= parallelThreshold
+                && isArray(json)) {
+            return parseArray(new StringReader(json), profile);
+        }
+
+        return finish(parseValue(json, profile));
+    }
+
+    /**
+     * Parses a top-level JSON array, splitting it into batches of elements.
+     * @param reader the reader from which to read the array.
+     * @return a JSOG array containing the parsed elements.
+     * @throws IOException if the input could not be read or parsed, or is not
+     * an array followed by nothing but whitespace and comments.
+     */
+    public JSOG parseArray(final Reader reader) throws IOException {
+        return parseArray(reader, getProfile(null));
+    }
+
+    /**
+     * Parses a top-level JSON array in batches, using a profile.
+     * @param reader the reader from which to read the array.
+     * @param profile the profile for the batches, or null.
+     * @return a JSOG array containing the parsed elements.
+     * @throws IOException if the input could not be read or parsed, or is not
+     * an array.
+     */
+    private JSOG parseArray(final Reader reader,
+                            final JsogParseProfile profile)
+            throws IOException {
+        Assembler assembler = new Assembler(profile);
+        Scanner scanner = new Scanner();
+        StringBuilder batch = null;
+        char[] buffer = new char[8192];
+
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    switch (scanner.scan(c)) {
+                        case OPEN:
+                            batch = newBatch();
+                            break;
+
+                        case SEPARATOR:
+                            if (batch.length() >= batchSize) {
+                                batch.append(']');
+                                assembler.submit(batch.toString());
+                                batch = newBatch();
+                            } else {
+                                batch.append(c);
+                            }
+                            break;
+
+                        case CLOSE:
+                            batch.append(c);
+                            assembler.submit(batch.toString());
+                            batch = null;
+                            break;
+
+                        default:
+                            if (batch != null) {
+                                batch.append(c);
+                            }
+                            break;
+                    }
+                }
+            }
+
+            if (!scanner.closed) {
+                throw new IOException(
+                        "Unexpected end-of-input. Expected `]'.");
+            }
+            return finish(assembler.finish());
+        } finally {
+            assembler.cancel();
+        }
+    }
+
+    /**
+     * Parses newline delimited JSON (NDJSON).
+     *
+     * Each line must contain one complete JSON value, or nothing but
+     * whitespace and comments, in which case it's skipped.
+     * @param reader the reader from which to read the lines.
+     * @return a JSOG array containing one element per non-blank line.
+     * @throws IOException if the input could not be read or parsed, or a
+     * line holds more or less than one value.
+     */
+    public JSOG parseLines(final Reader reader) throws IOException {
+        Assembler assembler = new Assembler(getProfile(null));
+        BufferedReader lines = reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader);
+        StringBuilder batch = newBatch();
+
+        try {
+            String line;
+            int number = 0;
+            while ((line = lines.readLine()) != null) {
+                number++;
+                if (!holdsValue(line, number)) {
+                    continue;
+                }
+
+                if (batch.length() > 1) {
+                    batch.append(',');
+                }
+
+                // The newline terminates any trailing line comment
+                batch.append(line).append('\n');
+
+                if (batch.length() >= batchSize) {
+                    batch.append(']');
+                    assembler.submit(batch.toString());
+                    batch = newBatch();
+                }
+            }
+
+            if (batch.length() > 1) {
+                batch.append(']');
+                assembler.submit(batch.toString());
+            }
+
+            return finish(assembler.finish());
+        } finally {
+            assembler.cancel();
+        }
+    }
+
+    /**
+     * Checks that a line of NDJSON holds at most one value.
+     *
+     * Lines are joined into arrays for parsing, so a top-level comma would
+     * split a line into several elements, and an unclosed array or object
+     * would swallow the next line. Both are rejected here; anything else
+     * wrong with the line is left to the real parser.
+     * @param line the line.
+     * @param number the line number, for error messages.
+     * @return false if the line holds only whitespace and comments.
+     * @throws IOException if the line holds several values, or an
+     * incomplete one.
+     */
+    private static boolean holdsValue(final String line, final int number)
+            throws IOException {
+        Scanner scanner = new Scanner();
+        scanner.scan('[');
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (scanner.scan(c) != CHARACTER) {
+                throw new IOException("Unexpected character `" + c
+                        + "' on line " + number
+                        + ". Expected one value per line.");
+            }
+        }
+        if (scanner.depth != 0 || (scanner.state != NORMAL
+                && scanner.state != LINE_COMMENT)) {
+            throw new IOException("Line " + number + " is incomplete.");
+        }
+        return !scanner.blank;
+    }
+
+    /**
+     * Applies any post-processing to a parse result.
+     * @param result the parse result.
+     * @return the result.
+     */
+    private JSOG finish(final JSOG result) {
+        return deduplicate ? result.dedupe() : result;
+    }
+
+    /**
+     * Creates a new batch buffer, with the opening bracket in place.
+     * @return the batch buffer.
+     */
+    private StringBuilder newBatch() {
+        StringBuilder batch = new StringBuilder(batchSize + 256);
+        batch.append('[');
+        return batch;
+    }
+
+    /**
+     * Tests if the first significant character of a string opens an array.
+     * @param json the string to test.
+     * @return true if the string begins with an array.
+     */
+    private static boolean isArray(final String json) {
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '[';
+            }
+        }
+
+        return false;
+    }
+
+}
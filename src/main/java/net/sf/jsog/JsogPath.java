@@ -26,6 +26,12 @@
 package net.sf.jsog;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * A JSOG path expression.
@@ -34,34 +40,18 @@ import java.io.Serializable;
  * bracket syntax. For example:
  * <pre>$.foo['bar'].baz[0]</pre>
  * </p>
+ *
+ * <p>Paths may also match several values, using wildcards
+ * (<code>.*</code>, <code>[*]</code>), recursive descent
+ * (<code>..key</code>), slices (<code>[start:end:step]</code>), unions
+ * (<code>['a','b']</code>, <code>[0,2]</code>) and filters
+ * (<code>[?(@.price &gt; 10)]</code>). For example:
+ * <pre>$.orders[*].items[?(@.qty &gt;= 2)].sku</pre>
+ * Such paths are evaluated with {@link #iterator(JSOG)}.</p>
  * @author jrodriguez
  */
 public final class JsogPath implements Serializable {
 
-    private static enum Type {
-        root,
-        array,
-        object;
-    }
-
-    private static class Index {
-        private final int characters;
-        private final int index;
-
-        public Index(int characters, int index) {
-            this.characters = characters;
-            this.index = index;
-        }
-
-        public int getCharacters() {
-            return characters;
-        }
-
-        public int getIndex() {
-            return index;
-        }
-    }
-
     private static class Key {
         private final int characters;
         private final String key;
@@ -108,7 +98,12 @@ public final class JsogPath implements Serializable {
 
     }
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * The shared cache of compiled paths.
+     */
+    private static final JsogPathCache CACHE = new JsogPathCache();
 
     /**
      * Parses an escape character.
@@ -234,96 +229,225 @@ public final class JsogPath implements Serializable {
     }
 
     /**
-     * Parses a bracket-based child navigation path segment.
-     * @param path the path.
-     * @param offset the index in the path string.
-     * @return the resulting Key
+     * Parses a quoted string, which may contain escape characters.
+     * @param text the text being parsed.
+     * @param offset the index of the opening quote.
+     * @param out receives the unescaped string.
+     * @return the index of the closing quote.
      */
-    private static Key parseBracketKey(final String path, final int offset) {
-
-        // Get the full name/value of the child key/index
-        StringBuilder key = new StringBuilder();
-        Character quote = null;
-        int characters = 0;
-        for (int i = offset + 1; i < path.length(); i++) {
+    static int parseQuoted(final String text, final int offset,
+                           final StringBuilder out) {
+        char quote = text.charAt(offset);
+        for (int i = offset + 1; i < text.length(); i++) {
 
             // Get the next character
-            char c = path.charAt(i);
-
-            // If we don't have a quote yet, this should be
-            if (quote == null) {
-                if (c == '\'' || c == '"') {
-                    quote = c;
-                    continue;
-                } else {
-                    throw new IllegalArgumentException(
-                            "Keys must be quoted at index " + i);
-                }
-            }
+            char c = text.charAt(i);
 
             // Handle escape characters
             if (c == '\\') {
-                Escape escape = parseEscape(path, i);
+                Escape escape = parseEscape(text, i);
                 i += escape.getCharacters();
-                key.append(escape.getEscape());
-                characters += escape.getCharacters();
+                out.append(escape.getEscape());
                 continue;
             }
 
-            // This should be our quote character and right bracket
-            if (c == '\'' || c == '"') {
+            if (c == quote) {
+                return i;
+            }
 
-                // This is the last quote, it must be followed by a right bracket
-                if (i + 1 < path.length() && path.charAt(i + 1) == ']') {
-                    return new Key(key.length() + characters + 4,
-                                   key.toString());
-                }
+            out.append(c);
+        }
+
+        throw new IllegalArgumentException(
+                "Unexpected end-of-string. Expected `" + quote + "'.");
+    }
+
+    /**
+     * Parses a bracket-based path segment: keys, indexes, a wildcard, a
+     * slice, or a filter.
+     * @param path the path.
+     * @param offset the index of the left bracket.
+     * @param segments receives the segment.
+     * @return the index following the right bracket.
+     */
+    private static int parseBracket(final String path, final int offset,
+                                    final List<Segment> segments) {
+
+        if (path.length() <= offset + 1) {
+            throw new IllegalArgumentException(
+                    "Unexpected end-of-string at index " + offset + ".");
+        }
+        char c = path.charAt(offset + 1);
 
+        // Wildcard
+        if (c == '*') {
+            expectBracket(path, offset + 2);
+            segments.add(new WildcardSegment());
+            return offset + 3;
+        }
+
+        // Filter
+        if (c == '?') {
+            if (path.length() <= offset + 2 || path.charAt(offset + 2) != '(') {
                 throw new IllegalArgumentException(
-                        "Unexpected end-of-string. Expected a right bracket.");
+                        "Expected `(' at index " + (offset + 2) + ".");
             }
+            int end = JsogPathFilter.findEnd(path, offset + 2);
+            expectBracket(path, end + 1);
+            segments.add(new FilterSegment(JsogPathFilter.compile(
+                    path.substring(offset + 3, end))));
+            return end + 2;
+        }
 
-            key.append(c);
+        // Indexes and slices
+        if (Character.isDigit(c) || c == '-' || c == ':') {
+            return parseIndexes(path, offset, segments);
         }
 
-        throw new IllegalArgumentException(
-                "Unexpected end-of-string. Expected `" + quote + "'.");
+        // Keys
+        return parseKeys(path, offset, segments);
     }
 
     /**
-     * Parses an index within brackets.
-     * @param path the path string.
-     * @param offset the offset
-     * @return
+     * Ensures there's a right bracket at an index.
+     * @param path the path.
+     * @param index the index.
      */
-    private static Index parseIndex(final String path, final int offset) {
+    private static void expectBracket(final String path, final int index) {
+        if (index >= path.length()) {
+            throw new IllegalArgumentException(
+                    "Unexpected end-of-string. Expected `]'.");
+        }
+        if (path.charAt(index) != ']') {
+            throw new IllegalArgumentException(
+                    "Expected `]' at index " + index + ".");
+        }
+    }
 
-        // Build the index string
-        StringBuilder index = new StringBuilder();
-        for (int i = offset + 1; i < path.length(); i++) {
+    /**
+     * Parses an index, a union of indexes, or a slice within brackets.
+     * @param path the path.
+     * @param offset the index of the left bracket.
+     * @param segments receives the segment.
+     * @return the index following the right bracket.
+     */
+    private static int parseIndexes(final String path, final int offset,
+                                    final List<Segment> segments) {
 
-            // Get the next character
-            char c = path.charAt(i);
+        // Find the closing bracket
+        int end = path.indexOf(']', offset);
+        if (end < 0) {
+            throw new IllegalArgumentException(
+                    "Unexpected end-of-string. Expected `]'.");
+        }
+        String content = path.substring(offset + 1, end);
 
-            // If we've reached the closing bracket, we're done
-            if (c == ']') {
-                return new Index(index.length() + 2,
-                        Integer.parseInt(index.toString()));
+        // All the characters must be digits, signs and separators
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (!Character.isDigit(c) && c != '-' && c != ':' && c != ','
+                    && c != ' ') {
+                throw new IllegalArgumentException(
+                        "Keys must be quoted at index " + offset);
             }
+        }
 
-            // Add the digit to the index string
-            if (Character.isDigit(c)) {
-                index.append(c);
-                continue;
+        if (content.indexOf(':') >= 0) {
+            String[] parts = content.split(":", -1);
+            if (parts.length > 3) {
+                throw new IllegalArgumentException(
+                        "Slices have at most three parts at index " + offset);
+            }
+            Integer start = parseBound(parts[0]);
+            Integer stop = parseBound(parts[1]);
+            Integer step = parts.length > 2 ? parseBound(parts[2]) : null;
+            if (step != null && step.intValue() == 0) {
+                throw new IllegalArgumentException(
+                        "The slice step may not be zero at index " + offset);
             }
+            segments.add(new SliceSegment(start, stop, step));
+        } else if (content.indexOf(',') >= 0) {
+            String[] parts = content.split(",", -1);
+            Object[] members = new Object[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                members[i] = Integer.valueOf(parts[i].trim());
+            }
+            segments.add(new UnionSegment(members));
+        } else {
+            segments.add(new IndexSegment(Integer.parseInt(content.trim())));
+        }
+
+        return end + 1;
+    }
+
+    /**
+     * Parses an optional bound of a slice.
+     * @param bound the bound.
+     * @return the bound, or null if it's omitted.
+     */
+    private static Integer parseBound(final String bound) {
+        String trimmed = bound.trim();
+        return trimmed.length() == 0 ? null : Integer.valueOf(trimmed);
+    }
+
+    /**
+     * Parses a key, or a union of keys, within brackets.
+     * @param path the path.
+     * @param offset the index of the left bracket.
+     * @param segments receives the segment.
+     * @return the index following the right bracket.
+     */
+    private static int parseKeys(final String path, final int offset,
+                                 final List<Segment> segments) {
 
-            // All the characters must be digits
+        List<String> keys = new ArrayList<String>();
+        int i = offset + 1;
+        while (true) {
+
+            // Keys must be quoted
+            char c = path.charAt(i);
+            if (c != '\'' && c != '"') {
+                throw new IllegalArgumentException(
+                        "Keys must be quoted at index " + i);
+            }
+            StringBuilder key = new StringBuilder();
+            i = skipSpaces(path, parseQuoted(path, i, key) + 1);
+            keys.add(key.toString());
+
+            // The key must be followed by another, or a right bracket
+            if (i < path.length() && path.charAt(i) == ']') {
+                break;
+            }
+            if (i < path.length() && path.charAt(i) == ',') {
+                i = skipSpaces(path, i + 1);
+                if (i < path.length()) {
+                    continue;
+                }
+            }
             throw new IllegalArgumentException(
-                    "Keys must be quoted at index " + offset);
+                    "Unexpected end-of-string. Expected a right bracket.");
         }
 
-        throw new IllegalArgumentException(
-                "Unexpected end-of-string. Expected `]'.");
+        if (keys.size() == 1) {
+            segments.add(new KeySegment(keys.get(0)));
+        } else {
+            segments.add(new UnionSegment(keys.toArray()));
+        }
+        return i + 1;
+    }
+
+    /**
+     * Skips spaces.
+     * @param text the text.
+     * @param offset the index from which to skip.
+     * @return the index of the next character that isn't a space.
+     */
+    private static int skipSpaces(final String text, final int offset) {
+        int i = offset;
+        while (i < text.length() && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
     }
 
     /**
@@ -349,102 +473,95 @@ public final class JsogPath implements Serializable {
      * cases may cause unexpected behavior. Please submit feedback to
      * <a href="mailto:jeff@jeffrodriguez.com">Jeff Rodriguez</a>.
      * </p>
+     *
+     * Compiled paths are cached, so compiling the same string again is
+     * cheap.
      * @param path a JsogPath expression.
      * @return a reusable JsogPath object.
+     * @see #getCache()
      */
     public static JsogPath compile(String path) {
-        return compile(path, 0);
+        return CACHE.get(path);
     }
 
     /**
-     * Parses a JsogPath string, and returns the resulting JsogPath object.
-     *
-     * This method is used in recursion to child nodes.
-     * @param path the JsogPath string.
-     * @param offset the offset from which to parse.
+     * Parses a JsogPath string, bypassing the cache.
+     * @param path a JsogPath expression.
      * @return a reusable JsogPath object.
      */
-    private static JsogPath compile(String path, int offset) {
+    static JsogPath parse(String path) {
 
         if (path == null || path.length() == 0) {
             throw new IllegalArgumentException(
                     "The path may not be null or empty.");
         }
 
-        for (int pos = offset; pos < path.length(); pos++) {
+        // The very first character must be a $
+        if (path.charAt(0) != '$') {
+            throw new IllegalArgumentException(
+                    "Path expressions must begin with $.");
+        }
+
+        List<Segment> segments = new ArrayList<Segment>();
+        int pos = 1;
+        while (pos < path.length()) {
 
             // Get the character
             char c = path.charAt(pos);
 
-            // The very first character may be a $
-            if (pos == 0) {
-                if (c == '$') {
+            // Determine the type of navigation
+            if (c == '.') {
 
-                    // If this is it, return a root-type JsogPath
-                    if (path.length() == 1) {
-                        return new JsogPath();
+                // Recursive descent, followed by a dot or bracket segment
+                if (pos + 1 < path.length() && path.charAt(pos + 1) == '.') {
+                    segments.add(new DescentSegment());
+                    pos++;
+                    if (pos + 1 >= path.length()) {
+                        throw new IllegalArgumentException(
+                                "Unexpected end-of-string at index " + pos
+                                + ". Expected a key after `..'.");
+                    }
+                    if (path.charAt(pos + 1) == '[') {
+                        pos++;
+                        continue;
                     }
-
-                    // There's more
-                    continue;
-                } else {
-                    throw new IllegalArgumentException(
-                            "Path expressions must begin with $.");
                 }
-            }
-
-            // Determine the type of navigation
-            if (c == '.') {
 
                 // Dot navigation
-                Key key = parseDotKey(path, pos);
-
-                // Recurse, for the kids
-                return new JsogPath(key.getKey(), compile(path, pos + key.getCharacters()));
-            } else if (c == '[') {
-
-                // Bracket navigation
-                if (path.length() > pos + 1) {
-                    c = path.charAt(pos + 1);
+                if (pos + 1 < path.length() && path.charAt(pos + 1) == '*') {
+                    segments.add(new WildcardSegment());
+                    pos += 2;
                 } else {
-                    throw new IllegalArgumentException(
-                            "Unexpected end-of-string at index "
-                            + offset + ".");
+                    Key key = parseDotKey(path, pos);
+                    segments.add(new KeySegment(key.getKey()));
+                    pos += key.getCharacters();
                 }
+            } else if (c == '[') {
 
-                // This can either be an index or key
-                if (Character.isDigit(c)) {
-
-                    // Index navigation
-                    Index index = parseIndex(path, pos);
-
-                    // Recurse, for the kids
-                    return new JsogPath(
-                            index.getIndex(), compile(path, pos + index.getCharacters()));
-                } else {
-
-                    // Key navigation
-                    Key key = parseBracketKey(path, pos);
-
-                    // Recurse, for the kids
-                    return new JsogPath(
-                            key.getKey(), compile(path, pos + key.getCharacters()));
-                }
+                // Bracket navigation
+                pos = parseBracket(path, pos, segments);
             } else {
                 throw new IllegalArgumentException(
                         "Unexpected character `" + c + "' at index " + pos);
             }
         }
 
-        // We've reached the end of the string, we're done.
-        return null;
+        return new JsogPath(segments.toArray(new Segment[segments.size()]));
+    }
+
+    /**
+     * Gets the shared cache of compiled paths.
+     * @return the cache.
+     */
+    public static JsogPathCache getCache() {
+        return CACHE;
     }
 
     /**
      * Evaluates a path expression.
      *
-     * Note: This method always recompiles the path expression. If you will be
-     * using the same path multiple times, consider using a compiled JsogPath.
+     * Note: Compiled path expressions are cached, up to the cache's maximum
+     * size. Keeping a compiled JsogPath still saves the cache lookup.
      *
      * <p>
      * This is ALPHA quality code. The API is unlikely to change, and there are
@@ -463,110 +580,958 @@ public final class JsogPath implements Serializable {
     }
 
     /**
-     * This type of this JsogPath entry.
+     * The segments of the path, in order. Empty for the root.
+     */
+    private final Segment[] segments;
+
+    /**
+     * The same segments, if every one selects at most one value, or null.
      */
-    private final Type type;
+    private final DefiniteSegment[] steps;
 
     /**
-     * If this is an object entry, the key of the object.
+     * Constructs a new JsogPath.
+     * @param segments the segments of the path.
      */
-    private final String key;
+    private JsogPath(Segment[] segments) {
+        this.segments = segments;
+        DefiniteSegment[] definite = new DefiniteSegment[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            if (!(segments[i] instanceof DefiniteSegment)) {
+                definite = null;
+                break;
+            }
+            definite[i] = (DefiniteSegment) segments[i];
+        }
+        this.steps = definite;
+    }
 
     /**
-     * If this is an array entry, the index of the array.
+     * Tests if this path identifies a single value.
+     *
+     * Paths using wildcards, recursive descent, slices, unions or filters may
+     * match any number of values, and can only be evaluated by
+     * {@link #iterator(JSOG)}.
+     * @return true if the path uses only keys and indexes.
      */
-    private final int index;
+    public boolean isDefinite() {
+        return steps != null;
+    }
 
     /**
-     * Used for child paths recursion.
+     * Ensures this path identifies a single value.
+     * @throws IllegalStateException if it doesn't.
      */
-    private final JsogPath child;
+    private void checkDefinite() {
+        if (steps == null) {
+            throw new IllegalStateException("The path " + this
+                    + " may match several values. Use iterator(JSOG).");
+        }
+    }
 
     /**
-     * Constructs a root-type instance.
+     * Evaluates the path on a JSOG.
+     *
+     * Missing keys are created along the way, as they would be by
+     * {@link JSOG#get(String)}.
+     * @param jsog the JSOG on which to evaluate the path.
+     * @return the result of the evaluated path.
+     * @throws IllegalStateException if the path is not definite.
+     * @see #lookup(JSOG)
      */
-    private JsogPath() {
-        type = Type.root;
-        key = null;
-        index = 0;
-        this.child = null;
+    public JSOG evaluate(JSOG jsog) {
+        checkDefinite();
+
+        // Read as far as the path exists, without creating anything
+        Object value = jsog;
+        int i = 0;
+        for (; i < steps.length; i++) {
+            Object next = steps[i].step(unwrap(value));
+            if (next == null) {
+                break;
+            }
+            value = next;
+        }
+
+        // Create the rest
+        JSOG result = JSOG.wrap(value);
+        for (; i < steps.length; i++) {
+            result = steps[i].vivify(result);
+        }
+        return result;
     }
 
     /**
-     * Constructs a new JsogPath object-type instance.
-     * @param key the object key.
-     * @param child the child JsogPath.
+     * Evaluates the path on a JSOG, without modifying it.
+     * @param jsog the JSOG on which to evaluate the path.
+     * @return the result of the evaluated path, or null if any part of the
+     *         path doesn't exist.
+     * @throws IllegalStateException if the path is not definite.
+     * @see #evaluate(JSOG)
      */
-    private JsogPath(String key, JsogPath child) {
-        this.type = Type.object;
-        this.index = 0;
-        this.key = key;
-        this.child = child;
+    public JSOG lookup(JSOG jsog) {
+        checkDefinite();
+        Object value = find(jsog);
+        return value == null ? null : JSOG.wrap(value);
     }
 
     /**
-     * Constructs a new JsogPath array-type instance.
-     * @param index the array index.
-     * @param child the child JsogPath.
+     * Ensures this path identifies a single value other than the root, so
+     * it can be written to.
+     * @throws IllegalStateException if the path is not definite.
+     * @throws IllegalArgumentException if the path is the root.
      */
-    private JsogPath(int index, JsogPath child) {
-        this.type = Type.array;
-        this.key = null;
-        this.index = index;
-        this.child = child;
+    void checkWritable() {
+        checkDefinite();
+        if (segments.length == 0) {
+            throw new IllegalArgumentException(
+                    "The root can't be set or removed.");
+        }
     }
 
     /**
-     * Evaluates the path on a JSOG.
-     * @param jsog the JSOG on which to evaluate the path.
-     * @return the result of the evaluated path.
+     * Stores a value at this path, creating any missing objects and arrays.
+     *
+     * The path is followed as far as it exists. The missing remainder is
+     * built detached, around the value, and attached with a single write.
+     * Arrays are padded with nulls up to an index past their end.
+     * @param jsog the JSOG in which to store the value.
+     * @param value the value: a primitive, JSOG, Map or List.
+     * @return the JSOG.
+     * @throws IllegalStateException if the path is not definite, or leads
+     *         through a value that is not null, an object or an array.
+     * @throws IllegalArgumentException if the path is the root, or the value
+     *         can't be stored in a JSOG.
+     * @throws IndexOutOfBoundsException if a negative index is out of range.
+     * @see JsogPathBatch
      */
-    public JSOG evaluate(JSOG jsog) {
-        JSOG result;
-        if (type == Type.root) {
-            return jsog;
+    public JSOG set(JSOG jsog, Object value) {
+        checkWritable();
+        if (!JSOG.isStorable(value)) {
+            throw new IllegalArgumentException(
+                    "This method applies only to primitive"
+                    + " types and other JSOG objects, not: "
+                    + value.getClass().toString());
         }
 
-        if (type == Type.array) {
-            result = jsog.get(index);
-        } else {
-            result = jsog.get(key);
+        // Follow the path as far as it exists
+        int last = segments.length - 1;
+        JSOG parent = jsog;
+        int i = 0;
+        for (; i < last; i++) {
+            Object child = step(parent, segment(i));
+            if (child == null) {
+                break;
+            }
+            parent = JSOG.wrap(child);
+        }
+
+        // Build the rest from the bottom up
+        Object chain = value;
+        for (int j = last; j > i; j--) {
+            JSOG container = parent.newChild();
+            store(container, segment(j), chain);
+            chain = container;
         }
 
-        // Recurse into the child if there is one
+        store(parent, segment(i), chain);
+        return jsog;
+    }
+
+    /**
+     * Removes the value at this path.
+     * @param jsog the JSOG from which to remove the value.
+     * @return the value that was removed, or null if it doesn't exist.
+     * @throws IllegalStateException if the path is not definite.
+     * @throws IllegalArgumentException if the path is the root.
+     * @throws UnsupportedOperationException if the JSOG is frozen.
+     */
+    public Object remove(JSOG jsog) {
+        checkWritable();
+        int last = segments.length - 1;
+        JSOG parent = jsog;
+        for (int i = 0; i < last; i++) {
+            Object child = step(parent, segment(i));
+            if (child == null) {
+                return null;
+            }
+            parent = JSOG.wrap(child);
+        }
+        return delete(parent, segment(last));
+    }
+
+    /**
+     * Follows a key or index, creating it if it doesn't exist.
+     * @param parent the JSOG to follow the key or index from.
+     * @param segment a String key, or an Integer index.
+     * @return the existing or created JSOG.
+     * @throws IllegalStateException if the parent is not null, an object or
+     *         an array of the right kind.
+     */
+    static JSOG descend(JSOG parent, Object segment) {
+        Object child = step(parent, segment);
         if (child != null) {
-            return child.evaluate(result);
+            return JSOG.wrap(child);
         }
 
-        // No child, just return the result
+        JSOG created = parent.newChild();
+        store(parent, segment, created);
+        return created;
+    }
+
+    /**
+     * Stores a value under a key or index.
+     * @param parent the JSOG in which to store the value.
+     * @param segment a String key, or an Integer index.
+     * @param value the value.
+     * @throws IllegalStateException if the parent is not null, an object or
+     *         an array of the right kind.
+     */
+    static void store(JSOG parent, Object segment, Object value) {
+        Object raw = parent.rawValue();
+        if (segment instanceof String) {
+            if (raw != null && !(raw instanceof Map<?, ?>)) {
+                throw new IllegalStateException("Not null or an object,"
+                        + " and will not be implicitly coerced.");
+            }
+            parent.put((String) segment, value);
+        } else {
+            if (raw != null && !(raw instanceof List<?>)) {
+                throw new IllegalStateException("Not null or an array,"
+                        + " and will not be implicitly coerced.");
+            }
+            parent.setElement((Integer) segment, value);
+        }
+    }
+
+    /**
+     * Removes the value under a key or index.
+     * @param parent the JSOG from which to remove the value.
+     * @param segment a String key, or an Integer index.
+     * @return the value that was removed, or null if it doesn't exist.
+     */
+    static Object delete(JSOG parent, Object segment) {
+        Object raw = parent.rawValue();
+        if (segment instanceof String) {
+            return raw instanceof Map<?, ?>
+                    ? parent.remove((String) segment)
+                    : null;
+        }
+        if (!(raw instanceof List<?>)) {
+            return null;
+        }
+        int size = ((List<?>) raw).size();
+        int index = (Integer) segment;
+        int i = index < 0 ? index + size : index;
+        return i >= 0 && i < size ? parent.remove(i) : null;
+    }
+
+    /**
+     * Gets the number of segments in this path.
+     * @return the number of segments, zero for the root.
+     */
+    int length() {
+        return segments.length;
+    }
+
+    /**
+     * Gets the key or index of a segment of a definite path.
+     * @param i the index of the segment.
+     * @return a String key, or an Integer index.
+     * @throws IllegalStateException if the path is not definite.
+     */
+    Object segment(int i) {
+        checkDefinite();
+        Segment segment = segments[i];
+        return segment instanceof KeySegment
+                ? (Object) ((KeySegment) segment).key
+                : (Object) Integer.valueOf(((IndexSegment) segment).index);
+    }
+
+    /**
+     * Follows a key or index.
+     * @param value a JSOG or a raw value.
+     * @param segment a String key, or an Integer index.
+     * @return the JSOG or raw value found, or null if it doesn't exist.
+     */
+    static Object step(Object value, Object segment) {
+        Object raw = unwrap(value);
+        if (segment instanceof String) {
+            return raw instanceof Map<?, ?> ? ((Map<?, ?>) raw).get(segment) : null;
+        }
+        return IndexSegment.element(raw, (Integer) segment);
+    }
+
+    /**
+     * Evaluates a definite path on a value, without modifying it.
+     * @param value a JSOG or a raw value.
+     * @return the JSOG or raw value found, or null if it doesn't exist.
+     * @throws IllegalStateException if the path is not definite.
+     */
+    Object find(Object value) {
+        checkDefinite();
+        Object result = value;
+        for (DefiniteSegment segment : steps) {
+            result = segment.step(unwrap(result));
+            if (result == null) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the values matched by the path, in document order.
+     *
+     * <p>Matches are found lazily, in a single traversal, as the iterator
+     * is advanced. Nothing is created, and the JSOG must not be modified
+     * until iteration is complete.</p>
+     * @param jsog the JSOG on which to evaluate the path.
+     * @return an iterator over the matching values.
+     */
+    public Iterator<JSOG> iterator(JSOG jsog) {
+        return new Matches(jsog);
+    }
+
+    /**
+     * Gets an Iterable for the values matched by the path.
+     * @param jsog the JSOG on which to evaluate the path.
+     * @return an Iterable over the matching values.
+     * @see #iterator(JSOG)
+     */
+    public Iterable<JSOG> iterable(final JSOG jsog) {
+        return new Iterable<JSOG>() {
+            public Iterator<JSOG> iterator() {
+                return JsogPath.this.iterator(jsog);
+            }
+        };
+    }
+
+    /**
+     * Evaluates the path on a tape, without decoding it.
+     * @param tape the tape on which to evaluate the path.
+     * @return the result of the evaluated path.
+     * @throws IllegalStateException if the path is not definite.
+     */
+    JsogTape evaluate(JsogTape tape) {
+        checkDefinite();
+        JsogTape result = tape;
+        for (Segment segment : segments) {
+            if (segment instanceof IndexSegment) {
+                result = result.get(((IndexSegment) segment).index);
+            } else {
+                result = result.get(((KeySegment) segment).key);
+            }
+        }
         return result;
     }
 
+    /**
+     * Gets the backing value of a JSOG, parsing raw JSON if necessary.
+     * @param value a JSOG or a raw value.
+     * @return the raw value.
+     */
+    static Object unwrap(Object value) {
+        Object raw = value;
+        while (raw instanceof JSOG) {
+            JSOG jsog = (JSOG) raw;
+            raw = jsog.unresolvedValue();
+
+            // Raw JSON has to be parsed to navigate into it
+            if (raw instanceof RawJson) {
+                raw = jsog.rawValue();
+            }
+        }
+        return raw;
+    }
+
+    /**
+     * Iterates over the children of an array or object.
+     * @param raw the raw value.
+     * @return the values, which are empty for anything else.
+     */
+    private static Iterator<?> children(Object raw) {
+        if (raw instanceof Map<?, ?>) {
+            return ((Map<?, ?>) raw).values().iterator();
+        } else if (raw instanceof List<?>) {
+            return ((List<?>) raw).iterator();
+        }
+        return Collections.emptyList().iterator();
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("$");
 
-        JsogPath jp = this;
-        while (jp != null) {
-            if (jp.type == Type.root) {
-                return sb.toString();
+        for (Segment segment : segments) {
+            segment.appendTo(sb);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Finds the values matched by a path, depth first.
+     *
+     * Level n of the stack holds the candidates which matched the first n
+     * segments; candidates at the last level are matches.
+     */
+    private final class Matches implements Iterator<JSOG> {
+
+        /**
+         * The candidates at each level.
+         */
+        private final List<Iterator<?>> stack = new ArrayList<Iterator<?>>();
+
+        /**
+         * The next match, if it has been found.
+         */
+        private Object next;
+
+        /**
+         * True if the next match has been found.
+         */
+        private boolean ready;
+
+        /**
+         * Constructs a new Matches.
+         * @param root the JSOG on which the path is evaluated.
+         */
+        Matches(final JSOG root) {
+            stack.add(Collections.singletonList(root).iterator());
+        }
+
+        public boolean hasNext() {
+            if (ready) {
+                return true;
+            }
+
+            while (!stack.isEmpty()) {
+                int level = stack.size() - 1;
+                Iterator<?> candidates = stack.get(level);
+                if (!candidates.hasNext()) {
+                    stack.remove(level);
+                    continue;
+                }
+
+                Object candidate = candidates.next();
+                if (level == segments.length) {
+                    next = candidate;
+                    ready = true;
+                    return true;
+                }
+                stack.add(segments[level].select(unwrap(candidate)));
+            }
+            return false;
+        }
+
+        public JSOG next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            Object match = next;
+            next = null;
+            return JSOG.wrap(match);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A step of a path.
+     */
+    private abstract static class Segment implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Selects the values matched by this segment.
+         * @param raw the raw value of the current JSOG.
+         * @return the matching values, found lazily.
+         */
+        abstract Iterator<?> select(Object raw);
+
+        /**
+         * Appends this segment's expression.
+         * @param sb the StringBuilder to append to.
+         */
+        abstract void appendTo(StringBuilder sb);
+    }
+
+    /**
+     * A step which selects at most one value: a key or an index.
+     */
+    private abstract static class DefiniteSegment extends Segment {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Follows this segment.
+         * @param raw the raw value of the current JSOG.
+         * @return the value found, or null if it doesn't exist.
+         */
+        abstract Object step(Object raw);
+
+        /**
+         * Follows this segment, creating it if necessary.
+         * @param jsog the current JSOG.
+         * @return the JSOG found or created.
+         */
+        abstract JSOG vivify(JSOG jsog);
+
+        @Override
+        Iterator<?> select(Object raw) {
+            Object value = step(raw);
+            return value == null
+                    ? Collections.emptyList().iterator()
+                    : Collections.singletonList(value).iterator();
+        }
+    }
+
+    /**
+     * A lazily computed selection of values.
+     */
+    private abstract static class Selection implements Iterator<Object> {
+
+        /**
+         * Marks the end of the selection.
+         */
+        static final Object END = new Object();
+
+        /**
+         * The next value, if it has been computed.
+         */
+        private Object next;
+
+        /**
+         * True if the next value has been computed.
+         */
+        private boolean ready;
+
+        /**
+         * Computes the next value.
+         * @return the next value, or END.
+         */
+        abstract Object compute();
+
+        public boolean hasNext() {
+            if (!ready) {
+                next = compute();
+                ready = true;
             }
+            return next != END;
+        }
 
-            if (jp.type == Type.array) {
-                sb.append('[');
-                sb.append(jp.index);
-                sb.append(']');
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return next;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * An object key: <code>.key</code> or <code>['key']</code>.
+     */
+    private static final class KeySegment extends DefiniteSegment {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The key.
+         */
+        private final String key;
+
+        /**
+         * Constructs a new KeySegment.
+         * @param key the key.
+         */
+        KeySegment(final String key) {
+            this.key = key;
+
+            // Strings cache their hash, so lookups needn't compute it
+            key.hashCode();
+        }
+
+        @Override
+        Object step(Object raw) {
+            return raw instanceof Map<?, ?> ? ((Map<?, ?>) raw).get(key) : null;
+        }
+
+        @Override
+        JSOG vivify(JSOG jsog) {
+            return jsog.get(key);
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append("[\"");
+            sb.append(escape(key));
+            sb.append("\"]");
+        }
+    }
+
+    /**
+     * An array index: <code>[n]</code>. Negative indexes count from the end.
+     */
+    private static final class IndexSegment extends DefiniteSegment {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The index.
+         */
+        private final int index;
+
+        /**
+         * Constructs a new IndexSegment.
+         * @param index the index.
+         */
+        IndexSegment(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        Object step(Object raw) {
+            return element(raw, index);
+        }
+
+        /**
+         * Gets an element of an array.
+         * @param raw the raw value of the current JSOG.
+         * @param index the index, which may count from the end.
+         * @return the element, or null if it doesn't exist.
+         */
+        static Object element(Object raw, int index) {
+            if (!(raw instanceof List<?>)) {
+                return null;
+            }
+            List<?> list = (List<?>) raw;
+            int i = index < 0 ? index + list.size() : index;
+            return i >= 0 && i < list.size() ? list.get(i) : null;
+        }
+
+        @Override
+        JSOG vivify(JSOG jsog) {
+            return jsog.get(index);
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append('[');
+            sb.append(index);
+            sb.append(']');
+        }
+    }
+
+    /**
+     * Every value of an object or array: <code>.*</code> or
+     * <code>[*]</code>.
+     */
+    private static final class WildcardSegment extends Segment {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        Iterator<?> select(Object raw) {
+            return children(raw);
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append("[*]");
+        }
+    }
+
+    /**
+     * A value and every object and array nested within it, for the
+     * following segment to select from: <code>..</code>.
+     */
+    private static final class DescentSegment extends Segment {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        Iterator<?> select(final Object raw) {
+            return new Selection() {
+
+                /**
+                 * The children of the containers being descended into.
+                 */
+                private final List<Iterator<?>> stack =
+                        new ArrayList<Iterator<?>>();
+
+                /**
+                 * The value itself, until it has been returned.
+                 */
+                private Object start = raw;
+
+                @Override
+                Object compute() {
+                    if (start != null) {
+                        Object value = start;
+                        start = null;
+                        stack.add(children(value));
+                        return value;
+                    }
+
+                    while (!stack.isEmpty()) {
+                        Iterator<?> it = stack.get(stack.size() - 1);
+                        if (!it.hasNext()) {
+                            stack.remove(stack.size() - 1);
+                            continue;
+                        }
+
+                        Object child = unwrap(it.next());
+                        if (child instanceof Map<?, ?>
+                                || child instanceof List<?>) {
+                            stack.add(children(child));
+                            return child;
+                        }
+                    }
+                    return END;
+                }
+            };
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append("..");
+        }
+    }
+
+    /**
+     * A range of array elements: <code>[start:end:step]</code>.
+     *
+     * Bounds may be omitted or negative, as in Python.
+     */
+    private static final class SliceSegment extends Segment {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first index, or null.
+         */
+        private final Integer start;
+
+        /**
+         * The index to stop at, exclusive, or null.
+         */
+        private final Integer end;
+
+        /**
+         * The step, or null for 1.
+         */
+        private final Integer step;
+
+        /**
+         * Constructs a new SliceSegment.
+         * @param start the first index, or null.
+         * @param end the index to stop at, or null.
+         * @param step the step, or null.
+         */
+        SliceSegment(final Integer start, final Integer end,
+                     final Integer step) {
+            this.start = start;
+            this.end = end;
+            this.step = step;
+        }
+
+        /**
+         * Resolves a bound against the size of an array.
+         * @param bound the bound, or null.
+         * @param size the size of the array.
+         * @param otherwise the value of an omitted bound.
+         * @param min the smallest allowed value.
+         * @param max the largest allowed value.
+         * @return the resolved bound.
+         */
+        private static int bound(Integer bound, int size, int otherwise,
+                                 int min, int max) {
+            if (bound == null) {
+                return otherwise;
+            }
+            int i = bound < 0 ? bound + size : bound;
+            return Math.max(min, Math.min(max, i));
+        }
+
+        @Override
+        Iterator<?> select(Object raw) {
+            if (!(raw instanceof List<?>)) {
+                return Collections.emptyList().iterator();
+            }
+            final List<?> list = (List<?>) raw;
+            final int size = list.size();
+            final int by = step == null ? 1 : step;
+            final int first;
+            final int stop;
+            if (by > 0) {
+                first = bound(start, size, 0, 0, size);
+                stop = bound(end, size, size, 0, size);
             } else {
-                sb.append("[\"");
-                sb.append(escape(jp.key));
-                sb.append("\"]");
+                first = bound(start, size, size - 1, -1, size - 1);
+                stop = bound(end, size, -1, -1, size - 1);
             }
 
-            // Iterate over the next child
-            jp = jp.child;
+            return new Selection() {
+
+                /**
+                 * The next index.
+                 */
+                private int i = first;
+
+                @Override
+                Object compute() {
+                    if (by > 0 ? i >= stop : i <= stop) {
+                        return END;
+                    }
+                    Object value = list.get(i);
+                    i += by;
+                    return value;
+                }
+            };
         }
 
-        return sb.toString();
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append('[');
+            if (start != null) {
+                sb.append(start);
+            }
+            sb.append(':');
+            if (end != null) {
+                sb.append(end);
+            }
+            if (step != null) {
+                sb.append(':');
+                sb.append(step);
+            }
+            sb.append(']');
+        }
+    }
+
+    /**
+     * Several keys or indexes: <code>['a','b']</code> or
+     * <code>[0,2]</code>.
+     */
+    private static final class UnionSegment extends Segment {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The keys (Strings) and indexes (Integers).
+         */
+        private final Object[] members;
+
+        /**
+         * Constructs a new UnionSegment.
+         * @param members the keys and indexes.
+         */
+        UnionSegment(final Object[] members) {
+            this.members = members;
+        }
+
+        @Override
+        Iterator<?> select(final Object raw) {
+            return new Selection() {
+
+                /**
+                 * The next member.
+                 */
+                private int i;
+
+                @Override
+                Object compute() {
+                    while (i < members.length) {
+                        Object member = members[i++];
+                        Object value;
+                        if (member instanceof String) {
+                            value = raw instanceof Map<?, ?>
+                                    ? ((Map<?, ?>) raw).get(member)
+                                    : null;
+                        } else {
+                            value = IndexSegment.element(raw, (Integer) member);
+                        }
+                        if (value != null) {
+                            return value;
+                        }
+                    }
+                    return END;
+                }
+            };
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append('[');
+            for (int i = 0; i < members.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                if (members[i] instanceof String) {
+                    sb.append('"');
+                    sb.append(escape((String) members[i]));
+                    sb.append('"');
+                } else {
+                    sb.append(members[i]);
+                }
+            }
+            sb.append(']');
+        }
+    }
+
+    /**
+     * The values of an object or array matching a predicate:
+     * <code>[?(@.price &gt; 10)]</code>.
+     */
+    private static final class FilterSegment extends Segment {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The predicate.
+         */
+        private final JsogPathFilter filter;
+
+        /**
+         * Constructs a new FilterSegment.
+         * @param filter the predicate.
+         */
+        FilterSegment(final JsogPathFilter filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        Iterator<?> select(Object raw) {
+            final Iterator<?> it = children(raw);
+            return new Selection() {
+                @Override
+                Object compute() {
+                    while (it.hasNext()) {
+                        Object value = it.next();
+                        if (filter.matches(value)) {
+                            return value;
+                        }
+                    }
+                    return END;
+                }
+            };
+        }
+
+        @Override
+        void appendTo(StringBuilder sb) {
+            sb.append("[?(");
+            sb.append(filter);
+            sb.append(")]");
+        }
     }
 
 }
@@ -0,0 +1,285 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A batch of writes to definite paths, applied to a JSOG together.
+ *
+ * <p>The writes are sorted by path, so writes sharing a prefix are applied
+ * one after another, and each shared prefix is navigated once. Missing
+ * objects and arrays along the way are created as they would be by
+ * {@link JsogPath#set(JSOG, Object)}.</p>
+ *
+ * <p>Because of the sorting, a write to a path is applied before the writes
+ * below it, whatever order they were added in. Writes to the same path are
+ * applied in the order they were added. A batch can be applied any number
+ * of times.</p>
+ * @author jrodriguez
+ */
+public final class JsogPathBatch {
+
+    /**
+     * A single write.
+     */
+    private static final class Operation {
+
+        /**
+         * The path written to.
+         */
+        private final JsogPath path;
+
+        /**
+         * The value to store, unless this is a removal.
+         */
+        private final Object value;
+
+        /**
+         * Whether the value at the path is removed.
+         */
+        private final boolean remove;
+
+        /**
+         * Constructs a new Operation.
+         * @param path the path written to.
+         * @param value the value to store.
+         * @param remove whether the value at the path is removed.
+         */
+        Operation(final JsogPath path, final Object value,
+                  final boolean remove) {
+            this.path = path;
+            this.value = value;
+            this.remove = remove;
+        }
+    }
+
+    /**
+     * Orders operations by path, keys before indexes, and a path before the
+     * paths below it.
+     */
+    private static final Comparator<Operation> ORDER =
+            new Comparator<Operation>() {
+        @Override
+        public int compare(final Operation a, final Operation b) {
+            int shared = shared(a.path, b.path);
+            if (shared < a.path.length() && shared < b.path.length()) {
+                Object x = a.path.segment(shared);
+                Object y = b.path.segment(shared);
+                if (x instanceof String) {
+                    return y instanceof String
+                            ? ((String) x).compareTo((String) y)
+                            : -1;
+                }
+                return y instanceof String
+                        ? 1
+                        : ((Integer) x).compareTo((Integer) y);
+            }
+            return a.path.length() - b.path.length();
+        }
+    };
+
+    /**
+     * The operations.
+     */
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    /**
+     * Whether the operations are in order.
+     */
+    private boolean sorted = true;
+
+    /**
+     * Adds a write storing a value at a path.
+     * @param path the path.
+     * @param value the value: a primitive, JSOG, Map or List.
+     * @return this batch.
+     * @throws IllegalStateException if the path is not definite.
+     * @throws IllegalArgumentException if the path is the root, or the value
+     *         can't be stored in a JSOG.
+     */
+    public JsogPathBatch set(final JsogPath path, final Object value) {
+        path.checkWritable();
+        if (!JSOG.isStorable(value)) {
+            throw new IllegalArgumentException(
+                    "This method applies only to primitive"
+                    + " types and other JSOG objects, not: "
+                    + value.getClass().toString());
+        }
+        return add(new Operation(path, value, false));
+    }
+
+    /**
+     * Adds a write storing a value at a path expression.
+     * @param path the path expression.
+     * @param value the value: a primitive, JSOG, Map or List.
+     * @return this batch.
+     * @throws IllegalStateException if the path is not definite.
+     * @throws IllegalArgumentException if the path is invalid or the root,
+     *         or the value can't be stored in a JSOG.
+     */
+    public JsogPathBatch set(final String path, final Object value) {
+        return set(JsogPath.compile(path), value);
+    }
+
+    /**
+     * Adds a removal of the value at a path.
+     * @param path the path.
+     * @return this batch.
+     * @throws IllegalStateException if the path is not definite.
+     * @throws IllegalArgumentException if the path is the root.
+     */
+    public JsogPathBatch remove(final JsogPath path) {
+        path.checkWritable();
+        return add(new Operation(path, null, true));
+    }
+
+    /**
+     * Adds a removal of the value at a path expression.
+     * @param path the path expression.
+     * @return this batch.
+     * @throws IllegalStateException if the path is not definite.
+     * @throws IllegalArgumentException if the path is invalid or the root.
+     */
+    public JsogPathBatch remove(final String path) {
+        return remove(JsogPath.compile(path));
+    }
+
+    /**
+     * Gets the number of writes in the batch.
+     * @return the number of writes.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Removes every write from the batch.
+     * @return this batch.
+     */
+    public JsogPathBatch clear() {
+        operations.clear();
+        sorted = true;
+        return this;
+    }
+
+    /**
+     * Applies the writes to a JSOG.
+     *
+     * This operation is not atomic, if one write causes an exception, the
+     * writes before it will have been applied.
+     * @param jsog the JSOG to write to.
+     * @return the JSOG.
+     * @throws IllegalStateException if a path leads through a value that is
+     *         not null, an object or an array.
+     * @throws IndexOutOfBoundsException if a negative index is out of range.
+     * @throws UnsupportedOperationException if the JSOG is frozen.
+     */
+    public JSOG apply(final JSOG jsog) {
+        if (!sorted) {
+            Collections.sort(operations, ORDER);
+            sorted = true;
+        }
+
+        // The JSOGs along the previous path, by depth
+        List<JSOG> stack = new ArrayList<JSOG>();
+        stack.add(jsog);
+
+        JsogPath previous = null;
+        for (Operation operation : operations) {
+            JsogPath path = operation.path;
+            int last = path.length() - 1;
+
+            // Keep the part of the previous path this one shares
+            if (previous != null) {
+                int depth = Math.min(shared(previous, path), last);
+                while (stack.size() > depth + 1) {
+                    stack.remove(stack.size() - 1);
+                }
+            }
+            previous = path;
+
+            // Navigate the rest
+            JSOG parent = stack.get(stack.size() - 1);
+            for (int i = stack.size() - 1; i < last; i++) {
+                Object segment = path.segment(i);
+                if (operation.remove) {
+                    Object child = JsogPath.step(parent, segment);
+                    if (child == null) {
+                        parent = null;
+                        break;
+                    }
+                    parent = JSOG.wrap(child);
+                } else {
+                    parent = JsogPath.descend(parent, segment);
+                }
+                stack.add(parent);
+            }
+
+            if (operation.remove) {
+                if (parent != null) {
+                    JsogPath.delete(parent, path.segment(last));
+                }
+            } else {
+                JsogPath.store(parent, path.segment(last), operation.value);
+            }
+        }
+
+        return jsog;
+    }
+
+    /**
+     * Adds an operation.
+     * @param operation the operation.
+     * @return this batch.
+     */
+    private JsogPathBatch add(final Operation operation) {
+        if (sorted && !operations.isEmpty()) {
+            Operation tail = operations.get(operations.size() - 1);
+            sorted = ORDER.compare(tail, operation) <= 0;
+        }
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * Counts the leading segments two paths have in common.
+     * @param a a path.
+     * @param b another path.
+     * @return the number of leading segments in common.
+     */
+    private static int shared(final JsogPath a, final JsogPath b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.segment(i).equals(b.segment(i))) {
+            i++;
+        }
+        return i;
+    }
+}
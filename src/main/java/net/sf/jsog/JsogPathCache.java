@@ -0,0 +1,262 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, concurrent cache of compiled path expressions.
+ *
+ * <p>{@link JsogPath#compile(String)}, and the methods which take path
+ * strings, look paths up in the shared instance before compiling them. Since
+ * compiled paths are immutable, they're shared by every caller.</p>
+ *
+ * <p>Once the cache holds more than its maximum size, paths are evicted in
+ * the order they were added, except that a path which has been used since it
+ * was last considered gets a second chance and goes to the back of the queue.
+ * It's meant for the working set of paths used by an application, which is
+ * usually small; paths built from request data should be compiled once and
+ * kept, rather than passed as strings.</p>
+ * @author jrodriguez
+ * @see JsogPath#getCache()
+ */
+public final class JsogPathCache {
+
+    /**
+     * A cached path.
+     */
+    private static final class Entry {
+
+        /**
+         * The path expression.
+         */
+        private final String path;
+
+        /**
+         * The compiled path.
+         */
+        private final JsogPath compiled;
+
+        /**
+         * True if the path has been used since it was last considered for
+         * eviction.
+         */
+        private volatile boolean referenced;
+
+        /**
+         * Constructs a new Entry.
+         * @param path the path expression.
+         * @param compiled the compiled path.
+         */
+        private Entry(final String path, final JsogPath compiled) {
+            this.path = path;
+            this.compiled = compiled;
+        }
+    }
+
+    /**
+     * The default maximum number of cached paths.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    /**
+     * The cached paths, by expression.
+     */
+    private final ConcurrentMap<String, Entry> paths =
+            new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The cached paths, in eviction order.
+     */
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * The maximum number of cached paths.
+     */
+    private volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    /**
+     * The number of lookups which found a path.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups which compiled a path.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The number of paths evicted.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructs a new JsogPathCache.
+     */
+    JsogPathCache() {
+    }
+
+    /**
+     * Gets a compiled path, compiling and caching it if necessary.
+     * @param path the path expression.
+     * @return the compiled path.
+     * @throws IllegalArgumentException if the path is invalid.
+     */
+    JsogPath get(final String path) {
+        if (path == null) {
+            return JsogPath.parse(path);
+        }
+
+        Entry entry = paths.get(path);
+        if (entry != null) {
+            entry.referenced = true;
+            hits.incrementAndGet();
+            return entry.compiled;
+        }
+
+        misses.incrementAndGet();
+        JsogPath compiled = JsogPath.parse(path);
+        int max = maximumSize;
+        if (max > 0) {
+            entry = new Entry(path, compiled);
+            Entry existing = paths.putIfAbsent(path, entry);
+            if (existing != null) {
+                // Another thread cached it first
+                return existing.compiled;
+            }
+            queue.offer(entry);
+            trim(max, entry);
+        }
+        return compiled;
+    }
+
+    /**
+     * Evicts paths until the cache is within its maximum size.
+     *
+     * Paths are taken from the head of the queue; a referenced path has its
+     * flag cleared and goes back on the tail. The path just added is never
+     * evicted, and once it has come round twice every other path has been
+     * considered, so trimming stops.
+     * @param max the maximum size.
+     * @param added the entry just added, or null.
+     */
+    private void trim(final int max, final Entry added) {
+        int skipped = 0;
+        Entry entry;
+        while (paths.size() > max && (entry = queue.poll()) != null) {
+            if (entry == added) {
+                queue.offer(entry);
+                if (++skipped > 2) {
+                    break;
+                }
+            } else if (entry.referenced && max > 0) {
+                entry.referenced = false;
+                queue.offer(entry);
+            } else if (paths.remove(entry.path, entry)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum number of cached paths.
+     *
+     * Zero disables caching. Excess paths are evicted immediately.
+     * @param maximumSize the maximum number of cached paths.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public void setMaximumSize(final int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException(
+                    "maximumSize must not be negative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        trim(maximumSize, null);
+    }
+
+    /**
+     * Gets the maximum number of cached paths.
+     * @return the maximum size.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Gets the number of cached paths.
+     * @return the size.
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Removes every path from the cache.
+     */
+    public void clear() {
+        // Stale queue entries are skipped by trim, so clear the queue first
+        queue.clear();
+        paths.clear();
+    }
+
+    /**
+     * Gets the number of lookups which found a compiled path.
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups which compiled a path.
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of paths evicted.
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the fraction of lookups which found a compiled path.
+     * @return the hit rate, or 1 if there haven't been any lookups.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+}
@@ -0,0 +1,636 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * A predicate in a path filter: <code>[?(...)]</code>.
+ *
+ * <p>Expressions compare values relative to the candidate, written as paths
+ * beginning with <code>@</code>, against literals or other relative values.
+ * For example:</p>
+ * <pre>@.price &gt; 10 &amp;&amp; (@.tags[0] == 'sale' || !@.discontinued)</pre>
+ *
+ * <p>The operators are <code>== != &lt; &lt;= &gt; &gt;=</code>, combined
+ * with <code>&amp;&amp;</code>, <code>||</code>, <code>!</code> and
+ * parentheses. A path on its own tests that the value exists. Literals are
+ * numbers, quoted strings, <code>true</code>, <code>false</code> and
+ * <code>null</code>.</p>
+ *
+ * <p>Numbers compare numerically and strings lexically; other values are
+ * only equal or unequal. Comparisons involving a missing value are
+ * false.</p>
+ * @author jrodriguez
+ */
+final class JsogPathFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The value of a relative path that doesn't exist.
+     */
+    private static final Object MISSING = new Object();
+
+    /**
+     * The source of the expression.
+     */
+    private final String expression;
+
+    /**
+     * The compiled expression.
+     */
+    private final Node root;
+
+    /**
+     * Constructs a new JsogPathFilter.
+     * @param expression the source of the expression.
+     * @param root the compiled expression.
+     */
+    private JsogPathFilter(final String expression, final Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compiles a filter expression.
+     * @param expression the expression, without the surrounding brackets
+     *                   and parentheses.
+     * @return the filter.
+     * @throws IllegalArgumentException if the expression is invalid.
+     */
+    static JsogPathFilter compile(final String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.pos < expression.length()) {
+            throw new IllegalArgumentException("Unexpected character `"
+                    + expression.charAt(parser.pos) + "' at index "
+                    + parser.pos + " of filter: " + expression);
+        }
+        return new JsogPathFilter(expression, root);
+    }
+
+    /**
+     * Finds the parenthesis closing a filter.
+     * @param path the path.
+     * @param open the index of the opening parenthesis.
+     * @return the index of the closing parenthesis.
+     * @throws IllegalArgumentException if there isn't one.
+     */
+    static int findEnd(final String path, final int open) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = open; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(
+                "Unexpected end-of-string. Expected `)'.");
+    }
+
+    /**
+     * Tests a candidate value.
+     * @param candidate a JSOG or raw value.
+     * @return true if it matches.
+     */
+    boolean matches(final Object candidate) {
+        return root.test(candidate);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Gets the primitive value of a JSOG or raw value.
+     * @param value the value.
+     * @return the primitive, or an array or object's backing collection.
+     */
+    private static Object primitive(final Object value) {
+        Object raw = JsogPath.unwrap(value);
+        return raw instanceof LazyScalar ? ((LazyScalar) raw).decode() : raw;
+    }
+
+    /**
+     * Compares two primitives.
+     * @param a the first primitive.
+     * @param b the second primitive.
+     * @return the comparison, or null if they can't be ordered.
+     */
+    private static Integer compare(final Object a, final Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            Number x = (Number) a;
+            Number y = (Number) b;
+            if (isSpecial(x) || isSpecial(y)) {
+                return Double.compare(x.doubleValue(), y.doubleValue());
+            }
+            return new BigDecimal(x.toString())
+                    .compareTo(new BigDecimal(y.toString()));
+        } else if (a instanceof String && b instanceof String) {
+            return ((String) a).compareTo((String) b);
+        }
+        return null;
+    }
+
+    /**
+     * Tests if a number is NaN or infinite.
+     * @param n the number.
+     * @return true if it can't be represented as a BigDecimal.
+     */
+    private static boolean isSpecial(final Number n) {
+        if (n instanceof Double || n instanceof Float) {
+            double d = n.doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d);
+        }
+        return false;
+    }
+
+    /**
+     * A node of a compiled expression.
+     */
+    private abstract static class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Tests a candidate value.
+         * @param candidate a JSOG or raw value.
+         * @return true if it matches.
+         */
+        abstract boolean test(Object candidate);
+    }
+
+    /**
+     * A value in an expression: a relative path or a literal.
+     */
+    private static final class Operand implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The relative path, or null for a literal.
+         */
+        private final JsogPath path;
+
+        /**
+         * The literal value.
+         */
+        private final Object literal;
+
+        /**
+         * Constructs a new Operand.
+         * @param path the relative path, or null for a literal.
+         * @param literal the literal value.
+         */
+        Operand(final JsogPath path, final Object literal) {
+            this.path = path;
+            this.literal = literal;
+        }
+
+        /**
+         * Gets the value of this operand.
+         * @param candidate the candidate value.
+         * @return the primitive value, or MISSING.
+         */
+        Object value(final Object candidate) {
+            if (path == null) {
+                return literal;
+            }
+            Object found = path.find(candidate);
+            return found == null ? MISSING : primitive(found);
+        }
+    }
+
+    /**
+     * Tests a value on its own: paths exist, literals are truthy.
+     */
+    private static final class Exists extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The value.
+         */
+        private final Operand operand;
+
+        /**
+         * Constructs a new Exists.
+         * @param operand the value.
+         */
+        Exists(final Operand operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(final Object candidate) {
+            Object value = operand.value(candidate);
+            if (operand.path != null) {
+                return value != MISSING;
+            }
+            return value != null && !Boolean.FALSE.equals(value);
+        }
+    }
+
+    /**
+     * Compares two values.
+     */
+    private static final class Comparison extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The left value.
+         */
+        private final Operand left;
+
+        /**
+         * The operator.
+         */
+        private final String operator;
+
+        /**
+         * The right value.
+         */
+        private final Operand right;
+
+        /**
+         * Constructs a new Comparison.
+         * @param left the left value.
+         * @param operator the operator.
+         * @param right the right value.
+         */
+        Comparison(final Operand left, final String operator,
+                   final Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        boolean test(final Object candidate) {
+            Object a = left.value(candidate);
+            Object b = right.value(candidate);
+            if (a == MISSING || b == MISSING) {
+                return false;
+            }
+
+            Integer order = compare(a, b);
+            if (order == null) {
+                boolean equal = a == null ? b == null : a.equals(b);
+                if ("==".equals(operator)) {
+                    return equal;
+                } else if ("!=".equals(operator)) {
+                    return !equal;
+                }
+                return false;
+            }
+
+            int c = order;
+            if ("==".equals(operator)) {
+                return c == 0;
+            } else if ("!=".equals(operator)) {
+                return c != 0;
+            } else if ("<".equals(operator)) {
+                return c < 0;
+            } else if ("<=".equals(operator)) {
+                return c <= 0;
+            } else if (">".equals(operator)) {
+                return c > 0;
+            }
+            return c >= 0;
+        }
+    }
+
+    /**
+     * Combines two nodes with && or ||.
+     */
+    private static final class Logical extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The left node.
+         */
+        private final Node left;
+
+        /**
+         * The right node.
+         */
+        private final Node right;
+
+        /**
+         * True for &&, false for ||.
+         */
+        private final boolean and;
+
+        /**
+         * Constructs a new Logical.
+         * @param left the left node.
+         * @param right the right node.
+         * @param and true for &&, false for ||.
+         */
+        Logical(final Node left, final Node right, final boolean and) {
+            this.left = left;
+            this.right = right;
+            this.and = and;
+        }
+
+        @Override
+        boolean test(final Object candidate) {
+            return and
+                    ? left.test(candidate) && right.test(candidate)
+                    : left.test(candidate) || right.test(candidate);
+        }
+    }
+
+    /**
+     * Negates a node.
+     */
+    private static final class Not extends Node {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The negated node.
+         */
+        private final Node node;
+
+        /**
+         * Constructs a new Not.
+         * @param node the negated node.
+         */
+        Not(final Node node) {
+            this.node = node;
+        }
+
+        @Override
+        boolean test(final Object candidate) {
+            return !node.test(candidate);
+        }
+    }
+
+    /**
+     * Parses an expression.
+     */
+    private static final class Parser {
+
+        /**
+         * The comparison operators, longest first.
+         */
+        private static final String[] OPERATORS =
+                {"==", "!=", "<=", ">=", "<", ">"};
+
+        /**
+         * The expression.
+         */
+        private final String text;
+
+        /**
+         * The current index.
+         */
+        private int pos;
+
+        /**
+         * Constructs a new Parser.
+         * @param text the expression.
+         */
+        Parser(final String text) {
+            this.text = text;
+        }
+
+        /**
+         * Skips spaces.
+         */
+        void skipSpaces() {
+            while (pos < text.length()
+                    && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        /**
+         * Consumes a token, if it's next.
+         * @param token the token.
+         * @return true if it was consumed.
+         */
+        boolean consume(final String token) {
+            skipSpaces();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Creates an exception for the current index.
+         * @param expected what was expected.
+         * @return the exception.
+         */
+        IllegalArgumentException error(final String expected) {
+            return new IllegalArgumentException("Expected " + expected
+                    + " at index " + pos + " of filter: " + text);
+        }
+
+        /**
+         * Parses alternatives separated by ||.
+         * @return the node.
+         */
+        Node parseOr() {
+            Node node = parseAnd();
+            while (consume("||")) {
+                node = new Logical(node, parseAnd(), false);
+            }
+            return node;
+        }
+
+        /**
+         * Parses terms separated by &&.
+         * @return the node.
+         */
+        Node parseAnd() {
+            Node node = parseUnary();
+            while (consume("&&")) {
+                node = new Logical(node, parseUnary(), true);
+            }
+            return node;
+        }
+
+        /**
+         * Parses a negation, a parenthesized expression, or a comparison.
+         * @return the node.
+         */
+        Node parseUnary() {
+            if (consume("!")) {
+                return new Not(parseUnary());
+            }
+            if (consume("(")) {
+                Node node = parseOr();
+                if (!consume(")")) {
+                    throw error("`)'");
+                }
+                return node;
+            }
+
+            Operand left = parseOperand();
+            for (String operator : OPERATORS) {
+                if (consume(operator)) {
+                    return new Comparison(left, operator, parseOperand());
+                }
+            }
+            return new Exists(left);
+        }
+
+        /**
+         * Parses a relative path or a literal.
+         * @return the operand.
+         */
+        Operand parseOperand() {
+            skipSpaces();
+            if (pos >= text.length()) {
+                throw error("a value");
+            }
+
+            char c = text.charAt(pos);
+            if (c == '@') {
+                return new Operand(parsePath(), null);
+            } else if (c == '\'' || c == '"') {
+                StringBuilder sb = new StringBuilder();
+                pos = JsogPath.parseQuoted(text, pos, sb) + 1;
+                return new Operand(null, sb.toString());
+            } else if (c == '-' || Character.isDigit(c)) {
+                return new Operand(null, parseNumber());
+            } else if (text.startsWith("true", pos)) {
+                pos += 4;
+                return new Operand(null, Boolean.TRUE);
+            } else if (text.startsWith("false", pos)) {
+                pos += 5;
+                return new Operand(null, Boolean.FALSE);
+            } else if (text.startsWith("null", pos)) {
+                pos += 4;
+                return new Operand(null, null);
+            }
+            throw error("a path or literal");
+        }
+
+        /**
+         * Parses a relative path, beginning with @.
+         * @return the path.
+         */
+        JsogPath parsePath() {
+            int start = pos + 1;
+            int i = start;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (c == '[') {
+
+                    // Skip to the closing bracket, minding quoted keys
+                    char quote = 0;
+                    for (i++; i < text.length(); i++) {
+                        c = text.charAt(i);
+                        if (quote != 0) {
+                            if (c == '\\') {
+                                i++;
+                            } else if (c == quote) {
+                                quote = 0;
+                            }
+                        } else if (c == '\'' || c == '"') {
+                            quote = c;
+                        } else if (c == ']') {
+                            break;
+                        }
+                    }
+                    i++;
+                } else if (c == '\\') {
+                    i += 2;
+                } else if (c == '.' || c == '-' || c == '_'
+                        || Character.isLetterOrDigit(c)) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+
+            i = Math.min(i, text.length());
+            JsogPath path = JsogPath.parse("$" + text.substring(start, i));
+            if (!path.isDefinite()) {
+                throw new IllegalArgumentException(
+                        "Filter paths must be definite: " + path);
+            }
+            pos = i;
+            return path;
+        }
+
+        /**
+         * Parses a number.
+         * @return a Long, or a BigDecimal.
+         */
+        Object parseNumber() {
+            int start = pos;
+            if (text.charAt(pos) == '-') {
+                pos++;
+            }
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (Character.isDigit(c) || c == '.' || c == 'e' || c == 'E'
+                        || ((c == '+' || c == '-')
+                            && (text.charAt(pos - 1) == 'e'
+                                || text.charAt(pos - 1) == 'E'))) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+
+            String number = text.substring(start, pos);
+            try {
+                return Long.valueOf(number);
+            } catch (NumberFormatException e) {
+                try {
+                    return new BigDecimal(number);
+                } catch (NumberFormatException e2) {
+                    throw new IllegalArgumentException("Invalid number `"
+                            + number + "' in filter: " + text);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * A set of definite paths, evaluated together in one walk of a JSOG.
+ *
+ * <p>The paths are merged into a trie, so a prefix shared by several paths
+ * is followed once. Evaluation touches each node of the JSOG on the paths
+ * at most once, however many paths pass through it, and fills an array of
+ * results indexed by the id {@link #add(JsogPath)} assigned to each
+ * path.</p>
+ *
+ * <p>Evaluation is read-only, like {@link JsogPath#lookup(JSOG)}: missing
+ * values are returned as null, and nothing is created. A JsogPathSet may be
+ * evaluated concurrently by several threads, once all its paths are
+ * added.</p>
+ *
+ * <p>The paths can also be evaluated directly against JSON text, without
+ * parsing it into a JSOG first. Subtrees no path leads into are skipped
+ * token by token, only the matched values are built, and reading stops as
+ * soon as every path has been found or ruled out.</p>
+ * @author jrodriguez
+ */
+public final class JsogPathSet {
+
+    /**
+     * A node of the trie.
+     */
+    private static final class Node {
+
+        /**
+         * The children, by String key or Integer index.
+         */
+        private final Map<Object, Node> children =
+                new LinkedHashMap<Object, Node>();
+
+        /**
+         * The ids of the paths ending at this node.
+         */
+        private int[] ids = new int[0];
+
+        /**
+         * The number of paths ending at or below this node.
+         */
+        private int weight;
+
+        /**
+         * The position of this node among its parent's children.
+         */
+        private int position;
+
+        /**
+         * Whether a child is a negative index, which can only be resolved
+         * once the length of the array is known.
+         */
+        private boolean fromEnd;
+
+        /**
+         * The children, as parallel arrays for evaluation.
+         */
+        private Object[] keys = new Object[0];
+
+        /**
+         * The child nodes, parallel to keys.
+         */
+        private Node[] nodes = new Node[0];
+
+        /**
+         * Adds a child, or gets the existing one.
+         * @param key the String key or Integer index.
+         * @return the child.
+         */
+        Node child(final Object key) {
+            Node child = children.get(key);
+            if (child == null) {
+                child = new Node();
+                child.position = children.size();
+                children.put(key, child);
+                if (key instanceof Integer && (Integer) key < 0) {
+                    fromEnd = true;
+                }
+                keys = children.keySet().toArray();
+                nodes = children.values().toArray(new Node[children.size()]);
+            }
+            return child;
+        }
+
+        /**
+         * Adds the id of a path ending at this node.
+         * @param id the id.
+         */
+        void end(final int id) {
+            int[] grown = new int[ids.length + 1];
+            System.arraycopy(ids, 0, grown, 0, ids.length);
+            grown[ids.length] = id;
+            ids = grown;
+        }
+    }
+
+    /**
+     * An array or object being read from a token stream.
+     */
+    private static final class Frame {
+
+        /**
+         * The trie node of the array or object.
+         */
+        private final Node node;
+
+        /**
+         * Which of the node's children have been visited.
+         */
+        private final boolean[] seen;
+
+        /**
+         * The total weight of the children visited.
+         */
+        private int visited;
+
+        /**
+         * The index of the next element, for arrays.
+         */
+        private int index;
+
+        /**
+         * Constructs a new Frame.
+         * @param node the trie node of the array or object.
+         */
+        Frame(final Node node) {
+            this.node = node;
+            this.seen = new boolean[node.keys.length];
+        }
+    }
+
+    /**
+     * The root of the trie.
+     */
+    private final Node root = new Node();
+
+    /**
+     * The paths, by id.
+     */
+    private final List<JsogPath> paths = new ArrayList<JsogPath>();
+
+    /**
+     * Constructs a new, empty JsogPathSet.
+     */
+    public JsogPathSet() {
+    }
+
+    /**
+     * Constructs a new JsogPathSet. The paths' ids are their positions.
+     * @param paths the paths.
+     * @throws IllegalArgumentException if a path is not definite.
+     */
+    public JsogPathSet(final JsogPath... paths) {
+        for (JsogPath path : paths) {
+            add(path);
+        }
+    }
+
+    /**
+     * Adds a path.
+     * @param path the path.
+     * @return the id of the path: its index in the results.
+     * @throws IllegalArgumentException if the path is not definite.
+     * @throws NullPointerException if the path is null.
+     */
+    public int add(final JsogPath path) {
+        if (!path.isDefinite()) {
+            throw new IllegalArgumentException(
+                    "The path " + path + " may match several values.");
+        }
+
+        Node node = root;
+        node.weight++;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.child(path.segment(i));
+            node.weight++;
+        }
+
+        int id = paths.size();
+        paths.add(path);
+        node.end(id);
+        return id;
+    }
+
+    /**
+     * Adds a path expression.
+     * @param path the path expression.
+     * @return the id of the path: its index in the results.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *                                  definite.
+     */
+    public int add(final String path) {
+        return add(JsogPath.compile(path));
+    }
+
+    /**
+     * Gets a path by id.
+     * @param id the id.
+     * @return the path.
+     */
+    public JsogPath get(final int id) {
+        return paths.get(id);
+    }
+
+    /**
+     * Gets the number of paths.
+     * @return the number of paths.
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Evaluates every path.
+     * @param jsog the JSOG on which to evaluate the paths.
+     * @return the results, indexed by path id; null where a path doesn't
+     *         exist.
+     */
+    public JSOG[] evaluate(final JSOG jsog) {
+        JSOG[] results = new JSOG[paths.size()];
+        evaluate(jsog, results);
+        return results;
+    }
+
+    /**
+     * Evaluates every path into an existing array.
+     * @param jsog the JSOG on which to evaluate the paths.
+     * @param results receives the results, indexed by path id; null where a
+     *                path doesn't exist.
+     * @throws IllegalArgumentException if the array is too small.
+     */
+    public void evaluate(final JSOG jsog, final JSOG[] results) {
+        clear(results);
+        walk(root, jsog, results);
+    }
+
+    /**
+     * Evaluates every path against JSON text.
+     * @param in the stream from which to read the JSON. It is left open, and
+     *           may not have been read to the end.
+     * @return the results, indexed by path id; null where a path doesn't
+     *         exist.
+     * @throws IOException if the JSON could not be read or parsed.
+     * @see #evaluate(JsonParser, JSOG[])
+     */
+    public JSOG[] evaluate(final InputStream in) throws IOException {
+        return evaluate(JSOG.getJsonFactory().createJsonParser(in));
+    }
+
+    /**
+     * Evaluates every path against JSON text.
+     * @param reader the reader from which to read the JSON. It is left open,
+     *               and may not have been read to the end.
+     * @return the results, indexed by path id; null where a path doesn't
+     *         exist.
+     * @throws IOException if the JSON could not be read or parsed.
+     * @see #evaluate(JsonParser, JSOG[])
+     */
+    public JSOG[] evaluate(final Reader reader) throws IOException {
+        return evaluate(JSOG.getJsonFactory().createJsonParser(reader));
+    }
+
+    /**
+     * Evaluates every path against a token stream.
+     * @param parser the parser from which to read the JSON.
+     * @return the results, indexed by path id; null where a path doesn't
+     *         exist.
+     * @throws IOException if the JSON could not be read or parsed.
+     * @see #evaluate(JsonParser, JSOG[])
+     */
+    public JSOG[] evaluate(final JsonParser parser) throws IOException {
+        JSOG[] results = new JSOG[paths.size()];
+        evaluate(parser, results);
+        return results;
+    }
+
+    /**
+     * Evaluates every path against a token stream, into an existing array.
+     *
+     * The value at the parser's current token is evaluated, or the first
+     * value if the parser has not been advanced yet. Reading stops as soon as
+     * every path has been resolved, so the parser may be left anywhere
+     * inside the value. Only the input actually read is checked for syntax.
+     *
+     * Arrays that a negative index leads into are read whole, since their
+     * length is needed. Where an object repeats a key, the first occurrence
+     * is used.
+     * @param parser the parser from which to read the JSON.
+     * @param results receives the results, indexed by path id; null where a
+     *                path doesn't exist.
+     * @throws IOException if the JSON could not be read or parsed.
+     * @throws IllegalArgumentException if the array is too small.
+     */
+    public void evaluate(final JsonParser parser, final JSOG[] results)
+            throws IOException {
+        clear(results);
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            token = parser.nextToken();
+            if (token == null) {
+                return;
+            }
+        }
+
+        // Paths are resolved once found, skipped over, or known to be missing
+        List<Frame> stack = new ArrayList<Frame>();
+        int resolved = visit(root, parser, token, results, stack);
+        while (!stack.isEmpty() && resolved < paths.size()) {
+            Frame frame = stack.get(stack.size() - 1);
+            token = next(parser);
+
+            // Children that never came up are missing
+            if (token == JsonToken.END_OBJECT
+                    || token == JsonToken.END_ARRAY) {
+                stack.remove(stack.size() - 1);
+                resolved += frame.node.weight - frame.visited;
+                continue;
+            }
+
+            Node child;
+            if (token == JsonToken.FIELD_NAME) {
+                child = frame.node.children.get(parser.getCurrentName());
+                token = next(parser);
+            } else {
+                child = frame.node.children.get(frame.index++);
+            }
+
+            if (child == null || frame.seen[child.position]) {
+                parser.skipChildren();
+            } else {
+                frame.seen[child.position] = true;
+                frame.visited += child.weight;
+                resolved += visit(child, parser, token, results, stack);
+            }
+        }
+    }
+
+    /**
+     * Clears the results array.
+     * @param results the results array.
+     * @throws IllegalArgumentException if the array is too small.
+     */
+    private void clear(final JSOG[] results) {
+        if (results.length < paths.size()) {
+            throw new IllegalArgumentException("The results array has "
+                    + results.length + " elements, but there are "
+                    + paths.size() + " paths.");
+        }
+        for (int i = 0; i < paths.size(); i++) {
+            results[i] = null;
+        }
+    }
+
+    /**
+     * Walks the trie and a value together.
+     * @param start the trie node of the value.
+     * @param value a JSOG or a raw value.
+     * @param results receives the results.
+     */
+    private static void walk(final Node start, final Object value,
+                             final JSOG[] results) {
+        List<Node> nodes = new ArrayList<Node>();
+        List<Object> values = new ArrayList<Object>();
+        nodes.add(start);
+        values.add(value);
+        while (!nodes.isEmpty()) {
+            int top = nodes.size() - 1;
+            Node node = nodes.remove(top);
+            Object current = values.remove(top);
+
+            if (node.ids.length > 0) {
+                JSOG result = JSOG.wrap(current);
+                for (int id : node.ids) {
+                    results[id] = result;
+                }
+            }
+
+            for (int i = 0; i < node.keys.length; i++) {
+                Object child = JsogPath.step(current, node.keys[i]);
+                if (child != null) {
+                    nodes.add(node.nodes[i]);
+                    values.add(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the value at the parser's current token.
+     * @param node the trie node of the value.
+     * @param parser the parser.
+     * @param token the value's first token.
+     * @param results receives the results.
+     * @param stack receives a frame if the value needs to be descended into.
+     * @return the number of paths resolved.
+     * @throws IOException if the JSON could not be read or parsed.
+     */
+    private static int visit(final Node node, final JsonParser parser,
+                             final JsonToken token, final JSOG[] results,
+                             final List<Frame> stack) throws IOException {
+
+        // Matched values are built, and searched for any longer paths
+        if (node.ids.length > 0
+                || (node.fromEnd && token == JsonToken.START_ARRAY)) {
+            walk(node, JsogReader.read(parser), results);
+            return node.weight;
+        }
+
+        if ((token == JsonToken.START_OBJECT
+                || token == JsonToken.START_ARRAY)
+                && !node.children.isEmpty()) {
+            stack.add(new Frame(node));
+            return 0;
+        }
+
+        // Nothing below can match
+        parser.skipChildren();
+        return node.weight;
+    }
+
+    /**
+     * Reads the next token, which must exist.
+     * @param parser the parser.
+     * @return the token.
+     * @throws IOException if the JSON could not be read, or ended early.
+     */
+    private static JsonToken next(final JsonParser parser)
+            throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException("Unexpected end-of-input.",
+                    parser.getCurrentLocation());
+        }
+        return token;
+    }
+}
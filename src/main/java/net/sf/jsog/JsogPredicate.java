@@ -0,0 +1,415 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A condition on the values found at paths in a JSOG.
+ *
+ * <p>Values are compared as index keys are by {@link JsogIndex}: numbers by
+ * value, whatever their type. Range conditions only match values of the
+ * same kind as their bounds, so a numeric range never matches a string.
+ * Objects and arrays never match.</p>
+ *
+ * <p>A {@link JsogCollection} answers conditions from its indexes where it
+ * can, and by testing each document where it can't.</p>
+ * @author jrodriguez
+ * @see JsogCollection#find(JsogPredicate)
+ */
+public abstract class JsogPredicate {
+
+    /**
+     * Stands for a value that is an object or array.
+     */
+    private static final Object STRUCTURE = new Object();
+
+    /**
+     * Matches values equal to one of a set.
+     */
+    static final class In extends JsogPredicate {
+
+        /**
+         * The path of the value.
+         */
+        final JsogPath path;
+
+        /**
+         * The normalized values, which may include null.
+         */
+        final Set<Object> values = new HashSet<Object>();
+
+        /**
+         * Constructs a new In.
+         * @param path the path of the value.
+         * @param values the values.
+         */
+        In(final JsogPath path, final Object... values) {
+            this.path = definite(path);
+            for (Object value : values) {
+                this.values.add(JsogIndex.normalize(value));
+            }
+        }
+
+        @Override
+        public boolean matches(final JSOG jsog) {
+            return values.contains(key(path, jsog));
+        }
+    }
+
+    /**
+     * Matches values in a range.
+     */
+    static final class Range extends JsogPredicate {
+
+        /**
+         * The path of the value.
+         */
+        final JsogPath path;
+
+        /**
+         * The normalized lower bound, or null.
+         */
+        final Object low;
+
+        /**
+         * Whether the lower bound is included.
+         */
+        final boolean lowInclusive;
+
+        /**
+         * The normalized upper bound, or null.
+         */
+        final Object high;
+
+        /**
+         * Whether the upper bound is included.
+         */
+        final boolean highInclusive;
+
+        /**
+         * The rank of the values matched.
+         */
+        final int rank;
+
+        /**
+         * Constructs a new Range.
+         * @param path the path of the value.
+         * @param low the lower bound, or null.
+         * @param lowInclusive whether the lower bound is included.
+         * @param high the upper bound, or null.
+         * @param highInclusive whether the upper bound is included.
+         */
+        Range(final JsogPath path, final Object low,
+              final boolean lowInclusive, final Object high,
+              final boolean highInclusive) {
+            this.path = definite(path);
+            this.low = JsogIndex.normalize(low);
+            this.lowInclusive = lowInclusive;
+            this.high = JsogIndex.normalize(high);
+            this.highInclusive = highInclusive;
+
+            if (this.low == null && this.high == null) {
+                throw new IllegalArgumentException(
+                        "A range needs at least one bound.");
+            }
+            this.rank = JsogIndex.rank(this.low != null ? this.low : this.high);
+            if (this.low != null && this.high != null
+                    && JsogIndex.rank(this.high) != rank) {
+                throw new IllegalArgumentException(
+                        "The bounds of a range must be of the same kind.");
+            }
+        }
+
+        /**
+         * Tests if a key is in the range.
+         * @param key a normalized key.
+         * @return true if the key is in the range.
+         */
+        boolean accepts(final Object key) {
+            if (key == null || key == STRUCTURE
+                    || JsogIndex.rank(key) != rank) {
+                return false;
+            }
+            if (low != null) {
+                int c = JsogIndex.ORDER.compare(key, low);
+                if (c < 0 || (c == 0 && !lowInclusive)) {
+                    return false;
+                }
+            }
+            if (high != null) {
+                int c = JsogIndex.ORDER.compare(key, high);
+                if (c > 0 || (c == 0 && !highInclusive)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Tests if a key, and every key ordered after it, is past the range.
+         * @param key a non-null normalized key.
+         * @return true if the key is past the range.
+         */
+        boolean past(final Object key) {
+            return JsogIndex.rank(key) > rank
+                    || (high != null && JsogIndex.ORDER.compare(key, high) > 0);
+        }
+
+        /**
+         * Gets a key no greater than any key in the range.
+         * @return the key.
+         */
+        Object start() {
+            if (low != null) {
+                return low;
+            } else if (rank == 0) {
+                return Boolean.FALSE;
+            } else if (rank == 1) {
+                return Double.valueOf(Double.NEGATIVE_INFINITY);
+            } else {
+                return "";
+            }
+        }
+
+        @Override
+        public boolean matches(final JSOG jsog) {
+            return accepts(key(path, jsog));
+        }
+    }
+
+    /**
+     * Matches when all of its conditions match.
+     */
+    static final class And extends JsogPredicate {
+
+        /**
+         * The conditions.
+         */
+        final JsogPredicate[] predicates;
+
+        /**
+         * Constructs a new And.
+         * @param predicates the conditions.
+         */
+        And(final JsogPredicate[] predicates) {
+            this.predicates = predicates.clone();
+        }
+
+        @Override
+        public boolean matches(final JSOG jsog) {
+            for (JsogPredicate predicate : predicates) {
+                if (!predicate.matches(jsog)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Matches when any of its conditions match.
+     */
+    static final class Or extends JsogPredicate {
+
+        /**
+         * The conditions.
+         */
+        final JsogPredicate[] predicates;
+
+        /**
+         * Constructs a new Or.
+         * @param predicates the conditions.
+         */
+        Or(final JsogPredicate[] predicates) {
+            this.predicates = predicates.clone();
+        }
+
+        @Override
+        public boolean matches(final JSOG jsog) {
+            for (JsogPredicate predicate : predicates) {
+                if (predicate.matches(jsog)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Only the conditions defined here are supported.
+     */
+    JsogPredicate() {
+    }
+
+    /**
+     * Tests the condition on a JSOG.
+     * @param jsog the JSOG.
+     * @return true if the JSOG matches.
+     */
+    public abstract boolean matches(JSOG jsog);
+
+    /**
+     * Matches JSOGs with a value at a path. A null value matches missing
+     * and null values.
+     * @param path the path expression.
+     * @param value the value: a primitive, or null.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or the value is not a primitive.
+     */
+    public static JsogPredicate eq(final String path, final Object value) {
+        return new In(JsogPath.compile(path), value);
+    }
+
+    /**
+     * Matches JSOGs with any of several values at a path.
+     * @param path the path expression.
+     * @param values the values: primitives, or null.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or a value is not a primitive.
+     */
+    public static JsogPredicate in(final String path, final Object... values) {
+        return new In(JsogPath.compile(path), values);
+    }
+
+    /**
+     * Matches JSOGs with a value in a range at a path.
+     * @param path the path expression.
+     * @param from the lower bound, or null for none.
+     * @param fromInclusive whether the lower bound is included.
+     * @param to the upper bound, or null for none.
+     * @param toInclusive whether the upper bound is included.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, both bounds are null, or the bounds are of different
+     *         kinds.
+     */
+    public static JsogPredicate range(final String path, final Object from,
+                                      final boolean fromInclusive,
+                                      final Object to,
+                                      final boolean toInclusive) {
+        return new Range(JsogPath.compile(path), from, fromInclusive, to,
+                         toInclusive);
+    }
+
+    /**
+     * Matches JSOGs with a value less than a bound at a path.
+     * @param path the path expression.
+     * @param value the bound.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or the bound is null.
+     */
+    public static JsogPredicate lt(final String path, final Object value) {
+        return range(path, null, false, value, false);
+    }
+
+    /**
+     * Matches JSOGs with a value less than or equal to a bound at a path.
+     * @param path the path expression.
+     * @param value the bound.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or the bound is null.
+     */
+    public static JsogPredicate le(final String path, final Object value) {
+        return range(path, null, false, value, true);
+    }
+
+    /**
+     * Matches JSOGs with a value greater than a bound at a path.
+     * @param path the path expression.
+     * @param value the bound.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or the bound is null.
+     */
+    public static JsogPredicate gt(final String path, final Object value) {
+        return range(path, value, false, null, false);
+    }
+
+    /**
+     * Matches JSOGs with a value greater than or equal to a bound at a path.
+     * @param path the path expression.
+     * @param value the bound.
+     * @return the condition.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite, or the bound is null.
+     */
+    public static JsogPredicate ge(final String path, final Object value) {
+        return range(path, value, true, null, false);
+    }
+
+    /**
+     * Matches JSOGs matching all of several conditions.
+     * @param predicates the conditions.
+     * @return the condition.
+     */
+    public static JsogPredicate and(final JsogPredicate... predicates) {
+        return new And(predicates);
+    }
+
+    /**
+     * Matches JSOGs matching any of several conditions.
+     * @param predicates the conditions.
+     * @return the condition.
+     */
+    public static JsogPredicate or(final JsogPredicate... predicates) {
+        return new Or(predicates);
+    }
+
+    /**
+     * Ensures a path identifies a single value.
+     * @param path the path.
+     * @return the path.
+     * @throws IllegalArgumentException if the path is not definite.
+     */
+    private static JsogPath definite(final JsogPath path) {
+        if (!path.isDefinite()) {
+            throw new IllegalArgumentException(
+                    "The path " + path + " may match several values.");
+        }
+        return path;
+    }
+
+    /**
+     * Gets the normalized value at a path.
+     * @param path the path.
+     * @param jsog the JSOG.
+     * @return the normalized value, null if it's missing, or a marker if
+     *         it's an object or array.
+     */
+    private static Object key(final JsogPath path, final JSOG jsog) {
+        try {
+            return JsogIndex.keyOf(path, jsog);
+        } catch (IllegalArgumentException e) {
+            return STRUCTURE;
+        }
+    }
+}
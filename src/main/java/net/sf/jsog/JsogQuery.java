@@ -0,0 +1,929 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A query over the elements of a JSOG array: filter, then project or group
+ * and aggregate, then sort.
+ *
+ * <p>A query is built once and executed on any number of arrays. Its paths
+ * are compiled when they're added, and aggregates accumulate into primitive
+ * longs and doubles rather than boxed numbers. Sums stay exact longs until
+ * a fractional value or an overflow turns them into doubles.</p>
+ *
+ * <pre>
+ * JsogQuery query = new JsogQuery()
+ *         .filter(JsogPredicate.gt("$.price", 10))
+ *         .groupBy("category", "$.category")
+ *         .count("n")
+ *         .sum("total", "$.price")
+ *         .sort("$.total", false);
+ * JSOG rows = query.execute(products);
+ * </pre>
+ *
+ * <p>With an executor, large arrays are split into contiguous parts which
+ * are filtered and aggregated in parallel, and the partial results are
+ * combined in encounter order. Rows, counts and integral sums are the same
+ * either way. Fractional sums and averages carry their rounding error
+ * separately (Neumaier's compensated summation), so adding the parts in a
+ * different order changes them far less than it would plain sums, but they
+ * may still differ in the last bits.</p>
+ *
+ * <p>A query may be executed by several threads at once, once built. Rows
+ * and projected values are copies, so modifying the result doesn't modify
+ * the array.</p>
+ * @author jrodriguez
+ */
+public final class JsogQuery {
+
+    /**
+     * Counts rows.
+     */
+    private static final int COUNT = 0;
+
+    /**
+     * Sums numeric values.
+     */
+    private static final int SUM = 1;
+
+    /**
+     * Finds the least numeric value.
+     */
+    private static final int MIN = 2;
+
+    /**
+     * Finds the greatest numeric value.
+     */
+    private static final int MAX = 3;
+
+    /**
+     * Averages numeric values.
+     */
+    private static final int AVG = 4;
+
+    /**
+     * An output field computed from an input path.
+     */
+    private static final class Field {
+
+        /**
+         * The name of the output field.
+         */
+        private final String name;
+
+        /**
+         * The input path, or null to count rows.
+         */
+        private final JsogPath path;
+
+        /**
+         * The aggregate function, for aggregates.
+         */
+        private final int function;
+
+        /**
+         * Constructs a new Field.
+         * @param name the name of the output field.
+         * @param path the input path, or null.
+         * @param function the aggregate function, for aggregates.
+         */
+        Field(final String name, final JsogPath path, final int function) {
+            this.name = name;
+            this.path = path;
+            this.function = function;
+        }
+    }
+
+    /**
+     * A sort key.
+     */
+    private static final class Order {
+
+        /**
+         * The path of the key in each row.
+         */
+        private final JsogPath path;
+
+        /**
+         * Whether smaller keys come first.
+         */
+        private final boolean ascending;
+
+        /**
+         * Constructs a new Order.
+         * @param path the path of the key in each row.
+         * @param ascending whether smaller keys come first.
+         */
+        Order(final JsogPath path, final boolean ascending) {
+            this.path = path;
+            this.ascending = ascending;
+        }
+    }
+
+    /**
+     * A row and its sort keys.
+     */
+    private static final class Sortable {
+
+        /**
+         * The row.
+         */
+        private final Object row;
+
+        /**
+         * The normalized sort keys.
+         */
+        private final Object[] keys;
+
+        /**
+         * Constructs a new Sortable.
+         * @param row the row.
+         * @param keys the normalized sort keys.
+         */
+        Sortable(final Object row, final Object[] keys) {
+            this.row = row;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * The accumulated aggregates of a group.
+     */
+    private final class Group {
+
+        /**
+         * The group's key.
+         */
+        private final Object key;
+
+        /**
+         * The number of rows in the group.
+         */
+        private long rows;
+
+        /**
+         * The number of numeric values accumulated, per aggregate.
+         */
+        private final long[] counts = new long[aggregates.size()];
+
+        /**
+         * The accumulated values while they're integral, per aggregate.
+         */
+        private final long[] longs = new long[aggregates.size()];
+
+        /**
+         * The accumulated values once they're not, per aggregate.
+         */
+        private final double[] doubles = new double[aggregates.size()];
+
+        /**
+         * The rounding error of the fractional sums, per aggregate.
+         */
+        private final double[] errors = new double[aggregates.size()];
+
+        /**
+         * Whether the accumulated value is in longs, per aggregate.
+         */
+        private final boolean[] integral = new boolean[aggregates.size()];
+
+        /**
+         * Constructs a new Group.
+         * @param key the group's key.
+         */
+        Group(final Object key) {
+            this.key = key;
+        }
+
+        /**
+         * Accumulates an element.
+         * @param element the element.
+         */
+        void accept(final Object element) {
+            rows++;
+            for (int i = 0; i < counts.length; i++) {
+                JsogPath path = aggregates.get(i).path;
+                if (path == null) {
+                    continue;
+                }
+
+                Object value = number(path.find(element));
+                if (value instanceof Long) {
+                    accept(i, (Long) value);
+                } else if (value != null) {
+                    accept(i, (Double) value);
+                }
+            }
+        }
+
+        /**
+         * Accumulates an integral value.
+         * @param i the index of the aggregate.
+         * @param value the value.
+         */
+        void accept(final int i, final long value) {
+            int function = aggregates.get(i).function;
+            if (counts[i]++ == 0) {
+                integral[i] = true;
+                longs[i] = value;
+            } else if (function == MIN || function == MAX) {
+                if (integral[i]) {
+                    longs[i] = function == MIN
+                            ? Math.min(longs[i], value)
+                            : Math.max(longs[i], value);
+                } else if (function == MIN
+                        ? value < doubles[i]
+                        : value > doubles[i]) {
+                    integral[i] = true;
+                    longs[i] = value;
+                }
+            } else if (!integral[i]) {
+                add(i, value);
+            } else {
+                long current = longs[i];
+                long sum = current + value;
+                if (((current ^ sum) & (value ^ sum)) < 0) {
+                    integral[i] = false;
+                    doubles[i] = current;
+                    errors[i] = 0;
+                    add(i, value);
+                } else {
+                    longs[i] = sum;
+                }
+            }
+        }
+
+        /**
+         * Accumulates a fractional value.
+         * @param i the index of the aggregate.
+         * @param value the value.
+         */
+        void accept(final int i, final double value) {
+            int function = aggregates.get(i).function;
+            if (counts[i]++ == 0) {
+                integral[i] = false;
+                doubles[i] = value;
+                errors[i] = 0;
+            } else if (function == MIN || function == MAX) {
+                double current = integral[i] ? longs[i] : doubles[i];
+                if (function == MIN ? value < current : value > current) {
+                    integral[i] = false;
+                    doubles[i] = value;
+                }
+            } else if (integral[i]) {
+                integral[i] = false;
+                doubles[i] = longs[i];
+                errors[i] = 0;
+                add(i, value);
+            } else {
+                add(i, value);
+            }
+        }
+
+        /**
+         * Adds to a fractional sum, keeping the low-order bits lost to
+         * rounding in the sum's error.
+         * @param i the index of the aggregate.
+         * @param value the value.
+         */
+        private void add(final int i, final double value) {
+            double current = doubles[i];
+            double sum = current + value;
+            if (Math.abs(current) >= Math.abs(value)) {
+                errors[i] += (current - sum) + value;
+            } else {
+                errors[i] += (value - sum) + current;
+            }
+            doubles[i] = sum;
+        }
+
+        /**
+         * Gets a fractional sum, corrected by its rounding error.
+         * @param i the index of the aggregate.
+         * @return the sum.
+         */
+        private double sum(final int i) {
+
+            // An infinite sum has no meaningful error
+            return Double.isInfinite(doubles[i])
+                    ? doubles[i]
+                    : doubles[i] + errors[i];
+        }
+
+        /**
+         * Combines the aggregates of a later part of the same group.
+         * @param that the later part.
+         */
+        void combine(final Group that) {
+            rows += that.rows;
+            for (int i = 0; i < counts.length; i++) {
+                if (that.counts[i] == 0) {
+                    continue;
+                }
+
+                // Accumulate the other part's result as one value
+                if (that.integral[i]) {
+                    accept(i, that.longs[i]);
+                } else {
+                    accept(i, that.doubles[i]);
+                    errors[i] += that.errors[i];
+                }
+                counts[i] += that.counts[i] - 1;
+            }
+        }
+
+        /**
+         * Creates the group's row.
+         * @return the row.
+         */
+        JSOG toRow() {
+            JSOG row = JSOG.object();
+            if (groupBy != null) {
+                row.put(groupBy.name, key);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                Field aggregate = aggregates.get(i);
+                Object value;
+                if (aggregate.function == COUNT) {
+                    value = rows;
+                } else if (counts[i] == 0) {
+                    value = null;
+                } else if (aggregate.function == AVG) {
+                    value = (integral[i] ? longs[i] : sum(i)) / counts[i];
+                } else if (integral[i]) {
+                    value = longs[i];
+                } else {
+                    value = sum(i);
+                }
+                row.put(aggregate.name, value);
+            }
+            return row;
+        }
+    }
+
+    /**
+     * The filtered, projected or grouped rows of part of an array.
+     */
+    private final class Part implements Callable<Part> {
+
+        /**
+         * The elements of the array.
+         */
+        private final List<?> elements;
+
+        /**
+         * The index of the first element of the part.
+         */
+        private final int from;
+
+        /**
+         * The index after the last element of the part.
+         */
+        private final int to;
+
+        /**
+         * The rows, if the query doesn't group.
+         */
+        private final List<Object> rows = new ArrayList<Object>();
+
+        /**
+         * The groups, if the query groups, in encounter order.
+         */
+        private final Map<Object, Group> groups =
+                new LinkedHashMap<Object, Group>();
+
+        /**
+         * Constructs a new Part.
+         * @param elements the elements of the array.
+         * @param from the index of the first element of the part.
+         * @param to the index after the last element of the part.
+         */
+        Part(final List<?> elements, final int from, final int to) {
+            this.elements = elements;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Part call() {
+            boolean grouped = isGrouped();
+            for (int i = from; i < to; i++) {
+                Object element = elements.get(i);
+                if (filter != null && !filter.matches(JSOG.wrap(element))) {
+                    continue;
+                }
+
+                if (grouped) {
+                    Object key = groupBy == null
+                            ? null
+                            : JsogIndex.keyOf(groupBy.path, element);
+                    Group group = groups.get(key);
+                    if (group == null) {
+                        group = new Group(key);
+                        groups.put(key, group);
+                    }
+                    group.accept(element);
+                } else if (projections.isEmpty()) {
+                    rows.add(JSOG.wrap(JsogTraversal.copy(element)));
+                } else {
+                    rows.add(project(element));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Combines a later part into this one.
+         * @param that the later part.
+         */
+        void combine(final Part that) {
+            rows.addAll(that.rows);
+            for (Group group : that.groups.values()) {
+                Group existing = groups.get(group.key);
+                if (existing == null) {
+                    groups.put(group.key, group);
+                } else {
+                    existing.combine(group);
+                }
+            }
+        }
+    }
+
+    /**
+     * The filter, or null.
+     */
+    private JsogPredicate filter;
+
+    /**
+     * The projected fields.
+     */
+    private final List<Field> projections = new ArrayList<Field>();
+
+    /**
+     * The grouping key, or null.
+     */
+    private Field groupBy;
+
+    /**
+     * The aggregates.
+     */
+    private final List<Field> aggregates = new ArrayList<Field>();
+
+    /**
+     * The sort keys, most significant first.
+     */
+    private final List<Order> orders = new ArrayList<Order>();
+
+    /**
+     * The executor on which parts are processed, or null.
+     */
+    private volatile ExecutorService executor;
+
+    /**
+     * The maximum number of parts.
+     */
+    private volatile int parallelism =
+            Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The minimum number of elements processed in parallel.
+     */
+    private volatile int parallelThreshold = 10000;
+
+    /**
+     * Adds a filter. Several filters must all match.
+     * @param predicate the condition elements must match.
+     * @return this query.
+     */
+    public JsogQuery filter(final JsogPredicate predicate) {
+        filter = filter == null
+                ? predicate
+                : JsogPredicate.and(filter, predicate);
+        return this;
+    }
+
+    /**
+     * Adds a projected field. Rows become objects of the projected fields.
+     * @param name the name of the field.
+     * @param path the path expression of the field's value in each element.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     * @throws IllegalStateException if the query groups or aggregates.
+     */
+    public JsogQuery project(final String name, final String path) {
+        if (isGrouped()) {
+            throw new IllegalStateException(
+                    "Grouped queries can't project fields.");
+        }
+        projections.add(new Field(name, definite(path), -1));
+        return this;
+    }
+
+    /**
+     * Groups the elements by a key. Rows become one object per key, with
+     * the key and the aggregates of the group.
+     * @param name the name of the key's field.
+     * @param path the path expression of the key in each element.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     * @throws IllegalStateException if the query projects, or already
+     *         groups.
+     */
+    public JsogQuery groupBy(final String name, final String path) {
+        checkGroupable();
+        if (groupBy != null) {
+            throw new IllegalStateException("The query is already grouped.");
+        }
+        groupBy = new Field(name, definite(path), -1);
+        return this;
+    }
+
+    /**
+     * Counts the rows of each group. Without groupBy, the whole array is one
+     * group.
+     * @param name the name of the count's field.
+     * @return this query.
+     * @throws IllegalStateException if the query projects.
+     */
+    public JsogQuery count(final String name) {
+        return aggregate(name, null, COUNT);
+    }
+
+    /**
+     * Sums the numeric values at a path. Non-numeric values are ignored.
+     * @param name the name of the sum's field.
+     * @param path the path expression of the values.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     * @throws IllegalStateException if the query projects.
+     */
+    public JsogQuery sum(final String name, final String path) {
+        return aggregate(name, definite(path), SUM);
+    }
+
+    /**
+     * Finds the least numeric value at a path. Non-numeric values are
+     * ignored.
+     * @param name the name of the minimum's field.
+     * @param path the path expression of the values.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     * @throws IllegalStateException if the query projects.
+     */
+    public JsogQuery min(final String name, final String path) {
+        return aggregate(name, definite(path), MIN);
+    }
+
+    /**
+     * Finds the greatest numeric value at a path. Non-numeric values are
+     * ignored.
+     * @param name the name of the maximum's field.
+     * @param path the path expression of the values.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     * @throws IllegalStateException if the query projects.
+     */
+    public JsogQuery max(final String name, final String path) {
+        return aggregate(name, definite(path), MAX);
+    }
+
+    /**
+     * Averages the numeric values at a path. Non-numeric values are
+     * ignored.
+     * @param name the name of the average's field.
+     * @param path the path expression of the values.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     * @throws IllegalStateException if the query projects.
+     */
+    public JsogQuery avg(final String name, final String path) {
+        return aggregate(name, definite(path), AVG);
+    }
+
+    /**
+     * Adds a sort key, less significant than any added before. Rows with no
+     * key come last. The sort is stable.
+     * @param path the path expression of the key in each row.
+     * @param ascending whether smaller keys come first.
+     * @return this query.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     */
+    public JsogQuery sort(final String path, final boolean ascending) {
+        orders.add(new Order(definite(path), ascending));
+        return this;
+    }
+
+    /**
+     * Sets the executor on which large arrays are processed in parallel.
+     *
+     * Defaults to null, in which case arrays are processed on the calling
+     * thread. The executor is not shut down by this query.
+     * @param executor the executor to use.
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the maximum number of parts an array is split into.
+     *
+     * Defaults to the number of available processors.
+     * @param parallelism the maximum number of parts.
+     * @throws IllegalArgumentException if the value is not positive.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException(
+                    "The parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the minimum number of elements before an array is processed in
+     * parallel.
+     *
+     * Defaults to 10000 elements.
+     * @param parallelThreshold the threshold, in elements.
+     */
+    public void setParallelThreshold(final int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Executes the query.
+     * @param array the array whose elements are queried. A null JSOG is an
+     *              empty array.
+     * @return a new array of the resulting rows.
+     * @throws IllegalStateException if the JSOG is not an array, or if
+     *         interrupted while waiting for the parts.
+     * @throws IllegalArgumentException if a group or sort key is an object
+     *         or array.
+     */
+    public JSOG execute(final JSOG array) {
+        Object raw = JsogPath.unwrap(array);
+        List<?> elements;
+        if (raw == null) {
+            elements = Collections.emptyList();
+        } else if (raw instanceof List<?>) {
+            elements = (List<?>) raw;
+        } else {
+            throw new IllegalStateException("The JSOG is not an array.");
+        }
+
+        Part result = process(elements);
+
+        // Without a groupBy, aggregates always have one row
+        List<Object> rows = result.rows;
+        if (isGrouped()) {
+            if (groupBy == null && result.groups.isEmpty()) {
+                result.groups.put(null, new Group(null));
+            }
+            rows = new ArrayList<Object>(result.groups.size());
+            for (Group group : result.groups.values()) {
+                rows.add(group.toRow());
+            }
+        }
+
+        if (!orders.isEmpty()) {
+            rows = sort(rows);
+        }
+
+        JSOG jsog = JSOG.arrayWithCapacity(rows.size());
+        for (Object row : rows) {
+            jsog.add(row);
+        }
+        return jsog;
+    }
+
+    /**
+     * Filters and projects or groups the elements, in parallel if possible.
+     * @param elements the elements.
+     * @return the combined result of every part.
+     */
+    private Part process(final List<?> elements) {
+        int size = elements.size();
+        ExecutorService service = executor;
+        int parts = Math.min(parallelism, size);
+        if (service == null || size < parallelThreshold || parts < 2) {
+            return new Part(elements, 0, size).call();
+        }
+
+        List<Future<Part>> futures = new ArrayList<Future<Part>>(parts);
+        try {
+            for (int i = 0; i < parts; i++) {
+                futures.add(service.submit(new Part(elements,
+                        (int) ((long) size * i / parts),
+                        (int) ((long) size * (i + 1) / parts))));
+            }
+
+            // Combine the parts in order
+            Part result = futures.get(0).get();
+            for (int i = 1; i < parts; i++) {
+                result.combine(futures.get(i).get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while querying.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<Part> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Sorts rows by the sort keys.
+     * @param rows the rows.
+     * @return the sorted rows.
+     */
+    private List<Object> sort(final List<Object> rows) {
+
+        // Evaluate the keys once per row, not once per comparison
+        List<Sortable> sortables = new ArrayList<Sortable>(rows.size());
+        for (Object row : rows) {
+            Object[] keys = new Object[orders.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = JsogIndex.keyOf(orders.get(i).path, row);
+            }
+            sortables.add(new Sortable(row, keys));
+        }
+
+        Collections.sort(sortables, new Comparator<Sortable>() {
+            @Override
+            public int compare(final Sortable a, final Sortable b) {
+                for (int i = 0; i < orders.size(); i++) {
+                    Object x = a.keys[i];
+                    Object y = b.keys[i];
+                    int c;
+                    if (x == null || y == null) {
+                        c = x == null ? (y == null ? 0 : 1) : -1;
+                    } else {
+                        c = JsogIndex.ORDER.compare(x, y);
+                        if (!orders.get(i).ascending) {
+                            c = -c;
+                        }
+                    }
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return 0;
+            }
+        });
+
+        List<Object> sorted = new ArrayList<Object>(sortables.size());
+        for (Sortable sortable : sortables) {
+            sorted.add(sortable.row);
+        }
+        return sorted;
+    }
+
+    /**
+     * Projects an element.
+     * @param element the element.
+     * @return the row of projected fields.
+     */
+    private JSOG project(final Object element) {
+        JSOG row = JSOG.objectWithCapacity(projections.size());
+        for (Field projection : projections) {
+            Object value = projection.path.find(element);
+            row.put(projection.name, value == null
+                    ? null : JSOG.wrap(JsogTraversal.copy(value)));
+        }
+        return row;
+    }
+
+    /**
+     * Adds an aggregate.
+     * @param name the name of the aggregate's field.
+     * @param path the path of the values, or null.
+     * @param function the aggregate function.
+     * @return this query.
+     * @throws IllegalStateException if the query projects.
+     */
+    private JsogQuery aggregate(final String name, final JsogPath path,
+                                final int function) {
+        checkGroupable();
+        aggregates.add(new Field(name, path, function));
+        return this;
+    }
+
+    /**
+     * Ensures the query doesn't project.
+     * @throws IllegalStateException if it does.
+     */
+    private void checkGroupable() {
+        if (!projections.isEmpty()) {
+            throw new IllegalStateException(
+                    "Projecting queries can't group or aggregate.");
+        }
+    }
+
+    /**
+     * Tests if the query groups or aggregates.
+     * @return true if the rows are groups.
+     */
+    private boolean isGrouped() {
+        return groupBy != null || !aggregates.isEmpty();
+    }
+
+    /**
+     * Compiles a definite path.
+     * @param path the path expression.
+     * @return the path.
+     * @throws IllegalArgumentException if the path is invalid or not
+     *         definite.
+     */
+    private static JsogPath definite(final String path) {
+        JsogPath compiled = JsogPath.compile(path);
+        if (!compiled.isDefinite()) {
+            throw new IllegalArgumentException(
+                    "The path " + compiled + " may match several values.");
+        }
+        return compiled;
+    }
+
+    /**
+     * Gets a numeric value.
+     * @param found a JSOG or raw value, or null.
+     * @return a Long for integral values, a Double for others, or null if the
+     *         value isn't a number.
+     */
+    private static Object number(final Object found) {
+        Object value = found == null ? null : JsogPath.unwrap(found);
+        if (value instanceof LazyScalar) {
+            value = ((LazyScalar) value).decode();
+        }
+
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof BigInteger) {
+            BigInteger i = (BigInteger) value;
+            return i.bitLength() < 64
+                    ? (Object) Long.valueOf(i.longValue())
+                    : (Object) Double.valueOf(i.doubleValue());
+        } else if (value instanceof BigDecimal) {
+            Object key = JsogIndex.normalize(value);
+            return key instanceof Long
+                    ? key
+                    : (Object) Double.valueOf(((Number) key).doubleValue());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,306 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Builds JSOGs directly from a Jackson token stream.
+ *
+ * <p>Unlike parsing through a JsonNode tree, this never materializes an
+ * intermediate representation, and it keeps its own stack so the nesting
+ * depth of the input is not limited by the call stack.</p>
+ * @author jrodriguez
+ */
+final class JsogReader {
+
+    /**
+     * Static use only.
+     */
+    private JsogReader() {
+    }
+
+    /**
+     * Reads the value at the current token of a parser.
+     *
+     * If the parser has not been advanced yet, the first token is read. When
+     * this method returns, the parser is positioned on the last token of the
+     * value that was read.
+     * @param parser the parser to read from.
+     * @return the JSOG, or a null JSOG if the input was empty.
+     * @throws IOException if the input could not be parsed.
+     */
+    static JSOG read(final JsonParser parser) throws IOException {
+        return read(parser, null);
+    }
+
+    /**
+     * Reads the value at the current token of a parser, optionally keeping
+     * numbers and strings as lazy scalars.
+     *
+     * Lazy scalars require the text the parser is reading, since they refer
+     * to it by character offset.
+     * @param parser the parser to read from.
+     * @param source the text the parser is reading, or null to decode every
+     * scalar immediately.
+     * @return the JSOG, or a null JSOG if the input was empty.
+     * @throws IOException if the input could not be parsed.
+     * @see LazyScalar
+     */
+    static JSOG read(final JsonParser parser, final String source)
+            throws IOException {
+        return read(parser, source, null);
+    }
+
+    /**
+     * Reads the value at the current token of a parser, optionally keeping
+     * numbers and strings as lazy scalars, and presizing arrays and objects
+     * from a profile.
+     * @param parser the parser to read from.
+     * @param source the text the parser is reading, or null to decode every
+     * scalar immediately.
+     * @param profile the profile to use and update, or null for none.
+     * @return the JSOG, or a null JSOG if the input was empty.
+     * @throws IOException if the input could not be parsed.
+     */
+    static JSOG read(final JsonParser parser, final String source,
+                     final JsogParseProfile profile) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+
+        // Nothing to read
+        if (token == null) {
+            return new JSOG();
+        }
+
+        // The containers we're currently in, innermost last
+        List<JSOG> stack = new ArrayList<JSOG>();
+        JSOG root = null;
+
+        // The profile positions of the containers, if profiling
+        List<JsogParseProfile.Position> positions = profile == null
+                ? null
+                : new ArrayList<JsogParseProfile.Position>();
+        JsogParseProfile.Position position = null;
+        String key = null;
+
+        while (token != null) {
+            JSOG jsog;
+            switch (token) {
+                case FIELD_NAME:
+                    key = parser.getCurrentName();
+                    token = parser.nextToken();
+                    continue;
+
+                case END_ARRAY:
+                case END_OBJECT:
+                    JSOG done = stack.remove(stack.size() - 1);
+                    if (positions != null) {
+                        JsogParseProfile.Position p =
+                                positions.remove(positions.size() - 1);
+                        if (p != null) {
+                            p.record(done.size());
+                        }
+                    }
+                    if (stack.isEmpty()) {
+                        return root;
+                    }
+                    token = parser.nextToken();
+                    continue;
+
+                case START_ARRAY:
+                    position = position(profile, positions, stack, key);
+                    jsog = position == null
+                            ? JSOG.array()
+                            : JSOG.arrayWithCapacity(position.hint());
+                    break;
+
+                case START_OBJECT:
+                    position = position(profile, positions, stack, key);
+                    jsog = position == null
+                            ? JSOG.object()
+                            : JSOG.objectWithCapacity(position.hint());
+                    break;
+
+                default:
+                    jsog = source == null
+                            ? JSOG.newNode().set(readScalar(parser, token))
+                            : readLazy(parser, token, source);
+                    break;
+            }
+
+            // Attach the value to its container
+            if (stack.isEmpty()) {
+                root = jsog;
+            } else {
+                JSOG parent = stack.get(stack.size() - 1);
+                if (parent.isArray()) {
+                    parent.add(jsog);
+                } else {
+                    parent.put(key, jsog);
+                }
+            }
+
+            // Descend into containers, or stop if a lone scalar was read
+            if (token == JsonToken.START_ARRAY
+                    || token == JsonToken.START_OBJECT) {
+                stack.add(jsog);
+                if (positions != null) {
+                    positions.add(position);
+                }
+            } else if (stack.isEmpty()) {
+                return root;
+            }
+
+            token = parser.nextToken();
+        }
+
+        throw new JsonParseException("Unexpected end-of-input.",
+                                     parser.getCurrentLocation());
+    }
+
+    /**
+     * Finds the profile position of a new container.
+     * @param profile the profile, or null if not profiling.
+     * @param positions the positions of the enclosing containers.
+     * @param stack the enclosing containers.
+     * @param key the key of the container, if its parent is an object.
+     * @return the position, or null if it isn't being profiled.
+     */
+    private static JsogParseProfile.Position position(
+            final JsogParseProfile profile,
+            final List<JsogParseProfile.Position> positions,
+            final List<JSOG> stack,
+            final String key) {
+        if (profile == null) {
+            return null;
+        }
+        if (stack.isEmpty()) {
+            return profile.root();
+        }
+
+        JsogParseProfile.Position parent = positions.get(positions.size() - 1);
+        if (parent == null) {
+            return null;
+        }
+        return stack.get(stack.size() - 1).isArray()
+                ? parent.elements()
+                : parent.field(key);
+    }
+
+    /**
+     * Reads the current token as a lazy scalar, if possible.
+     *
+     * <p>The parser doesn't decode numbers or strings until they're
+     * requested, and its token locations aren't precise, so the extent of
+     * the value is found from the current location instead: the last digit
+     * of a number, or the opening quote of a string, which the parser hasn't
+     * read past yet.</p>
+     *
+     * <p>Single-quoted strings aren't valid JSON, so they're decoded
+     * immediately, as is anything which doesn't match the source.</p>
+     * @param parser the parser.
+     * @param token the current token.
+     * @param source the text the parser is reading.
+     * @return the JSOG.
+     * @throws IOException if the value could not be read.
+     */
+    private static JSOG readLazy(final JsonParser parser,
+                                 final JsonToken token,
+                                 final String source) throws IOException {
+        LazyScalar scalar = null;
+        int offset = (int) parser.getCurrentLocation().getCharOffset();
+        switch (token) {
+            case VALUE_STRING:
+                scalar = LazyScalar.string(source, offset);
+                break;
+
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                scalar = LazyScalar.number(source, offset);
+                break;
+
+            default:
+                break;
+        }
+
+        if (scalar != null) {
+            return JSOG.lazy(scalar);
+        }
+        return JSOG.newNode().set(readScalar(parser, token));
+    }
+
+    /**
+     * Reads the scalar value of the current token.
+     *
+     * The resulting types match those of the JsonNode-based parser.
+     * @param parser the parser.
+     * @param token the current token.
+     * @return the primitive value.
+     * @throws IOException if the value could not be read.
+     */
+    static Object readScalar(final JsonParser parser, final JsonToken token)
+            throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+
+            case VALUE_STRING:
+                return parser.getText();
+
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return parser.getIntValue();
+                    case LONG:
+                        return parser.getLongValue();
+                    default:
+                        return parser.getBigIntegerValue();
+                }
+
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+
+            default:
+                throw new JsonParseException("Unexpected token: " + token,
+                                             parser.getTokenLocation());
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Estimates how much heap a JSOG occupies.
+ *
+ * <p>Estimates assume a 64-bit JVM with compressed references: 12 byte
+ * object headers, 4 byte references, and objects aligned to 8 bytes. They
+ * account for the JSOG wrappers, the maps and lists behind objects and
+ * arrays, boxed numbers and Strings. Values the JVM shares, such as
+ * Booleans, are free. JSOGs, objects and arrays referenced from several
+ * places, as after {@link JSOG#dedupe()}, are counted once, as is the source
+ * text of lazy scalars, however many scalars refer to it. The lower layers
+ * of an overlay belong to the JSOGs they came from, and aren't counted.</p>
+ *
+ * <p>The tree is walked without recursion, so deep JSOGs are safe.</p>
+ * @author jrodriguez
+ */
+public final class JsogSizeEstimator {
+
+    /**
+     * The size of an object header.
+     */
+    private static final int HEADER = 12;
+
+    /**
+     * The size of a reference.
+     */
+    private static final int REFERENCE = 4;
+
+    /**
+     * The size of an array header, including its length.
+     */
+    private static final int ARRAY_HEADER = 16;
+
+    /**
+     * A JSOG: a header, the value, and the modification count.
+     */
+    private static final long JSOG_SIZE = align(HEADER + REFERENCE + 4);
+
+    /**
+     * A LazyScalar: a header, the source and two offsets.
+     */
+    private static final long LAZY_SCALAR_SIZE =
+            align(HEADER + REFERENCE + 4 + 4);
+
+    /**
+     * An ArrayList, excluding its element array.
+     */
+    private static final long ARRAY_LIST_SIZE =
+            align(HEADER + 4 + 4 + REFERENCE);
+
+    /**
+     * A LinkedHashMap, excluding its table and entries.
+     */
+    private static final long LINKED_HASH_MAP_SIZE = 56;
+
+    /**
+     * A LinkedHashMap entry: hash, key, value, next, before and after.
+     */
+    private static final long LINKED_HASH_MAP_ENTRY_SIZE =
+            align(HEADER + 4 + REFERENCE * 5);
+
+    /**
+     * An OverlayMap: a header and four references, excluding its layers.
+     */
+    private static final long OVERLAY_MAP_SIZE = align(HEADER + REFERENCE * 4);
+
+    /**
+     * A String, excluding its characters.
+     */
+    private static final long STRING_SIZE = align(HEADER + REFERENCE + 4);
+
+    /**
+     * A BigInteger, excluding its magnitude.
+     */
+    private static final long BIG_INTEGER_SIZE =
+            align(HEADER + 4 * 5 + REFERENCE);
+
+    /**
+     * A BigDecimal, excluding its unscaled value.
+     */
+    private static final long BIG_DECIMAL_SIZE =
+            align(HEADER + 8 + 4 + 4 + REFERENCE * 2);
+
+    /**
+     * Prevents instantiation.
+     */
+    private JsogSizeEstimator() {
+    }
+
+    /**
+     * Rounds a size up to the object alignment.
+     * @param size the unaligned size.
+     * @return the aligned size.
+     */
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Estimates the size of an array.
+     * @param length the number of elements.
+     * @param elementSize the size of each element.
+     * @return the size of the array.
+     */
+    private static long array(final long length, final int elementSize) {
+        return align(ARRAY_HEADER + length * elementSize);
+    }
+
+    /**
+     * Estimates the size of a String.
+     * @param string the string.
+     * @return the size of the string, including its characters.
+     */
+    private static long string(final String string) {
+        return STRING_SIZE + array(string.length(), 2);
+    }
+
+    /**
+     * Estimates the number of bytes retained by a JSOG.
+     * @param jsog the JSOG.
+     * @return the estimated size, in bytes.
+     */
+    public static long estimate(final JSOG jsog) {
+        if (jsog == null) {
+            return 0;
+        }
+
+        long size = 0;
+        Map<Object, Boolean> seen = new IdentityHashMap<Object, Boolean>();
+        List<Object> stack = new ArrayList<Object>();
+        stack.add(jsog);
+
+        while (!stack.isEmpty()) {
+            Object value = stack.remove(stack.size() - 1);
+
+            // Shared values are only counted the first time
+            if ((value instanceof JSOG || value instanceof Map<?, ?>
+                    || value instanceof List<?>)
+                    && seen.put(value, Boolean.TRUE) != null) {
+                continue;
+            }
+
+            if (value instanceof JSOG) {
+                size += JSOG_SIZE;
+                Object inner = ((JSOG) value).unresolvedValue();
+                if (inner != null) {
+                    stack.add(inner);
+                }
+            } else if (value instanceof OverlayMap) {
+                size += OVERLAY_MAP_SIZE;
+                JSOG top = ((OverlayMap) value).getTop();
+                if (top != null) {
+                    stack.add(top);
+                }
+            } else if (value instanceof Map<?, ?>) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                int capacity = 16;
+                while (capacity * 3 / 4 < map.size()) {
+                    capacity <<= 1;
+                }
+                size += LINKED_HASH_MAP_SIZE
+                        + array(capacity, REFERENCE)
+                        + LINKED_HASH_MAP_ENTRY_SIZE * map.size();
+                for (Entry<?, ?> entry : map.entrySet()) {
+                    size += string((String) entry.getKey());
+                    if (entry.getValue() != null) {
+                        stack.add(entry.getValue());
+                    }
+                }
+            } else if (value instanceof List<?>) {
+                List<?> list = (List<?>) value;
+                size += ARRAY_LIST_SIZE + array(list.size(), REFERENCE);
+                for (Object item : list) {
+                    if (item != null) {
+                        stack.add(item);
+                    }
+                }
+            } else if (value instanceof String) {
+                size += string((String) value);
+            } else if (value instanceof LazyScalar) {
+                size += LAZY_SCALAR_SIZE;
+                String source = ((LazyScalar) value).getSource();
+                if (seen.put(source, Boolean.TRUE) == null) {
+                    size += string(source);
+                }
+            } else if (value instanceof RawJson) {
+                RawJson raw = (RawJson) value;
+                size += align(HEADER + REFERENCE * 2);
+                size += raw.getBytes() != null
+                        ? array(raw.getBytes().length, 1)
+                        : string(raw.getText());
+            } else {
+                size += primitive(value);
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Estimates the size of a boxed primitive.
+     * @param value the primitive.
+     * @return the size of the primitive.
+     */
+    private static long primitive(final Object value) {
+        if (value instanceof Boolean) {
+            return 0;
+        } else if (value instanceof Long || value instanceof Double) {
+            return align(HEADER + 8);
+        } else if (value instanceof BigInteger) {
+            return bigInteger((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            return BIG_DECIMAL_SIZE
+                    + bigInteger(((BigDecimal) value).unscaledValue());
+        } else {
+            return align(HEADER + 4);
+        }
+    }
+
+    /**
+     * Estimates the size of a BigInteger.
+     * @param value the BigInteger.
+     * @return the size of the BigInteger, including its magnitude.
+     */
+    private static long bigInteger(final BigInteger value) {
+        return BIG_INTEGER_SIZE + array((value.bitLength() + 31) / 32, 4);
+    }
+}
@@ -0,0 +1,256 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * A splittable iterator over the elements of an array or object JSOG.
+ *
+ * <p>A spliterator covers a range of its JSOG's elements and always knows
+ * exactly how many remain. {@link #trySplit()} hands the first half of the
+ * remaining range to a new spliterator, so a large JSOG can be divided into
+ * balanced, independently iterable parts without copying its elements. The
+ * parts may be iterated on different threads, as long as the JSOG is not
+ * modified in the meantime.</p>
+ *
+ * <p>Like the other JSOG iterators, spliterators are fail-fast.</p>
+ * @param <T> the element type.
+ * @author jrodriguez
+ * @see JSOG#arraySpliterator()
+ * @see JSOG#objectSpliterator()
+ */
+public abstract class JsogSpliterator<T> implements Iterator<T> {
+
+    /**
+     * Iterates over the backing list of an array JSOG.
+     */
+    private static final class ArraySpliterator
+                         extends JsogSpliterator<JSOG> {
+
+        /**
+         * The backing list.
+         */
+        private final List<?> list;
+
+        /**
+         * Constructs a new ArraySpliterator.
+         * @param jsog the JSOG being iterated.
+         * @param list the backing list.
+         * @param index the first index.
+         * @param fence one past the last index.
+         */
+        ArraySpliterator(final JSOG jsog, final List<?> list,
+                         final int index, final int fence) {
+            super(jsog, index, fence);
+            this.list = list;
+        }
+
+        @Override
+        JSOG element(final int i) {
+            return JSOG.wrap(list.get(i));
+        }
+
+        @Override
+        JsogSpliterator<JSOG> split(final int from, final int to) {
+            return new ArraySpliterator(jsog, list, from, to);
+        }
+    }
+
+    /**
+     * Iterates over the captured entries of an object JSOG.
+     */
+    private static final class ObjectSpliterator
+                         extends JsogSpliterator<Entry<String, JSOG>> {
+
+        /**
+         * The entries of the backing map.
+         */
+        private final Object[] entries;
+
+        /**
+         * Constructs a new ObjectSpliterator.
+         * @param jsog the JSOG being iterated.
+         * @param entries the entries of the backing map.
+         * @param index the first index.
+         * @param fence one past the last index.
+         */
+        ObjectSpliterator(final JSOG jsog, final Object[] entries,
+                          final int index, final int fence) {
+            super(jsog, index, fence);
+            this.entries = entries;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Entry<String, JSOG> element(final int i) {
+            return new JSOG.ObjectEntry((Entry<String, Object>) entries[i]);
+        }
+
+        @Override
+        JsogSpliterator<Entry<String, JSOG>> split(final int from,
+                                                   final int to) {
+            return new ObjectSpliterator(jsog, entries, from, to);
+        }
+    }
+
+    /**
+     * Creates a spliterator over the backing list of an array JSOG.
+     * @param jsog the JSOG.
+     * @param list the backing list.
+     * @return a spliterator covering the whole list.
+     */
+    static JsogSpliterator<JSOG> array(final JSOG jsog, final List<?> list) {
+        return new ArraySpliterator(jsog, list, 0, list.size());
+    }
+
+    /**
+     * Creates a spliterator over the backing map of an object JSOG.
+     * @param jsog the JSOG.
+     * @param map the backing map.
+     * @return a spliterator covering all of the map's entries.
+     */
+    static JsogSpliterator<Entry<String, JSOG>> object(final JSOG jsog,
+                                                       final Map<?, ?> map) {
+        Object[] entries = map.entrySet().toArray();
+        return new ObjectSpliterator(jsog, entries, 0, entries.length);
+    }
+
+    /**
+     * The JSOG being iterated.
+     */
+    final JSOG jsog;
+
+    /**
+     * For fail-fast.
+     */
+    private final int expectedModCount;
+
+    /**
+     * The index of the next element.
+     */
+    private int index;
+
+    /**
+     * One past the index of the last element.
+     */
+    private final int fence;
+
+    /**
+     * Constructs a new JsogSpliterator.
+     * @param jsog the JSOG being iterated.
+     * @param index the first index.
+     * @param fence one past the last index.
+     */
+    JsogSpliterator(final JSOG jsog, final int index, final int fence) {
+        this.jsog = jsog;
+        this.expectedModCount = jsog.getModCount();
+        this.index = index;
+        this.fence = fence;
+    }
+
+    /**
+     * Gets the element at an index.
+     * @param i the index.
+     * @return the element.
+     */
+    abstract T element(int i);
+
+    /**
+     * Creates a spliterator over a sub-range.
+     * @param from the first index.
+     * @param to one past the last index.
+     * @return the new spliterator.
+     */
+    abstract JsogSpliterator<T> split(int from, int to);
+
+    /**
+     * Gets the exact number of elements remaining.
+     * @return the number of remaining elements.
+     */
+    public final int size() {
+        return fence - index;
+    }
+
+    /**
+     * Splits off the first half of the remaining elements.
+     *
+     * After a successful split, this spliterator covers only the second half
+     * of what it covered before.
+     * @return a spliterator covering the first half of the remaining
+     * elements, or null if fewer than two elements remain.
+     */
+    public final JsogSpliterator<T> trySplit() {
+        int middle = (index + fence) >>> 1;
+        if (middle <= index) {
+            return null;
+        }
+
+        JsogSpliterator<T> prefix = split(index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    /**
+     * Tests if there are remaining elements.
+     * @return true if there are remaining elements.
+     */
+    public final boolean hasNext() {
+        return index < fence;
+    }
+
+    /**
+     * Gets the next element.
+     * @return the next element.
+     * @throws NoSuchElementException if there are no remaining elements.
+     * @throws ConcurrentModificationException if the JSOG was modified.
+     */
+    public final T next() {
+        if (jsog.getModCount() != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+
+        if (index >= fence) {
+            throw new NoSuchElementException();
+        }
+
+        return element(index++);
+    }
+
+    /**
+     * Spliterators do not support removal.
+     * @throws UnsupportedOperationException always.
+     */
+    public final void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+}
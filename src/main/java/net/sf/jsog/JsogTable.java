@@ -0,0 +1,1366 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, columnar copy of a JSOG array of flat records.
+ *
+ * <p>Each key found in the records becomes a column. A column whose values
+ * are all integers is held in a <code>long[]</code>, all numbers in a
+ * <code>double[]</code> with a bitmap of which were integers, all strings as
+ * <code>int</code> codes into a dictionary of distinct strings, and all
+ * booleans in a bitmap. Columns with mixed or structured values fall back
+ * to holding JSOG values. Each column has a bitmap of its non-null values,
+ * and of the records missing the key, if any.</p>
+ *
+ * <pre>
+ * JsogTable table = JsogTable.from(sales);
+ * Number revenue = table.filter(JsogPredicate.eq("$.region", "west"))
+ *                       .sum("price");
+ * </pre>
+ *
+ * <p>Aggregates and predicate scans run over the primitive arrays directly.
+ * {@link JsogPredicate}s on a single key are answered column by column, as
+ * bitmaps; other paths are tested against each record. Numbers that a
+ * column's primitive type can't hold exactly, such as integers beyond
+ * 2<sup>53</sup> mixed with fractions, make it a JSOG column. Aggregates
+ * over a JSOG column of numbers are computed exactly, as BigDecimals.</p>
+ *
+ * <p>Tables are immutable, and may be shared between threads. Structured
+ * values are copied in and out.</p>
+ * @author jrodriguez
+ */
+public final class JsogTable {
+
+    /**
+     * The largest integer a double holds exactly.
+     */
+    private static final long EXACT_DOUBLE = 1L << 53;
+
+    /**
+     * A null value.
+     */
+    private static final int NULL = 0;
+
+    /**
+     * An integer a double holds exactly.
+     */
+    private static final int INTEGER = 1;
+
+    /**
+     * An integer too wide for a double.
+     */
+    private static final int WIDE = 2;
+
+    /**
+     * A number with a fraction.
+     */
+    private static final int FRACTION = 3;
+
+    /**
+     * A string.
+     */
+    private static final int STRING = 4;
+
+    /**
+     * A boolean.
+     */
+    private static final int BOOLEAN = 5;
+
+    /**
+     * An object, array or anything else.
+     */
+    private static final int OTHER = 6;
+
+    /**
+     * A column of a table.
+     */
+    public abstract static class Column {
+
+        /**
+         * The column's key.
+         */
+        private final String name;
+
+        /**
+         * The number of rows.
+         */
+        private final int size;
+
+        /**
+         * The rows with a non-null value.
+         */
+        private final long[] valid;
+
+        /**
+         * The rows missing the key, or null if none are.
+         */
+        private long[] missing;
+
+        /**
+         * Constructs a new Column.
+         * @param name the column's key.
+         * @param size the number of rows.
+         */
+        Column(final String name, final int size) {
+            this.name = name;
+            this.size = size;
+            this.valid = new long[words(size)];
+        }
+
+        /**
+         * Gets the column's key.
+         * @return the key.
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of rows.
+         * @return the number of rows.
+         */
+        public final int size() {
+            return size;
+        }
+
+        /**
+         * Gets the type of the column's values.
+         * @return Long, Double, String or Boolean for primitive columns, or
+         *         JSOG for the fallback.
+         */
+        public abstract Class<?> getType();
+
+        /**
+         * Tests if a row's value is null or missing.
+         * @param row the row.
+         * @return true if the row has no value.
+         */
+        public final boolean isNull(final int row) {
+            check(row);
+            return !bit(valid, row);
+        }
+
+        /**
+         * Tests if a row is missing the key.
+         * @param row the row.
+         * @return true if the record didn't have the key.
+         */
+        public final boolean isMissing(final int row) {
+            check(row);
+            return missing != null && bit(missing, row);
+        }
+
+        /**
+         * Gets a row's value.
+         * @param row the row.
+         * @return the value: a Long, Double, String, Boolean or JSOG, or null.
+         */
+        public final Object get(final int row) {
+            return isNull(row) ? null : value(row);
+        }
+
+        /**
+         * Gets a row's value from a Long column.
+         * @param row the row.
+         * @return the value, or 0 if it's null.
+         * @throws IllegalStateException if this is not a Long column.
+         */
+        public long getLong(final int row) {
+            throw new IllegalStateException(
+                    "The " + name + " column holds " + getType().getName());
+        }
+
+        /**
+         * Gets a row's value from a Long or Double column.
+         * @param row the row.
+         * @return the value, or 0 if it's null.
+         * @throws IllegalStateException if this is not a numeric column.
+         */
+        public double getDouble(final int row) {
+            throw new IllegalStateException(
+                    "The " + name + " column holds " + getType().getName());
+        }
+
+        /**
+         * Gets the non-null value of a row.
+         * @param row the row.
+         * @return the value.
+         */
+        abstract Object value(int row);
+
+        /**
+         * Stores a non-null value while building.
+         * @param row the row.
+         * @param value the value, of the column's kind.
+         */
+        abstract void store(int row, Object value);
+
+        /**
+         * Creates a column of the same type from some of the rows.
+         * @param rows the rows, in order.
+         * @return the new column.
+         */
+        abstract Column select(int[] rows);
+
+        /**
+         * Marks the rows matching a set of normalized non-null values.
+         * @param values the values.
+         * @param matches receives the matching rows.
+         */
+        void in(final Iterable<Object> values, final long[] matches) {
+            Map<Object, Boolean> accepted = new HashMap<Object, Boolean>();
+            for (Object value : values) {
+                accepted.put(value, Boolean.TRUE);
+            }
+            for (int row = 0; row < size; row++) {
+                if (bit(valid, row) && accepted.containsKey(
+                        JsogIndex.normalize(value(row)))) {
+                    set(matches, row);
+                }
+            }
+        }
+
+        /**
+         * Marks the rows in a range.
+         * @param range the range.
+         * @param matches receives the matching rows.
+         */
+        void range(final JsogPredicate.Range range, final long[] matches) {
+            for (int row = 0; row < size; row++) {
+                if (bit(valid, row)
+                        && range.accepts(JsogIndex.normalize(value(row)))) {
+                    set(matches, row);
+                }
+            }
+        }
+
+        /**
+         * Copies the bitmaps of some rows into a selected column.
+         * @param column the selected column.
+         * @param rows the rows, in order.
+         * @return the selected column.
+         */
+        final Column copyBits(final Column column, final int[] rows) {
+            for (int i = 0; i < rows.length; i++) {
+                if (bit(valid, rows[i])) {
+                    set(column.valid, i);
+                }
+                if (missing != null && bit(missing, rows[i])) {
+                    column.missing(i);
+                }
+            }
+            return column;
+        }
+
+        /**
+         * Marks a row as missing the key.
+         * @param row the row.
+         */
+        final void missing(final int row) {
+            if (missing == null) {
+                missing = new long[valid.length];
+            }
+            set(missing, row);
+        }
+
+        /**
+         * Ensures a row exists.
+         * @param row the row.
+         * @throws IndexOutOfBoundsException if it doesn't.
+         */
+        private void check(final int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException(
+                        "Row: " + row + ", Size: " + size);
+            }
+        }
+    }
+
+    /**
+     * A column of integers.
+     */
+    private static final class LongColumn extends Column {
+
+        /**
+         * The values.
+         */
+        private final long[] values;
+
+        /**
+         * Constructs a new LongColumn.
+         * @param name the column's key.
+         * @param size the number of rows.
+         */
+        LongColumn(final String name, final int size) {
+            super(name, size);
+            values = new long[size];
+        }
+
+        @Override
+        public Class<?> getType() {
+            return Long.class;
+        }
+
+        @Override
+        public long getLong(final int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(final int row) {
+            return values[row];
+        }
+
+        @Override
+        Object value(final int row) {
+            return values[row];
+        }
+
+        @Override
+        void store(final int row, final Object value) {
+            values[row] = ((Number) value).longValue();
+        }
+
+        @Override
+        Column select(final int[] rows) {
+            LongColumn column = new LongColumn(getName(), rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                column.values[i] = values[rows[i]];
+            }
+            return copyBits(column, rows);
+        }
+
+        @Override
+        void in(final Iterable<Object> keys, final long[] matches) {
+            List<Long> integers = new ArrayList<Long>();
+            for (Object key : keys) {
+                if (key instanceof Long) {
+                    integers.add((Long) key);
+                }
+            }
+            long[] accepted = new long[integers.size()];
+            for (int i = 0; i < accepted.length; i++) {
+                accepted[i] = integers.get(i);
+            }
+            Arrays.sort(accepted);
+            for (int row = 0; row < values.length; row++) {
+                if (Arrays.binarySearch(accepted, values[row]) >= 0
+                        && bit(super.valid, row)) {
+                    set(matches, row);
+                }
+            }
+        }
+
+        @Override
+        void range(final JsogPredicate.Range range, final long[] matches) {
+            if (range.rank != 1) {
+                return;
+            }
+
+            // Compare exactly while the bounds are integers
+            if (!(range.low instanceof Long || range.low == null)
+                    || !(range.high instanceof Long || range.high == null)) {
+                super.range(range, matches);
+                return;
+            }
+            long low = range.low == null ? Long.MIN_VALUE : (Long) range.low;
+            long high = range.high == null ? Long.MAX_VALUE : (Long) range.high;
+            boolean lowOpen = range.low != null && !range.lowInclusive;
+            boolean highOpen = range.high != null && !range.highInclusive;
+            for (int row = 0; row < values.length; row++) {
+                long value = values[row];
+                if (value >= low && value <= high
+                        && !(lowOpen && value == low)
+                        && !(highOpen && value == high)
+                        && bit(super.valid, row)) {
+                    set(matches, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * A column of numbers.
+     */
+    private static final class DoubleColumn extends Column {
+
+        /**
+         * The values.
+         */
+        private final double[] values;
+
+        /**
+         * The rows which held integers, and read back as Long.
+         */
+        private final long[] integral;
+
+        /**
+         * Constructs a new DoubleColumn.
+         * @param name the column's key.
+         * @param size the number of rows.
+         */
+        DoubleColumn(final String name, final int size) {
+            super(name, size);
+            values = new double[size];
+            integral = new long[words(size)];
+        }
+
+        @Override
+        public Class<?> getType() {
+            return Double.class;
+        }
+
+        @Override
+        public double getDouble(final int row) {
+            return values[row];
+        }
+
+        @Override
+        Object value(final int row) {
+            if (bit(integral, row)) {
+                return (long) values[row];
+            }
+            return values[row];
+        }
+
+        @Override
+        void store(final int row, final Object value) {
+            values[row] = ((Number) value).doubleValue();
+            if (kindOf(value) == INTEGER) {
+                set(integral, row);
+            }
+        }
+
+        @Override
+        Column select(final int[] rows) {
+            DoubleColumn column = new DoubleColumn(getName(), rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                column.values[i] = values[rows[i]];
+                if (bit(integral, rows[i])) {
+                    set(column.integral, i);
+                }
+            }
+            return copyBits(column, rows);
+        }
+
+        @Override
+        void range(final JsogPredicate.Range range, final long[] matches) {
+            if (range.rank != 1) {
+                return;
+            }
+
+            // Compare as doubles while the bounds convert exactly
+            if (!exact(range.low) || !exact(range.high)) {
+                super.range(range, matches);
+                return;
+            }
+            double low = range.low == null
+                    ? Double.NEGATIVE_INFINITY
+                    : ((Number) range.low).doubleValue();
+            double high = range.high == null
+                    ? Double.POSITIVE_INFINITY
+                    : ((Number) range.high).doubleValue();
+            boolean lowOpen = range.low != null && !range.lowInclusive;
+            boolean highOpen = range.high != null && !range.highInclusive;
+            for (int row = 0; row < values.length; row++) {
+                double value = values[row];
+                if (value >= low && value <= high
+                        && !(lowOpen && value == low)
+                        && !(highOpen && value == high)
+                        && bit(super.valid, row)) {
+                    set(matches, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * A column of dictionary-encoded strings.
+     */
+    private static final class StringColumn extends Column {
+
+        /**
+         * The code of each row's string.
+         */
+        private final int[] codes;
+
+        /**
+         * The distinct strings, by code.
+         */
+        private final List<String> dictionary;
+
+        /**
+         * The codes, by string.
+         */
+        private final Map<String, Integer> encoder;
+
+        /**
+         * Constructs a new StringColumn.
+         * @param name the column's key.
+         * @param size the number of rows.
+         */
+        StringColumn(final String name, final int size) {
+            this(name, size, new ArrayList<String>(),
+                 new HashMap<String, Integer>());
+        }
+
+        /**
+         * Constructs a new StringColumn sharing a dictionary.
+         * @param name the column's key.
+         * @param size the number of rows.
+         * @param dictionary the distinct strings, by code.
+         * @param encoder the codes, by string.
+         */
+        private StringColumn(final String name, final int size,
+                             final List<String> dictionary,
+                             final Map<String, Integer> encoder) {
+            super(name, size);
+            this.codes = new int[size];
+            this.dictionary = dictionary;
+            this.encoder = encoder;
+        }
+
+        @Override
+        public Class<?> getType() {
+            return String.class;
+        }
+
+        @Override
+        Object value(final int row) {
+            return dictionary.get(codes[row]);
+        }
+
+        @Override
+        void store(final int row, final Object value) {
+            String string = value.toString();
+            Integer code = encoder.get(string);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(string);
+                encoder.put(string, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        Column select(final int[] rows) {
+            StringColumn column = new StringColumn(getName(), rows.length,
+                                                   dictionary, encoder);
+            for (int i = 0; i < rows.length; i++) {
+                column.codes[i] = codes[rows[i]];
+            }
+            return copyBits(column, rows);
+        }
+
+        @Override
+        void in(final Iterable<Object> keys, final long[] matches) {
+            boolean[] accepted = new boolean[dictionary.size()];
+            for (Object key : keys) {
+                Integer code = encoder.get(key);
+                if (code != null) {
+                    accepted[code] = true;
+                }
+            }
+            scan(accepted, matches);
+        }
+
+        @Override
+        void range(final JsogPredicate.Range range, final long[] matches) {
+            boolean[] accepted = new boolean[dictionary.size()];
+            for (int code = 0; code < accepted.length; code++) {
+                accepted[code] = range.accepts(dictionary.get(code));
+            }
+            scan(accepted, matches);
+        }
+
+        /**
+         * Marks the rows whose strings are accepted.
+         * @param accepted whether each code is accepted.
+         * @param matches receives the matching rows.
+         */
+        private void scan(final boolean[] accepted, final long[] matches) {
+            for (int row = 0; row < codes.length; row++) {
+                if (bit(super.valid, row) && accepted[codes[row]]) {
+                    set(matches, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * A column of booleans.
+     */
+    private static final class BooleanColumn extends Column {
+
+        /**
+         * The rows whose value is true.
+         */
+        private final long[] values;
+
+        /**
+         * Constructs a new BooleanColumn.
+         * @param name the column's key.
+         * @param size the number of rows.
+         */
+        BooleanColumn(final String name, final int size) {
+            super(name, size);
+            values = new long[words(size)];
+        }
+
+        @Override
+        public Class<?> getType() {
+            return Boolean.class;
+        }
+
+        @Override
+        Object value(final int row) {
+            return bit(values, row);
+        }
+
+        @Override
+        void store(final int row, final Object value) {
+            if ((Boolean) value) {
+                set(values, row);
+            }
+        }
+
+        @Override
+        Column select(final int[] rows) {
+            BooleanColumn column = new BooleanColumn(getName(), rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                if (bit(values, rows[i])) {
+                    set(column.values, i);
+                }
+            }
+            return copyBits(column, rows);
+        }
+    }
+
+    /**
+     * A column of mixed or structured values.
+     */
+    private static final class JsogColumn extends Column {
+
+        /**
+         * The primitive values, or copies of the structured ones.
+         */
+        private final Object[] values;
+
+        /**
+         * Constructs a new JsogColumn.
+         * @param name the column's key.
+         * @param size the number of rows.
+         */
+        JsogColumn(final String name, final int size) {
+            super(name, size);
+            values = new Object[size];
+        }
+
+        @Override
+        public Class<?> getType() {
+            return JSOG.class;
+        }
+
+        @Override
+        Object value(final int row) {
+            Object value = values[row];
+            return value instanceof JSOG ? ((JSOG) value).clone() : value;
+        }
+
+        @Override
+        void store(final int row, final Object value) {
+            values[row] = value instanceof Map<?, ?> || value instanceof List<?>
+                    ? JSOG.wrap(value).clone()
+                    : value;
+        }
+
+        @Override
+        Column select(final int[] rows) {
+            JsogColumn column = new JsogColumn(getName(), rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                column.values[i] = values[rows[i]];
+            }
+            return copyBits(column, rows);
+        }
+
+        @Override
+        void in(final Iterable<Object> keys, final long[] matches) {
+            Map<Object, Boolean> accepted = new HashMap<Object, Boolean>();
+            for (Object key : keys) {
+                accepted.put(key, Boolean.TRUE);
+            }
+            for (int row = 0; row < values.length; row++) {
+                Object value = values[row];
+                if (value != null && !(value instanceof JSOG)
+                        && accepted.containsKey(JsogIndex.normalize(value))) {
+                    set(matches, row);
+                }
+            }
+        }
+
+        @Override
+        void range(final JsogPredicate.Range range, final long[] matches) {
+            for (int row = 0; row < values.length; row++) {
+                Object value = values[row];
+                if (value != null && !(value instanceof JSOG)
+                        && range.accepts(JsogIndex.normalize(value))) {
+                    set(matches, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of rows.
+     */
+    private final int size;
+
+    /**
+     * The columns, by key, in the order the keys were first seen.
+     */
+    private final Map<String, Column> columns;
+
+    /**
+     * Constructs a new JsogTable.
+     * @param size the number of rows.
+     * @param columns the columns.
+     */
+    private JsogTable(final int size, final Map<String, Column> columns) {
+        this.size = size;
+        this.columns = columns;
+    }
+
+    /**
+     * Converts a JSOG array of records into a table.
+     * @param array the array. A null JSOG is an empty array.
+     * @return the table.
+     * @throws IllegalStateException if the JSOG is not an array.
+     * @throws IllegalArgumentException if an element is not an object.
+     */
+    public static JsogTable from(final JSOG array) {
+        Object raw = JsogPath.unwrap(array);
+        if (raw == null) {
+            raw = Collections.emptyList();
+        } else if (!(raw instanceof List<?>)) {
+            throw new IllegalStateException("The JSOG is not an array.");
+        }
+        List<?> elements = (List<?>) raw;
+        int size = elements.size();
+
+        // Unwrap the records, and find the kinds of values under each key
+        List<Map<?, ?>> records = new ArrayList<Map<?, ?>>(size);
+        Map<String, int[]> kinds = new LinkedHashMap<String, int[]>();
+        for (int row = 0; row < size; row++) {
+            Object record = JsogPath.unwrap(elements.get(row));
+            if (!(record instanceof Map<?, ?>)) {
+                throw new IllegalArgumentException(
+                        "Element " + row + " is not an object.");
+            }
+            records.add((Map<?, ?>) record);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) record).entrySet()) {
+                int[] kind = kinds.get((String) entry.getKey());
+                if (kind == null) {
+                    kind = new int[OTHER + 1];
+                    kinds.put((String) entry.getKey(), kind);
+                }
+                kind[kindOf(scalar(entry.getValue()))]++;
+            }
+        }
+
+        // Choose each column's type
+        Map<String, Column> columns = new LinkedHashMap<String, Column>();
+        for (Map.Entry<String, int[]> entry : kinds.entrySet()) {
+            columns.put(entry.getKey(), column(entry.getKey(), size,
+                                                entry.getValue()));
+        }
+
+        // Fill the columns
+        for (Column column : columns.values()) {
+            for (int row = 0; row < size; row++) {
+                Map<?, ?> record = records.get(row);
+                Object value = scalar(record.get(column.getName()));
+                if (value != null) {
+                    column.store(row, value);
+                    set(column.valid, row);
+                } else if (!record.containsKey(column.getName())) {
+                    column.missing(row);
+                }
+            }
+        }
+
+        return new JsogTable(size, columns);
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the keys of the columns, in the order they were first seen.
+     * @return the column keys.
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(
+                new ArrayList<String>(columns.keySet()));
+    }
+
+    /**
+     * Gets a column.
+     * @param name the column's key.
+     * @return the column, or null if there is none.
+     */
+    public Column getColumn(final String name) {
+        return columns.get(name);
+    }
+
+    /**
+     * Creates a table of some of the columns. The columns are shared.
+     * @param names the keys of the columns.
+     * @return the new table.
+     * @throws IllegalArgumentException if a column doesn't exist.
+     */
+    public JsogTable project(final String... names) {
+        Map<String, Column> projected = new LinkedHashMap<String, Column>();
+        for (String name : names) {
+            projected.put(name, column(name));
+        }
+        return new JsogTable(size, projected);
+    }
+
+    /**
+     * Creates a table of the rows matching a condition.
+     * @param predicate the condition.
+     * @return the new table.
+     */
+    public JsogTable filter(final JsogPredicate predicate) {
+        long[] matches = scan(predicate);
+        int[] rows = new int[cardinality(matches)];
+        int i = 0;
+        for (int row = 0; row < size; row++) {
+            if (bit(matches, row)) {
+                rows[i++] = row;
+            }
+        }
+
+        Map<String, Column> selected = new LinkedHashMap<String, Column>();
+        for (Column column : columns.values()) {
+            selected.put(column.getName(), column.select(rows));
+        }
+        return new JsogTable(rows.length, selected);
+    }
+
+    /**
+     * Counts the rows matching a condition.
+     * @param predicate the condition.
+     * @return the number of matching rows.
+     */
+    public int count(final JsogPredicate predicate) {
+        return cardinality(scan(predicate));
+    }
+
+    /**
+     * Counts the non-null values of a column.
+     * @param name the column's key.
+     * @return the number of non-null values.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     */
+    public int count(final String name) {
+        return cardinality(column(name).valid);
+    }
+
+    /**
+     * Sums a numeric column.
+     * @param name the column's key.
+     * @return the sum: a Long for integer columns, unless it overflows, a
+     *         BigDecimal for JSOG columns of numbers, or a Double; null if
+     *         there are no values.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     * @throws IllegalStateException if the column is not numeric.
+     */
+    public Number sum(final String name) {
+        Column column = numeric(name);
+        if (cardinality(column.valid) == 0) {
+            return null;
+        }
+
+        if (column instanceof LongColumn) {
+            long[] values = ((LongColumn) column).values;
+            long sum = 0;
+            double overflow = 0;
+            for (int row = 0; row < values.length; row++) {
+                if (bit(column.valid, row)) {
+                    long value = values[row];
+                    long next = sum + value;
+                    if (((sum ^ next) & (value ^ next)) < 0) {
+                        overflow += sum;
+                        next = value;
+                    }
+                    sum = next;
+                }
+            }
+            return overflow == 0 ? (Number) sum : (Number) (overflow + sum);
+        } else if (column instanceof JsogColumn) {
+            Object[] values = ((JsogColumn) column).values;
+            BigDecimal sum = BigDecimal.ZERO;
+            for (int row = 0; row < values.length; row++) {
+                if (bit(column.valid, row)) {
+                    sum = sum.add(decimal(values[row]));
+                }
+            }
+            return sum;
+        }
+
+        double[] values = ((DoubleColumn) column).values;
+        double sum = 0;
+        for (int row = 0; row < values.length; row++) {
+            if (bit(column.valid, row)) {
+                sum += values[row];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Averages a numeric column.
+     * @param name the column's key.
+     * @return the average, or null if there are no values.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     * @throws IllegalStateException if the column is not numeric.
+     */
+    public Double avg(final String name) {
+        Number sum = sum(name);
+        return sum == null
+                ? null
+                : sum.doubleValue() / count(name);
+    }
+
+    /**
+     * Finds the least value of a numeric column.
+     * @param name the column's key.
+     * @return a Long for integer columns, a Double for fraction columns, or
+     *         the value itself for JSOG columns of numbers; null if there
+     *         are no values.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     * @throws IllegalStateException if the column is not numeric.
+     */
+    public Number min(final String name) {
+        return extreme(name, true);
+    }
+
+    /**
+     * Finds the greatest value of a numeric column.
+     * @param name the column's key.
+     * @return a Long for integer columns, a Double for fraction columns, or
+     *         the value itself for JSOG columns of numbers; null if there
+     *         are no values.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     * @throws IllegalStateException if the column is not numeric.
+     */
+    public Number max(final String name) {
+        return extreme(name, false);
+    }
+
+    /**
+     * Gets a row as a JSOG object.
+     * @param row the row.
+     * @return a new object, with the keys in column order.
+     * @throws IndexOutOfBoundsException if the row doesn't exist.
+     */
+    public JSOG getRow(final int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Row: " + row + ", Size: " + size);
+        }
+        JSOG record = JSOG.objectWithCapacity(columns.size());
+        for (Column column : columns.values()) {
+            if (!column.isMissing(row)) {
+                record.put(column.getName(), column.get(row));
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Converts the table back into a JSOG array of records.
+     * @return a new array of new objects, with the keys in column order.
+     */
+    public JSOG toJSOG() {
+        JSOG array = JSOG.arrayWithCapacity(size);
+        for (int row = 0; row < size; row++) {
+            array.add(getRow(row));
+        }
+        return array;
+    }
+
+    /**
+     * Finds the rows matching a condition.
+     * @param predicate the condition.
+     * @return a bitmap of the matching rows.
+     */
+    private long[] scan(final JsogPredicate predicate) {
+        long[] matches = new long[words(size)];
+        if (predicate instanceof JsogPredicate.And) {
+            fill(matches);
+            for (JsogPredicate part
+                    : ((JsogPredicate.And) predicate).predicates) {
+                long[] more = scan(part);
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] &= more[i];
+                }
+            }
+        } else if (predicate instanceof JsogPredicate.Or) {
+            for (JsogPredicate part
+                    : ((JsogPredicate.Or) predicate).predicates) {
+                long[] more = scan(part);
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] |= more[i];
+                }
+            }
+        } else if (predicate instanceof JsogPredicate.In
+                && columnOf(((JsogPredicate.In) predicate).path)) {
+            JsogPredicate.In in = (JsogPredicate.In) predicate;
+            Column column = columns.get(in.path.segment(0));
+            if (column == null) {
+                if (in.values.contains(null)) {
+                    fill(matches);
+                }
+                return matches;
+            }
+
+            List<Object> values = new ArrayList<Object>(in.values);
+            if (values.remove(null)) {
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] = ~column.valid[i];
+                }
+                clearTail(matches);
+            }
+            column.in(values, matches);
+        } else if (predicate instanceof JsogPredicate.Range
+                && columnOf(((JsogPredicate.Range) predicate).path)) {
+            JsogPredicate.Range range = (JsogPredicate.Range) predicate;
+            Column column = columns.get(range.path.segment(0));
+            if (column != null) {
+                column.range(range, matches);
+            }
+        } else {
+
+            // Test each record
+            for (int row = 0; row < size; row++) {
+                if (predicate.matches(getRow(row))) {
+                    set(matches, row);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Tests if a path is a single key, and so names a column.
+     * @param path the path.
+     * @return true if the path is a single key.
+     */
+    private static boolean columnOf(final JsogPath path) {
+        return path.length() == 1 && path.segment(0) instanceof String;
+    }
+
+    /**
+     * Gets a column that must exist.
+     * @param name the column's key.
+     * @return the column.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     */
+    private Column column(final String name) {
+        Column column = columns.get(name);
+        if (column == null) {
+            throw new IllegalArgumentException("No column " + name + ".");
+        }
+        return column;
+    }
+
+    /**
+     * Gets a numeric column: a Long or Double column, or a JSOG column
+     * holding only finite numbers.
+     * @param name the column's key.
+     * @return the column.
+     * @throws IllegalArgumentException if the column doesn't exist.
+     * @throws IllegalStateException if the column is not numeric.
+     */
+    private Column numeric(final String name) {
+        Column column = column(name);
+        if (column instanceof JsogColumn) {
+            Object[] values = ((JsogColumn) column).values;
+            for (int row = 0; row < values.length; row++) {
+                if (bit(column.valid, row) && decimal(values[row]) == null) {
+                    throw new IllegalStateException("The " + name
+                            + " column holds " + values[row].getClass()
+                                                            .getName());
+                }
+            }
+        } else if (!(column instanceof LongColumn)
+                && !(column instanceof DoubleColumn)) {
+            throw new IllegalStateException("The " + name + " column holds "
+                    + column.getType().getName());
+        }
+        return column;
+    }
+
+    /**
+     * Converts a JSOG column's value to a decimal.
+     * @param value the value.
+     * @return the exact decimal, or null if the value is not a finite
+     *         number.
+     */
+    private static BigDecimal decimal(final Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d)
+                    ? null
+                    : new BigDecimal(value.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Finds the least or greatest value of a numeric column.
+     * @param name the column's key.
+     * @param least true for the least value.
+     * @return the value, or null if there are no values.
+     */
+    private Number extreme(final String name, final boolean least) {
+        Column column = numeric(name);
+        Number extreme = null;
+        if (column instanceof LongColumn) {
+            long[] values = ((LongColumn) column).values;
+            long result = least ? Long.MAX_VALUE : Long.MIN_VALUE;
+            for (int row = 0; row < values.length; row++) {
+                if (bit(column.valid, row)) {
+                    result = least
+                            ? Math.min(result, values[row])
+                            : Math.max(result, values[row]);
+                    extreme = Long.valueOf(0);
+                }
+            }
+            return extreme == null ? null : (Number) result;
+        } else if (column instanceof JsogColumn) {
+            Object[] values = ((JsogColumn) column).values;
+            BigDecimal result = null;
+            for (int row = 0; row < values.length; row++) {
+                if (bit(column.valid, row)) {
+                    BigDecimal value = decimal(values[row]);
+                    int order = result == null ? 0 : value.compareTo(result);
+                    if (result == null || (least ? order < 0 : order > 0)) {
+                        result = value;
+                        extreme = (Number) values[row];
+                    }
+                }
+            }
+            return extreme;
+        }
+
+        double[] values = ((DoubleColumn) column).values;
+        double result = least
+                ? Double.POSITIVE_INFINITY
+                : Double.NEGATIVE_INFINITY;
+        for (int row = 0; row < values.length; row++) {
+            if (bit(column.valid, row)) {
+                result = least
+                        ? Math.min(result, values[row])
+                        : Math.max(result, values[row]);
+                extreme = Double.valueOf(0);
+            }
+        }
+        return extreme == null ? null : (Number) result;
+    }
+
+    /**
+     * Unwraps a record's value.
+     * @param value the value.
+     * @return a scalar, Map or List, or null.
+     */
+    private static Object scalar(final Object value) {
+        Object raw = JsogPath.unwrap(value);
+        if (raw instanceof LazyScalar) {
+            raw = ((LazyScalar) raw).decode();
+        }
+        return raw;
+    }
+
+    /**
+     * Classifies a value.
+     * @param value a scalar, Map or List.
+     * @return the kind of value.
+     */
+    private static int kindOf(final Object value) {
+        if (value == null) {
+            return NULL;
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte
+                || (value instanceof BigInteger
+                    && ((BigInteger) value).bitLength() < 64)) {
+            long l = ((Number) value).longValue();
+            return l > EXACT_DOUBLE || l < -EXACT_DOUBLE ? WIDE : INTEGER;
+        } else if (value instanceof Double) {
+            return FRACTION;
+        } else if (value instanceof Float || value instanceof BigDecimal) {
+
+            // Only if it reads back as the same number
+            return exact(value) && Double.toString(((Number) value)
+                    .doubleValue()).equals(value.toString())
+                    ? FRACTION : OTHER;
+        } else if (value instanceof String || value instanceof Character) {
+            return STRING;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Creates a column of the right type for the values under a key.
+     * @param name the key.
+     * @param size the number of rows.
+     * @param kinds the number of values of each kind.
+     * @return the empty column.
+     */
+    private static Column column(final String name, final int size,
+                                 final int[] kinds) {
+        int numbers = kinds[INTEGER] + kinds[WIDE] + kinds[FRACTION];
+        int others = kinds[OTHER];
+        if (numbers > 0 && kinds[STRING] + kinds[BOOLEAN] + others == 0) {
+            if (kinds[FRACTION] == 0) {
+                return new LongColumn(name, size);
+            } else if (kinds[WIDE] == 0) {
+                return new DoubleColumn(name, size);
+            }
+        } else if (kinds[STRING] > 0
+                && numbers + kinds[BOOLEAN] + others == 0) {
+            return new StringColumn(name, size);
+        } else if (kinds[BOOLEAN] > 0
+                && numbers + kinds[STRING] + others == 0) {
+            return new BooleanColumn(name, size);
+        }
+        return new JsogColumn(name, size);
+    }
+
+    /**
+     * Tests if a normalized numeric bound converts exactly to a double.
+     * @param bound the bound, or null.
+     * @return true if it does, or there is no bound.
+     */
+    private static boolean exact(final Object bound) {
+        if (bound instanceof Long) {
+            long l = (Long) bound;
+            return l <= EXACT_DOUBLE && l >= -EXACT_DOUBLE;
+        } else if (bound instanceof BigDecimal) {
+            double d = ((BigDecimal) bound).doubleValue();
+            return !Double.isInfinite(d)
+                    && new BigDecimal(d).compareTo((BigDecimal) bound) == 0;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of words in a bitmap.
+     * @param bits the number of bits.
+     * @return the number of words.
+     */
+    static int words(final int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Tests a bit.
+     * @param bitmap the bitmap.
+     * @param bit the bit.
+     * @return true if the bit is set.
+     */
+    static boolean bit(final long[] bitmap, final int bit) {
+        return (bitmap[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Sets a bit.
+     * @param bitmap the bitmap.
+     * @param bit the bit.
+     */
+    static void set(final long[] bitmap, final int bit) {
+        bitmap[bit >>> 6] |= 1L << bit;
+    }
+
+    /**
+     * Sets every row's bit.
+     * @param bitmap the bitmap.
+     */
+    private void fill(final long[] bitmap) {
+        Arrays.fill(bitmap, -1L);
+        clearTail(bitmap);
+    }
+
+    /**
+     * Clears the bits past the last row.
+     * @param bitmap the bitmap.
+     */
+    private void clearTail(final long[] bitmap) {
+        if ((size & 63) != 0) {
+            bitmap[bitmap.length - 1] &= (1L << size) - 1;
+        }
+    }
+
+    /**
+     * Counts the set bits.
+     * @param bitmap the bitmap.
+     * @return the number of set bits.
+     */
+    static int cardinality(final long[] bitmap) {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
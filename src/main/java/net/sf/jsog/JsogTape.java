@@ -0,0 +1,1159 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only, binary JSOG which is navigated in place.
+ *
+ * <p>A tape is a JSOG document encoded as a sequence of tagged nodes. Arrays
+ * hold the offsets of their elements, and objects hold the offsets of their
+ * keys and values along with a key table sorted by key, so that navigation
+ * never needs to decode anything but the nodes it visits. Since nothing is
+ * decoded up front, a tape can live outside of the heap, in a direct
+ * ByteBuffer or a memory-mapped file:</p>
+ * <pre>
+ * JsogTape.write(jsog, new FileOutputStream(file));
+ * ...
+ * JsogTape tape = JsogTape.map(file);
+ * String name = tape.path("$.users[42].name").getStringValue();
+ * </pre>
+ *
+ * <p>A JsogTape instance is a lightweight cursor on a single node. Keys and
+ * values are decoded each time they're accessed, so callers should hold on
+ * to the results rather than accessing them repeatedly. Missing keys
+ * evaluate to a null node rather than being created, and Byte and Short
+ * values are stored as Integers, and Characters as Strings.</p>
+ *
+ * <p>Offsets are 32-bit, so a tape is limited to 2GB. Wrapping a tape reads
+ * it once from end to end, to check that every offset and length stays
+ * within it. Tapes are immutable, and may be shared between threads as long
+ * as the underlying buffer isn't modified.</p>
+ * @author jrodriguez
+ */
+public final class JsogTape {
+
+    /**
+     * The magic number which begins every tape: "JSOG".
+     */
+    private static final int MAGIC = 0x4A534F47;
+
+    /**
+     * The current format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the header: magic, version, root offset and length.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The deepest nesting of arrays and objects the encoder writes.
+     *
+     * Encoding recurses once per level, so this keeps it from overflowing
+     * the stack.
+     */
+    static final int MAX_DEPTH = 1000;
+
+    /**
+     * Tag: null.
+     */
+    private static final byte NULL = 0;
+
+    /**
+     * Tag: false.
+     */
+    private static final byte FALSE = 1;
+
+    /**
+     * Tag: true.
+     */
+    private static final byte TRUE = 2;
+
+    /**
+     * Tag: 32-bit integer.
+     */
+    private static final byte INTEGER = 3;
+
+    /**
+     * Tag: 64-bit integer.
+     */
+    private static final byte LONG = 4;
+
+    /**
+     * Tag: double.
+     */
+    private static final byte DOUBLE = 5;
+
+    /**
+     * Tag: float.
+     */
+    private static final byte FLOAT = 6;
+
+    /**
+     * Tag: UTF-8 string.
+     */
+    private static final byte STRING = 7;
+
+    /**
+     * Tag: BigInteger.
+     */
+    private static final byte BIG_INTEGER = 8;
+
+    /**
+     * Tag: BigDecimal.
+     */
+    private static final byte BIG_DECIMAL = 9;
+
+    /**
+     * Tag: array.
+     */
+    private static final byte ARRAY = 10;
+
+    /**
+     * Tag: object.
+     */
+    private static final byte OBJECT = 11;
+
+    /**
+     * The node returned for missing keys.
+     */
+    private static final JsogTape MISSING =
+            new JsogTape(ByteBuffer.wrap(new byte[] {NULL}), 0);
+
+    /**
+     * Orders UTF-8 keys by their unsigned bytes, which is code point order.
+     */
+    private static final Comparator<byte[]> KEY_ORDER =
+            new Comparator<byte[]>() {
+        @Override
+        public int compare(final byte[] a, final byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    /**
+     * Encodes a JSOG as a tape.
+     * @param jsog the JSOG to encode.
+     * @return the tape bytes.
+     * @throws IllegalArgumentException if the JSOG contains a value which
+     * can't be encoded, is nested too deep, or is larger than 2GB.
+     */
+    public static byte[] encode(final JSOG jsog) {
+        Encoder encoder = new Encoder();
+        encoder.ensure(HEADER_SIZE);
+        encoder.length = HEADER_SIZE;
+        int root = encoder.writeValue(jsog);
+
+        byte[] bytes = encoder.toByteArray();
+        ByteBuffer.wrap(bytes)
+                  .putInt(MAGIC)
+                  .putInt(VERSION)
+                  .putInt(root)
+                  .putInt(bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Encodes a JSOG as a tape, and writes it to a stream.
+     * @param jsog the JSOG to encode.
+     * @param out the stream to write to.
+     * @throws IOException if writing fails.
+     */
+    public static void write(final JSOG jsog, final OutputStream out)
+            throws IOException {
+        out.write(encode(jsog));
+    }
+
+    /**
+     * Encodes a JSOG as a tape in a direct buffer, outside of the heap.
+     * @param jsog the JSOG to encode.
+     * @return the tape.
+     */
+    public static JsogTape allocateDirect(final JSOG jsog) {
+        byte[] bytes = encode(jsog);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return wrap(buffer);
+    }
+
+    /**
+     * Wraps a buffer which contains a tape.
+     *
+     * The tape begins at the buffer's position. The buffer's position and
+     * limit are not modified.
+     * @param buffer the buffer.
+     * @return the root node of the tape.
+     * @throws IllegalArgumentException if the buffer doesn't contain a tape,
+     * or the tape is corrupt.
+     */
+    public static JsogTape wrap(final ByteBuffer buffer) {
+        ByteBuffer tape = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        if (tape.remaining() < HEADER_SIZE || tape.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException(
+                    "The buffer does not contain a JSOG tape.");
+        }
+
+        int version = tape.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported JSOG tape version: " + version);
+        }
+
+        int root = tape.getInt(8);
+        int length = tape.getInt(12);
+        if (length > tape.remaining() || root < HEADER_SIZE
+                || root >= length) {
+            throw new IllegalArgumentException("The JSOG tape is truncated.");
+        }
+
+        tape.limit(length);
+        check(tape, root);
+        return new JsogTape(tape, root);
+    }
+
+    /**
+     * Checks that every node of a tape stays within it.
+     *
+     * Nodes are written one after another, children first, so each node
+     * may only refer to nodes which begin before it. This also keeps a
+     * corrupt tape from looping.
+     * @param tape the tape, limited to its length.
+     * @param root the offset of the root node.
+     * @throws IllegalArgumentException if the tape is corrupt.
+     */
+    private static void check(final ByteBuffer tape, final int root) {
+        int length = tape.limit();
+        BitSet nodes = new BitSet(length);
+        int at = HEADER_SIZE;
+        while (at < length) {
+            long end = checkNode(tape, at, nodes);
+            if (end > length) {
+                throw corrupt(at);
+            }
+            nodes.set(at);
+            at = (int) end;
+        }
+        if (!nodes.get(root)) {
+            throw corrupt(root);
+        }
+    }
+
+    /**
+     * Checks a node.
+     * @param tape the tape.
+     * @param at the offset of the node.
+     * @param nodes the offsets of the nodes before it.
+     * @return the offset just past the node, which may be past the tape.
+     * @throws IllegalArgumentException if the node is corrupt.
+     */
+    private static long checkNode(final ByteBuffer tape, final int at,
+                                  final BitSet nodes) {
+        int length = tape.limit();
+        byte tag = tape.get(at);
+        switch (tag) {
+            case NULL:
+            case FALSE:
+            case TRUE:
+                return at + 1L;
+            case INTEGER:
+            case FLOAT:
+                return at + 5L;
+            case LONG:
+            case DOUBLE:
+                return at + 9L;
+            default:
+                break;
+        }
+
+        // The rest begin with a count or length, and then a scale
+        int header = tag == BIG_DECIMAL ? 9 : 5;
+        if (at + (long) header > length) {
+            throw corrupt(at);
+        }
+        int count = tape.getInt(tag == BIG_DECIMAL ? at + 5 : at + 1);
+        if (count < 0 || (count == 0 && tag != STRING && tag != ARRAY
+                                     && tag != OBJECT)) {
+            throw corrupt(at);
+        }
+        switch (tag) {
+            case STRING:
+            case BIG_INTEGER:
+            case BIG_DECIMAL:
+                return at + (long) header + count;
+            case ARRAY:
+                long end = at + 5L + count * 4L;
+                if (end > length) {
+                    throw corrupt(at);
+                }
+                for (int i = 0; i < count; i++) {
+                    checkChild(tape, at, at + 5 + i * 4, nodes);
+                }
+                return end;
+            case OBJECT:
+                end = at + 5L + count * 12L;
+                if (end > length) {
+                    throw corrupt(at);
+                }
+                for (int i = 0; i < count; i++) {
+                    int key = checkChild(tape, at, at + 5 + i * 8, nodes);
+                    if (tape.get(key) != STRING) {
+                        throw corrupt(at);
+                    }
+                    checkChild(tape, at, at + 9 + i * 8, nodes);
+                    int entry = tape.getInt(at + 5 + count * 8 + i * 4);
+                    if (entry < 0 || entry >= count) {
+                        throw corrupt(at);
+                    }
+                }
+                return end;
+            default:
+                throw corrupt(at);
+        }
+    }
+
+    /**
+     * Checks a container's reference to a child node.
+     * @param tape the tape.
+     * @param at the offset of the container.
+     * @param reference the offset of the reference.
+     * @param nodes the offsets of the nodes before the container.
+     * @return the offset of the child.
+     * @throws IllegalArgumentException if there is no such node.
+     */
+    private static int checkChild(final ByteBuffer tape, final int at,
+                                  final int reference, final BitSet nodes) {
+        int child = tape.getInt(reference);
+        if (child < HEADER_SIZE || child >= at || !nodes.get(child)) {
+            throw corrupt(at);
+        }
+        return child;
+    }
+
+    /**
+     * Creates the exception for a corrupt node.
+     * @param at the offset of the node.
+     * @return the exception.
+     */
+    private static IllegalArgumentException corrupt(final int at) {
+        return new IllegalArgumentException(
+                "The JSOG tape is corrupt at offset " + at + ".");
+    }
+
+    /**
+     * Maps a tape file into memory.
+     *
+     * The file is mapped read-only, and is paged in by the operating system
+     * as it is navigated.
+     * @param file the file.
+     * @return the root node of the tape.
+     * @throws IOException if the file can't be mapped.
+     * @throws IllegalArgumentException if the file doesn't contain a tape.
+     */
+    public static JsogTape map(final File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return wrap(channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * The tape.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The offset of this node.
+     */
+    private final int offset;
+
+    /**
+     * Constructs a new node.
+     * @param buffer the tape.
+     * @param offset the offset of the node.
+     */
+    private JsogTape(final ByteBuffer buffer, final int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    /**
+     * Gets the tag of this node.
+     * @return the tag.
+     */
+    private byte tag() {
+        return buffer.get(offset);
+    }
+
+    /**
+     * Gets a node at an offset.
+     * @param at the offset.
+     * @return the node.
+     */
+    private JsogTape node(final int at) {
+        return new JsogTape(buffer, at);
+    }
+
+    /**
+     * Tests if this node is null.
+     * @return true if the node is null.
+     */
+    public boolean isNull() {
+        return tag() == NULL;
+    }
+
+    /**
+     * Tests if this node is a primitive.
+     * @return true if the node is a primitive.
+     */
+    public boolean isPrimitive() {
+        return !isArray() && !isObject();
+    }
+
+    /**
+     * Tests if this node is an array.
+     * @return true if the node is an array.
+     */
+    public boolean isArray() {
+        return tag() == ARRAY;
+    }
+
+    /**
+     * Tests if this node is an object.
+     * @return true if the node is an object.
+     */
+    public boolean isObject() {
+        return tag() == OBJECT;
+    }
+
+    /**
+     * Gets the size of this node.
+     * @return the number of elements or keys, or 0 if this is a primitive.
+     */
+    public int size() {
+        if (isPrimitive()) {
+            return 0;
+        }
+        return buffer.getInt(offset + 1);
+    }
+
+    /**
+     * Gets an element of an array.
+     * @param index the index of the element.
+     * @return the element.
+     * @throws IllegalStateException if this node is not an array.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public JsogTape get(final int index) {
+        if (!isArray()) {
+            throw new IllegalStateException("The JSOG is not an array.");
+        }
+
+        int size = size();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size);
+        }
+        return node(buffer.getInt(offset + 5 + index * 4));
+    }
+
+    /**
+     * Gets the value of an object key.
+     * @param key the key.
+     * @return the value, or a null node if there is no such key.
+     * @throws IllegalStateException if this node is not an object or null.
+     */
+    public JsogTape get(final String key) {
+        int entry = findEntry(key);
+        if (entry < 0) {
+            return MISSING;
+        }
+        return node(buffer.getInt(offset + 5 + entry * 8 + 4));
+    }
+
+    /**
+     * Tests if an object contains a key.
+     * @param key the key.
+     * @return true if the key exists.
+     * @throws IllegalStateException if this node is not an object or null.
+     */
+    public boolean hasKey(final String key) {
+        return findEntry(key) >= 0;
+    }
+
+    /**
+     * Finds an object entry with binary search over the sorted key table.
+     * @param key the key.
+     * @return the entry index, or -1 if there is no such key.
+     * @throws IllegalStateException if this node is not an object or null.
+     */
+    private int findEntry(final String key) {
+        if (isNull()) {
+            return -1;
+        }
+        if (!isObject()) {
+            throw new IllegalStateException("The JSOG is not an object.");
+        }
+
+        byte[] target = ByteBuilder.utf8(key);
+        int size = size();
+        int sorted = offset + 5 + size * 8;
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = buffer.getInt(sorted + mid * 4);
+            int diff = compareKey(buffer.getInt(offset + 5 + entry * 8),
+                                  target);
+            if (diff < 0) {
+                low = mid + 1;
+            } else if (diff > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a string node with UTF-8 bytes, without decoding it.
+     * @param at the offset of the string node.
+     * @param target the UTF-8 bytes.
+     * @return the comparison result.
+     */
+    private int compareKey(final int at, final byte[] target) {
+        int length = buffer.getInt(at + 1);
+        int start = at + 5;
+        int common = Math.min(length, target.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(start + i) & 0xFF) - (target[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - target.length;
+    }
+
+    /**
+     * Evaluates a path expression.
+     * @param path the path expression to evaluate.
+     * @return the result of the evaluation.
+     * @see JsogPath#compile(String)
+     */
+    public JsogTape path(final String path) {
+        return JsogPath.compile(path).evaluate(this);
+    }
+
+    /**
+     * Evaluates a path expression.
+     * @param path the path expression to evaluate.
+     * @return the result of the evaluation.
+     */
+    public JsogTape path(final JsogPath path) {
+        return path.evaluate(this);
+    }
+
+    /**
+     * Gets the keys of an object, in document order.
+     * @return the keys, or an empty set if this node is null.
+     * @throws IllegalStateException if this node is not an object or null.
+     */
+    public Set<String> keySet() {
+        Set<String> keys = new LinkedHashSet<String>();
+        if (isNull()) {
+            return keys;
+        }
+        if (!isObject()) {
+            throw new IllegalStateException("The JSOG is not an object.");
+        }
+
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            keys.add(readString(buffer.getInt(offset + 5 + i * 8)));
+        }
+        return keys;
+    }
+
+    /**
+     * Gets an iterable over the elements of an array.
+     * @return the iterable.
+     * @throws IllegalStateException if this node is not an array.
+     */
+    public Iterable<JsogTape> arrayIterable() {
+        if (!isArray()) {
+            throw new IllegalStateException("The JSOG is not an array.");
+        }
+
+        return new Iterable<JsogTape>() {
+            @Override
+            public Iterator<JsogTape> iterator() {
+                return new NodeIterator<JsogTape>() {
+                    @Override
+                    JsogTape get(final int index) {
+                        return node(buffer.getInt(offset + 5 + index * 4));
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Gets an iterable over the entries of an object, in document order.
+     * @return the iterable.
+     * @throws IllegalStateException if this node is not an object.
+     */
+    public Iterable<Entry<String, JsogTape>> objectIterable() {
+        if (!isObject()) {
+            throw new IllegalStateException("The JSOG is not an object.");
+        }
+
+        return new Iterable<Entry<String, JsogTape>>() {
+            @Override
+            public Iterator<Entry<String, JsogTape>> iterator() {
+                return new NodeIterator<Entry<String, JsogTape>>() {
+                    @Override
+                    Entry<String, JsogTape> get(final int index) {
+                        int entry = offset + 5 + index * 8;
+                        return new TapeEntry(readString(buffer.getInt(entry)),
+                                             node(buffer.getInt(entry + 4)));
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An object entry.
+     */
+    private static final class TapeEntry implements Entry<String, JsogTape> {
+
+        /**
+         * The key.
+         */
+        private final String key;
+
+        /**
+         * The value.
+         */
+        private final JsogTape value;
+
+        /**
+         * Constructs a new TapeEntry.
+         * @param key the key.
+         * @param value the value.
+         */
+        TapeEntry(final String key, final JsogTape value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public JsogTape getValue() {
+            return value;
+        }
+
+        @Override
+        public JsogTape setValue(final JsogTape newValue) {
+            throw new UnsupportedOperationException("JsogTape is read-only.");
+        }
+    }
+
+    /**
+     * Iterates over the elements or entries of this node.
+     * @param <T> the type of the elements.
+     */
+    private abstract class NodeIterator<T> implements Iterator<T> {
+
+        /**
+         * The number of elements.
+         */
+        private final int size = size();
+
+        /**
+         * The next index.
+         */
+        private int index;
+
+        /**
+         * Gets an element.
+         * @param index the index of the element.
+         * @return the element.
+         */
+        abstract T get(int index);
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public T next() {
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            return get(index++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("JsogTape is read-only.");
+        }
+    }
+
+    /**
+     * Gets the value of this node.
+     * @return the value.
+     * @throws IllegalStateException if the node is an array or object.
+     */
+    public Object getValue() {
+        switch (tag()) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INTEGER:
+                return buffer.getInt(offset + 1);
+            case LONG:
+                return buffer.getLong(offset + 1);
+            case DOUBLE:
+                return buffer.getDouble(offset + 1);
+            case FLOAT:
+                return buffer.getFloat(offset + 1);
+            case STRING:
+                return readString(offset);
+            case BIG_INTEGER:
+                return new BigInteger(readBytes(offset + 1));
+            case BIG_DECIMAL:
+                return new BigDecimal(new BigInteger(readBytes(offset + 5)),
+                                      buffer.getInt(offset + 1));
+            default:
+                throw new IllegalStateException(
+                        "The value is not a primitive");
+        }
+    }
+
+    /**
+     * Gets the value of this node as a String.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getStringValue()
+     */
+    public String getStringValue() {
+        return primitive().getStringValue();
+    }
+
+    /**
+     * Gets the value of this node as a Boolean.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getBooleanValue()
+     */
+    public Boolean getBooleanValue() {
+        return primitive().getBooleanValue();
+    }
+
+    /**
+     * Gets the value of this node as an Integer.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getIntegerValue()
+     */
+    public Integer getIntegerValue() {
+        return primitive().getIntegerValue();
+    }
+
+    /**
+     * Gets the value of this node as a Long.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getLongValue()
+     */
+    public Long getLongValue() {
+        return primitive().getLongValue();
+    }
+
+    /**
+     * Gets the value of this node as a Double.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getDoubleValue()
+     */
+    public Double getDoubleValue() {
+        return primitive().getDoubleValue();
+    }
+
+    /**
+     * Gets the value of this node as a BigDecimal.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getBigDecimalValue()
+     */
+    public BigDecimal getBigDecimalValue() {
+        return primitive().getBigDecimalValue();
+    }
+
+    /**
+     * Gets the value of this node as a BigInteger.
+     * @return the value, or null if the value is null.
+     * @see JSOG#getBigIntegerValue()
+     */
+    public BigInteger getBigIntegerValue() {
+        return primitive().getBigIntegerValue();
+    }
+
+    /**
+     * Wraps the value of this node, for the typed accessors.
+     * @return the wrapped value.
+     */
+    private JSOG primitive() {
+        return new JSOG(getValue());
+    }
+
+    /**
+     * Decodes this node and its descendants into a JSOG.
+     *
+     * The tree is walked with an explicit stack, so that deep nesting
+     * can't overflow the call stack.
+     * @return the JSOG.
+     */
+    public JSOG toJsog() {
+        JSOG result = container();
+        if (result == null) {
+            return new JSOG(getValue());
+        }
+
+        List<JsogTape> nodes = new ArrayList<JsogTape>();
+        List<JSOG> targets = new ArrayList<JSOG>();
+        nodes.add(this);
+        targets.add(result);
+        while (!nodes.isEmpty()) {
+            JsogTape node = nodes.remove(nodes.size() - 1);
+            JSOG target = targets.remove(targets.size() - 1);
+            if (node.isArray()) {
+                for (JsogTape element : node.arrayIterable()) {
+                    JSOG child = element.container();
+                    if (child == null) {
+                        target.add(element.getValue());
+                    } else {
+                        target.add(child);
+                        nodes.add(element);
+                        targets.add(child);
+                    }
+                }
+            } else {
+                for (Entry<String, JsogTape> entry : node.objectIterable()) {
+                    JsogTape value = entry.getValue();
+                    JSOG child = value.container();
+                    if (child == null) {
+                        target.put(entry.getKey(), value.getValue());
+                    } else {
+                        target.put(entry.getKey(), child);
+                        nodes.add(value);
+                        targets.add(child);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates an empty container of this node's type.
+     * @return an empty array or object, or null if this is a primitive.
+     */
+    private JSOG container() {
+        if (isArray()) {
+            return JSOG.array();
+        } else if (isObject()) {
+            return JSOG.object();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return toJsog().toString();
+    }
+
+    /**
+     * Reads the length-prefixed bytes at an offset.
+     * @param at the offset of the length.
+     * @return the bytes.
+     */
+    private byte[] readBytes(final int at) {
+        byte[] bytes = new byte[buffer.getInt(at)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(at + 4 + i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a string node.
+     * @param at the offset of the string node.
+     * @return the string.
+     */
+    private String readString(final int at) {
+        int length = buffer.getInt(at + 1);
+        int start = at + 5;
+
+        // Fast path for ASCII
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(start + i);
+            if (b < 0) {
+                try {
+                    return new String(readBytes(at + 1), "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(
+                            "UTF-8 is not supported.", e);
+                }
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes JSOG values into a growable buffer.
+     *
+     * Nodes are written children first, so that containers can refer to
+     * them by offset.
+     */
+    private static final class Encoder extends ByteBuilder {
+
+        /**
+         * The offsets of the strings written so far.
+         */
+        private final Map<String, Integer> strings =
+                new HashMap<String, Integer>();
+
+        /**
+         * The number of arrays and objects enclosing the value being
+         * written.
+         */
+        private int depth;
+
+        /**
+         * Enters an array or object.
+         * @throws IllegalArgumentException if it is nested too deep.
+         */
+        private void enter() {
+            if (depth == MAX_DEPTH) {
+                throw new IllegalArgumentException(
+                        "Could not encode JSOG nested deeper than "
+                        + MAX_DEPTH);
+            }
+            depth++;
+        }
+
+        /**
+         * Writes length-prefixed bytes.
+         * @param bytes the bytes.
+         */
+        private void writeBytes(final byte[] bytes) {
+            writeInt(bytes.length);
+            write(bytes);
+        }
+
+        /**
+         * Writes a big-endian int.
+         * @param value the value.
+         */
+        private void writeInt(final int value) {
+            writeBigEndian(value, 4);
+        }
+
+        /**
+         * Writes a string node, unless an identical one was written before.
+         * @param string the string.
+         * @return the offset of the string node.
+         */
+        private int writeString(final String string) {
+            Integer existing = strings.get(string);
+            if (existing != null) {
+                return existing;
+            }
+
+            int at = length;
+            write(STRING);
+            writeBytes(utf8(string));
+            strings.put(string, at);
+            return at;
+        }
+
+        /**
+         * Writes a JSOG value.
+         * @param value the raw value of a JSOG.
+         * @return the offset of the node.
+         * @throws IllegalArgumentException if the value can't be encoded,
+         * or is nested too deep.
+         */
+        @SuppressWarnings("unchecked")
+        private int writeValue(final Object value) {
+            if (value instanceof JSOG) {
+                return writeValue(((JSOG) value).decodedValue());
+            } else if (value instanceof String) {
+                return writeString((String) value);
+            } else if (value instanceof Character) {
+                return writeString(value.toString());
+            } else if (value instanceof Map<?, ?>) {
+                return writeObject((Map<String, Object>) value);
+            } else if (value instanceof List<?>) {
+                List<Object> list = (List<Object>) value;
+                int[] elements = new int[list.size()];
+                int i = 0;
+                enter();
+                for (Object item : list) {
+                    elements[i++] = writeValue(item);
+                }
+                depth--;
+
+                int at = length;
+                write(ARRAY);
+                writeInt(elements.length);
+                for (int element : elements) {
+                    writeInt(element);
+                }
+                return at;
+            }
+
+            int at = length;
+            if (value == null) {
+                write(NULL);
+            } else if (value instanceof Boolean) {
+                write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Integer
+                    || value instanceof Short
+                    || value instanceof Byte) {
+                write(INTEGER);
+                writeInt(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                write(LONG);
+                writeBigEndian((Long) value, 8);
+            } else if (value instanceof Double) {
+                write(DOUBLE);
+                writeBigEndian(
+                        Double.doubleToRawLongBits((Double) value), 8);
+            } else if (value instanceof Float) {
+                write(FLOAT);
+                writeInt(Float.floatToRawIntBits((Float) value));
+            } else if (value instanceof BigInteger) {
+                write(BIG_INTEGER);
+                writeBytes(((BigInteger) value).toByteArray());
+            } else if (value instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal) value;
+                write(BIG_DECIMAL);
+                writeInt(decimal.scale());
+                writeBytes(decimal.unscaledValue().toByteArray());
+            } else {
+                throw new IllegalArgumentException(
+                        "Could not encode object of type "
+                        + value.getClass().getName());
+            }
+            return at;
+        }
+
+        /**
+         * Writes an object node, with its entries in document order followed
+         * by the entry indexes in key order.
+         * @param map the object.
+         * @return the offset of the node.
+         */
+        private int writeObject(final Map<String, Object> map) {
+            int size = map.size();
+            final byte[][] keys = new byte[size][];
+            int[] entries = new int[size * 2];
+            Integer[] sorted = new Integer[size];
+
+            int i = 0;
+            enter();
+            for (Entry<String, Object> entry : map.entrySet()) {
+                keys[i] = utf8(entry.getKey());
+                entries[i * 2] = writeString(entry.getKey());
+                entries[i * 2 + 1] = writeValue(entry.getValue());
+                sorted[i] = i;
+                i++;
+            }
+            depth--;
+
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer a, final Integer b) {
+                    return KEY_ORDER.compare(keys[a], keys[b]);
+                }
+            });
+
+            int at = length;
+            write(OBJECT);
+            writeInt(size);
+            for (int entry : entries) {
+                writeInt(entry);
+            }
+            for (Integer index : sorted) {
+                writeInt(index);
+            }
+            return at;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.RandomAccess;
+
+/**
+ * Walks a JSOG with an explicit stack.
+ *
+ * This is the traversal engine behind {@link JSOG#accept(JsogVisitor)}, and
+ * the conversions, comparisons and copies that are built on it.
+ * @author jrodriguez
+ */
+final class JsogTraversal {
+
+    /**
+     * Prevents instantiation.
+     */
+    private JsogTraversal() {
+    }
+
+    /**
+     * Visits values as they're stored, without wrapping them in JSOGs.
+     *
+     * Nodes are JSOGs, or the raw Maps, Lists and primitives stored in
+     * objects and arrays. {@link #valueOf(Object)} gets their values.
+     */
+    interface NodeVisitor {
+
+        /**
+         * Enters an object or array.
+         * @param key the key or index of the container, or null.
+         * @param node the container's node.
+         * @return true to visit the container's values.
+         */
+        boolean enter(Object key, Object node);
+
+        /**
+         * Leaves an object or array, after its values have been visited.
+         * @param key the key or index of the container, or null.
+         * @param node the container's node.
+         */
+        void leave(Object key, Object node);
+
+        /**
+         * Visits a primitive, null, lazy scalar or raw JSON value.
+         * @param key the key or index of the value, or null.
+         * @param node the value's node.
+         */
+        void value(Object key, Object node);
+    }
+
+    /**
+     * Walks a JSOG, wrapping each value in a JSOG for the visitor.
+     * @param start the JSOG to start from.
+     * @param visitor the visitor.
+     */
+    static void walk(final JSOG start, final JsogVisitor visitor) {
+        walk(start, new Wrapper(visitor));
+    }
+
+    /**
+     * Walks a JSOG.
+     * @param start the JSOG to start from.
+     * @param visitor the visitor.
+     */
+    static void walk(final JSOG start, final NodeVisitor visitor) {
+        if (!isContainer(valueOf(start))) {
+            visitor.value(null, start);
+            return;
+        }
+        if (!visitor.enter(null, start)) {
+            return;
+        }
+
+        List<Frame> stack = new ArrayList<Frame>();
+        Frame frame = new Frame(null, start);
+        stack.add(frame);
+        while (true) {
+            if (!frame.advance()) {
+                stack.remove(stack.size() - 1);
+                visitor.leave(frame.key, frame.node);
+                if (stack.isEmpty()) {
+                    return;
+                }
+                frame = stack.get(stack.size() - 1);
+                continue;
+            }
+
+            Object key = frame.childKey;
+            Object child = frame.child;
+            if (!isContainer(valueOf(child))) {
+                visitor.value(key, child);
+            } else if (visitor.enter(key, child)) {
+                frame = new Frame(key, child);
+                stack.add(frame);
+            }
+        }
+    }
+
+    /**
+     * Gets the innermost of a JSOG holding other JSOGs.
+     * @param jsog the JSOG.
+     * @return the JSOG holding an actual value.
+     */
+    static JSOG innermost(final JSOG jsog) {
+        JSOG inner = jsog;
+        while (inner.unresolvedValue() instanceof JSOG) {
+            inner = (JSOG) inner.unresolvedValue();
+        }
+        return inner;
+    }
+
+    /**
+     * Gets the value of a node, without parsing raw JSON or decoding lazy
+     * scalars.
+     * @param node a JSOG or a raw value.
+     * @return the raw value.
+     */
+    static Object valueOf(final Object node) {
+        return node instanceof JSOG
+                ? innermost((JSOG) node).unresolvedValue()
+                : node;
+    }
+
+    /**
+     * Tests if a raw value is an object or array.
+     * @param value the raw value.
+     * @return true if it's a Map or List.
+     */
+    static boolean isContainer(final Object value) {
+
+        // Common scalars are ruled out by cheaper class checks first
+        if (value == null || value instanceof String
+                || value instanceof Number || value instanceof Boolean) {
+            return false;
+        }
+        return value instanceof Map<?, ?> || value instanceof List<?>;
+    }
+
+    /**
+     * Copies a value and everything in it, without recursion.
+     * @param value a JSOG or a raw value.
+     * @return the copy, of plain Maps, Lists and primitives.
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(final Object value) {
+        List<Object> sources = new ArrayList<Object>();
+        List<Object> targets = new ArrayList<Object>();
+        Object root = copyValue(value, sources, targets);
+        while (!sources.isEmpty()) {
+            Object source = sources.remove(sources.size() - 1);
+            Object target = targets.remove(targets.size() - 1);
+            if (source instanceof Map<?, ?>) {
+                for (Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+                    ((Map<Object, Object>) target).put(entry.getKey(),
+                            copyValue(entry.getValue(), sources, targets));
+                }
+            } else {
+                for (Object element : (List<?>) source) {
+                    ((List<Object>) target).add(
+                            copyValue(element, sources, targets));
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Copies a value, deferring the contents of containers.
+     * @param value the value.
+     * @param sources receives the containers left to copy.
+     * @param targets receives their empty copies.
+     * @return the copy.
+     */
+    private static Object copyValue(final Object value,
+                                    final List<Object> sources,
+                                    final List<Object> targets) {
+        Object raw = JsogPath.unwrap(value);
+        Object target;
+        if (raw instanceof Map<?, ?>) {
+            target = new LinkedHashMap<String, Object>();
+        } else if (raw instanceof List<?>) {
+            target = new ArrayList<Object>(((List<?>) raw).size());
+        } else {
+            return value instanceof JSOG ? ((JSOG) value).getValue() : raw;
+        }
+        sources.add(raw);
+        targets.add(target);
+        return target;
+    }
+
+    /**
+     * Wraps the nodes of a traversal in JSOGs for a visitor.
+     */
+    private static final class Wrapper implements NodeVisitor {
+
+        /**
+         * The visitor.
+         */
+        private final JsogVisitor visitor;
+
+        /**
+         * The JSOGs of the enclosing containers, so they're left as entered.
+         */
+        private final List<JSOG> stack = new ArrayList<JSOG>();
+
+        /**
+         * Constructs a new Wrapper.
+         * @param visitor the visitor.
+         */
+        Wrapper(final JsogVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        /**
+         * Wraps a node.
+         * @param node the node.
+         * @return the innermost JSOG of the node, or a new JSOG.
+         */
+        private static JSOG wrap(final Object node) {
+            return innermost(JSOG.wrap(node));
+        }
+
+        @Override
+        public boolean enter(final Object key, final Object node) {
+            JSOG container = wrap(node);
+            if (!visitor.enter(key, container)) {
+                return false;
+            }
+            stack.add(container);
+            return true;
+        }
+
+        @Override
+        public void leave(final Object key, final Object node) {
+            visitor.leave(key, stack.remove(stack.size() - 1));
+        }
+
+        @Override
+        public void value(final Object key, final Object node) {
+            visitor.value(key, wrap(node));
+        }
+    }
+
+    /**
+     * An object or array being traversed.
+     */
+    private static final class Frame {
+
+        /**
+         * The key or index of the container.
+         */
+        private final Object key;
+
+        /**
+         * The container's node.
+         */
+        private final Object node;
+
+        /**
+         * The object entries, or null for an array.
+         */
+        private final Iterator<? extends Entry<String, ?>> entries;
+
+        /**
+         * The array, or null for an object.
+         */
+        private final List<?> list;
+
+        /**
+         * The array elements, or null for an object or a random access
+         * array.
+         */
+        private final Iterator<?> elements;
+
+        /**
+         * The index of the next array element.
+         */
+        private int index;
+
+        /**
+         * The key or index of the current value.
+         */
+        private Object childKey;
+
+        /**
+         * The current node.
+         */
+        private Object child;
+
+        /**
+         * Constructs a new Frame.
+         * @param key the key or index of the container.
+         * @param node the container's node.
+         */
+        @SuppressWarnings("unchecked")
+        Frame(final Object key, final Object node) {
+            this.key = key;
+            this.node = node;
+            Object value = valueOf(node);
+            if (value instanceof Map<?, ?>) {
+                entries = ((Map<String, ?>) value).entrySet().iterator();
+                list = null;
+                elements = null;
+            } else {
+                entries = null;
+                list = (List<?>) value;
+                elements = list instanceof RandomAccess
+                        ? null
+                        : list.iterator();
+            }
+        }
+
+        /**
+         * Moves to the next value of the container.
+         * @return false if there are no more values.
+         */
+        boolean advance() {
+            if (entries != null) {
+                if (!entries.hasNext()) {
+                    return false;
+                }
+                Entry<String, ?> entry = entries.next();
+                childKey = entry.getKey();
+                child = entry.getValue();
+            } else if (elements == null) {
+                if (index == list.size()) {
+                    return false;
+                }
+                child = list.get(index);
+                childKey = Integer.valueOf(index++);
+            } else {
+                if (!elements.hasNext()) {
+                    return false;
+                }
+                childKey = Integer.valueOf(index++);
+                child = elements.next();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+/**
+ * Receives the values of a JSOG, depth first, in document order.
+ *
+ * <p>Objects and arrays are reported by {@link #enter(Object, JSOG)}, then
+ * their values, then {@link #leave(Object, JSOG)}. Everything else is
+ * reported by {@link #value(Object, JSOG)}. Traversal uses an explicit
+ * stack, so the nesting depth of the document is not limited by the call
+ * stack.</p>
+ *
+ * <p>Keys identify a value within its parent: a String for the values of
+ * objects, an Integer for the elements of arrays, and null for the JSOG the
+ * traversal started from.</p>
+ *
+ * <p>Raw JSON fragments and lazily decoded scalars are reported as values,
+ * without being parsed or decoded. Inspecting them does that on
+ * demand.</p>
+ *
+ * <p>The JSOG must not be structurally modified during traversal, except
+ * by replacing the values of primitives.</p>
+ * @author jrodriguez
+ * @see JSOG#accept(JsogVisitor)
+ */
+public interface JsogVisitor {
+
+    /**
+     * Enters an object or array.
+     * @param key the key or index of the container, or null.
+     * @param container the object or array.
+     * @return true to visit the container's values, false to skip them, in
+     *         which case {@link #leave(Object, JSOG)} isn't called.
+     */
+    boolean enter(Object key, JSOG container);
+
+    /**
+     * Leaves an object or array, after its values have been visited.
+     * @param key the key or index of the container, or null.
+     * @param container the object or array.
+     */
+    void leave(Object key, JSOG container);
+
+    /**
+     * Visits a primitive or null value.
+     * @param key the key or index of the value, or null.
+     * @param value the value.
+     */
+    void value(Object key, JSOG value);
+
+}
@@ -0,0 +1,477 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serializes JSOGs directly to UTF-8 JSON.
+ *
+ * <p>Unlike {@link JSOG#toString()}, this never builds an intermediate
+ * string. JSON is encoded straight into a byte buffer which is reused from
+ * one document to the next:</p>
+ * <ul>
+ *   <li>object keys are escaped and encoded once, and cached</li>
+ *   <li>ASCII strings which don't need escaping are copied as-is</li>
+ *   <li>doubles and floats are formatted with the fewest digits that
+ *       round-trip</li>
+ *   <li>lazy scalars and raw JSON are copied verbatim</li>
+ * </ul>
+ *
+ * <p>The output is otherwise identical to {@link JSOG#toString()}. Like it,
+ * the writer walks the JSOG with an explicit stack, so deep nesting can't
+ * overflow the call stack.</p>
+ *
+ * <p>JsogWriter instances are not thread-safe, but may be reused. Calling
+ * {@link #reset()} between documents keeps the buffer from growing
+ * indefinitely.</p>
+ * @author jrodriguez
+ */
+public final class JsogWriter {
+
+    /**
+     * The initial buffer capacity.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Buffers larger than this are released by {@link #reset()}.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+
+    /**
+     * The maximum number of keys in the cache.
+     */
+    private static final int MAX_CACHED_KEYS = 4096;
+
+    /**
+     * The maximum length of a cached key.
+     */
+    private static final int MAX_CACHED_KEY_LENGTH = 64;
+
+    /**
+     * Encoded keys, quoted and followed by a colon.
+     */
+    private static final ConcurrentMap<String, byte[]> KEYS =
+            new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * Upper-case hexadecimal digits.
+     */
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    /**
+     * The escape for each ASCII character: 0 for none, -1 for a Unicode
+     * escape, and otherwise the character following the backslash.
+     */
+    private static final byte[] ESCAPES = new byte[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            ESCAPES[i] = -1;
+        }
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['\b'] = 'b';
+        ESCAPES['\t'] = 't';
+        ESCAPES['\n'] = 'n';
+        ESCAPES['\f'] = 'f';
+        ESCAPES['\r'] = 'r';
+    }
+
+    /**
+     * The buffer.
+     */
+    private final ByteBuilder sink = new ByteBuilder(INITIAL_CAPACITY);
+
+    /**
+     * Scratch space for formatting numbers.
+     */
+    private final char[] scratch = new char[ShortestDecimal.MAX_CHARS];
+
+    /**
+     * Whether non-ASCII characters are escaped.
+     */
+    private boolean escapeNonAscii = false;
+
+    /**
+     * Writes each node of a traversal.
+     */
+    private final Appender appender = new Appender();
+
+    /**
+     * Enables escaping of non-ASCII characters.
+     *
+     * When enabled, the output is pure ASCII, and so is also valid in
+     * ISO-8859-1 or any other ASCII-compatible encoding. Defaults to false.
+     * @param escapeNonAscii true to escape non-ASCII characters.
+     */
+    public void setEscapeNonAscii(final boolean escapeNonAscii) {
+        this.escapeNonAscii = escapeNonAscii;
+    }
+
+    /**
+     * Appends a JSOG to the buffer.
+     * @param jsog the JSOG to write.
+     * @return this JsogWriter.
+     * @throws IllegalArgumentException if the JSOG contains a value which
+     * can't be serialized.
+     */
+    public JsogWriter write(final JSOG jsog) {
+        appender.comma = false;
+        JsogTraversal.walk(jsog, appender);
+        return this;
+    }
+
+    /**
+     * Gets the number of bytes in the buffer.
+     * @return the number of bytes written since the last reset.
+     */
+    public int size() {
+        return sink.length;
+    }
+
+    /**
+     * Copies the contents of the buffer.
+     * @return the bytes written since the last reset.
+     */
+    public byte[] toByteArray() {
+        return sink.toByteArray();
+    }
+
+    /**
+     * Writes the contents of the buffer to a stream.
+     * @param out the stream.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        sink.writeTo(out);
+    }
+
+    /**
+     * Empties the buffer, so the writer can be reused.
+     */
+    public void reset() {
+        sink.length = 0;
+        if (sink.buffer.length > MAX_RETAINED_CAPACITY) {
+            sink.buffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Writes an integer.
+     * @param value the integer.
+     */
+    private void writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            sink.writeAscii(Long.toString(value));
+            return;
+        }
+
+        sink.ensure(20);
+        long rest = value;
+        if (rest < 0) {
+            sink.put('-');
+            rest = -rest;
+        }
+
+        // Write the digits backwards, then reverse them
+        int start = sink.length;
+        do {
+            sink.put((int) ('0' + rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        byte[] buffer = sink.buffer;
+        for (int i = start, j = sink.length - 1; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    /**
+     * Writes an object key, quoted and followed by a colon.
+     * @param key the key.
+     */
+    private void writeKey(final String key) {
+        byte[] bytes = KEYS.get(key);
+        if (bytes == null) {
+
+            // Only short ASCII keys are cached, since they encode the same
+            // regardless of escapeNonAscii
+            if (key.length() > MAX_CACHED_KEY_LENGTH
+                    || KEYS.size() >= MAX_CACHED_KEYS
+                    || !ByteBuilder.isAscii(key)) {
+                writeString(key);
+                sink.write(':');
+                return;
+            }
+
+            int start = sink.length;
+            writeString(key);
+            sink.write(':');
+
+            bytes = new byte[sink.length - start];
+            System.arraycopy(sink.buffer, start, bytes, 0, bytes.length);
+            KEYS.putIfAbsent(key, bytes);
+            return;
+        }
+
+        sink.write(bytes);
+    }
+
+    /**
+     * Writes a quoted, escaped string.
+     * @param string the string.
+     */
+    private void writeString(final String string) {
+        int count = string.length();
+        sink.ensure(count + 2);
+        sink.put('"');
+
+        // Fast path for ASCII which doesn't need escaping
+        int i = 0;
+        while (i < count) {
+            char c = string.charAt(i);
+            if (c >= 0x80 || ESCAPES[c] != 0) {
+                break;
+            }
+            sink.put(c);
+            i++;
+        }
+
+        for (; i < count; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                int escape = ESCAPES[c];
+                if (escape == 0) {
+                    sink.write(c);
+                } else if (escape > 0) {
+                    sink.ensure(2);
+                    sink.put('\\');
+                    sink.put(escape);
+                } else {
+                    writeUnicodeEscape(c);
+                }
+            } else if (escapeNonAscii) {
+                writeUnicodeEscape(c);
+            } else {
+                i = writeUtf8(string, i);
+            }
+        }
+
+        sink.write('"');
+    }
+
+    /**
+     * Writes text which is already valid JSON.
+     * @param text the text.
+     */
+    private void writeRaw(final CharSequence text) {
+        int count = text.length();
+        sink.ensure(count);
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                sink.write(c);
+            } else if (escapeNonAscii) {
+                writeUnicodeEscape(c);
+            } else {
+                i = writeUtf8(text, i);
+            }
+        }
+    }
+
+    /**
+     * Writes a raw JSON fragment.
+     *
+     * Fragments held as UTF-8 are copied as they are, unless non-ASCII
+     * characters must be escaped.
+     * @param raw the fragment.
+     */
+    private void writeRaw(final RawJson raw) {
+        byte[] bytes = raw.getBytes();
+        if (bytes == null) {
+            writeRaw(raw.getText());
+        } else if (escapeNonAscii) {
+            writeRaw(raw.toString());
+        } else {
+            sink.write(bytes);
+        }
+    }
+
+    /**
+     * Writes a character as a Unicode escape.
+     * @param c the character.
+     */
+    private void writeUnicodeEscape(final char c) {
+        sink.ensure(6);
+        sink.put('\\');
+        sink.put('u');
+        sink.put(HEX[(c >> 12) & 0xF]);
+        sink.put(HEX[(c >> 8) & 0xF]);
+        sink.put(HEX[(c >> 4) & 0xF]);
+        sink.put(HEX[c & 0xF]);
+    }
+
+    /**
+     * Writes a non-ASCII character as UTF-8.
+     *
+     * Unpaired surrogates are written as question marks, as
+     * String.getBytes() does.
+     * @param text the text.
+     * @param index the index of the character.
+     * @return the index of the last character consumed.
+     */
+    private int writeUtf8(final CharSequence text, final int index) {
+        char c = text.charAt(index);
+        sink.ensure(4);
+        if (c < 0x800) {
+            sink.put(0xC0 | (c >> 6));
+            sink.put(0x80 | (c & 0x3F));
+            return index;
+        }
+
+        if (Character.isHighSurrogate(c)) {
+            if (index + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(index + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(index + 1));
+                sink.put(0xF0 | (cp >> 18));
+                sink.put(0x80 | ((cp >> 12) & 0x3F));
+                sink.put(0x80 | ((cp >> 6) & 0x3F));
+                sink.put(0x80 | (cp & 0x3F));
+                return index + 1;
+            }
+            sink.put('?');
+            return index;
+        }
+
+        if (Character.isLowSurrogate(c)) {
+            sink.put('?');
+            return index;
+        }
+
+        sink.put(0xE0 | (c >> 12));
+        sink.put(0x80 | ((c >> 6) & 0x3F));
+        sink.put(0x80 | (c & 0x3F));
+        return index;
+    }
+
+    /**
+     * Writes a scalar JSOG value.
+     * @param value a primitive, null, lazy scalar or raw JSON value.
+     * @throws IllegalArgumentException if the value can't be serialized.
+     */
+    private void writeScalar(final Object value) {
+        if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof LazyScalar) {
+            writeRaw((LazyScalar) value);
+        } else if (value instanceof RawJson) {
+            writeRaw((RawJson) value);
+        } else if (value == null) {
+            sink.writeAscii("null");
+        } else if (value instanceof Boolean) {
+            sink.writeAscii((Boolean) value ? "true" : "false");
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            sink.writeAscii(scratch, ShortestDecimal.format(
+                    ((Double) value).doubleValue(), scratch, 0));
+        } else if (value instanceof Float) {
+            sink.writeAscii(scratch, ShortestDecimal.format(
+                    ((Float) value).floatValue(), scratch, 0));
+        } else if (value instanceof BigDecimal
+                || value instanceof BigInteger) {
+            sink.writeAscii(value.toString());
+        } else if (value instanceof Character) {
+            writeLong((Character) value);
+        } else {
+            throw new IllegalArgumentException(
+                    "Could not serialize object of type "
+                    + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes the nodes of a traversal.
+     */
+    private final class Appender implements JsogTraversal.NodeVisitor {
+
+        /**
+         * True if the next value must be preceded by a comma.
+         */
+        private boolean comma;
+
+        @Override
+        public boolean enter(final Object key, final Object container) {
+            prefix(key);
+            sink.write(JsogTraversal.valueOf(container) instanceof List<?>
+                       ? '[' : '{');
+            comma = false;
+            return true;
+        }
+
+        @Override
+        public void leave(final Object key, final Object container) {
+            sink.write(JsogTraversal.valueOf(container) instanceof List<?>
+                       ? ']' : '}');
+            comma = true;
+        }
+
+        @Override
+        public void value(final Object key, final Object value) {
+            prefix(key);
+            writeScalar(JsogTraversal.valueOf(value));
+            comma = true;
+        }
+
+        /**
+         * Writes the separator and key preceding a value.
+         * @param key the key or index of the value, or null for the root.
+         */
+        private void prefix(final Object key) {
+            if (comma) {
+                sink.write(',');
+            }
+            if (key instanceof String) {
+                writeKey((String) key);
+            }
+        }
+    }
+}
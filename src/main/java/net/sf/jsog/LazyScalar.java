@@ -0,0 +1,314 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigInteger;
+
+/**
+ * A number or string which hasn't been decoded yet.
+ *
+ * <p>Lazy scalars refer to the slice of the source text which holds a JSON
+ * number or double-quoted string, so parsing them costs no more than finding
+ * where they end. They're decoded the first time the value of the JSOG that
+ * holds them is read, and are copied verbatim when the JSOG is serialized
+ * without being read.</p>
+ *
+ * <p>The source text is retained for as long as any of its lazy scalars
+ * remain undecoded.</p>
+ * @author jrodriguez
+ */
+final class LazyScalar implements CharSequence {
+
+    /**
+     * The maximum number of digits which always fit in a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * The digits of the largest long.
+     */
+    private static final String MAX_LONG = Long.toString(Long.MAX_VALUE);
+
+    /**
+     * The digits of the smallest long, without the sign.
+     */
+    private static final String MIN_LONG =
+            Long.toString(Long.MIN_VALUE).substring(1);
+
+    /**
+     * The source text.
+     */
+    private final String source;
+
+    /**
+     * The index of the first character of the value.
+     */
+    private final int start;
+
+    /**
+     * The index after the last character of the value.
+     */
+    private final int end;
+
+    /**
+     * Constructs a new LazyScalar.
+     * @param source the source text.
+     * @param start the index of the first character of the value.
+     * @param end the index after the last character of the value.
+     */
+    private LazyScalar(final String source, final int start, final int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Gets the source text this scalar is a slice of.
+     * @return the source text.
+     */
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * Creates a lazy scalar for a double-quoted string.
+     * @param source the source text.
+     * @param quote the index of the opening quote.
+     * @return the lazy scalar, or null if there isn't a double-quoted string
+     * at the index.
+     */
+    static LazyScalar string(final String source, final int quote) {
+        if (quote < 0 || quote >= source.length()
+                || source.charAt(quote) != '"') {
+            return null;
+        }
+
+        int i = quote + 1;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return new LazyScalar(source, quote, i + 1);
+            } else {
+                i++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a lazy scalar for a number.
+     * @param source the source text.
+     * @param last the index of the last character of the number.
+     * @return the lazy scalar, or null if there isn't a number ending at the
+     * index.
+     */
+    static LazyScalar number(final String source, final int last) {
+        if (last < 0 || last >= source.length()) {
+            return null;
+        }
+
+        // Numbers always end with a digit
+        char c = source.charAt(last);
+        if (c < '0' || c > '9') {
+            return null;
+        }
+
+        int start = last;
+        while (start > 0 && isNumberChar(source.charAt(start - 1))) {
+            start--;
+        }
+        return new LazyScalar(source, start, last + 1);
+    }
+
+    /**
+     * Tests if a character may appear in a JSON number.
+     * @param c the character.
+     * @return true if the character may appear in a number.
+     */
+    private static boolean isNumberChar(final char c) {
+        return (c >= '0' && c <= '9')
+                || c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+';
+    }
+
+    /**
+     * Tests if this is a string.
+     * @return true if this is a string, false if it's a number.
+     */
+    boolean isString() {
+        return source.charAt(start) == '"';
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int from, final int to) {
+        return source.substring(start + from, start + to);
+    }
+
+    /**
+     * Appends the source text of this value.
+     * @param sb the StringBuilder to append to.
+     */
+    void appendTo(final StringBuilder sb) {
+        sb.append(source, start, end);
+    }
+
+    /**
+     * Decodes this value.
+     *
+     * Numbers are decoded to the same types as when parsing eagerly: Integer,
+     * Long or BigInteger for integers, and Double otherwise. Like the eager
+     * parser, a 19 digit integer is only a Long if none of its digits is
+     * greater than the same digit of the long limit; otherwise it's a
+     * BigInteger, even if it's in range.
+     * @return the decoded value.
+     */
+    Object decode() {
+        return isString() ? decodeString() : decodeNumber();
+    }
+
+    /**
+     * Decodes a number.
+     * @return the number.
+     */
+    private Number decodeNumber() {
+        String text = source.substring(start, end);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return Double.valueOf(text);
+            }
+        }
+
+        int digits = text.charAt(0) == '-' ? text.length() - 1 : text.length();
+        if (digits <= MAX_LONG_DIGITS) {
+            long value = Long.parseLong(text);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        String limit = text.charAt(0) == '-' ? MIN_LONG : MAX_LONG;
+        if (digits == limit.length()
+                && notAbove(text, text.length() - digits, limit)) {
+            return Long.parseLong(text);
+        }
+        return new BigInteger(text);
+    }
+
+    /**
+     * Compares digits one at a time, as the eager parser does.
+     * @param text the number.
+     * @param from the index of the first digit.
+     * @param limit the digits of the long limit.
+     * @return true if no digit is greater than the limit's.
+     */
+    private static boolean notAbove(final String text, final int from,
+                                    final String limit) {
+        for (int i = 0; i < limit.length(); i++) {
+            if (text.charAt(from + i) > limit.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a string, without its quotes.
+     * @return the string.
+     */
+    private String decodeString() {
+        int from = start + 1;
+        int to = end - 1;
+
+        // No escapes
+        int escape = from;
+        while (escape < to && source.charAt(escape) != '\\') {
+            escape++;
+        }
+        if (escape == to) {
+            return source.substring(from, to);
+        }
+
+        StringBuilder sb = new StringBuilder(to - from);
+        sb.append(source, from, escape);
+        for (int i = escape; i < to; i++) {
+            char c = source.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+
+            c = source.charAt(++i);
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(
+                            source.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets the source text of this value.
+     * @return the source text.
+     */
+    @Override
+    public String toString() {
+        return source.substring(start, end);
+    }
+}
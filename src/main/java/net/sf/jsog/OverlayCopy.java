@@ -0,0 +1,324 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A copy-on-write view of an array from a lower layer of an overlay.
+ *
+ * <p>Until it's written to, the view reads the lower layer's array, and
+ * returns the objects and arrays in it as views too. The first write through
+ * any of them copies the whole array into the overlay's top layer, and the
+ * views read and write the copy from then on. The lower layer is never
+ * modified.</p>
+ * @author jrodriguez
+ * @see OverlayMap
+ */
+final class OverlayCopy {
+
+    /**
+     * The overlay holding the array.
+     */
+    private final OverlayMap owner;
+
+    /**
+     * The array's key in the overlay.
+     */
+    private final String key;
+
+    /**
+     * The lower layer's array.
+     */
+    private final List<?> base;
+
+    /**
+     * The copy in the top layer, or null until the first write.
+     */
+    private JSOG copy;
+
+    /**
+     * Constructs a new OverlayCopy.
+     * @param owner the overlay holding the array.
+     * @param key the array's key in the overlay.
+     * @param base the lower layer's array.
+     */
+    private OverlayCopy(final OverlayMap owner, final String key,
+                        final List<?> base) {
+        this.owner = owner;
+        this.key = key;
+        this.base = base;
+    }
+
+    /**
+     * Creates a copy-on-write view of an array from a lower layer.
+     * @param owner the overlay holding the array.
+     * @param key the array's key in the overlay.
+     * @param base the lower layer's array.
+     * @return the view.
+     */
+    static List<Object> view(final OverlayMap owner, final String key,
+                             final List<?> base) {
+        return new OverlayCopy(owner, key, base).new ListView(new Object[0]);
+    }
+
+    /**
+     * Finds the container at a path from the array.
+     * @param path the keys and indexes from the array.
+     * @param write true to copy the array into the top layer first.
+     * @return the raw Map or List, from the copy if there is one.
+     * @throws IllegalStateException if the container no longer exists.
+     */
+    private Object container(final Object[] path, final boolean write) {
+        if (copy == null && write) {
+            copy = JSOG.wrap(JsogTraversal.copy(base));
+            owner.put(key, copy);
+        }
+
+        Object raw = JsogPath.unwrap(copy != null ? copy : base);
+        for (Object segment : path) {
+            if (segment instanceof String && raw instanceof Map<?, ?>) {
+                raw = JsogPath.unwrap(((Map<?, ?>) raw).get(segment));
+            } else if (segment instanceof Integer && raw instanceof List<?>
+                    && (Integer) segment < ((List<?>) raw).size()) {
+                raw = JsogPath.unwrap(((List<?>) raw).get((Integer) segment));
+            } else {
+                raw = null;
+            }
+            if (!(raw instanceof Map<?, ?>) && !(raw instanceof List<?>)) {
+                throw new IllegalStateException(
+                        "The value no longer exists.");
+            }
+        }
+        return raw;
+    }
+
+    /**
+     * Protects a value read through a view.
+     * @param value the raw value.
+     * @param path the path of the container holding it.
+     * @param segment its key or index in the container.
+     * @return the value itself once copied, or else a view or a frozen
+     *         primitive.
+     */
+    private Object protect(final Object value, final Object[] path,
+                           final Object segment) {
+        if (copy != null) {
+            return value;
+        }
+
+        Object raw = JsogPath.unwrap(value);
+        if (raw instanceof Map<?, ?> || raw instanceof List<?>) {
+            Object[] child = new Object[path.length + 1];
+            System.arraycopy(path, 0, child, 0, path.length);
+            child[path.length] = segment;
+            return raw instanceof Map<?, ?>
+                    ? new MapView(child)
+                    : new ListView(child);
+        }
+        return value instanceof JSOG ? JSOG.frozen(raw) : value;
+    }
+
+    /**
+     * A view of an array.
+     */
+    private final class ListView extends AbstractList<Object> {
+
+        /**
+         * The path from the copied array.
+         */
+        private final Object[] path;
+
+        /**
+         * Constructs a new ListView.
+         * @param path the path from the copied array.
+         */
+        ListView(final Object[] path) {
+            this.path = path;
+        }
+
+        /**
+         * Gets the array.
+         * @param write true to copy it into the top layer first.
+         * @return the array.
+         */
+        @SuppressWarnings("unchecked")
+        private List<Object> list(final boolean write) {
+            return (List<Object>) container(path, write);
+        }
+
+        @Override
+        public Object get(final int index) {
+            return protect(list(false).get(index), path, index);
+        }
+
+        @Override
+        public int size() {
+            return list(false).size();
+        }
+
+        @Override
+        public Object set(final int index, final Object element) {
+            return list(true).set(index, element);
+        }
+
+        @Override
+        public void add(final int index, final Object element) {
+            list(true).add(index, element);
+        }
+
+        @Override
+        public Object remove(final int index) {
+            return list(true).remove(index);
+        }
+    }
+
+    /**
+     * A view of an object.
+     */
+    private final class MapView extends AbstractMap<String, Object> {
+
+        /**
+         * The path from the copied array.
+         */
+        private final Object[] path;
+
+        /**
+         * Constructs a new MapView.
+         * @param path the path from the copied array.
+         */
+        MapView(final Object[] path) {
+            this.path = path;
+        }
+
+        /**
+         * Gets the object.
+         * @param write true to copy it into the top layer first.
+         * @return the object.
+         */
+        @SuppressWarnings("unchecked")
+        private Map<String, Object> map(final boolean write) {
+            return (Map<String, Object>) container(path, write);
+        }
+
+        @Override
+        public boolean containsKey(final Object k) {
+            return map(false).containsKey(k);
+        }
+
+        @Override
+        public Object get(final Object k) {
+            return protect(map(false).get(k), path, k);
+        }
+
+        @Override
+        public int size() {
+            return map(false).size();
+        }
+
+        @Override
+        public Object put(final String k, final Object value) {
+            return map(true).put(k, value);
+        }
+
+        @Override
+        public Object remove(final Object k) {
+            return map(true).remove(k);
+        }
+
+        @Override
+        public void clear() {
+            map(true).clear();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public int size() {
+                    return MapView.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<String> it = map(false).keySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Entry<String, Object> next() {
+                            return new ViewEntry(it.next());
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+
+        /**
+         * An entry of a view, which reads and writes through it.
+         */
+        private final class ViewEntry implements Entry<String, Object> {
+
+            /**
+             * The key.
+             */
+            private final String entryKey;
+
+            /**
+             * Constructs a new ViewEntry.
+             * @param entryKey the key.
+             */
+            ViewEntry(final String entryKey) {
+                this.entryKey = entryKey;
+            }
+
+            public String getKey() {
+                return entryKey;
+            }
+
+            public Object getValue() {
+                return get(entryKey);
+            }
+
+            public Object setValue(final Object value) {
+                return put(entryKey, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-through view of several layers of objects, top layer first.
+ *
+ * <p>Lookups go from the top layer down. If the top-most value for a key is
+ * an object, and lower layers have objects for it too, the result is a
+ * nested overlay of those objects. Any other value (a primitive, an array,
+ * or null) hides the layers beneath it.</p>
+ *
+ * <p>Writes go to the top layer only. Nested overlays create their objects
+ * in the top layer when they're first written to. Arrays taken from lower
+ * layers are returned as copy-on-write views, which copy the array into the
+ * top layer when they, or any value in them, are first written to.</p>
+ * @author jrodriguez
+ * @see JSOG#overlay(JSOG...)
+ */
+final class OverlayMap extends AbstractMap<String, Object> {
+
+    /**
+     * The overlay containing this one, or null for the root.
+     */
+    private final OverlayMap parent;
+
+    /**
+     * The key of this overlay in its parent.
+     */
+    private final String key;
+
+    /**
+     * The top layer, or null if a nested overlay hasn't been written to.
+     */
+    private JSOG top;
+
+    /**
+     * The lower layers, top-most first.
+     */
+    private final List<Map<String, Object>> lower;
+
+    /**
+     * Constructs a new OverlayMap.
+     * @param parent the containing overlay, or null for the root.
+     * @param key the key in the containing overlay.
+     * @param top the top layer, or null.
+     * @param lower the lower layers, top-most first.
+     */
+    OverlayMap(final OverlayMap parent, final String key, final JSOG top,
+               final List<Map<String, Object>> lower) {
+        this.parent = parent;
+        this.key = key;
+        this.top = top;
+        this.lower = lower;
+    }
+
+    /**
+     * Gets the backing Map of an object value.
+     * @param value a raw value.
+     * @return the Map, or null if the value isn't an object.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(final Object value) {
+        Object raw = value instanceof JSOG ? ((JSOG) value).rawValue() : value;
+        return raw instanceof Map<?, ?> ? (Map<String, Object>) raw : null;
+    }
+
+    /**
+     * Gets the top layer, without creating it.
+     * @return the top layer's Map, or null if there isn't one.
+     */
+    private Map<String, Object> topMap() {
+        if (top == null && parent != null) {
+            Map<String, Object> parentTop = parent.topMap();
+            if (parentTop != null) {
+                Object value = parentTop.get(key);
+                if (asObject(value) != null) {
+                    top = JSOG.wrap(value);
+                }
+            }
+        }
+        return top == null ? null : asObject(top);
+    }
+
+    /**
+     * Gets the top layer as it is, without creating or looking it up.
+     * @return the top layer, or null.
+     */
+    JSOG getTop() {
+        return top;
+    }
+
+    /**
+     * Gets the top layer, creating it if necessary.
+     * @return the top layer.
+     */
+    private JSOG writableTop() {
+        if (topMap() == null && top == null) {
+            top = parent.writableTop().get(key);
+        }
+        return top;
+    }
+
+    @Override
+    public boolean containsKey(final Object k) {
+        Map<String, Object> map = topMap();
+        if (map != null && map.containsKey(k)) {
+            return true;
+        }
+        for (Map<String, Object> layer : lower) {
+            if (layer.containsKey(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object get(final Object k) {
+        Map<String, Object> map = topMap();
+        boolean fromTop = map != null && map.containsKey(k);
+        Object value = fromTop ? map.get(k) : null;
+        int i = 0;
+
+        // Find the top-most value
+        if (!fromTop) {
+            for (; i < lower.size(); i++) {
+                if (lower.get(i).containsKey(k)) {
+                    value = lower.get(i).get(k);
+                    break;
+                }
+            }
+            if (i == lower.size()) {
+                return null;
+            }
+            i++;
+        }
+
+        if (asObject(value) == null) {
+            return fromTop ? value : protect((String) k, value);
+        }
+
+        // Gather the objects beneath it, down to the first non-object
+        List<Map<String, Object>> below = new ArrayList<Map<String, Object>>();
+        if (!fromTop) {
+            below.add(asObject(value));
+        }
+        for (; i < lower.size(); i++) {
+            Map<String, Object> layer = lower.get(i);
+            if (layer.containsKey(k)) {
+                Map<String, Object> object = asObject(layer.get(k));
+                if (object == null) {
+                    break;
+                }
+                below.add(object);
+            }
+        }
+
+        if (fromTop && below.isEmpty()) {
+            return value;
+        }
+        return new OverlayMap(this, (String) k,
+                fromTop ? JSOG.wrap(value) : null, below);
+    }
+
+    /**
+     * Protects a value from a lower layer from modification.
+     * @param k the value's key.
+     * @param value the raw value, which isn't an object.
+     * @return a copy-on-write view of an array, or a frozen primitive.
+     */
+    private Object protect(final String k, final Object value) {
+        Object raw = JsogPath.unwrap(value);
+        if (raw instanceof List<?>) {
+            return OverlayCopy.view(this, k, (List<?>) raw);
+        }
+        return value instanceof JSOG ? JSOG.frozen(raw) : value;
+    }
+
+    @Override
+    public Object put(final String k, final Object value) {
+        Object previous = get(k);
+        writableTop().put(k, value);
+        return previous;
+    }
+
+    /**
+     * Removes a key from the top layer. Values in lower layers show through.
+     * @param k the key.
+     * @return the value removed from the top layer, or null.
+     */
+    @Override
+    public Object remove(final Object k) {
+        Map<String, Object> map = topMap();
+        return map == null ? null : map.remove(k);
+    }
+
+    /**
+     * Clears the top layer. Values in lower layers show through.
+     */
+    @Override
+    public void clear() {
+        Map<String, Object> map = topMap();
+        if (map != null) {
+            map.clear();
+        }
+    }
+
+    /**
+     * Tests if a key is in a layer above another.
+     * @param k the key.
+     * @param layer the lower layer's index, or lower.size() for all of them.
+     * @return true if the top layer, or a lower layer before the given one,
+     *         has the key.
+     */
+    private boolean above(final Object k, final int layer) {
+        Map<String, Object> map = topMap();
+        if (map != null && map.containsKey(k)) {
+            return true;
+        }
+        for (int i = 0; i < layer; i++) {
+            if (lower.get(i).containsKey(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the keys of every layer, without gathering them.
+     * @return the number of distinct keys.
+     */
+    @Override
+    public int size() {
+        Map<String, Object> map = topMap();
+        int size = map == null ? 0 : map.size();
+        for (int i = 0; i < lower.size(); i++) {
+            for (String k : lower.get(i).keySet()) {
+                if (!above(k, i)) {
+                    size++;
+                }
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+
+            @Override
+            public int size() {
+                return OverlayMap.this.size();
+            }
+
+            /**
+             * Iterates over the keys in the order they first appear from the
+             * bottom layer up, skipping the keys seen in lower layers.
+             * @return the entries.
+             */
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+
+                    /**
+                     * The layer being iterated: a lower layer's index, or -1
+                     * for the top layer.
+                     */
+                    private int layer = lower.size();
+
+                    /**
+                     * The keys of the layer being iterated.
+                     */
+                    private Iterator<String> keys;
+
+                    /**
+                     * The next key, or null if it hasn't been found yet.
+                     */
+                    private String next;
+
+                    public boolean hasNext() {
+                        while (next == null) {
+                            if (keys != null && keys.hasNext()) {
+                                String k = keys.next();
+                                if (!below(k, layer)) {
+                                    next = k;
+                                }
+                            } else if (layer < 0) {
+                                return false;
+                            } else {
+                                layer--;
+                                Map<String, Object> map = layer < 0
+                                        ? topMap()
+                                        : lower.get(layer);
+                                keys = map == null ? null
+                                        : map.keySet().iterator();
+                            }
+                        }
+                        return true;
+                    }
+
+                    public Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String k = next;
+                        next = null;
+                        return new OverlayEntry(k);
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Tests if a key is in a lower layer beneath another.
+     * @param k the key.
+     * @param layer a lower layer's index, or -1 for the top layer.
+     * @return true if a lower layer after the given one has the key.
+     */
+    private boolean below(final Object k, final int layer) {
+        for (int i = layer + 1; i < lower.size(); i++) {
+            if (lower.get(i).containsKey(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An entry of an overlay, which reads and writes through it.
+     */
+    private final class OverlayEntry implements Entry<String, Object> {
+
+        /**
+         * The key.
+         */
+        private final String entryKey;
+
+        /**
+         * Constructs a new OverlayEntry.
+         * @param entryKey the key.
+         */
+        OverlayEntry(final String entryKey) {
+            this.entryKey = entryKey;
+        }
+
+        public String getKey() {
+            return entryKey;
+        }
+
+        public Object getValue() {
+            return get(entryKey);
+        }
+
+        public Object setValue(final Object value) {
+            return put(entryKey, value);
+        }
+    }
+}
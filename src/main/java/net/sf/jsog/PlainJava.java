@@ -0,0 +1,222 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Unmodifiable plain Java views of JSOG values.
+ * @author jrodriguez
+ * @see JSOG#toPlainJava()
+ */
+final class PlainJava {
+
+    /**
+     * Static use only.
+     */
+    private PlainJava() {
+    }
+
+    /**
+     * Views a raw JSOG value as plain Java.
+     * @param value the raw value.
+     * @return a Map or List view, or the primitive value.
+     */
+    static Object view(final Object value) {
+        if (value instanceof JSOG) {
+            return view(((JSOG) value).rawValue());
+        } else if (value instanceof Map<?, ?>) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> map = (Map<String, Object>) value;
+            return new MapView(map);
+        } else if (value instanceof List<?>) {
+            @SuppressWarnings("unchecked")
+            List<Object> list = (List<Object>) value;
+            return new ListView(list);
+        } else if (value instanceof LazyScalar) {
+            return ((LazyScalar) value).decode();
+        }
+        return value;
+    }
+
+    /**
+     * A view of an object JSOG.
+     */
+    private static final class MapView extends AbstractMap<String, Object> {
+
+        /**
+         * The backing Map.
+         */
+        private final Map<String, Object> map;
+
+        /**
+         * Constructs a new MapView.
+         * @param map the backing Map.
+         */
+        MapView(final Map<String, Object> map) {
+            this.map = map;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public Object get(final Object key) {
+            return view(map.get(key));
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<Entry<String, Object>> it =
+                            map.entrySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        public Entry<String, Object> next() {
+                            return new EntryView(it.next());
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * A view of an object JSOG's entry.
+     */
+    private static final class EntryView implements Entry<String, Object> {
+
+        /**
+         * The backing entry.
+         */
+        private final Entry<String, Object> entry;
+
+        /**
+         * Constructs a new EntryView.
+         * @param entry the backing entry.
+         */
+        EntryView(final Entry<String, Object> entry) {
+            this.entry = entry;
+        }
+
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        public Object getValue() {
+            return view(entry.getValue());
+        }
+
+        public Object setValue(final Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Entry<?, ?>)) {
+                return false;
+            }
+            Entry<?, ?> that = (Entry<?, ?>) obj;
+            Object value = getValue();
+            return getKey().equals(that.getKey())
+                    && (value == null
+                        ? that.getValue() == null
+                        : value.equals(that.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * A view of an array JSOG.
+     */
+    private static final class ListView extends AbstractList<Object>
+            implements RandomAccess {
+
+        /**
+         * The backing List.
+         */
+        private final List<Object> list;
+
+        /**
+         * Constructs a new ListView.
+         * @param list the backing List.
+         */
+        ListView(final List<Object> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object get(final int index) {
+            return view(list.get(index));
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+    }
+}
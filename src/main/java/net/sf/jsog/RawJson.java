@@ -0,0 +1,195 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+
+/**
+ * A fragment of serialized JSON, written out verbatim.
+ *
+ * <p>The fragment is held as a String or as UTF-8 bytes, exactly as it was
+ * given, and is only parsed when its value is needed.</p>
+ * @author jrodriguez
+ * @see JSOG#raw(String)
+ */
+final class RawJson {
+
+    /**
+     * Validates fragments. Strict, so fragments are always valid JSON.
+     */
+    private static final JsonFactory STRICT = new JsonFactory();
+
+    /**
+     * The fragment, if it was given as text.
+     */
+    private final String text;
+
+    /**
+     * The fragment, if it was given as UTF-8 bytes.
+     */
+    private final byte[] bytes;
+
+    /**
+     * Constructs a new RawJson.
+     * @param text the fragment as text, or null.
+     * @param bytes the fragment as UTF-8 bytes, or null.
+     */
+    private RawJson(final String text, final byte[] bytes) {
+        this.text = text;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Creates a fragment from text.
+     * @param json the fragment.
+     * @param validate true to check that the fragment is a single JSON value.
+     * @return the fragment.
+     * @throws IllegalArgumentException if the fragment is invalid.
+     */
+    static RawJson of(final String json, final boolean validate) {
+        if (json == null) {
+            throw new NullPointerException("json is null");
+        }
+        RawJson raw = new RawJson(json, null);
+        if (validate) {
+            raw.validate();
+        }
+        return raw;
+    }
+
+    /**
+     * Creates a fragment from UTF-8 bytes.
+     * @param json the fragment, which is used without copying.
+     * @param validate true to check that the fragment is a single JSON value.
+     * @return the fragment.
+     * @throws IllegalArgumentException if the fragment is invalid.
+     */
+    static RawJson of(final byte[] json, final boolean validate) {
+        if (json == null) {
+            throw new NullPointerException("json is null");
+        }
+        RawJson raw = new RawJson(null, json);
+        if (validate) {
+            raw.validate();
+        }
+        return raw;
+    }
+
+    /**
+     * Creates a parser for the fragment.
+     * @return the parser.
+     * @throws IOException if the parser could not be created.
+     */
+    private JsonParser createParser() throws IOException {
+        return text != null
+                ? STRICT.createJsonParser(text)
+                : STRICT.createJsonParser(bytes);
+    }
+
+    /**
+     * Checks that the fragment is exactly one JSON value.
+     * @throws IllegalArgumentException if it isn't.
+     */
+    private void validate() {
+        try {
+            JsonParser parser = createParser();
+            try {
+                if (parser.nextToken() == null) {
+                    throw new IllegalArgumentException(
+                            "The raw JSON is empty.");
+                }
+                parser.skipChildren();
+                if (parser.nextToken() != null) {
+                    throw new IllegalArgumentException(
+                            "The raw JSON has content after its value.");
+                }
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(
+                    "Invalid raw JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the fragment.
+     * @return the parsed JSOG.
+     * @throws IllegalStateException if a trusted fragment is invalid.
+     */
+    JSOG parse() {
+        try {
+            JsonParser parser = createParser();
+            try {
+                return JsogReader.read(parser);
+            } finally {
+                parser.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    "Invalid raw JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets the fragment as text.
+     * @return the text, or null if the fragment is held as bytes.
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the fragment as UTF-8 bytes.
+     * @return the bytes, or null if the fragment is held as text.
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Appends the fragment to a StringBuilder.
+     * @param sb the StringBuilder.
+     */
+    void appendTo(final StringBuilder sb) {
+        sb.append(toString());
+    }
+
+    @Override
+    public String toString() {
+        if (text != null) {
+            return text;
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,536 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigInteger;
+
+/**
+ * Formats doubles and floats with the fewest digits that round-trip.
+ *
+ * <p>This is Raffaello Giulietti's Schubfach algorithm, the same one used by
+ * Double.toString() and Float.toString() as of Java 19. Older versions of
+ * Java sometimes emit more digits than necessary, and are considerably
+ * slower since they go through FloatingDecimal.</p>
+ *
+ * <p>The output has the same layout as Double.toString(): plain notation for
+ * magnitudes from 10<sup>-3</sup> up to 10<sup>7</sup>, and computerized
+ * scientific notation otherwise.</p>
+ * @author jrodriguez
+ */
+final class ShortestDecimal {
+
+    /**
+     * The maximum number of characters a double or float may format to.
+     */
+    static final int MAX_CHARS = 24;
+
+    /**
+     * The smallest decimal exponent in the table of powers of ten.
+     */
+    private static final int K_MIN = -324;
+
+    /**
+     * The largest decimal exponent in the table of powers of ten.
+     */
+    private static final int K_MAX = 292;
+
+    /**
+     * The precision of a double, in bits.
+     */
+    private static final int DOUBLE_P = 53;
+
+    /**
+     * The smallest binary exponent of a double.
+     */
+    private static final int DOUBLE_Q_MIN = -1074;
+
+    /**
+     * The smallest significand of a normal double.
+     */
+    private static final long DOUBLE_C_MIN = 1L << (DOUBLE_P - 1);
+
+    /**
+     * Subnormal doubles below this significand need an extra digit.
+     */
+    private static final long DOUBLE_C_TINY = 3;
+
+    /**
+     * The precision of a float, in bits.
+     */
+    private static final int FLOAT_P = 24;
+
+    /**
+     * The smallest binary exponent of a float.
+     */
+    private static final int FLOAT_Q_MIN = -149;
+
+    /**
+     * The smallest significand of a normal float.
+     */
+    private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+
+    /**
+     * Subnormal floats below this significand need an extra digit.
+     */
+    private static final int FLOAT_C_TINY = 8;
+
+    /**
+     * The lower 63 bits.
+     */
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /**
+     * The lower 32 bits.
+     */
+    private static final long MASK_32 = (1L << 32) - 1;
+
+    /**
+     * The 126-bit approximations of 10<sup>-k</sup>, as pairs of 63-bit
+     * halves, from K_MIN to K_MAX.
+     *
+     * Let 10<sup>-k</sup> = b 2<sup>r</sup>, for the unique r which makes
+     * 2<sup>125</sup> &lt;= b &lt; 2<sup>126</sup>. Each entry is
+     * floor(b) + 1.
+     */
+    private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+    static {
+        BigInteger low = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger n = BigInteger.TEN.pow(-k);
+                int r = n.bitLength() - 126;
+                g = r >= 0 ? n.shiftRight(r) : n.shiftLeft(-r);
+            } else {
+                BigInteger d = BigInteger.TEN.pow(k);
+                g = BigInteger.ONE.shiftLeft(125 + d.bitLength()).divide(d);
+            }
+            g = g.add(BigInteger.ONE);
+
+            int i = (k - K_MIN) * 2;
+            G[i] = g.shiftRight(63).longValue();
+            G[i + 1] = g.and(low).longValue();
+        }
+    }
+
+    /**
+     * Static use only.
+     */
+    private ShortestDecimal() {
+    }
+
+    /**
+     * Formats a double.
+     * @param v the double.
+     * @return the shortest decimal string which round-trips.
+     */
+    static String toString(final double v) {
+        char[] chars = new char[MAX_CHARS];
+        return new String(chars, 0, format(v, chars, 0));
+    }
+
+    /**
+     * Formats a float.
+     * @param v the float.
+     * @return the shortest decimal string which round-trips.
+     */
+    static String toString(final float v) {
+        char[] chars = new char[MAX_CHARS];
+        return new String(chars, 0, format(v, chars, 0));
+    }
+
+    /**
+     * Formats a double into a character array.
+     * @param v the double.
+     * @param out the array, with room for at least MAX_CHARS characters.
+     * @param offset the index at which to start.
+     * @return the index after the last character written.
+     */
+    static int format(final double v, final char[] out, final int offset) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & (DOUBLE_C_MIN - 1);
+        int bq = (int) (bits >>> (DOUBLE_P - 1)) & 0x7FF;
+
+        if (bq == 0x7FF) {
+            return special(t != 0, bits < 0, out, offset);
+        }
+
+        int pos = offset;
+        if (bits < 0) {
+            out[pos++] = '-';
+        }
+
+        if (bq != 0) {
+            int mq = -DOUBLE_Q_MIN + 1 - bq;
+            long c = DOUBLE_C_MIN | t;
+
+            // Integers are their own shortest decimal
+            if (0 < mq && mq < DOUBLE_P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(f, 0, out, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, out, pos);
+        }
+
+        if (t != 0) {
+            return t < DOUBLE_C_TINY
+                    ? toDecimal(DOUBLE_Q_MIN, 10 * t, -1, out, pos)
+                    : toDecimal(DOUBLE_Q_MIN, t, 0, out, pos);
+        }
+
+        return toChars(0, 0, out, pos);
+    }
+
+    /**
+     * Formats a float into a character array.
+     * @param v the float.
+     * @param out the array, with room for at least MAX_CHARS characters.
+     * @param offset the index at which to start.
+     * @return the index after the last character written.
+     */
+    static int format(final float v, final char[] out, final int offset) {
+        int bits = Float.floatToRawIntBits(v);
+        int t = bits & (FLOAT_C_MIN - 1);
+        int bq = (bits >>> (FLOAT_P - 1)) & 0xFF;
+
+        if (bq == 0xFF) {
+            return special(t != 0, bits < 0, out, offset);
+        }
+
+        int pos = offset;
+        if (bits < 0) {
+            out[pos++] = '-';
+        }
+
+        if (bq != 0) {
+            int mq = -FLOAT_Q_MIN + 1 - bq;
+            int c = FLOAT_C_MIN | t;
+
+            // Integers are their own shortest decimal
+            if (0 < mq && mq < FLOAT_P) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(f, 0, out, pos);
+                }
+            }
+            return toDecimal(-mq, c, 0, out, pos);
+        }
+
+        if (t != 0) {
+            return t < FLOAT_C_TINY
+                    ? toDecimal(FLOAT_Q_MIN, 10 * t, -1, out, pos)
+                    : toDecimal(FLOAT_Q_MIN, t, 0, out, pos);
+        }
+
+        return toChars(0, 0, out, pos);
+    }
+
+    /**
+     * Formats NaN or an infinity.
+     * @param nan true for NaN.
+     * @param negative true for negative infinity.
+     * @param out the array.
+     * @param offset the index at which to start.
+     * @return the index after the last character written.
+     */
+    private static int special(final boolean nan, final boolean negative,
+                               final char[] out, final int offset) {
+        String s;
+        if (nan) {
+            s = "NaN";
+        } else {
+            s = negative ? "-Infinity" : "Infinity";
+        }
+        s.getChars(0, s.length(), out, offset);
+        return offset + s.length();
+    }
+
+    /**
+     * Computes the shortest decimal for a double c 2<sup>q</sup>.
+     * @param q the binary exponent.
+     * @param c the significand.
+     * @param dk the decimal exponent adjustment, for tiny subnormals.
+     * @param out the array.
+     * @param offset the index at which to start.
+     * @return the index after the last character written.
+     */
+    private static int toDecimal(final int q, final long c, final int dk,
+                                 final char[] out, final int offset) {
+        int parity = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != DOUBLE_C_MIN || q == DOUBLE_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        int i = (k - K_MIN) * 2;
+        long g1 = G[i];
+        long g0 = G[i + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        // Try a digit less first
+        long s = vb >> 2;
+        if (s >= 100) {
+            long sp10 = 10 * (s / 10);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + parity <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + parity <= vbr;
+            if (upin != wpin) {
+                return toChars(upin ? sp10 : tp10, k, out, offset);
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + parity <= s << 2;
+        boolean win = (t << 2) + parity <= vbr;
+        if (uin != win) {
+            return toChars(uin ? s : t, k + dk, out, offset);
+        }
+
+        // Both are in range, pick the closest
+        long cmp = vb - ((s + t) << 1);
+        return toChars(cmp < 0 || (cmp == 0 && (s & 0x1) == 0) ? s : t,
+                       k + dk, out, offset);
+    }
+
+    /**
+     * Computes the shortest decimal for a float c 2<sup>q</sup>.
+     * @param q the binary exponent.
+     * @param c the significand.
+     * @param dk the decimal exponent adjustment, for tiny subnormals.
+     * @param out the array.
+     * @param offset the index at which to start.
+     * @return the index after the last character written.
+     */
+    private static int toDecimal(final int q, final int c, final int dk,
+                                 final char[] out, final int offset) {
+        int parity = c & 0x1;
+        long cb = (long) c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 33;
+
+        long g = G[(k - K_MIN) * 2] + 1;
+
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+
+        // Try a digit less first
+        int s = vb >> 2;
+        if (s >= 100) {
+            int sp10 = 10 * (s / 10);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + parity <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + parity <= vbr;
+            if (upin != wpin) {
+                return toChars(upin ? sp10 : tp10, k, out, offset);
+            }
+        }
+
+        int t = s + 1;
+        boolean uin = vbl + parity <= s << 2;
+        boolean win = (t << 2) + parity <= vbr;
+        if (uin != win) {
+            return toChars(uin ? s : t, k + dk, out, offset);
+        }
+
+        // Both are in range, pick the closest
+        int cmp = vb - ((s + t) << 1);
+        return toChars(cmp < 0 || (cmp == 0 && (s & 0x1) == 0) ? s : t,
+                       k + dk, out, offset);
+    }
+
+    /**
+     * Computes the rounded-to-odd product of g and cp, for doubles.
+     * @param g1 the upper half of g.
+     * @param g0 the lower half of g.
+     * @param cp the scaled significand.
+     * @return the product.
+     */
+    private static long rop(final long g1, final long g0, final long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+    }
+
+    /**
+     * Computes the rounded-to-odd product of g and cp, for floats.
+     * @param g the upper half of g, plus one.
+     * @param cp the scaled significand.
+     * @return the product.
+     */
+    private static int rop(final long g, final long cp) {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (((x1 & MASK_32) + MASK_32) >>> 32));
+    }
+
+    /**
+     * Computes the upper 64 bits of a signed 128-bit product.
+     * @param x the first factor.
+     * @param y the second factor.
+     * @return the upper 64 bits of the product.
+     */
+    private static long multiplyHigh(final long x, final long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * Computes floor(log<sub>10</sub>(2<sup>e</sup>)).
+     * @param e the exponent, with |e| &lt;= 5456721.
+     * @return the result.
+     */
+    private static int flog10pow2(final int e) {
+        return (int) ((e * 661971961083L) >> 41);
+    }
+
+    /**
+     * Computes floor(log<sub>10</sub>(3/4 2<sup>e</sup>)).
+     * @param e the exponent, with |e| &lt;= 2783191.
+     * @return the result.
+     */
+    private static int flog10threeQuartersPow2(final int e) {
+        return (int) ((e * 661971961083L - 274743187321L) >> 41);
+    }
+
+    /**
+     * Computes floor(log<sub>2</sub>(10<sup>e</sup>)).
+     * @param e the exponent, with |e| &lt;= 1838394.
+     * @return the result.
+     */
+    private static int flog2pow10(final int e) {
+        return (int) ((e * 913124641741L) >> 38);
+    }
+
+    /**
+     * Writes f 10<sup>e</sup> in the layout of Double.toString().
+     * @param f the decimal significand.
+     * @param e the decimal exponent.
+     * @param out the array.
+     * @param offset the index at which to start.
+     * @return the index after the last character written.
+     */
+    private static int toChars(final long f, final int e, final char[] out,
+                               final int offset) {
+
+        // Extract the digits, without trailing zeros
+        char[] digits = new char[20];
+        int count = 0;
+        long rest = f;
+        int exponent = e;
+        while (rest != 0 && rest % 10 == 0) {
+            rest /= 10;
+            exponent++;
+        }
+        do {
+            digits[digits.length - ++count] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        int first = digits.length - count;
+
+        // The value is 0.d1d2...dn 10^point
+        int point = f == 0 ? 1 : exponent + count;
+        int pos = offset;
+
+        if (0 < point && point <= 7) {
+
+            // Plain, with at least one digit on each side of the point
+            for (int i = 0; i < point; i++) {
+                out[pos++] = i < count ? digits[first + i] : '0';
+            }
+            out[pos++] = '.';
+            if (count <= point) {
+                out[pos++] = '0';
+            } else {
+                for (int i = point; i < count; i++) {
+                    out[pos++] = digits[first + i];
+                }
+            }
+        } else if (-3 < point && point <= 0) {
+
+            // Plain, with leading zeros
+            out[pos++] = '0';
+            out[pos++] = '.';
+            for (int i = point; i < 0; i++) {
+                out[pos++] = '0';
+            }
+            for (int i = 0; i < count; i++) {
+                out[pos++] = digits[first + i];
+            }
+        } else {
+
+            // Scientific
+            out[pos++] = digits[first];
+            out[pos++] = '.';
+            if (count == 1) {
+                out[pos++] = '0';
+            } else {
+                for (int i = 1; i < count; i++) {
+                    out[pos++] = digits[first + i];
+                }
+            }
+            out[pos++] = 'E';
+            String exp = Integer.toString(point - 1);
+            exp.getChars(0, exp.length(), out, pos);
+            pos += exp.length();
+        }
+        return pos;
+    }
+}
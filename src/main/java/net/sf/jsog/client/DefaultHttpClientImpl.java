@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
@@ -42,6 +43,7 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
@@ -49,6 +51,7 @@ import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 
 /**
@@ -69,6 +72,74 @@ import org.apache.http.util.EntityUtils;
  */
 public class DefaultHttpClientImpl implements net.sf.jsog.client.HttpClient {
 
+    /**
+     * The raw content of a response.
+     */
+    protected static final class Content {
+
+        /**
+         * The body of the response.
+         */
+        private final byte[] body;
+
+        /**
+         * The MIME type of the response, without parameters.
+         */
+        private final String mimeType;
+
+        /**
+         * The charset of the response.
+         */
+        private final String charset;
+
+        /**
+         * Constructs a new Content.
+         * @param body the body of the response.
+         * @param mimeType the MIME type, or null if unknown.
+         * @param charset the charset.
+         */
+        Content(final byte[] body,
+                final String mimeType,
+                final String charset) {
+            this.body = body;
+            this.mimeType = mimeType;
+            this.charset = charset;
+        }
+
+        /**
+         * Gets the body of the response.
+         * @return the body.
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Gets the MIME type of the response, without parameters.
+         * @return the MIME type, or null if the response has none.
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Decodes the body of the response as text.
+         *
+         * The charset of the response is used if it specifies one, otherwise
+         * the client's charset is used.
+         * @return the body as a String.
+         * @throws JsogClientException if the charset is not supported.
+         */
+        public String getText() {
+            try {
+                return new String(body, charset);
+            } catch (UnsupportedEncodingException e) {
+                throw new JsogClientException(
+                        "Unsupported encoding: " + charset, e);
+            }
+        }
+    }
+
     /**
      * The global HTTP parameters for the client.
      */
@@ -201,19 +272,50 @@ public class DefaultHttpClientImpl implements net.sf.jsog.client.HttpClient {
 
     @Override
     public final String get(final String url) {
+        return getContent(url, null).getText();
+    }
+
+    @Override
+    public final String post(final String url, final String data) {
+        return postContent(url, data, null).getText();
+    }
+
+    /**
+     * Gets the raw content of a URL.
+     * @param url the URL.
+     * @param accept the value of the Accept header, or null for none.
+     * @return the content of the response.
+     * @throws JsogClientException if the request fails.
+     */
+    protected final Content getContent(final String url, final String accept) {
 
         // Create the request
         HttpGet request = new HttpGet(url);
+        if (accept != null) {
+            request.setHeader("Accept", accept);
+        }
 
         // Execute the request
         return execute(request);
     }
 
-    @Override
-    public final String post(final String url, final String data) {
+    /**
+     * Posts a string to a URL, using the client's content type and charset.
+     * @param url the URL.
+     * @param data the data to POST.
+     * @param accept the value of the Accept header, or null for none.
+     * @return the content of the response.
+     * @throws JsogClientException if the request fails.
+     */
+    protected final Content postContent(final String url,
+                                        final String data,
+                                        final String accept) {
 
         // Create the request
         HttpPost request = new HttpPost(url);
+        if (accept != null) {
+            request.setHeader("Accept", accept);
+        }
 
         // Set the request data
         try {
@@ -237,12 +339,40 @@ public class DefaultHttpClientImpl implements net.sf.jsog.client.HttpClient {
     }
 
     /**
-     * Executes a request and returns the resulting String.
+     * Posts binary data to a URL.
+     * @param url the URL.
+     * @param data the data to POST.
+     * @param type the value of the Content-Type header.
+     * @param accept the value of the Accept header, or null for none.
+     * @return the content of the response.
+     * @throws JsogClientException if the request fails.
+     */
+    protected final Content postContent(final String url,
+                                        final byte[] data,
+                                        final String type,
+                                        final String accept) {
+
+        // Create the request
+        HttpPost request = new HttpPost(url);
+        if (accept != null) {
+            request.setHeader("Accept", accept);
+        }
+
+        // Set the request data
+        request.setEntity(new ByteArrayEntity(data));
+        request.setHeader("Content-type", type);
+
+        // Execute the request
+        return execute(request);
+    }
+
+    /**
+     * Executes a request and returns the resulting content.
      * @param request the request to execute.
-     * @return the raw content string.
+     * @return the raw content.
      * @throws JsogClientException if the request fails.
      */
-    private synchronized String execute(final HttpUriRequest request) {
+    private synchronized Content execute(final HttpUriRequest request) {
         request.setParams(params);
 
         // Set the request's headers
@@ -252,14 +382,14 @@ public class DefaultHttpClientImpl implements net.sf.jsog.client.HttpClient {
 
         // Execute the request and get it's content
         HttpResponse response;
-        String content;
+        Content content;
         try {
 
             // Execute the request
             response = getClient().execute(request);
 
             // Get the response content
-            content = EntityUtils.toString(response.getEntity(), charset);
+            content = toContent(response.getEntity());
         } catch (IOException e) {
             throw new JsogClientException("Get request failed.", e);
         }
@@ -270,10 +400,48 @@ public class DefaultHttpClientImpl implements net.sf.jsog.client.HttpClient {
             throw new Non200ResponseCodeException(
                     sl.getStatusCode(),
                     sl.getReasonPhrase(),
-                    content);
+                    content.getText());
         }
 
         return content;
     }
 
+    /**
+     * Reads the content of a response entity.
+     * @param entity the entity, which may be null.
+     * @return the content.
+     * @throws IOException if the entity can't be read.
+     */
+    private Content toContent(final HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return new Content(new byte[0], null, HTTP.DEFAULT_CONTENT_CHARSET);
+        }
+
+        // Prefer the response's charset over our own
+        String contentCharset = EntityUtils.getContentCharSet(entity);
+        if (contentCharset == null) {
+            contentCharset = charset != null
+                           ? charset
+                           : HTTP.DEFAULT_CONTENT_CHARSET;
+        }
+
+        // Strip the parameters from the MIME type
+        String mimeType = null;
+        if (entity.getContentType() != null) {
+            mimeType = entity.getContentType().getValue();
+            int semicolon = mimeType.indexOf(';');
+            if (semicolon >= 0) {
+                mimeType = mimeType.substring(0, semicolon);
+            }
+            mimeType = mimeType.trim().toLowerCase();
+        }
+
+        byte[] body = EntityUtils.toByteArray(entity);
+        if (body == null) {
+            body = new byte[0];
+        }
+
+        return new Content(body, mimeType, contentCharset);
+    }
+
 }
@@ -27,6 +27,7 @@ package net.sf.jsog.client;
 
 import java.io.IOException;
 import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogCbor;
 
 /**
  * The default JsogClient implementation.
@@ -48,6 +49,22 @@ public class DefaultJsogClientImpl
        extends DefaultHttpClientImpl
        implements JsogClient {
 
+    /**
+     * The Accept header sent when CBOR responses are enabled.
+     */
+    private static final String CBOR_ACCEPT =
+            JsogCbor.MEDIA_TYPE + ", application/json;q=0.9";
+
+    /**
+     * Whether CBOR responses are accepted.
+     */
+    private volatile boolean cborAccepted;
+
+    /**
+     * Whether JSOGs are posted as CBOR.
+     */
+    private volatile boolean cborPosted;
+
     /**
      * Constructs a new DefaultJsogClientImpl.
      */
@@ -56,23 +73,43 @@ public class DefaultJsogClientImpl
         setContentType("application/json");
     }
 
+    /**
+     * Enables CBOR responses.
+     *
+     * When enabled, requests prefer {@value JsogCbor#MEDIA_TYPE} through the
+     * Accept header. Servers which don't support it will continue to respond
+     * with JSON. Responses are decoded according to their Content-Type either
+     * way. Defaults to false.
+     * @param cborAccepted true to accept CBOR responses.
+     */
+    public final void setCborAccepted(final boolean cborAccepted) {
+        this.cborAccepted = cborAccepted;
+    }
+
+    /**
+     * Enables posting JSOGs as CBOR.
+     *
+     * This only applies to {@link #postJsog(String, JSOG)}, and should only
+     * be enabled when the server is known to accept CBOR. Defaults to false.
+     * @param cborPosted true to post JSOGs as CBOR.
+     */
+    public final void setCborPosted(final boolean cborPosted) {
+        this.cborPosted = cborPosted;
+    }
+
     @Override
     public final JSOG getJsog(final String url) {
-        
-        // Execute the request
-        String content = get(url);
 
-        // Parse the JSOG
-        try {
-            return JSOG.parse(content);
-        } catch (IOException e) {
-            throw new InvalidJsogException(
-                    "Unable to parse content as JSOG.", content, e);
-        }
+        // Execute the request
+        return parse(getContent(url, accept()));
     }
 
     @Override
     public final JSOG postJsog(final String url, final JSOG data) {
+        if (cborPosted) {
+            return parse(postContent(url, JsogCbor.encode(data),
+                                     JsogCbor.MEDIA_TYPE, accept()));
+        }
 
         // Execute the request
         return postJsog(url, data.toString());
@@ -80,15 +117,42 @@ public class DefaultJsogClientImpl
 
     @Override
     public final JSOG postJsog(final String url, final String data) {
+        return parse(postContent(url, data, accept()));
+    }
 
-        String content = post(url, data);
+    /**
+     * Gets the value of the Accept header.
+     * @return the Accept header, or null if none should be sent.
+     */
+    private String accept() {
+        return cborAccepted ? CBOR_ACCEPT : null;
+    }
+
+    /**
+     * Parses the content of a response according to its type.
+     * @param content the content.
+     * @return the resulting JSOG.
+     * @throws InvalidJsogException if the content can't be parsed.
+     */
+    private JSOG parse(final Content content) {
+
+        // Decode CBOR
+        if (JsogCbor.MEDIA_TYPE.equals(content.getMimeType())) {
+            try {
+                return JsogCbor.decode(content.getBody());
+            } catch (IOException e) {
+                throw new InvalidJsogException(
+                        "Unable to decode content as CBOR.", null, e);
+            }
+        }
 
         // Parse the JSOG
+        String text = content.getText();
         try {
-            return JSOG.parse(content);
+            return JSOG.parse(text);
         } catch (IOException e) {
             throw new InvalidJsogException(
-                    "Unable to parse content as JSOG.", content, e);
+                    "Unable to parse content as JSOG.", text, e);
         }
     }
 
@@ -33,6 +33,7 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogPathSet;
 import static net.sf.jsog.JsogPath.compile;
 
 /**
@@ -107,6 +108,12 @@ public class JsogMethod<T> {
      */
     private List<Parameter> parameters = new ArrayList<Parameter>();
 
+    /**
+     * The parameters' paths, evaluated together in one walk of the input.
+     * Parameter i's path has id i.
+     */
+    private JsogPathSet paths = new JsogPathSet();
+
     /**
      * Constructs a new JsogMethod.
      *
@@ -180,8 +187,14 @@ public class JsogMethod<T> {
             // Create the parameter object and add it to the parameter list
             Parameter parameter = new Parameter(i, type,
                     compile(annotation.value()), annotation.required());
+            if (!parameter.path.isDefinite()) {
+                throw new IllegalStateException(method
+                        + " parameter " + i
+                        + " has a path matching several values");
+            }
             
             parameters.add(parameter);
+            paths.add(parameter.path);
         }
     }
 
@@ -200,14 +213,20 @@ public class JsogMethod<T> {
         // The arguments will be stored here
         Object[] args = new Object[this.parameters.size()];
 
+        // Look up every parameter at once
+        JSOG[] values = paths.evaluate(jsog);
+
         // Iterate over the parameters and build the argument array
         for (int i = 0; i < args.length; i++) {
 
             // Get the parameter
             Parameter parameter = this.parameters.get(i);
 
-            // Evaluate the JsogPath on the input JSOG
-            JSOG value = parameter.path.evaluate(jsog);
+            // Missing values are created, as JsogPath.evaluate would
+            JSOG value = values[i];
+            if (value == null) {
+                value = parameter.path.evaluate(jsog);
+            }
 
             // If the parameter is required, require it
             if (parameter.required && value.isNull()) {
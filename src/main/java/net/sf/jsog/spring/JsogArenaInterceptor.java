@@ -0,0 +1,88 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog.spring;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.jsog.JsogArena;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Scopes a {@link JsogArena} to each request.
+ *
+ * The current thread's arena is opened before the handler runs, and closed
+ * once the view has been rendered, so JSOGs built while handling the request
+ * are recycled. Handlers must not keep JSOGs beyond the request; clone them
+ * outside the arena, or create them with a constructor, if they need to.
+ * Long-lived JSOGs may still be read and modified while handling a request.
+ *
+ * If the thread's arena is already open when the request starts, it's left
+ * to whoever opened it, and isn't closed when the request completes.
+ * @author jrodriguez
+ */
+public class JsogArenaInterceptor extends HandlerInterceptorAdapter {
+
+    /**
+     * The arena this interceptor opened on each thread, if it opened one.
+     */
+    private final ThreadLocal<JsogArena> opened = new ThreadLocal<JsogArena>();
+
+    private boolean debug = false;
+
+    /**
+     * Enables debug mode on the arenas.
+     * @param debug true to detect use of JSOGs after their request.
+     * @see JsogArena#setDebug(boolean)
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request,
+                             HttpServletResponse response,
+                             Object handler) throws Exception {
+        JsogArena arena = JsogArena.forCurrentThread();
+        if (!arena.isOpen()) {
+            arena.setDebug(debug);
+            arena.open();
+            opened.set(arena);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request,
+                                HttpServletResponse response,
+                                Object handler,
+                                Exception ex) throws Exception {
+        JsogArena arena = opened.get();
+        if (arena != null) {
+            opened.remove();
+            arena.close();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Map.Entry;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogWriter;
 import net.sf.jsog.factory.bean.BeanJsogFactory;
 import org.springframework.http.MediaType;
 import org.springframework.validation.BindingResult;
@@ -53,6 +54,17 @@ public class JsogView extends AbstractView {
         this.outputContentType = outputContentType;
     }
 
+    /**
+     * A JsogWriter for each thread, reused between requests.
+     */
+    private static final ThreadLocal<JsogWriter> WRITERS =
+            new ThreadLocal<JsogWriter>() {
+                @Override
+                protected JsogWriter initialValue() {
+                    return new JsogWriter();
+                }
+            };
+
     private Charset encoding = Charset.forName("ISO-8859-1");
 
     /**
@@ -100,9 +112,6 @@ public class JsogView extends AbstractView {
                                            HttpServletResponse response)
               throws Exception {
                   
-        // This is the string that will ultimately be rendered.
-        String responseString;
-        
         // Build the result object
         JSOG result;
         if ((model.size() == 1 || model.size() == 2)
@@ -114,14 +123,9 @@ public class JsogView extends AbstractView {
         
         // If the JSONP callback parameter is specified, grab it
         String callback = request.getParameter(jsonpCallbackParam);
-        if (callback != null) {
-            responseString = callback + "(" + result.toString() + ")";
-        } else {
-            responseString = result.toString();
-        }
+        byte[] responseBytes = toBytes(result, callback);
 
         // Setup the response
-        byte[] responseBytes = responseString.getBytes(encoding);
         response.setContentType(outputContentType.toString());
         response.setCharacterEncoding(encoding.name());
         response.setContentLength(responseBytes.length);
@@ -133,6 +137,49 @@ public class JsogView extends AbstractView {
         out.close();
     }
     
+    /**
+     * Serializes the result, wrapped in the JSONP callback if there is one.
+     *
+     * UTF-8, ISO-8859-1 and US-ASCII are encoded directly by a JsogWriter,
+     * escaping non-ASCII characters in the latter two. Other encodings go
+     * through JSOG.toString().
+     * @param result the result.
+     * @param callback the JSONP callback, or null.
+     * @return the encoded response.
+     */
+    private byte[] toBytes(final JSOG result, final String callback) {
+        String name = encoding.name();
+        boolean utf8 = name.equals("UTF-8");
+        if (!utf8
+                && !name.equals("ISO-8859-1")
+                && !name.equals("US-ASCII")) {
+            if (callback != null) {
+                return (callback + "(" + result.toString() + ")")
+                        .getBytes(encoding);
+            }
+            return result.toString().getBytes(encoding);
+        }
+
+        JsogWriter writer = WRITERS.get();
+        writer.setEscapeNonAscii(!utf8);
+        try {
+            writer.write(result);
+            if (callback == null) {
+                return writer.toByteArray();
+            }
+
+            byte[] prefix = (callback + "(").getBytes(encoding);
+            byte[] bytes = new byte[prefix.length + writer.size() + 1];
+            System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+            System.arraycopy(writer.toByteArray(), 0,
+                    bytes, prefix.length, writer.size());
+            bytes[bytes.length - 1] = ')';
+            return bytes;
+        } finally {
+            writer.reset();
+        }
+    }
+
     protected JSOG modelToJsog(Map<String, Object> model) throws Exception {
         
         // We'll be storing the model attributes here
@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogCbor;
 import org.apache.commons.io.IOUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpInputMessage;
@@ -59,6 +60,11 @@ import org.springframework.http.converter.HttpMessageNotWritableException;
 &lt;/bean&gt;
  * </pre>
  *
+ * <p>CBOR support can be enabled with {@link #setCborEnabled(boolean)}.
+ * Requests with a CBOR Content-Type are then decoded as CBOR, and responses
+ * are encoded as CBOR when it's the negotiated media type, i.e. when the
+ * client explicitly accepts it. JSON remains the fallback otherwise.</p>
+ *
  * @author jrodriguez
  */
 public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG> {
@@ -110,6 +116,27 @@ public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG
 
     private List<MediaType> supportedMediaTypes = new ArrayList<MediaType>();
 
+    /**
+     * The CBOR media type.
+     */
+    private static final MediaType CBOR = MediaType.parseMediaType(
+            JsogCbor.MEDIA_TYPE);
+
+    /**
+     * Whether CBOR is supported.
+     */
+    private boolean cborEnabled = false;
+
+    /**
+     * Enables or disables CBOR support.
+     *
+     * Defaults to false.
+     * @param cborEnabled true to support CBOR.
+     */
+    public void setCborEnabled(boolean cborEnabled) {
+        this.cborEnabled = cborEnabled;
+    }
+
     /**
      * Sets the {@link MediaType}s supported by this converter.
      *
@@ -122,7 +149,13 @@ public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG
     
     @Override
     public List<MediaType> getSupportedMediaTypes() {
-        return Collections.unmodifiableList(supportedMediaTypes);
+        if (!cborEnabled) {
+            return Collections.unmodifiableList(supportedMediaTypes);
+        }
+
+        List<MediaType> types = new ArrayList<MediaType>(supportedMediaTypes);
+        types.add(CBOR);
+        return Collections.unmodifiableList(types);
     }
 
     @Override
@@ -131,6 +164,10 @@ public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG
             return false;
         }
 
+        if (isCbor(mediaType)) {
+            return true;
+        }
+
         for (MediaType type : supportedMediaTypes) {
             if (type == null || !type.isCompatibleWith(mediaType)) {
                 return false;
@@ -145,6 +182,17 @@ public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG
             throws IOException, HttpMessageNotReadableException {
         HttpHeaders headers = input.getHeaders();
         MediaType contentType = headers.getContentType();
+
+        // Decode CBOR
+        if (isCbor(contentType)) {
+            try {
+                return JsogCbor.decode(input.getBody());
+            } catch (IOException e) {
+                throw new HttpMessageNotReadableException(
+                        "Unable to decode CBOR.", e);
+            }
+        }
+
         Charset encoding = contentType.getCharSet();
         
         if (encoding == null) {
@@ -165,13 +213,23 @@ public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG
     @Override
     public boolean canWrite(Class<?> clazz, MediaType mediaType) {
         return JSOG.class.isAssignableFrom(clazz)
-                && outputContentType.isCompatibleWith(mediaType);
+                && (outputContentType.isCompatibleWith(mediaType)
+                    || isCbor(mediaType));
     }
 
     @Override
     public void write(JSOG jsog, MediaType type, HttpOutputMessage output)
             throws IOException, HttpMessageNotWritableException {
 
+        // Only use CBOR if it was explicitly negotiated
+        if (isCbor(type)) {
+            byte[] bytes = JsogCbor.encode(jsog);
+            output.getHeaders().setContentType(CBOR);
+            output.getHeaders().setContentLength(bytes.length);
+            IOUtils.write(bytes, output.getBody());
+            return;
+        }
+
         // If the outputContentType doesn't specify a charset, we need to set it
         Charset encoding = outputContentType.getCharSet();
         if (encoding != null) {
@@ -192,4 +250,15 @@ public class StringJsogHttpMessageConverter implements HttpMessageConverter<JSOG
         output.getHeaders().setContentLength(text.length);
         IOUtils.write(text, output.getBody());
     }
+
+    /**
+     * Tests if a media type is CBOR, and CBOR is enabled.
+     *
+     * Wildcards don't match, so that JSON is used unless CBOR is requested.
+     * @param mediaType the media type to test.
+     * @return true if the media type is CBOR.
+     */
+    private boolean isCbor(MediaType mediaType) {
+        return cborEnabled && mediaType != null && CBOR.includes(mediaType);
+    }
 }
@@ -26,6 +26,9 @@
 package net.sf.jsog;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Collection;
 import java.util.ArrayList;
@@ -36,10 +39,13 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.Collections;
 import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -4053,4 +4059,659 @@ public class JSOGTest {
         assertEquals(JSOG.object("foo", "bar"), result);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testArraySpliterator() throws Exception {
+        System.out.println("testArraySpliterator");
+        JSOG instance = JSOG.array("a", "b", "c", "d", "e");
+        JsogSpliterator<JSOG> second = instance.arraySpliterator();
+        assertEquals(5, second.size());
+
+        JsogSpliterator<JSOG> first = second.trySplit();
+        assertEquals(2, first.size());
+        assertEquals(3, second.size());
+        assertEquals("a", first.next().getStringValue());
+        assertEquals("b", first.next().getStringValue());
+        assertFalse(first.hasNext());
+        assertEquals("c", second.next().getStringValue());
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    public void testArraySpliteratorSplitSingle() throws Exception {
+        System.out.println("testArraySpliteratorSplitSingle");
+        JsogSpliterator<JSOG> instance = JSOG.array("a").arraySpliterator();
+        assertNull(instance.trySplit());
+        assertEquals(1, instance.size());
+    }
+
+    @Test
+    public void testArraySpliteratorNull() throws Exception {
+        System.out.println("testArraySpliteratorNull");
+        assertFalse(new JSOG().arraySpliterator().hasNext());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testArraySpliteratorObject() throws Exception {
+        System.out.println("testArraySpliteratorObject");
+        JSOG.object().arraySpliterator();
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testArraySpliteratorConcurrentModification() throws Exception {
+        System.out.println("testArraySpliteratorConcurrentModification");
+        JSOG instance = JSOG.array("a", "b");
+        JsogSpliterator<JSOG> spliterator = instance.arraySpliterator();
+        instance.add("c");
+        spliterator.next();
+    }
+
+    @Test
+    public void testObjectSpliterator() throws Exception {
+        System.out.println("testObjectSpliterator");
+        JSOG instance = JSOG.object("a", 1).put("b", 2).put("c", 3);
+        JsogSpliterator<Entry<String, JSOG>> second = instance.objectSpliterator();
+        JsogSpliterator<Entry<String, JSOG>> first = second.trySplit();
+
+        assertEquals(1, first.size());
+        assertEquals("a", first.next().getKey());
+        Entry<String, JSOG> entry = second.next();
+        assertEquals("b", entry.getKey());
+        assertEquals(2, (int) entry.getValue().getIntegerValue());
+
+        // Entries write through
+        entry.setValue(new JSOG(5));
+        assertEquals(5, (int) instance.get("b").getIntegerValue());
+    }
+
+    @Test
+    public void testObjectSpliteratorNull() throws Exception {
+        System.out.println("testObjectSpliteratorNull");
+        assertEquals(0, new JSOG().objectSpliterator().size());
+    }
+
+    @Test
+    public void testDedupe() throws Exception {
+        System.out.println("testDedupe");
+        String json = "{\"items\": [{\"price\": {\"currency\": \"USD\","
+                + " \"unit\": \"kg\"}, \"id\": 1}, {\"price\":"
+                + " {\"currency\": \"USD\", \"unit\": \"kg\"}, \"id\": 2},"
+                + " {\"price\": {\"unit\": \"kg\", \"currency\": \"USD\"},"
+                + " \"id\": 3}, {\"price\": {\"currency\": \"USD\","
+                + " \"unit\": 1}, \"id\": 4}, {\"price\": {\"currency\":"
+                + " \"USD\", \"unit\": 1.0}, \"id\": 5}]}";
+        JSOG instance = JSOG.parse(json);
+        String expected = instance.toString();
+        long before = JsogSizeEstimator.estimate(instance);
+
+        assertSame(instance, instance.dedupe());
+        assertEquals(expected, instance.toString());
+        assertFalse(instance.isFrozen());
+
+        JSOG items = instance.get("items");
+        assertTrue(items.isFrozen());
+        assertSame(items.get(0).get("price"), items.get(1).get("price"));
+
+        // Key order, and the types of numbers, are significant
+        assertNotSame(items.get(0).get("price"), items.get(2).get("price"));
+        assertNotSame(items.get(3).get("price"), items.get(4).get("price"));
+        assertSame(items.get(0).get("price").get("currency"),
+                items.get(3).get("price").get("currency"));
+
+        // Shared values are only counted once
+        assertTrue(JsogSizeEstimator.estimate(instance) < before);
+    }
+
+    @Test
+    public void testFrozen() throws Exception {
+        System.out.println("testFrozen");
+        JSOG instance = JSOG.object("a", JSOG.object("b", 1))
+                .put("c", JSOG.array(1, 2)).dedupe();
+        JSOG a = instance.get("a");
+        JSOG c = instance.get("c");
+
+        try {
+            a.put("b", 2);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            c.add(3);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            c.arrayIterator().remove();
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        } catch (IllegalStateException e) {
+        }
+        try {
+            JSOG.parse("{\"x\": 1}").dedupe().get("x").set(5);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        // Missing keys aren't created
+        assertTrue(a.get("missing").isNull());
+        assertFalse(a.hasKey("missing"));
+
+        // The root stays modifiable, and clones are fully modifiable
+        instance.put("d", 4);
+        JSOG copy = instance.clone();
+        copy.get("a").put("b", 2);
+        assertFalse(copy.get("a").isFrozen());
+        assertEquals(1, (int) instance.get("a").get("b").getIntegerValue());
+    }
+
+    @Test
+    public void testDedupeDeep() throws Exception {
+        System.out.println("testDedupeDeep");
+        JSOG instance = JSOG.array();
+        for (int i = 0; i < 1000; i++) {
+            instance.add(JSOG.object("tags", JSOG.array("a", "b"))
+                    .put("meta", JSOG.object("v", i % 10)));
+        }
+        instance.dedupe();
+
+        assertSame(instance.get(0), instance.get(10));
+        assertNotSame(instance.get(0), instance.get(1));
+        assertSame(instance.get(0).get("tags"), instance.get(1).get("tags"));
+
+        // Nesting depth is only limited by the heap
+        JSOG deep = JSOG.array();
+        JSOG current = deep;
+        for (int i = 0; i < 20000; i++) {
+            JSOG child = JSOG.array();
+            current.add(child);
+            current = child;
+        }
+        current.add(1);
+        String expected = deep.toString();
+        deep.dedupe();
+        assertEquals(expected, deep.toString());
+    }
+
+    @Test
+    public void testWithCapacity() throws Exception {
+        System.out.println("testWithCapacity");
+        JSOG array = JSOG.arrayWithCapacity(100);
+        assertTrue(array.isArray());
+        assertEquals(0, array.size());
+        array.add(1);
+
+        JSOG object = JSOG.objectWithCapacity(100);
+        assertTrue(object.isObject());
+        assertEquals(0, object.size());
+        object.put("a", array);
+        assertEquals("{\"a\":[1]}", object.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithCapacityNegative() throws Exception {
+        System.out.println("testWithCapacityNegative");
+        JSOG.arrayWithCapacity(-1);
+    }
+
+    @Test
+    public void testWrapMap() throws Exception {
+        System.out.println("testWrapMap");
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("b", 2);
+        List<Object> list = new ArrayList<Object>();
+        list.add("x");
+        list.add(nested);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", 1);
+        map.put("list", list);
+        map.put("nested", nested);
+
+        JSOG instance = JSOG.wrap(map);
+        assertTrue(instance.isObject());
+        assertEquals("{\"a\":1,\"list\":[\"x\",{\"b\":2}],"
+                + "\"nested\":{\"b\":2}}", instance.toString());
+        assertEquals(2, (int) instance.get("list").get(1).get("b")
+                .getIntegerValue());
+
+        // Changes write through in both directions
+        instance.get("nested").put("c", 3);
+        assertEquals(3, nested.get("c"));
+        map.put("d", 4);
+        assertEquals(4, (int) instance.get("d").getIntegerValue());
+        assertEquals(instance.toString(), instance.clone().toString());
+    }
+
+    @Test
+    public void testWrapList() throws Exception {
+        System.out.println("testWrapList");
+        List<Object> list = new ArrayList<Object>();
+        list.add(1);
+        list.add(Collections.singletonMap("a", "b"));
+        JSOG instance = JSOG.wrap(list);
+
+        assertTrue(instance.isArray());
+        assertEquals("[1,{\"a\":\"b\"}]", instance.toString());
+        instance.add(2);
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void testWrapCoercion() throws Exception {
+        System.out.println("testWrapCoercion");
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("list", new ArrayList<Object>(Arrays.asList(1, 2)));
+        map.put("obj", new LinkedHashMap<String, Object>());
+        map.put("n", 1);
+        map.put("none", null);
+        JSOG instance = JSOG.wrap(map);
+
+        // Coercing a wrapped value replaces it in the Map, as it would in a
+        // parsed JSOG
+        JSOG parsed = JSOG.parse(instance.toString());
+        for (JSOG jsog : Arrays.asList(instance, parsed)) {
+            jsog.get("list").set("replaced");
+            jsog.get("obj").add(1);
+            jsog.get("n").put("a", true);
+            jsog.get("none").get("b").set(2);
+        }
+        String expected = "{\"list\":\"replaced\",\"obj\":[1],"
+                + "\"n\":{\"a\":true},\"none\":{\"b\":2}}";
+        assertEquals(expected, parsed.toString());
+        assertEquals(expected, instance.toString());
+        assertEquals("replaced", map.get("list"));
+        assertEquals(Arrays.asList(1), map.get("obj"));
+
+        // Values reached by iterating write back too
+        List<Object> list = new ArrayList<Object>(Arrays.asList(1, "x"));
+        instance = JSOG.wrap(list);
+        for (JSOG element : instance.arrayIterable()) {
+            element.set(7);
+        }
+        assertEquals(Arrays.asList(7, 7), list);
+        instance = JSOG.wrap(map);
+        for (Entry<String, JSOG> entry : instance.objectIterable()) {
+            entry.getValue().clear();
+        }
+        assertEquals("{\"list\":null,\"obj\":[],\"n\":{},"
+                + "\"none\":{}}", instance.toString());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testWrapNull() throws Exception {
+        System.out.println("testWrapNull");
+        JSOG.wrap((Map<String, Object>) null);
+    }
+
+    @Test
+    public void testPutMapAndList() throws Exception {
+        System.out.println("testPutMapAndList");
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", Arrays.asList(1, 2));
+        JSOG instance = JSOG.object().putAll(map);
+        instance.get("b").add(Collections.singletonMap("c", true));
+        assertEquals("{\"a\":[1,2],\"b\":[{\"c\":true}]}",
+                instance.toString());
+    }
+
+    @Test
+    public void testToPlainJava() throws Exception {
+        System.out.println("testToPlainJava");
+        JSOG instance = JSOG.parse("{\"a\": 1, \"b\": [\"x\", {\"c\": null}],"
+                + " \"d\": 1.5}");
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> plain = (Map<String, Object>) instance.toPlainJava();
+        assertEquals(3, plain.size());
+        assertEquals(1, plain.get("a"));
+        assertEquals(1.5, plain.get("d"));
+        assertEquals(Arrays.asList("x", Collections.singletonMap("c", null)),
+                plain.get("b"));
+        assertEquals("[a, b, d]", plain.keySet().toString());
+
+        // Views are read-only, and read through
+        try {
+            plain.put("e", 1);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            ((List<?>) plain.get("b")).remove(0);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+        instance.put("e", "f");
+        assertEquals("f", plain.get("e"));
+
+        assertNull(new JSOG().toPlainJava());
+        assertEquals("s", new JSOG("s").toPlainJava());
+    }
+
+    @Test
+    public void testRaw() throws Exception {
+        System.out.println("testRaw");
+        String fragment = "{ \"b\" : [1, 2.50, \"x\"] }";
+        JSOG instance = JSOG.object("a", JSOG.raw(fragment)).put("c", 3);
+
+        // Written verbatim
+        assertEquals("{\"a\":" + fragment + ",\"c\":3}", instance.toString());
+        assertEquals("{\"a\":" + fragment + ",\"c\":3}",
+                instance.clone().toString());
+
+        // Parsed on access
+        JSOG a = instance.get("a");
+        assertTrue(a.isObject());
+        assertEquals(1, (int) a.get("b").get(0).getIntegerValue());
+        assertEquals(2.5, a.get("b").get(1).getDoubleValue(), 0.0);
+        a.put("d", true);
+        assertEquals("{\"a\":{\"b\":[1,2.5,\"x\"],\"d\":true},\"c\":3}",
+                instance.toString());
+    }
+
+    @Test
+    public void testRawBytes() throws Exception {
+        System.out.println("testRawBytes");
+        byte[] fragment = "[\"\u00e9\", null]".getBytes("UTF-8");
+        JSOG instance = JSOG.array(JSOG.raw(fragment), JSOG.rawTrusted("7"));
+
+        assertEquals("[[\"\u00e9\", null],7]", instance.toString());
+        assertEquals(2, instance.get(0).size());
+        assertEquals("\u00e9", instance.get(0).get(0).getStringValue());
+        assertEquals(7, (int) instance.get(1).getIntegerValue());
+    }
+
+    @Test
+    public void testRawStaysVerbatim() throws Exception {
+        System.out.println("testRawStaysVerbatim");
+        String fragment = "{ \"b\" : [1, 2.50] }";
+        JSOG instance = JSOG.object("a", JSOG.raw(fragment));
+        String expected = "{\"a\":" + fragment + "}";
+
+        // Encoding and hashing parse a temporary copy of the fragment
+        JSOG decoded = JsogCbor.decode(JsogCbor.encode(instance));
+        assertEquals(JSOG.parse("{\"a\":{\"b\":[1,2.5]}}"), decoded);
+        assertEquals(expected, instance.toString());
+
+        assertEquals(JSOG.parse(expected).hashCode(), instance.hashCode());
+        assertEquals(expected, instance.toString());
+
+        ObjectOutputStream out =
+                new ObjectOutputStream(new ByteArrayOutputStream());
+        out.writeObject(instance);
+        out.close();
+        assertEquals(expected, instance.toString());
+
+        JsogTape.encode(instance);
+        assertEquals(expected, instance.toString());
+    }
+
+    @Test
+    public void testRawInvalid() throws Exception {
+        System.out.println("testRawInvalid");
+        String[] invalid = {"", "{", "[1,]", "1 2", "{'a': 1}", "nul"};
+        for (String json : invalid) {
+            try {
+                JSOG.raw(json);
+                fail("Expected IllegalArgumentException for " + json);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+
+        // Trusted fragments aren't checked until they're parsed
+        JSOG trusted = JSOG.rawTrusted("{");
+        assertEquals("{", trusted.toString());
+        try {
+            trusted.isObject();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testOverlay() throws Exception {
+        System.out.println("testOverlay");
+        JSOG base = JSOG.parse("{\"name\": \"base\", \"db\": {\"host\": \"h\","
+                + " \"port\": 5432}, \"tags\": [1, 2], \"debug\": false}");
+        JSOG overrides = JSOG.parse("{\"db\": {\"port\": 6543},"
+                + " \"tags\": [3], \"extra\": 1}");
+        String baseJson = base.toString();
+
+        JSOG instance = JSOG.overlay(overrides, base);
+
+        assertEquals("base", instance.get("name").getStringValue());
+        assertEquals("h", instance.get("db").get("host").getStringValue());
+        assertEquals(6543, (int) instance.get("db").get("port").getIntegerValue());
+        assertEquals(1, instance.get("tags").size());
+        assertEquals(5, instance.size());
+        assertEquals("{\"name\":\"base\",\"db\":{\"host\":\"h\","
+                + "\"port\":6543},\"tags\":[3],\"debug\":false,\"extra\":1}",
+                instance.toString());
+        assertEquals(JSOG.parse(instance.toString()), instance);
+
+        // Writes go to the top layer, including new nested objects
+        instance.put("debug", true);
+        instance.get("db").put("user", "u");
+        instance.get("cache").put("size", 10);
+        assertEquals(baseJson, base.toString());
+        assertEquals("{\"db\":{\"port\":6543,\"user\":\"u\"},\"tags\":[3],"
+                + "\"extra\":1,\"debug\":true,\"cache\":{\"size\":10}}",
+                overrides.toString());
+        assertTrue(instance.get("debug").getBooleanValue());
+        assertEquals("u", instance.get("db").get("user").getStringValue());
+
+        // Removals only affect the top layer
+        instance.remove("debug");
+        assertFalse(instance.get("debug").getBooleanValue());
+    }
+
+    @Test
+    public void testOverlayNullTop() throws Exception {
+        System.out.println("testOverlayNullTop");
+        JSOG base = JSOG.parse("{\"a\": {\"b\": {\"c\": 1}}, \"d\": [1]}");
+        JSOG top = new JSOG();
+        JSOG instance = JSOG.overlay(top, base);
+
+        assertEquals(1, (int) instance.get("a").get("b").get("c").getIntegerValue());
+        assertTrue(top.isNull());
+
+        instance.get("a").get("b").put("e", 2);
+        assertEquals("{\"a\":{\"b\":{\"e\":2}}}", top.toString());
+        assertEquals("{\"a\":{\"b\":{\"c\":1,\"e\":2}},\"d\":[1]}",
+                instance.toString());
+
+        // Arrays from lower layers are copied into the top layer on write
+        instance.get("d").add(2);
+        assertEquals("[1,2]", top.get("d").toString());
+        assertEquals("[1,2]", instance.get("d").toString());
+
+        // Primitives from lower layers are read only
+        try {
+            instance.get("a").get("b").get("c").set(3);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+        }
+        assertEquals("{\"a\":{\"b\":{\"c\":1}},\"d\":[1]}", base.toString());
+    }
+
+    @Test
+    public void testOverlayNestedArrays() throws Exception {
+        System.out.println("testOverlayNestedArrays");
+        JSOG base = JSOG.parse("{\"arr\": [{}, [1]], \"o\": {\"k\": [{}]}}");
+        String baseJson = base.toString();
+        JSOG instance = JSOG.overlay(JSOG.object(), base);
+
+        // Writes through nested elements copy the array, not the base
+        instance.get("arr").get(0).put("x", 2);
+        instance.get("o").get("k").get(0).put("y", 9);
+        assertEquals(baseJson, base.toString());
+        assertEquals("{\"arr\":[{\"x\":2},[1]],\"o\":{\"k\":[{\"y\":9}]}}",
+                instance.toString());
+
+        // Views taken before the copy see it
+        JSOG top = JSOG.object();
+        instance = JSOG.overlay(top, base);
+        JSOG arr = instance.get("arr");
+        JSOG inner = arr.get(1);
+        inner.add(2);
+        assertEquals("[{},[1,2]]", arr.toString());
+        assertEquals("[{},[1,2]]", top.get("arr").toString());
+        assertEquals(2, arr.size());
+        assertEquals(baseJson, base.toString());
+    }
+
+    @Test
+    public void testOverlayLayers() throws Exception {
+        System.out.println("testOverlayLayers");
+        JSOG bottom = JSOG.parse("{\"a\": {\"x\": 1, \"y\": 1, \"z\": 1}}");
+        JSOG middle = JSOG.parse("{\"a\": {\"y\": 2, \"z\": 2}}");
+        JSOG top = JSOG.parse("{\"a\": {\"z\": 3}}");
+        JSOG instance = JSOG.overlay(top, middle, bottom);
+        assertEquals("{\"a\":{\"x\":1,\"y\":2,\"z\":3}}", instance.toString());
+
+        // A non-object hides the objects beneath it
+        middle.put("a", 5);
+        assertEquals("{\"a\":{\"z\":3}}", instance.toString());
+
+        try {
+            JSOG.overlay(top, JSOG.array(1));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            JSOG.overlay();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testMaterialize() throws Exception {
+        System.out.println("testMaterialize");
+        JSOG base = JSOG.parse("{\"a\": {\"x\": 1}, \"b\": [1]}");
+        JSOG top = JSOG.parse("{\"a\": {\"y\": 2}}");
+        JSOG instance = JSOG.overlay(top, base).materialize();
+        assertEquals("{\"a\":{\"x\":1,\"y\":2},\"b\":[1]}", instance.toString());
+
+        // The copy is independent of its layers
+        instance.get("a").put("x", 3);
+        instance.get("b").add(2);
+        assertEquals("{\"a\":{\"x\":1},\"b\":[1]}", base.toString());
+        assertEquals("{\"a\":{\"y\":2}}", top.toString());
+
+        // Ordinary JSOGs are unchanged
+        JSOG plain = JSOG.object("a", 1);
+        assertSame(plain, plain.materialize());
+        assertEquals("{\"a\":1}", plain.toString());
+    }
+
+    @Test
+    public void testAccept() throws Exception {
+        System.out.println("testAccept");
+        JSOG instance = JSOG.parse("{\"a\": [1, {\"b\": null}], \"c\": \"x\"}");
+        final StringBuilder events = new StringBuilder();
+        JsogVisitor visitor = new JsogVisitor() {
+            public boolean enter(Object key, JSOG container) {
+                events.append("enter ").append(key).append(';');
+                return true;
+            }
+            public void leave(Object key, JSOG container) {
+                events.append("leave ").append(key).append(';');
+            }
+            public void value(Object key, JSOG value) {
+                events.append(key).append('=').append(value).append(';');
+            }
+        };
+
+        assertSame(instance, instance.accept(visitor));
+        assertEquals("enter null;enter a;0=1;enter 1;b=null;leave 1;leave a;"
+                + "c=\"x\";leave null;", events.toString());
+
+        // Primitives are visited as values
+        events.setLength(0);
+        new JSOG(5).accept(visitor);
+        assertEquals("null=5;", events.toString());
+    }
+
+    @Test
+    public void testAcceptSkip() throws Exception {
+        System.out.println("testAcceptSkip");
+        JSOG instance = JSOG.parse("{\"a\": {\"b\": 1}, \"c\": [2, 3], \"d\": 4}");
+        final List<Object> keys = new ArrayList<Object>();
+        instance.accept(new JsogVisitor() {
+            public boolean enter(Object key, JSOG container) {
+                keys.add(key);
+                return !container.isArray();
+            }
+            public void leave(Object key, JSOG container) {
+                assertFalse(container.isArray());
+            }
+            public void value(Object key, JSOG value) {
+                keys.add(key);
+            }
+        });
+
+        assertEquals(Arrays.<Object>asList(null, "a", "b", "c", "d"), keys);
+    }
+
+    @Test
+    public void testAcceptRawAndLazy() throws Exception {
+        System.out.println("testAcceptRawAndLazy");
+        JsogParser parser = new JsogParser();
+        parser.setLazyScalars(true);
+        JSOG instance = parser.parse("{\"a\": \"x\"}");
+        instance.put("b", JSOG.raw("{\"c\": 1}"));
+
+        final List<Object> values = new ArrayList<Object>();
+        instance.accept(new JsogVisitor() {
+            public boolean enter(Object key, JSOG container) {
+                return true;
+            }
+            public void leave(Object key, JSOG container) {
+            }
+            public void value(Object key, JSOG value) {
+                values.add(value.toString());
+            }
+        });
+
+        // Raw JSON is reported as a value, without being parsed
+        assertEquals(Arrays.<Object>asList("\"x\"", "{\"c\": 1}"), values);
+    }
+
+    @Test
+    public void testDeepNesting() throws Exception {
+        System.out.println("testDeepNesting");
+        int depth = 100000;
+        JSOG instance = JSOG.array();
+        JSOG innermost = instance;
+        for (int i = 1; i < depth; i++) {
+            JSOG child = i % 2 == 0 ? JSOG.object() : JSOG.array();
+            if (innermost.isArray()) {
+                innermost.add(child);
+            } else {
+                innermost.put("k", child);
+            }
+            innermost = child;
+        }
+        innermost.add(1);
+
+        String json = instance.toString();
+        assertTrue(json.startsWith("[[{\"k\":[{\"k\":[{"));
+        assertTrue(json.contains("{\"k\":[1]}]}"));
+        assertEquals(instance, new JsogParser().parse(json));
+        JSOG parsed = JSOG.parse(json);
+        assertEquals(instance, parsed);
+        assertEquals(json, parsed.toString());
+        assertEquals(instance.hashCode(), parsed.hashCode());
+
+        JSOG copy = instance.clone();
+        assertEquals(instance, copy);
+        assertEquals(json, copy.toString());
+        copy.get(0).get(0).put("k", 2);
+        assertFalse(instance.equals(copy));
+
+        JsonNode node = instance.toJsonNode();
+        for (int i = 1; i < depth; i++) {
+            node = node.isArray() ? node.get(0) : node.get("k");
+        }
+        assertEquals(1, node.get(0).getIntValue());
+    }
+
+}
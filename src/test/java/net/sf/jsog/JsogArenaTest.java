@@ -0,0 +1,192 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogArena.
+ * @author jrodriguez
+ */
+public class JsogArenaTest {
+
+    private final JsogArena arena = new JsogArena();
+
+    @After
+    public void tearDown() {
+        if (arena.isOpen()) {
+            arena.close();
+        }
+    }
+
+    @Test
+    public void testRecycling() throws Exception {
+        System.out.println("testRecycling");
+        arena.open();
+        JSOG first = JSOG.object("a", JSOG.array(1, 2));
+        JSOG child = first.get("a");
+        arena.close();
+
+        // Released JSOGs are cleared
+        assertTrue(first.isNull());
+        assertTrue(child.isNull());
+
+        arena.open();
+        JSOG second = JSOG.array();
+        JSOG third = JSOG.object();
+        arena.close();
+
+        assertTrue(second == first || second == child);
+        assertTrue(third == first || third == child);
+    }
+
+    @Test
+    public void testLongLivedParent() throws Exception {
+        System.out.println("testLongLivedParent");
+        JSOG config = JSOG.object("name", "config");
+
+        // Children of a JSOG from outside the scope aren't recycled
+        arena.open();
+        config.get("tenant").put("id", 7);
+        config.get("list").add(1);
+        JsogPath.compile("$.deep.path").set(config, "x");
+        JSOG.object("evil", true);
+        arena.close();
+
+        String expected = "{\"name\":\"config\",\"tenant\":{\"id\":7},"
+                + "\"list\":[1],\"deep\":{\"path\":\"x\"}}";
+        assertEquals(expected, config.toString());
+
+        // The next scope doesn't reuse them
+        arena.open();
+        JSOG.object("evil", true).put("list", JSOG.array(2));
+        JSOG.object().get("more").put("evil", true);
+        assertEquals(expected, config.toString());
+        arena.close();
+        assertEquals(expected, config.toString());
+    }
+
+    @Test
+    public void testParser() throws Exception {
+        System.out.println("testParser");
+        JsogParser parser = new JsogParser();
+        String json = "{\"a\":[1,\"b\",{\"c\":null}],\"d\":true}";
+
+        for (int i = 0; i < 3; i++) {
+            arena.open();
+            JSOG jsog = parser.parse(json);
+            jsog.get("e").put("f", 1);
+            assertEquals("{\"a\":[1,\"b\",{\"c\":null}],\"d\":true,"
+                    + "\"e\":{\"f\":1}}", jsog.toString());
+            arena.close();
+        }
+    }
+
+    @Test
+    public void testNotOpen() {
+        System.out.println("testNotOpen");
+        JSOG before = JSOG.object();
+        arena.open();
+        arena.close();
+
+        // JSOGs created outside the arena are unaffected
+        assertTrue(before.isObject());
+        JSOG after = JSOG.object("a", 1);
+        assertEquals("{\"a\":1}", after.toString());
+    }
+
+    @Test
+    public void testConstructorsBypassArena() {
+        System.out.println("testConstructorsBypassArena");
+        arena.open();
+        JSOG jsog = new JSOG("kept");
+        arena.close();
+        assertEquals("kept", jsog.getStringValue());
+    }
+
+    @Test
+    public void testDebug() {
+        System.out.println("testDebug");
+        arena.setDebug(true);
+        arena.open();
+        JSOG jsog = JSOG.object("a", 1);
+        arena.close();
+
+        try {
+            jsog.get("a");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            jsog.toString();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            jsog.put("b", 2);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+
+        // Nothing is reused in debug mode
+        arena.open();
+        assertNotSame(jsog, JSOG.object());
+        arena.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOpenTwice() {
+        System.out.println("testOpenTwice");
+        arena.open();
+        new JsogArena().open();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCloseUnopened() {
+        System.out.println("testCloseUnopened");
+        arena.close();
+    }
+
+    @Test
+    public void testOtherThreads() throws Exception {
+        System.out.println("testOtherThreads");
+        arena.open();
+        final JSOG[] result = new JSOG[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                result[0] = JSOG.object("a", 1);
+            }
+        };
+        thread.start();
+        thread.join();
+        arena.close();
+
+        assertEquals("{\"a\":1}", result[0].toString());
+    }
+}
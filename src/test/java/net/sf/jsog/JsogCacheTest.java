@@ -0,0 +1,206 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogCache.
+ * @author jrodriguez
+ */
+public class JsogCacheTest {
+
+    private static JSOG entry(final int i) {
+        return JSOG.object("id", i).put("name", "entry" + i);
+    }
+
+    @Test
+    public void testGetPut() {
+        System.out.println("testGetPut");
+        JsogCache<String> cache = new JsogCache<String>(1 << 20);
+        JSOG value = entry(1);
+
+        assertNull(cache.get("a"));
+        cache.put("a", value);
+        assertSame(value, cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(JsogSizeEstimator.estimate(value), cache.getWeight());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+
+        // Replacing doesn't double count
+        cache.put("a", entry(2));
+        assertEquals(1, cache.size());
+        assertEquals(JsogSizeEstimator.estimate(entry(2)), cache.getWeight());
+
+        assertNotNull(cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testNullKey() {
+        System.out.println("testNullKey");
+        JsogCache<String> cache = new JsogCache<String>(1 << 20);
+
+        try {
+            cache.get(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+
+        try {
+            cache.put(null, entry(1));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+
+        try {
+            cache.remove(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testWeightBound() {
+        System.out.println("testWeightBound");
+        long weight = JsogSizeEstimator.estimate(entry(0));
+        JsogCache<Integer> cache = new JsogCache<Integer>(weight * 100, 4);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, entry(i));
+            assertTrue(cache.getWeight() <= weight * 100);
+        }
+        assertTrue(cache.size() > 50);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testTooHeavy() {
+        System.out.println("testTooHeavy");
+        JsogCache<String> cache = new JsogCache<String>(100, 1);
+        cache.put("a", entry(1));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testScanResistance() {
+        System.out.println("testScanResistance");
+        long weight = JsogSizeEstimator.estimate(entry(0));
+        JsogCache<Integer> cache = new JsogCache<Integer>(weight * 10, 1);
+
+        // Read the hot set twice, promoting it
+        for (int i = 0; i < 5; i++) {
+            cache.put(i, entry(i));
+            cache.get(i);
+        }
+
+        // A scan of one-off entries shouldn't displace it
+        for (int i = 100; i < 200; i++) {
+            cache.put(i, entry(i));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.get(i));
+        }
+        assertNull(cache.get(100));
+    }
+
+    @Test
+    public void testExpiry() {
+        System.out.println("testExpiry");
+        final long[] now = {0};
+        JsogCache<String> cache = new JsogCache<String>(1 << 20) {
+            @Override
+            long currentTime() {
+                return now[0];
+            }
+        };
+        cache.setExpireAfterWrite(10, TimeUnit.SECONDS);
+
+        cache.put("a", entry(1));
+        now[0] = TimeUnit.SECONDS.toNanos(9);
+        assertNotNull(cache.get("a"));
+
+        now[0] = TimeUnit.SECONDS.toNanos(10);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        System.out.println("testConcurrent");
+        final long weight = JsogSizeEstimator.estimate(entry(0));
+        final JsogCache<Integer> cache =
+                new JsogCache<Integer>(weight * 256);
+
+        final List<Throwable> errors =
+                Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            int key = (i * 31 + seed) % 500;
+                            if (cache.get(key) == null) {
+                                cache.put(key, entry(key));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(errors.toString(), 0, errors.size());
+        assertTrue(cache.getWeight() <= weight * 256);
+        assertEquals(40000, cache.getHitCount() + cache.getMissCount());
+    }
+}
@@ -0,0 +1,324 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogCbor, using the examples from RFC 7049 Appendix A.
+ * @author jrodriguez
+ */
+public class JsogCborTest {
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(
+                    hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static String encode(Object value) {
+        return hex(JsogCbor.encode(new JSOG(value)));
+    }
+
+    private static Object decode(String hex) throws IOException {
+        return JsogCbor.decode(hex(hex)).getValue();
+    }
+
+    @Test
+    public void testEncodeIntegers() {
+        System.out.println("testEncodeIntegers");
+        assertEquals("00", encode(0));
+        assertEquals("17", encode(23));
+        assertEquals("1818", encode(24));
+        assertEquals("1903e8", encode((short) 1000));
+        assertEquals("1a000f4240", encode(1000000));
+        assertEquals("1b000000e8d4a51000", encode(1000000000000L));
+        assertEquals("20", encode(-1));
+        assertEquals("3903e7", encode(-1000));
+        assertEquals("1bffffffffffffffff",
+                     encode(new BigInteger("18446744073709551615")));
+        assertEquals("3bffffffffffffffff",
+                     encode(new BigInteger("-18446744073709551616")));
+        assertEquals("c249010000000000000000",
+                     encode(new BigInteger("18446744073709551616")));
+        assertEquals("c349010000000000000000",
+                     encode(new BigInteger("-18446744073709551617")));
+    }
+
+    @Test
+    public void testDecodeIntegers() throws Exception {
+        System.out.println("testDecodeIntegers");
+        assertEquals(0, decode("00"));
+        assertEquals(1000000, decode("1a000f4240"));
+        assertEquals(1000000000000L, decode("1b000000e8d4a51000"));
+        assertEquals(-1000, decode("3903e7"));
+        assertEquals(new BigInteger("18446744073709551615"),
+                     decode("1bffffffffffffffff"));
+        assertEquals(new BigInteger("-18446744073709551616"),
+                     decode("3bffffffffffffffff"));
+        assertEquals(new BigInteger("18446744073709551616"),
+                     decode("c249010000000000000000"));
+        assertEquals(new BigInteger("-18446744073709551617"),
+                     decode("c349010000000000000000"));
+    }
+
+    @Test
+    public void testFloats() throws Exception {
+        System.out.println("testFloats");
+        assertEquals("fb3ff199999999999a", encode(1.1));
+        assertEquals("fa47c35000", encode(100000.0f));
+        assertEquals(1.1, decode("fb3ff199999999999a"));
+        assertEquals(100000.0f, decode("fa47c35000"));
+        assertEquals(1.5f, decode("f93e00"));
+        assertEquals(-4.0f, decode("f9c400"));
+        assertEquals(5.960464477539063e-8f, decode("f90001"));
+        assertEquals(Float.POSITIVE_INFINITY, decode("f97c00"));
+    }
+
+    @Test
+    public void testDecimalFraction() throws Exception {
+        System.out.println("testDecimalFraction");
+        assertEquals("c48221196ab3", encode(new BigDecimal("273.15")));
+        assertEquals(new BigDecimal("273.15"), decode("c48221196ab3"));
+    }
+
+    @Test
+    public void testSimpleValues() throws Exception {
+        System.out.println("testSimpleValues");
+        assertEquals("f4", encode(false));
+        assertEquals("f5", encode(true));
+        assertEquals("f6", encode(null));
+        assertEquals(Boolean.FALSE, decode("f4"));
+        assertEquals(Boolean.TRUE, decode("f5"));
+        assertNull(decode("f6"));
+        assertNull(decode("f7"));
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        System.out.println("testStrings");
+        assertEquals("60", encode(""));
+        assertEquals("6449455446", encode("IETF"));
+        assertEquals("62c3bc", encode("\u00fc"));
+        assertEquals("64f0908591", encode("\ud800\udd51"));
+        assertEquals("\u00fc", decode("62c3bc"));
+        assertEquals("streaming", decode("7f657374726561646d696e67ff"));
+        assertEquals("AQIDBA==", decode("4401020304"));
+    }
+
+    @Test
+    public void testContainers() throws Exception {
+        System.out.println("testContainers");
+        JSOG nested = JSOG.parse("[1, [2, 3], [4, 5]]");
+        assertEquals("8301820203820405", hex(JsogCbor.encode(nested)));
+        assertEquals(nested, JsogCbor.decode(hex("8301820203820405")));
+        assertEquals(nested, JsogCbor.decode(hex("9f018202039f0405ffff")));
+
+        JSOG object = JSOG.parse("{\"a\": 1, \"b\": [2, 3]}");
+        assertEquals("a26161016162820203", hex(JsogCbor.encode(object)));
+        assertEquals(object, JsogCbor.decode(hex("bf61610161629f0203ffff")));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("testRoundTrip");
+        JSOG expected = JSOG.parse("{\"foo\": [1, 2.5, \"bar\", null, true,"
+                + " {\"baz\": 12345678901, \"qux\": {}}, []],"
+                + " \"\u00e9\": \"\u4e2d\"}");
+        JSOG actual = JsogCbor.decode(JsogCbor.encode(expected));
+        assertEquals(expected, actual);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(Long.valueOf(12345678901L),
+                     actual.get("foo").get(5).get("baz").getValue());
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        System.out.println("testStreams");
+        JSOG expected = JSOG.object("foo", JSOG.array(1, 2, 3));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsogCbor.encode(expected, out);
+
+        JSOG actual = JsogCbor.decode(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testDecodeEmpty() throws Exception {
+        System.out.println("testDecodeEmpty");
+        assertTrue(JsogCbor.decode(new byte[0]).isNull());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testDecodeTruncated() throws Exception {
+        System.out.println("testDecodeTruncated");
+        JsogCbor.decode(hex("830102"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeBadLength() throws Exception {
+        System.out.println("testDecodeBadLength");
+        JsogCbor.decode(hex("6549455446"));
+    }
+
+    @Test
+    public void testDecodeDeepNesting() throws Exception {
+        System.out.println("testDecodeDeepNesting");
+        byte[] data = new byte[10001];
+        Arrays.fill(data, (byte) 0x81);
+        data[data.length - 1] = 1;
+        try {
+            JsogCbor.decode(data);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Success
+        }
+
+        // Nesting up to the limit is fine
+        JSOG decoded = JsogCbor.decode(data, data.length - 1000, 1000);
+        for (int i = 0; i < 999; i++) {
+            decoded = decoded.get(0);
+        }
+        assertEquals(Integer.valueOf(1), decoded.getValue());
+    }
+
+    @Test
+    public void testDecodeBadDecimalFraction() throws Exception {
+        System.out.println("testDecodeBadDecimalFraction");
+        String[] invalid = {
+            "c4823a7fffffff01",          // exponent Integer.MIN_VALUE
+            "c4823b000000010000000001",  // exponent below the int range
+            "c4821b000000010000000001",  // exponent above the int range
+            "c482616101",                // exponent not an integer
+            "c48201f93c00",              // mantissa not an integer
+            "c48101"                     // not a pair
+        };
+        for (String hex : invalid) {
+            try {
+                JsogCbor.decode(hex(hex));
+                fail("Expected IOException for " + hex);
+            } catch (IOException e) {
+                // Success
+            }
+        }
+
+        // The smallest scale is the largest exponent
+        BigDecimal tiny = new BigDecimal(BigInteger.ONE, Integer.MIN_VALUE);
+        assertEquals(tiny, JsogCbor.decode(JsogCbor.encode(new JSOG(tiny)))
+                .getValue());
+    }
+
+    @Test
+    public void testEncodeDeepNesting() throws Exception {
+        System.out.println("testEncodeDeepNesting");
+
+        // Nesting up to the decoder's limit round trips
+        JSOG jsog = new JSOG(1);
+        for (int i = 0; i < 999; i++) {
+            jsog = JSOG.array(jsog);
+        }
+        JSOG decoded = JsogCbor.decode(JsogCbor.encode(jsog));
+        assertEquals(jsog, decoded);
+
+        try {
+            JsogCbor.encode(JSOG.array(jsog));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+
+        // A decimal fraction is three items deep
+        jsog = new JSOG(new BigDecimal("1.5"));
+        for (int i = 0; i < 998; i++) {
+            jsog = JSOG.array(jsog);
+        }
+        try {
+            JsogCbor.encode(jsog);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testDecodeTrailingData() throws Exception {
+        System.out.println("testDecodeTrailingData");
+        String[] invalid = {"0101", "8001ff", "a0a0", "f6f6"};
+        for (String hex : invalid) {
+            try {
+                JsogCbor.decode(hex(hex));
+                fail("Expected IOException for " + hex);
+            } catch (IOException e) {
+                // Success
+            }
+        }
+
+        // Trailing data outside the range is ignored
+        byte[] data = hex("010102");
+        assertEquals(Integer.valueOf(1),
+                JsogCbor.decode(data, 1, 1).getValue());
+    }
+
+    @Test
+    public void testDecodeHugeLength() throws Exception {
+        System.out.println("testDecodeHugeLength");
+        String[] invalid = {
+            "9b8000000000000000",  // array of 2^63 items
+            "9bffffffffffffffff",  // array of 2^64 - 1 items
+            "bb8000000000000000",  // map of 2^63 entries
+            "9a7fffffff01"         // truncated after a long array
+        };
+        for (String hex : invalid) {
+            try {
+                JsogCbor.decode(hex(hex));
+                fail("Expected IOException for " + hex);
+            } catch (IOException e) {
+                // Success
+            }
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static net.sf.jsog.JsogPredicate.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogCollection.
+ * @author jrodriguez
+ */
+public class JsogCollectionTest {
+
+    /**
+     * Creates a collection of products, indexed by category and price.
+     * @return the collection.
+     */
+    private static JsogCollection products() {
+        JsogCollection products = new JsogCollection("$.id");
+        products.createIndex("$.category");
+        for (int i = 0; i < 100; i++) {
+            products.insert(JSOG.object("id", i)
+                    .put("category", "c" + (i % 5))
+                    .put("price", i * 1.5)
+                    .put("name", "p" + i));
+        }
+        products.createIndex("$.price");
+        return products;
+    }
+
+    /**
+     * Gets the sorted ids of some documents.
+     * @param documents the documents.
+     * @return the ids.
+     */
+    private static List<Integer> ids(List<JSOG> documents) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (JSOG document : documents) {
+            ids.add(document.get("id").getIntegerValue());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Gets the sorted ids of the documents matching a condition, by testing
+     * every document.
+     * @param collection the collection.
+     * @param predicate the condition.
+     * @return the ids.
+     */
+    private static List<Integer> scan(JsogCollection collection,
+                                      JsogPredicate predicate) {
+        List<JSOG> found = new ArrayList<JSOG>();
+        for (int i = 0; i < 200; i++) {
+            JSOG document = collection.get(i);
+            if (document != null && predicate.matches(document)) {
+                found.add(document);
+            }
+        }
+        return ids(found);
+    }
+
+    @Test
+    public void testInsertUpdateDelete() throws Exception {
+        System.out.println("testInsertUpdateDelete");
+        JsogCollection products = products();
+        assertEquals(100, products.size());
+        assertEquals("p7", products.get(7L).get("name").getStringValue());
+        assertNull(products.get(100));
+
+        try {
+            products.insert(JSOG.object("id", 7));
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("already exists"));
+        }
+        try {
+            products.insert(JSOG.object("name", "x"));
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("no id"));
+        }
+        try {
+            products.update(JSOG.object("id", 100));
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("No document"));
+        }
+        try {
+            products.insert(JSOG.object("id", 100)
+                    .put("category", JSOG.array("a")));
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("not a primitive"));
+        }
+        assertEquals(100, products.size());
+
+        // Updates move documents between index entries
+        JSOG old = products.update(JSOG.object("id", 7)
+                .put("category", "new").put("price", 0));
+        assertEquals("p7", old.get("name").getStringValue());
+        assertEquals(Arrays.asList(7),
+                ids(products.find(eq("$.category", "new"))));
+        assertFalse(ids(products.find(eq("$.category", "c2"))).contains(7));
+        assertEquals(Arrays.asList(0, 7),
+                ids(products.find(le("$.price", 0))));
+
+        assertNotNull(products.delete(7));
+        assertNull(products.delete(7));
+        assertTrue(products.find(eq("$.category", "new")).isEmpty());
+        assertEquals(99, products.size());
+
+        products.clear();
+        assertEquals(0, products.size());
+        assertTrue(products.find(eq("$.category", "c1")).isEmpty());
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        System.out.println("testFind");
+        JsogCollection products = products();
+        JsogPredicate[] queries = {
+            eq("$.category", "c1"),
+            eq("$.id", 42),
+            in("$.id", 1, 2, 500),
+            in("$.category", "c1", "c3", "none"),
+            range("$.price", 15, true, 30, false),
+            gt("$.price", 140),
+            lt("$.price", "zzz"),
+            eq("$.name", "p9"),
+            and(eq("$.category", "c2"), ge("$.price", 60)),
+            and(eq("$.category", "c2"), eq("$.name", "p12")),
+            and(eq("$.name", "p12"), eq("$.id", 12)),
+            or(eq("$.category", "c0"), lt("$.price", 10)),
+            or(eq("$.category", "c0"), eq("$.name", "p1")),
+            and(or(eq("$.id", 3), eq("$.id", 4)), in("$.category", "c4")),
+            and(),
+            or()
+        };
+        for (JsogPredicate query : queries) {
+            assertEquals(scan(products, query), ids(products.find(query)));
+        }
+
+        assertEquals(20, products.find(eq("$.category", "c1")).size());
+        assertEquals(Arrays.asList(12),
+                ids(products.find(and(eq("$.category", "c2"),
+                                      eq("$.name", "p12")))));
+    }
+
+    @Test
+    public void testIndexes() throws Exception {
+        System.out.println("testIndexes");
+        JsogCollection products = products();
+        JsogPredicate query = and(eq("$.name", "p5"), lt("$.price", 10));
+        List<Integer> expected = scan(products, query);
+
+        products.createIndex("$.name");
+        products.createIndex("$.name");
+        assertEquals(expected, ids(products.find(query)));
+        assertTrue(products.dropIndex("$.name"));
+        assertFalse(products.dropIndex("$.name"));
+        assertEquals(expected, ids(products.find(query)));
+    }
+
+    @Test
+    public void testFrozenOnInsert() throws Exception {
+        System.out.println("testFrozenOnInsert");
+        JsogCollection collection = new JsogCollection("$.id");
+        JsogParser parser = new JsogParser();
+        parser.setLazyScalars(true);
+        JSOG lazy = parser.parse("{\"id\":1,\"name\":\"a\",\"tags\":[\"x\"]}");
+        JSOG raw = JSOG.object("id", 2).put("data", JSOG.raw("{\"k\":[1]}"));
+        collection.insert(lazy);
+        collection.insert(raw);
+
+        // Nothing is left for readers to resolve
+        JSOG stored = collection.get(1);
+        assertTrue(stored.get("name").unresolvedValue() instanceof String);
+        assertTrue(stored.get("tags").get(0).unresolvedValue()
+                instanceof String);
+        assertTrue(collection.get(2).get("data").unresolvedValue()
+                instanceof java.util.Map);
+        assertEquals(1, collection.find(eq("$.data.k[0]", 1)).size());
+
+        // Readers can't modify documents, even by navigating
+        assertTrue(stored.isFrozen());
+        assertTrue(stored.get("tags").isFrozen());
+        assertTrue(stored.get("missing").isNull());
+        assertFalse(stored.hasKey("missing"));
+        try {
+            stored.get("tags").add("y");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // Success
+        }
+        assertEquals(lazy, stored);
+
+        // The inserted JSOG is a separate, modifiable copy
+        lazy.put("name", "b");
+        assertEquals("a", collection.get(1).get("name").getStringValue());
+        assertEquals(0, collection.find(eq("$.name", "b")).size());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        System.out.println("testConcurrentReaders");
+        final JsogCollection products = products();
+        final AtomicReference<Throwable> failure =
+                new AtomicReference<Throwable>();
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 100; i < 2000; i++) {
+                    products.insert(JSOG.object("id", i)
+                            .put("category", "c" + (i % 5))
+                            .put("price", i * 1.5));
+                    products.delete(i - 50);
+                }
+            }
+        };
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 500; i++) {
+                            for (JSOG found : products.find(and(
+                                    eq("$.category", "c3"),
+                                    ge("$.price", 100)))) {
+                                assertEquals("c3", found.get("category")
+                                        .getStringValue());
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            };
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(100, products.size());
+    }
+}
@@ -0,0 +1,137 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jrodriguez
+ */
+public class JsogCollectorsTest {
+
+    private static final JsogFunction<JSOG, String> NAME =
+            new JsogFunction<JSOG, String>() {
+                public String apply(JSOG argument) {
+                    return argument.get("name").getStringValue();
+                }
+            };
+
+    private static final JsogFunction<JSOG, Object> AGE =
+            new JsogFunction<JSOG, Object>() {
+                public Object apply(JSOG argument) {
+                    return argument.get("age").getValue();
+                }
+            };
+
+    private static JSOG people(int count) {
+        JSOG people = JSOG.array();
+        for (int i = 0; i < count; i++) {
+            people.add(JSOG.object("name", "p" + i).put("age", i));
+        }
+        return people;
+    }
+
+    @Test
+    public void testToArray() {
+        System.out.println("testToArray");
+        JSOG result = JsogCollectors.collect(
+                Arrays.asList(1, "two", JSOG.object("three", 3)).iterator(),
+                JsogCollectors.<Object>toArray());
+        assertEquals(JSOG.array(1, "two", JSOG.object("three", 3)), result);
+    }
+
+    @Test
+    public void testToObject() {
+        System.out.println("testToObject");
+        JSOG result = JsogCollectors.collect(people(3).arrayIterator(),
+                JsogCollectors.toObject(NAME, AGE));
+        assertEquals(JSOG.object("p0", 0).put("p1", 1).put("p2", 2), result);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testToObjectDuplicateKey() {
+        System.out.println("testToObjectDuplicateKey");
+        JSOG people = people(2);
+        people.add(JSOG.object("name", "p0").put("age", 5));
+        JsogCollectors.collect(people.arrayIterator(),
+                JsogCollectors.toObject(NAME, AGE));
+    }
+
+    @Test
+    public void testCollectParallelArray() {
+        System.out.println("testCollectParallelArray");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JSOG people = people(1001);
+            JSOG result = JsogCollectors.collect(people.arraySpliterator(),
+                    JsogCollectors.<JSOG>toArray(), executor, 7);
+            assertEquals(people, result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCollectParallelObject() {
+        System.out.println("testCollectParallelObject");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JSOG people = people(500);
+            JSOG result = JsogCollectors.collect(people.arraySpliterator(),
+                    JsogCollectors.toObject(NAME, AGE), executor, 8);
+            assertEquals(500, result.size());
+
+            int i = 0;
+            for (Entry<String, JSOG> entry : result.objectIterable()) {
+                assertEquals("p" + i, entry.getKey());
+                assertEquals(i, (int) entry.getValue().getIntegerValue());
+                i++;
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCollectParallelEmpty() {
+        System.out.println("testCollectParallelEmpty");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            JSOG result = JsogCollectors.collect(JSOG.array().arraySpliterator(),
+                    JsogCollectors.<JSOG>toArray(), executor, 4);
+            assertEquals(JSOG.array(), result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
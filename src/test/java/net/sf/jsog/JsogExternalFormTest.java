@@ -0,0 +1,223 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the serialized form of JSOGs.
+ * @author jrodriguez
+ */
+public class JsogExternalFormTest {
+
+    private static byte[] serialize(Object object) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(object);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes));
+        return in.readObject();
+    }
+
+    private static JSOG roundTrip(JSOG jsog) throws Exception {
+        return (JSOG) deserialize(serialize(jsog));
+    }
+
+    /**
+     * Finds the start of the JSOG block in a serialized stream, which is
+     * preceded by the block length.
+     */
+    private static int findBlock(byte[] bytes, int length) {
+        for (int i = 0; i + 4 < bytes.length; i++) {
+            int value = ((bytes[i] & 0xFF) << 24)
+                    | ((bytes[i + 1] & 0xFF) << 16)
+                    | ((bytes[i + 2] & 0xFF) << 8)
+                    | (bytes[i + 3] & 0xFF);
+            if (value == length && bytes[i + 4] == 1) {
+                return i + 4;
+            }
+        }
+        throw new AssertionError("Block not found");
+    }
+
+    @Test
+    public void testPrimitives() throws Exception {
+        System.out.println("testPrimitives");
+        Object[] values = {
+            null, true, false, 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE,
+            Long.MIN_VALUE, Long.MAX_VALUE, (byte) -12, (short) 1234, 'x',
+            1.5f, Float.NaN, -0.0, Double.MAX_VALUE, "", "foo",
+            "\u00e9\u4e2d\ud800\udd51",
+            new BigInteger("-123456789012345678901234567890"),
+            new BigDecimal("-12345678901234567890.000123"),
+            new BigDecimal("1E+10")
+        };
+
+        for (Object value : values) {
+            Object actual = roundTrip(new JSOG(value)).getValue();
+            assertEquals(value, actual);
+            if (value != null) {
+                assertSame(value.getClass(), actual.getClass());
+            }
+        }
+    }
+
+    @Test
+    public void testNested() throws Exception {
+        System.out.println("testNested");
+        JSOG expected = JSOG.parse("{\"foo\": [1, 2.5, \"bar\", null, true,"
+                + " {\"baz\": 12345678901, \"qux\": {}}, []],"
+                + " \"bar\": {\"foo\": \"bar\"}}");
+        expected.get("raw").add(1).add("two");
+
+        JSOG actual = roundTrip(expected);
+        assertEquals(expected, actual);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(new ArrayList<String>(expected.keySet()),
+                     new ArrayList<String>(actual.keySet()));
+
+        // The copy is independent and fully mutable
+        actual.get("foo").add(3);
+        assertEquals(7, expected.get("foo").size());
+        assertEquals(8, actual.get("foo").size());
+    }
+
+    @Test
+    public void testNestedValue() throws Exception {
+        System.out.println("testNestedValue");
+        JSOG expected = new JSOG(JSOG.object("foo", "bar"));
+        JSOG actual = roundTrip(expected);
+        assertEquals("bar", actual.get("foo").getStringValue());
+    }
+
+    @Test
+    public void testSharedReference() throws Exception {
+        System.out.println("testSharedReference");
+        JSOG jsog = JSOG.object("foo", "bar");
+        List<JSOG> list = new ArrayList<JSOG>();
+        list.add(jsog);
+        list.add(jsog);
+
+        @SuppressWarnings("unchecked")
+        List<JSOG> actual = (List<JSOG>) deserialize(serialize(list));
+        assertEquals(jsog, actual.get(0));
+        assertSame(actual.get(0), actual.get(1));
+    }
+
+    @Test
+    public void testStringReferences() throws Exception {
+        System.out.println("testStringReferences");
+        JSOG array = JSOG.array();
+        for (int i = 0; i < 1000; i++) {
+            array.add(JSOG.object("identifier", i)
+                          .put("description", "repeated value"));
+        }
+
+        // Repeated strings cost two bytes each, so about 11 bytes per element
+        byte[] bytes = serialize(array);
+        assertTrue(bytes.length < 1000 * 12);
+        assertEquals(array, deserialize(bytes));
+    }
+
+    @Test(expected = InvalidObjectException.class)
+    public void testUnsupportedVersion() throws Exception {
+        System.out.println("testUnsupportedVersion");
+        byte[] bytes = serialize(new JSOG("foo"));
+        bytes[findBlock(bytes, 6)] = 2;
+        deserialize(bytes);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testUnknownTag() throws Exception {
+        System.out.println("testUnknownTag");
+        byte[] bytes = serialize(new JSOG(true));
+        bytes[findBlock(bytes, 2) + 1] = 99;
+        deserialize(bytes);
+    }
+
+    @Test
+    public void testBadLength() throws Exception {
+        System.out.println("testBadLength");
+        byte[] bytes = serialize(new JSOG(true));
+        int block = findBlock(bytes, 2);
+        bytes[block - 4] = 0x7F;
+        bytes[block - 3] = (byte) 0xFF;
+        try {
+            deserialize(bytes);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testDeepNesting() throws Exception {
+        System.out.println("testDeepNesting");
+        JSOG deep = new JSOG(1);
+        for (int i = 0; i < 1000; i++) {
+            deep = JSOG.array(deep);
+        }
+        byte[] bytes = serialize(deep);
+        assertEquals(deep, deserialize(bytes));
+
+        // Replace the innermost 1 with an empty array, one level too deep
+        int end = bytes.length - 1;
+        assertEquals(0x78, bytes[end]);
+        bytes[end - 2] = 8;
+        bytes[end - 1] = 0;
+        try {
+            deserialize(bytes);
+            fail("Expected StreamCorruptedException");
+        } catch (StreamCorruptedException e) {
+            // Success
+        }
+
+        try {
+            serialize(JSOG.array(deep));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+}
@@ -0,0 +1,258 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogIndex.
+ * @author jrodriguez
+ */
+public class JsogIndexTest {
+
+    /**
+     * Gets the ids of some products.
+     * @param products the products.
+     * @return the ids.
+     */
+    private static List<String> ids(List<JSOG> products) {
+        List<String> ids = new ArrayList<String>();
+        for (JSOG product : products) {
+            ids.add(product.get("id").getStringValue());
+        }
+        return ids;
+    }
+
+    /**
+     * Creates a product.
+     * @param id the id.
+     * @param updatedAt the update time.
+     * @return the product.
+     */
+    private static JSOG product(String id, Object updatedAt) {
+        return JSOG.object("id", id).put("updatedAt", updatedAt);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        System.out.println("testGet");
+        JSOG products = JSOG.parse("[{\"id\":\"a\",\"n\":1},{\"id\":\"b\",\"n\":2},"
+                + "{\"id\":\"c\",\"n\":2.0},{\"id\":\"d\"},{\"id\":\"e\",\"n\":null}]");
+        JsogIndex index = new JsogIndex(products, "$.n");
+        assertEquals(5, index.size());
+        assertSame(products, index.getArray());
+
+        assertEquals("a", index.getFirst(1).get("id").getStringValue());
+        assertEquals(Arrays.asList("b", "c"), ids(index.get(2L)));
+        assertEquals(Arrays.asList("b", "c"),
+                ids(index.get(new BigDecimal("2.00"))));
+        assertEquals(Arrays.asList("d", "e"), ids(index.get(null)));
+        assertTrue(index.get(3).isEmpty());
+        assertNull(index.getFirst(3));
+        assertTrue(index.containsKey(1.0));
+        assertFalse(index.containsKey("1"));
+
+        // Large integers are the same key however they're written
+        JSOG large = JSOG.array(JSOG.object("n", 9000000000000000000L),
+                JSOG.object("n", 9.0E18),
+                JSOG.object("n", new BigDecimal("9E+18")),
+                JSOG.object("n", new BigInteger("9000000000000000000")),
+                JSOG.object("n", new BigDecimal("9223372036854775808")));
+        index = new JsogIndex(large, "$.n");
+        assertEquals(4, index.get(9000000000000000000L).size());
+        assertEquals(1,
+                index.get(new BigInteger("9223372036854775808")).size());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        System.out.println("testRange");
+        JSOG products = JSOG.array(product("a", 30), product("b", 10),
+                product("c", 20), product("d", 20.5), product("e", null),
+                product("f", "x"), product("g", true));
+        JsogIndex index = new JsogIndex(products, "$.updatedAt");
+
+        assertEquals(Arrays.asList("b", "c"),
+                ids(index.range(10, 20.5)));
+        assertEquals(Arrays.asList("c", "d", "a"),
+                ids(index.range(10, false, 30, true)));
+        assertEquals(Arrays.asList("c"),
+                ids(index.range(20, true, 20, true)));
+        assertTrue(index.range(20, false, 20, true).isEmpty());
+        assertTrue(index.range(30, 10).isEmpty());
+        assertEquals(Arrays.asList("g", "b", "c", "d", "a", "f"),
+                ids(index.range(null, null)));
+        assertEquals(Arrays.asList("a", "f"),
+                ids(index.range(30, null)));
+    }
+
+    @Test
+    public void testMaintained() throws Exception {
+        System.out.println("testMaintained");
+        JSOG products = JSOG.array(product("a", 1), product("b", 2));
+        JsogIndex byId = new JsogIndex(products, "$.id");
+        JsogIndex byTime = new JsogIndex(products, "$.updatedAt");
+        assertEquals(1, byTime.range(2, null).size());
+
+        products.add(product("c", 3));
+        products.add(0, product("d", 4));
+        assertEquals(4, byId.size());
+        assertEquals(3, byId.getFirst("c").get("updatedAt")
+                .getIntegerValue().intValue());
+        assertEquals(Arrays.asList("b", "c", "d"),
+                ids(byTime.range(2, null)));
+
+        // Removal, replacement and iterator removal
+        products.remove(1);
+        assertNull(byId.getFirst("a"));
+        products.setElement(0, product("e", 0));
+        assertNull(byId.getFirst("d"));
+        assertEquals(Arrays.asList("e", "b"),
+                ids(byTime.range(null, 3)));
+        Iterator<JSOG> it = products.arrayIterator();
+        it.next();
+        it.remove();
+        assertFalse(byId.containsKey("e"));
+        assertEquals(2, byTime.size());
+
+        // The array still reads and writes as before
+        assertEquals(JSOG.array(product("b", 2), product("c", 3)), products);
+
+        products.clear();
+        assertEquals(0, byId.size());
+        assertTrue(byTime.range(null, null).isEmpty());
+    }
+
+    @Test
+    public void testReplacedValue() throws Exception {
+        System.out.println("testReplacedValue");
+        JSOG products = JSOG.array(product("a", 1));
+        JsogIndex index = new JsogIndex(products, "$.id");
+
+        // A new value is re-indexed on the next lookup
+        products.set(null);
+        products.add(product("b", 2));
+        assertNull(index.getFirst("a"));
+        assertNotNull(index.getFirst("b"));
+        products.add(product("c", 3));
+        assertNotNull(index.getFirst("c"));
+
+        // Key changes need an explicit rebuild
+        index.getFirst("c").put("id", "z");
+        assertNotNull(index.getFirst("c"));
+        index.rebuild();
+        assertNull(index.getFirst("c"));
+        assertNotNull(index.getFirst("z"));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        System.out.println("testClose");
+        JSOG products = JSOG.array(product("a", 1), product("b", 2));
+        Object plain = products.rawValue();
+        JsogIndex byId = new JsogIndex(products, "$.id");
+        JsogIndex byTime = new JsogIndex(products, "$.updatedAt");
+        JsogIndex byName = new JsogIndex(products, "$.name");
+
+        // Closing an index in the middle of the chain leaves the others
+        byTime.close();
+        products.add(product("c", 3));
+        assertNotNull(byId.getFirst("c"));
+        assertEquals(3, byName.get(null).size());
+        try {
+            byTime.range(null, null);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+
+        // Closing them all gives the array back its plain list
+        byName.close();
+        byId.close();
+        byId.close();
+        assertSame(plain, products.rawValue());
+        assertEquals(3, products.size());
+        products.remove(0);
+        assertEquals(JSOG.array(product("b", 2), product("c", 3)), products);
+        try {
+            byId.rebuild();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+
+        // Frozen arrays have nothing to give back
+        JSOG frozen = JSOG.parse("{\"p\":[{\"id\":\"a\"}]}").dedupe().get("p");
+        new JsogIndex(frozen, "$.id").close();
+        assertEquals(1, frozen.size());
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        System.out.println("testInvalid");
+        try {
+            new JsogIndex(JSOG.object("a", 1), "$.id");
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("not an array"));
+        }
+        try {
+            new JsogIndex(JSOG.array(), "$[*]");
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("several values"));
+        }
+
+        JSOG products = JSOG.array(product("a", 1));
+        JsogIndex index = new JsogIndex(products, "$.updatedAt");
+        try {
+            products.add(JSOG.object("updatedAt", JSOG.array(1)));
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("not a primitive"));
+        }
+        assertEquals(1, products.size());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testFrozen() throws Exception {
+        System.out.println("testFrozen");
+        JSOG products = JSOG.parse("{\"p\":[{\"id\":\"a\"},{\"id\":\"b\"}]}")
+                .dedupe().get("p");
+        assertTrue(products.isFrozen());
+        JsogIndex index = new JsogIndex(products, "$.id");
+        assertEquals(2, index.size());
+        assertEquals("b", index.getFirst("b").get("id").getStringValue());
+    }
+}
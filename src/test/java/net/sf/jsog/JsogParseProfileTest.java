@@ -0,0 +1,148 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.concurrent.CyclicBarrier;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogParseProfile.
+ * @author jrodriguez
+ */
+public class JsogParseProfileTest {
+
+    private static final String DOCUMENT = "{\"items\": [{\"tags\": [1, 2, 3],"
+            + " \"id\": 1}, {\"tags\": [1], \"id\": 2}], \"total\": 2}";
+
+    @Test
+    public void testRecording() throws Exception {
+        System.out.println("testRecording");
+        JsogParser parser = new JsogParser();
+        parser.setProfiling(true);
+        parser.parse(DOCUMENT);
+        JsogParseProfile profile = parser.getProfile(null);
+
+        assertEquals(2, profile.getHint(""));
+        assertEquals(2, profile.getHint("items"));
+        assertEquals(2, profile.getHint("items[]"));
+        assertEquals(3, profile.getHint("items[].tags"));
+        assertEquals(0, profile.getHint("missing"));
+        assertEquals(4, profile.size());
+    }
+
+    @Test
+    public void testDecay() throws Exception {
+        System.out.println("testDecay");
+        JsogParser parser = new JsogParser();
+        parser.setProfiling(true);
+        parser.parse("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16]");
+        JsogParseProfile profile = parser.getProfile(null);
+        assertEquals(16, profile.getHint(""));
+
+        // Smaller documents lower the hint gradually
+        parser.parse("[1]");
+        assertEquals(14, profile.getHint(""));
+        for (int i = 0; i < 50; i++) {
+            parser.parse("[1]");
+        }
+        assertTrue(profile.getHint("") < 8);
+        parser.parse("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10]");
+        assertEquals(10, profile.getHint(""));
+    }
+
+    @Test
+    public void testShapes() throws Exception {
+        System.out.println("testShapes");
+        JsogParser parser = new JsogParser();
+        parser.setProfiling(true);
+        parser.parse("[1, 2, 3]", "three");
+        parser.parse("[1]", "one");
+
+        assertEquals(3, parser.getProfile("three").getHint(""));
+        assertEquals(1, parser.getProfile("one").getHint(""));
+        assertEquals(0, parser.getProfile(null).getHint(""));
+
+        parser.setProfiling(false);
+        assertNull(parser.getProfile("three"));
+        assertEquals("[1,2,3]", parser.parse("[1, 2, 3]", "three").toString());
+    }
+
+    @Test
+    public void testMaxPositions() throws Exception {
+        System.out.println("testMaxPositions");
+        JsogParser parser = new JsogParser();
+        parser.setProfiling(true);
+        JsogParseProfile profile = parser.getProfile(null);
+        profile.setMaxPositions(3);
+
+        JSOG result = parser.parse("{\"a\": {\"x\": []}, \"b\": {}, \"c\": {}}");
+        assertEquals(3, profile.size());
+        assertEquals("{\"a\":{\"x\":[]},\"b\":{},\"c\":{}}", result.toString());
+    }
+
+    @Test
+    public void testConcurrentPositions() throws Exception {
+        System.out.println("testConcurrentPositions");
+        for (int round = 0; round < 200; round++) {
+            final JsogParseProfile profile = new JsogParseProfile();
+            final CyclicBarrier barrier = new CyclicBarrier(4);
+            final JsogParseProfile.Position[] seen =
+                    new JsogParseProfile.Position[4];
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int index = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                        } catch (Exception e) {
+                            return;
+                        }
+                        seen[index] = profile.root().elements();
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Every thread gets the same position, and it's counted once
+            for (JsogParseProfile.Position position : seen) {
+                assertSame(seen[0], position);
+            }
+            assertEquals(2, profile.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPosition() {
+        System.out.println("testInvalidPosition");
+        new JsogParseProfile().getHint("items[0]");
+    }
+}
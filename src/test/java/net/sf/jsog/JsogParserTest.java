@@ -0,0 +1,397 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jrodriguez
+ */
+public class JsogParserTest {
+
+    private static final String ARRAY =
+              "[1, 'two', {\"three\": [3, \"]\", \",\"]}, [4, {}], null,"
+            + " /* , */ \"\\\"five,\\\"\", // ,]\n 6.5, true, {'a,': {'b': []}}]";
+
+    @Test
+    public void testParseArraySerial() throws Exception {
+        System.out.println("testParseArraySerial");
+        JsogParser instance = new JsogParser();
+        instance.setBatchSize(1);
+
+        JSOG result = instance.parseArray(new StringReader(ARRAY));
+        assertEquals(JSOG.parse(ARRAY), result);
+        assertEquals(9, result.size());
+    }
+
+    @Test
+    public void testParseArrayParallel() throws Exception {
+        System.out.println("testParseArrayParallel");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JsogParser instance = new JsogParser();
+            instance.setExecutor(executor);
+            instance.setBatchSize(16);
+            instance.setMaxPendingBatches(2);
+
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < 1000; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(i).append(",\"tags\":[\"a,b\"]}");
+            }
+            json.append(']');
+
+            JSOG result = instance.parseArray(
+                    new StringReader(json.toString()));
+            assertEquals(1000, result.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) result.get(i).get("id").getIntegerValue());
+            }
+            assertEquals(JSOG.parse(json.toString()), result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParseArrayEmpty() throws Exception {
+        System.out.println("testParseArrayEmpty");
+        JSOG result = new JsogParser().parseArray(new StringReader(" [ ] "));
+        assertTrue(result.isArray());
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    public void testParseArrayNotAnArray() throws Exception {
+        System.out.println("testParseArrayNotAnArray");
+        try {
+            new JsogParser().parseArray(new StringReader("{\"foo\": []}"));
+            fail("Expected an exception.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("top-level array"));
+        }
+    }
+
+    @Test
+    public void testParseArrayUnterminated() throws Exception {
+        System.out.println("testParseArrayUnterminated");
+        try {
+            new JsogParser().parseArray(new StringReader("[1, 2"));
+            fail("Expected an exception.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("end-of-input"));
+        }
+    }
+
+    @Test
+    public void testParseArrayTrailingContent() throws Exception {
+        System.out.println("testParseArrayTrailingContent");
+        try {
+            new JsogParser().parseArray(new StringReader("[1,2] x"));
+            fail("Expected an exception.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("after the array"));
+        }
+
+        // Whitespace and comments are fine
+        JSOG result = new JsogParser().parseArray(
+                new StringReader("[1,2] /* done */ \n"));
+        assertEquals(2, result.size());
+    }
+
+    @Test
+    public void testParseArrayTrailingComma() throws Exception {
+        System.out.println("testParseArrayTrailingComma");
+
+        // In "[1,2,]" the last comma closes a full batch
+        String[] invalid = {"[1,2,]", "[1,2, /* */ ]", "[1,,2]", "[,1]"};
+        for (String json : invalid) {
+            JsogParser instance = new JsogParser();
+            instance.setBatchSize(4);
+            try {
+                instance.parseArray(new StringReader(json));
+                fail("Expected an exception for " + json);
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Expected a value"));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseArrayBadElement() throws Exception {
+        System.out.println("testParseArrayBadElement");
+        JsogParser instance = new JsogParser();
+        instance.setBatchSize(1);
+        instance.parseArray(new StringReader("[1, {foo: }, 3]"));
+    }
+
+    @Test
+    public void testParseLines() throws Exception {
+        System.out.println("testParseLines");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            JsogParser instance = new JsogParser();
+            instance.setExecutor(executor);
+            instance.setBatchSize(8);
+
+            JSOG result = instance.parseLines(new StringReader(
+                    "{\"a\": 1} // first\n\n[2]\r\n\"three\"\n  \n4"));
+            assertEquals(JSOG.parse("[{\"a\": 1}, [2], \"three\", 4]"), result);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParseLinesOneValuePerLine() throws Exception {
+        System.out.println("testParseLinesOneValuePerLine");
+        String[] invalid = {"1,2", "1\n[2,\n3]", "{\"a\": 1}\n1]", "1\n\"a",
+                            "[1\n2]", "1 /* spans\n lines */"};
+        for (String lines : invalid) {
+            try {
+                new JsogParser().parseLines(new StringReader(lines));
+                fail("Expected an exception for " + lines);
+            } catch (IOException e) {
+                // Success
+            }
+        }
+
+        // Commas within values, and comment lines, are fine
+        JSOG result = new JsogParser().parseLines(new StringReader(
+                "[1, 2]\n// comment\n{\"a\": \"b,c\"} /* , */"));
+        assertEquals(JSOG.parse("[[1, 2], {\"a\": \"b,c\"}]"), result);
+    }
+
+    @Test
+    public void testParseLinesEmpty() throws Exception {
+        System.out.println("testParseLinesEmpty");
+        JSOG result = new JsogParser().parseLines(new StringReader("\n\n"));
+        assertTrue(result.isArray());
+        assertEquals(0, result.size());
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        System.out.println("testParse");
+        JsogParser instance = new JsogParser();
+        assertTrue(instance.parse(null).isNull());
+        assertTrue(instance.parse("").isNull());
+        assertEquals(JSOG.parse("{\"foo\": [1, 2.5, \"bar\"]}"),
+                     instance.parse("{\"foo\": [1, 2.5, \"bar\"]}"));
+        assertEquals(Long.valueOf(12345678901L),
+                     instance.parse("12345678901").getValue());
+    }
+
+    @Test
+    public void testParseTrailingContent() throws Exception {
+        System.out.println("testParseTrailingContent");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            JsogParser parallel = new JsogParser();
+            parallel.setExecutor(executor);
+            parallel.setParallelThreshold(0);
+
+            // Both paths reject content after the value
+            JsogParser[] instances = {new JsogParser(), parallel};
+            String[] invalid = {"[1] [2]", "[1] x", "{} {}", "1 2"};
+            for (JsogParser instance : instances) {
+                for (String json : invalid) {
+                    try {
+                        instance.parse(json);
+                        fail("Expected an exception for " + json);
+                    } catch (IOException e) {
+                        // Success
+                    }
+                }
+                assertEquals(1, instance.parse("[1] /* */ \n").size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParseParallelThreshold() throws Exception {
+        System.out.println("testParseParallelThreshold");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            JsogParser instance = new JsogParser();
+            instance.setExecutor(executor);
+            instance.setParallelThreshold(0);
+            instance.setBatchSize(1);
+
+            assertEquals(JSOG.parse(ARRAY), instance.parse(ARRAY));
+            assertEquals(JSOG.parse("{\"a\": [1]}"),
+                         instance.parse("{\"a\": [1]}"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetBatchSizeInvalid() {
+        System.out.println("testSetBatchSizeInvalid");
+        new JsogParser().setBatchSize(0);
+    }
+
+    @Test
+    public void testLazyScalars() throws Exception {
+        System.out.println("testLazyScalars");
+        JsogParser instance = new JsogParser();
+        instance.setLazyScalars(true);
+
+        JSOG result = instance.parse("[1, -2, 12345678901,"
+                + " 123456789012345678901234567890, -1.5e3, \"foo\","
+                + " \"a\\n\\u00e9\\\"b\\/\", 'single', true, null]");
+        assertEquals(Integer.valueOf(1), result.get(0).getValue());
+        assertEquals(Integer.valueOf(-2), result.get(1).getValue());
+        assertEquals(Long.valueOf(12345678901L), result.get(2).getValue());
+        assertEquals(new BigInteger("123456789012345678901234567890"),
+                     result.get(3).getValue());
+        assertEquals(Double.valueOf(-1500), result.get(4).getValue());
+        assertEquals("foo", result.get(5).getValue());
+        assertEquals("a\n\u00e9\"b/", result.get(6).getValue());
+        assertEquals("single", result.get(7).getValue());
+        assertEquals(Boolean.TRUE, result.get(8).getValue());
+        assertTrue(result.get(9).isNull());
+    }
+
+    @Test
+    public void testLazyScalarsPassThrough() throws Exception {
+        System.out.println("testLazyScalarsPassThrough");
+        JsogParser instance = new JsogParser();
+        instance.setLazyScalars(true);
+
+        String json = "{\"a\":1.50,\"b\":[1e3,\"\\u0041\"],\"c\":-0}";
+        JSOG result = instance.parse(
+                "{\"a\": 1.50, \"b\" : [ 1e3 , /* \"x\" */ \"\\u0041\" ],"
+                + " \"c\":-0}");
+        assertTrue(result.get("a").isPrimitive());
+        assertEquals(json, result.toString());
+        assertEquals(json, result.clone().toString());
+
+        // Values which have been read are re-encoded
+        assertEquals(Double.valueOf(1.5), result.get("a").getDoubleValue());
+        assertEquals("{\"a\":1.5,\"b\":[1e3,\"\\u0041\"],\"c\":-0}",
+                     result.toString());
+        assertEquals("A", result.get("b").get(1).getValue());
+    }
+
+    @Test
+    public void testLazyScalarsEquality() throws Exception {
+        System.out.println("testLazyScalarsEquality");
+        JsogParser instance = new JsogParser();
+        instance.setLazyScalars(true);
+
+        JSOG lazy = instance.parse(ARRAY);
+        JSOG eager = JSOG.parse(ARRAY);
+        assertEquals(eager.toString(), lazy.toString());
+        assertEquals(eager.get(2).hashCode(), lazy.get(2).hashCode());
+        assertEquals(eager, lazy);
+        assertEquals(lazy, eager);
+        assertEquals(eager, JsogCbor.decode(JsogCbor.encode(lazy)));
+    }
+
+    @Test
+    public void testLazyScalarsNumberTypes() throws Exception {
+        System.out.println("testLazyScalarsNumberTypes");
+        JsogParser instance = new JsogParser();
+        instance.setLazyScalars(true);
+
+        // 19 digit integers, in and out of the eager parser's long range
+        String json = "[6137546356583794141, -6137546356583794141,"
+                + " 9223372036854775807, -9223372036854775808,"
+                + " 1111111111111111111, 9223372036854775808, 1000000000]";
+        JSOG lazy = instance.parse(json);
+        JSOG eager = JSOG.parse(json);
+        for (int i = 0; i < eager.size(); i++) {
+            assertEquals(eager.get(i).getValue().getClass(),
+                         lazy.get(i).getValue().getClass());
+        }
+        lazy = instance.parse(json);
+        assertEquals(eager.hashCode(), lazy.hashCode());
+        assertEquals(eager, lazy);
+    }
+
+    @Test
+    public void testLazyScalarsParallel() throws Exception {
+        System.out.println("testLazyScalarsParallel");
+        JsogParser instance = new JsogParser();
+        instance.setLazyScalars(true);
+        instance.setBatchSize(1);
+
+        JSOG result = instance.parseArray(new StringReader(ARRAY));
+        assertEquals(JSOG.parse(ARRAY), result);
+        assertEquals(Double.valueOf(6.5), result.get(6).getValue());
+    }
+
+    @Test
+    public void testLazyScalarsLongInput() throws Exception {
+        System.out.println("testLazyScalarsLongInput");
+        JsogParser instance = new JsogParser();
+        instance.setLazyScalars(true);
+
+        // Long enough that the parser refills its buffer many times
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"n\":").append(i).append(".50,\"s\":\"\\u0041")
+                .append(i).append("\"}");
+        }
+        json.append(']');
+
+        JSOG result = instance.parse(json.toString());
+        assertEquals(json.toString(), result.toString());
+        assertEquals("A4999", result.get(4999).get("s").getValue());
+        assertEquals(Double.valueOf(4999.5),
+                     result.get(4999).get("n").getValue());
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        System.out.println("testDeduplicate");
+        JsogParser parser = new JsogParser();
+        parser.setDeduplicate(true);
+        JSOG result = parser.parse("[{\"unit\": \"kg\"}, {\"unit\": \"kg\"}]");
+
+        assertSame(result.get(0), result.get(1));
+        assertTrue(result.get(0).isFrozen());
+        assertEquals("[{\"unit\":\"kg\"},{\"unit\":\"kg\"}]",
+                result.toString());
+    }
+
+}
@@ -0,0 +1,139 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogPathBatch.
+ * @author jrodriguez
+ */
+public class JsogPathBatchTest {
+
+    @Test
+    public void testApply() throws Exception {
+        System.out.println("testApply");
+        JsogPathBatch batch = new JsogPathBatch()
+                .set("$.response.header.status", 200)
+                .set("$.response.body.items[1].id", "b")
+                .set("$.response.header.type", "json")
+                .set("$.response.body.items[0].id", "a")
+                .set("$.response.body.count", 2)
+                .set("$.response.body.items[0].tags", JSOG.array("x", "y"));
+        assertEquals(6, batch.size());
+
+        JSOG jsog = new JSOG();
+        assertSame(jsog, batch.apply(jsog));
+        assertEquals(JSOG.parse("{\"response\":{"
+                + "\"header\":{\"status\":200,\"type\":\"json\"},"
+                + "\"body\":{\"items\":[{\"id\":\"a\",\"tags\":[\"x\",\"y\"]},"
+                + "{\"id\":\"b\"}],\"count\":2}}}"), jsog);
+
+        // The same writes, one at a time, give the same result
+        JSOG expected = new JSOG();
+        JsogPath.compile("$.response.header.status").set(expected, 200);
+        JsogPath.compile("$.response.body.items[1].id").set(expected, "b");
+        JsogPath.compile("$.response.header.type").set(expected, "json");
+        JsogPath.compile("$.response.body.items[0].id").set(expected, "a");
+        JsogPath.compile("$.response.body.count").set(expected, 2);
+        JsogPath.compile("$.response.body.items[0].tags")
+                .set(expected, JSOG.array("x", "y"));
+        assertEquals(expected, jsog);
+    }
+
+    @Test
+    public void testApplyOrder() throws Exception {
+        System.out.println("testApplyOrder");
+
+        // A path is written before the paths below it
+        JsogPathBatch batch = new JsogPathBatch()
+                .set("$.a.b", 1)
+                .set("$.a", JSOG.object("c", 2))
+                .remove("$.d")
+                .set("$.d.e", 3)
+                .set("$.f", 1)
+                .set("$.f", 2);
+
+        JSOG jsog = JSOG.parse("{\"d\":{\"x\":0},\"g\":true}");
+        batch.apply(jsog);
+        assertEquals(JSOG.parse("{\"d\":{\"e\":3},\"g\":true,"
+                + "\"a\":{\"c\":2,\"b\":1},\"f\":2}"), jsog);
+    }
+
+    @Test
+    public void testApplyRemove() throws Exception {
+        System.out.println("testApplyRemove");
+        JsogPathBatch batch = new JsogPathBatch()
+                .remove("$.a.b")
+                .remove("$.a.missing.x")
+                .remove("$.list[0]")
+                .set("$.a.c", "kept");
+
+        JSOG jsog = JSOG.raw("{\"a\":{\"b\":1,\"c\":2},\"list\":[1,2]}");
+        batch.apply(jsog);
+        assertEquals(JSOG.parse("{\"a\":{\"c\":\"kept\"},\"list\":[2]}"), jsog);
+
+        // Batches can be reused
+        batch.apply(jsog);
+        assertEquals(JSOG.parse("{\"a\":{\"c\":\"kept\"},\"list\":[]}"), jsog);
+
+        assertEquals(0, batch.clear().size());
+    }
+
+    @Test
+    public void testApplyConflict() throws Exception {
+        System.out.println("testApplyConflict");
+        JsogPathBatch batch = new JsogPathBatch()
+                .set("$.a", 1)
+                .set("$.a.b", 2);
+        try {
+            batch.apply(new JSOG());
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("not be implicitly coerced"));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        System.out.println("testInvalid");
+        JsogPathBatch batch = new JsogPathBatch();
+        try {
+            batch.set("$", 1);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("root"));
+        }
+        try {
+            batch.remove("$..a");
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("several values"));
+        }
+        assertEquals(0, batch.size());
+    }
+}
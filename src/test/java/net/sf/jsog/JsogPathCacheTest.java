@@ -0,0 +1,155 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogPathCache.
+ * @author jrodriguez
+ */
+public class JsogPathCacheTest {
+
+    @Test
+    public void testGet() {
+        System.out.println("testGet");
+        JsogPathCache cache = new JsogPathCache();
+
+        JsogPath path = cache.get("$.foo[0]");
+        assertEquals("$[\"foo\"][0]", path.toString());
+        assertSame(path, cache.get("$.foo[0]"));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNotSame(path, cache.get("$.foo[0]"));
+    }
+
+    @Test
+    public void testInvalid() {
+        System.out.println("testInvalid");
+        JsogPathCache cache = new JsogPathCache();
+        String[] invalid = {null, "", "foo", "$.a[", "$['a]"};
+        for (String path : invalid) {
+            try {
+                cache.get(path);
+                fail("Expected IllegalArgumentException for " + path);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        System.out.println("testMaximumSize");
+        JsogPathCache cache = new JsogPathCache();
+        assertEquals(JsogPathCache.DEFAULT_MAXIMUM_SIZE,
+                cache.getMaximumSize());
+        cache.setMaximumSize(10);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("$.a[" + i + "]");
+        }
+        assertEquals(10, cache.size());
+        assertEquals(90, cache.getEvictionCount());
+
+        // Shrinking evicts immediately
+        cache.setMaximumSize(5);
+        assertEquals(5, cache.size());
+        assertEquals(95, cache.getEvictionCount());
+
+        // Zero disables caching
+        cache.setMaximumSize(0);
+        assertEquals(0, cache.size());
+        JsogPath path = cache.get("$.b");
+        assertNotSame(path, cache.get("$.b"));
+        assertEquals(0, cache.size());
+
+        try {
+            cache.setMaximumSize(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        System.out.println("testEvictionOrder");
+        JsogPathCache cache = new JsogPathCache();
+        cache.setMaximumSize(10);
+
+        // A path in use gets a second chance
+        JsogPath hot = cache.get("$.hot");
+        for (int i = 0; i < 100; i++) {
+            cache.get("$.a[" + i + "]");
+            assertSame(hot, cache.get("$.hot"));
+        }
+        assertEquals(10, cache.size());
+        assertEquals(91, cache.getEvictionCount());
+
+        // The oldest unused paths went first
+        long misses = cache.getMissCount();
+        for (int i = 91; i < 100; i++) {
+            cache.get("$.a[" + i + "]");
+        }
+        assertEquals(misses, cache.getMissCount());
+        cache.get("$.a[90]");
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void testKeepsAddedPath() {
+        System.out.println("testKeepsAddedPath");
+        JsogPathCache cache = new JsogPathCache();
+        cache.setMaximumSize(3);
+
+        // Even when every other path is in use, the new one isn't evicted
+        for (int i = 0; i < 20; i++) {
+            JsogPath path = cache.get("$.a[" + i + "]");
+            assertSame(path, cache.get("$.a[" + i + "]"));
+        }
+        assertEquals(3, cache.size());
+        assertEquals(17, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testCompile() {
+        System.out.println("testCompile");
+        JsogPathCache cache = JsogPath.getCache();
+        long hits = cache.getHitCount();
+
+        JsogPath path = JsogPath.compile("$.compile.test");
+        assertSame(path, JsogPath.compile("$.compile.test"));
+        assertEquals("x", JSOG.object("compile", JSOG.object("test", "x"))
+                .path("$.compile.test").getStringValue());
+        assertTrue(cache.getHitCount() >= hits + 2);
+    }
+}
@@ -0,0 +1,225 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogPathSet.
+ * @author jrodriguez
+ */
+public class JsogPathSetTest {
+
+    @Test
+    public void testEvaluate() throws Exception {
+        System.out.println("testEvaluate");
+        JSOG jsog = JSOG.parse("{\"request\":{\"header\":{\"id\":7,"
+                + "\"user\":\"bob\"},\"items\":[1,2,3]},\"raw\":true}");
+
+        JsogPathSet set = new JsogPathSet();
+        assertEquals(0, set.add("$.request.header.id"));
+        assertEquals(1, set.add("$.request.header.user"));
+        assertEquals(2, set.add("$.request.items[-1]"));
+        assertEquals(3, set.add("$.request.missing.deeper"));
+        assertEquals(4, set.add("$"));
+        assertEquals(5, set.add("$.request.header.id"));
+        assertEquals(6, set.size());
+        assertEquals("$[\"request\"][\"items\"][-1]", set.get(2).toString());
+
+        JSOG[] results = set.evaluate(jsog);
+        assertEquals(6, results.length);
+        assertEquals(7, results[0].getIntegerValue().intValue());
+        assertEquals("bob", results[1].getStringValue());
+        assertEquals(3, results[2].getIntegerValue().intValue());
+        assertNull(results[3]);
+        assertSame(jsog, results[4]);
+        assertSame(results[0], results[5]);
+
+        // Evaluation is read-only
+        assertFalse(jsog.get("request").hasKey("missing"));
+    }
+
+    @Test
+    public void testEvaluateMatchesLookup() throws Exception {
+        System.out.println("testEvaluateMatchesLookup");
+        JSOG jsog = JSOG.parse("{\"a\":{\"b\":[{\"c\":1},{\"c\":2}],\"d\":null},"
+                + "\"e\":\"x\"}");
+        JsogPath[] paths = {
+            JsogPath.compile("$.a.b[0].c"),
+            JsogPath.compile("$.a.b[1].c"),
+            JsogPath.compile("$.a.b[2].c"),
+            JsogPath.compile("$.a.d"),
+            JsogPath.compile("$.e.f"),
+            JsogPath.compile("$.a")
+        };
+
+        JsogPathSet set = new JsogPathSet(paths);
+        JSOG[] results = new JSOG[paths.length + 1];
+        results[paths.length] = jsog;
+        set.evaluate(jsog, results);
+        for (int i = 0; i < paths.length; i++) {
+            assertEquals(paths[i].toString(), paths[i].lookup(jsog), results[i]);
+        }
+        assertSame(jsog, results[paths.length]);
+    }
+
+    @Test
+    public void testEvaluateRaw() throws Exception {
+        System.out.println("testEvaluateRaw");
+        JSOG jsog = JSOG.raw("{\"a\":{\"b\":[10,20]}}");
+        JsogPathSet set = new JsogPathSet(
+                JsogPath.compile("$.a.b[1]"), JsogPath.compile("$.a.c"));
+
+        JSOG[] results = set.evaluate(jsog);
+        assertEquals(20, results[0].getIntegerValue().intValue());
+        assertNull(results[1]);
+    }
+
+    @Test
+    public void testEvaluateSmallArray() {
+        System.out.println("testEvaluateSmallArray");
+        JsogPathSet set = new JsogPathSet(JsogPath.compile("$.a"));
+        try {
+            set.evaluate(new JSOG(), new JSOG[0]);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("1 paths"));
+        }
+    }
+
+    @Test
+    public void testAddIndefinite() {
+        System.out.println("testAddIndefinite");
+        JsogPathSet set = new JsogPathSet();
+        try {
+            set.add("$.a[*]");
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("several values"));
+        }
+        assertEquals(0, set.size());
+    }
+
+    @Test
+    public void testEvaluateStream() throws Exception {
+        System.out.println("testEvaluateStream");
+        String json = "{\"skip\":{\"a\":[1,{\"b\":2}]},\"a\":{\"b\":[{\"c\":1},"
+                + "{\"c\":[true,null]}],\"d\":null,\"e\":{\"f\":\"g\"}},"
+                + "\"e\":\"x\",\"n\":[[0,1],[2,3,4]]}";
+        JsogPathSet set = new JsogPathSet();
+        set.add("$.a.b[0].c");
+        set.add("$.a.b[1].c[0]");
+        set.add("$.a.b[1].c");
+        set.add("$.a.b[2].c");
+        set.add("$.a.d");
+        set.add("$.a.d.x");
+        set.add("$.e.f");
+        set.add("$.a.e");
+        set.add("$.a.e.f");
+        set.add("$.n[1][-1]");
+        set.add("$.n[-2][0]");
+        set.add("$.n[5]");
+        set.add("$.a[0]");
+
+        JSOG jsog = JSOG.parse(json);
+        JSOG[] expected = set.evaluate(jsog);
+        JSOG[] actual = set.evaluate(new StringReader(json));
+        for (int i = 0; i < set.size(); i++) {
+            assertEquals(set.get(i).toString(), expected[i], actual[i]);
+        }
+
+        actual = set.evaluate(new ByteArrayInputStream(json.getBytes("UTF-8")));
+        for (int i = 0; i < set.size(); i++) {
+            assertEquals(set.get(i).toString(), expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void testEvaluateStreamStopsEarly() throws Exception {
+        System.out.println("testEvaluateStreamStopsEarly");
+        JsogPathSet set = new JsogPathSet(
+                JsogPath.compile("$.meta.cursor"),
+                JsogPath.compile("$.data[0].id"));
+
+        // The input is cut off after both values, and never read that far
+        String json = "{\"meta\":{\"cursor\":\"abc\",\"total\":3},"
+                + "\"data\":[{\"id\":1,\"tags\":[\"x\"]},{\"id\":2";
+        JsonParser parser = JSOG.getJsonFactory().createJsonParser(json);
+        JSOG[] results = set.evaluate(parser);
+        assertEquals("abc", results[0].getStringValue());
+        assertEquals(1, results[1].getIntegerValue().intValue());
+        assertEquals(JsonToken.VALUE_NUMBER_INT, parser.getCurrentToken());
+
+        // A missing path needs the rest of the input
+        set.add("$.data[5].id");
+        try {
+            set.evaluate(new StringReader(json));
+            fail("Expected an exception.");
+        } catch (JsonParseException e) {
+            assertTrue(e.getMessage().contains("end-of-input"));
+        }
+    }
+
+    @Test
+    public void testEvaluateStreamCurrentToken() throws Exception {
+        System.out.println("testEvaluateStreamCurrentToken");
+        JsogPathSet set = new JsogPathSet(JsogPath.compile("$.a"),
+                JsogPath.compile("$"));
+
+        // Evaluation starts at the parser's current value
+        JsonParser parser = JSOG.getJsonFactory()
+                .createJsonParser("[{\"a\":1,\"b\":[2]},{\"a\":3}]");
+        parser.nextToken();
+        parser.nextToken();
+        JSOG[] results = set.evaluate(parser);
+        assertEquals(1, results[0].getIntegerValue().intValue());
+        assertEquals(JSOG.parse("{\"a\":1,\"b\":[2]}"), results[1]);
+
+        parser.nextToken();
+        results = set.evaluate(parser);
+        assertEquals(3, results[0].getIntegerValue().intValue());
+
+        // Empty input matches nothing
+        results = set.evaluate(new StringReader(""));
+        assertNull(results[0]);
+        assertNull(results[1]);
+    }
+
+    @Test
+    public void testEvaluateStreamDuplicateKey() throws Exception {
+        System.out.println("testEvaluateStreamDuplicateKey");
+        JsogPathSet set = new JsogPathSet(JsogPath.compile("$.a.b"));
+        JSOG[] results = set.evaluate(
+                new StringReader("{\"a\":{\"b\":1},\"a\":{\"b\":2}}"));
+        assertEquals(1, results[0].getIntegerValue().intValue());
+    }
+}
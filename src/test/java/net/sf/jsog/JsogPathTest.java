@@ -25,6 +25,11 @@
  */
 package net.sf.jsog;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -498,4 +503,275 @@ public class JsogPathTest {
         assertEquals("$", JsogPath.compile("$").toString());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testEvaluateExisting() throws Exception {
+        System.out.println("testEvaluateExisting");
+        JSOG jsog = JSOG.parse("{\"foo\": [{\"bar\": 1}]}");
+        JSOG bar = jsog.get("foo").get(0).get("bar");
+
+        assertSame(bar, JsogPath.compile("$.foo[0].bar").evaluate(jsog));
+        assertSame(jsog, JsogPath.compile("$").evaluate(jsog));
+        assertEquals("{\"foo\":[{\"bar\":1}]}", jsog.toString());
+    }
+
+    @Test
+    public void testEvaluateCreates() throws Exception {
+        System.out.println("testEvaluateCreates");
+        JSOG jsog = JSOG.parse("{\"foo\": [{\"bar\": 1}]}");
+
+        JsogPath.compile("$.foo[0].baz.qux").evaluate(jsog).set(2);
+        assertEquals("{\"foo\":[{\"bar\":1,\"baz\":{\"qux\":2}}]}",
+                jsog.toString());
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        System.out.println("testLookup");
+        JSOG jsog = JSOG.parse("{\"foo\": [{\"bar\": 1}], \"baz\": \"x\"}");
+        String json = jsog.toString();
+
+        assertEquals(1, (int) JsogPath.compile("$.foo[0].bar").lookup(jsog)
+                .getIntegerValue());
+        assertSame(jsog, JsogPath.compile("$").lookup(jsog));
+        assertNull(JsogPath.compile("$.foo[0].qux").lookup(jsog));
+        assertNull(JsogPath.compile("$.foo[1].bar").lookup(jsog));
+        assertNull(JsogPath.compile("$.foo.bar").lookup(jsog));
+        assertNull(JsogPath.compile("$.baz[0]").lookup(jsog));
+        assertNull(JsogPath.compile("$.qux.quux").lookup(jsog));
+
+        // Nothing was created
+        assertEquals(json, jsog.toString());
+    }
+
+    @Test
+    public void testLookupRaw() throws Exception {
+        System.out.println("testLookupRaw");
+        JSOG jsog = JSOG.object("a", JSOG.raw("{\"b\": [true]}"));
+        assertTrue(JsogPath.compile("$.a.b[0]").lookup(jsog).getBooleanValue());
+    }
+
+    private static final String ORDERS = "{\"orders\": ["
+            + "{\"id\": 1, \"items\": [{\"sku\": \"a\", \"price\": 5},"
+            + " {\"sku\": \"b\", \"price\": 12.5}]},"
+            + "{\"id\": 2, \"items\": [{\"sku\": \"c\", \"price\": 20,"
+            + " \"tags\": [\"sale\"]}]}], \"price\": 1}";
+
+    private static List<String> select(String path, JSOG jsog) {
+        List<String> result = new ArrayList<String>();
+        for (JSOG match : jsog.pathIterable(path)) {
+            result.add(match.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void testWildcard() throws Exception {
+        System.out.println("testWildcard");
+        JSOG jsog = JSOG.parse(ORDERS);
+        assertEquals(Arrays.asList("\"a\"", "\"b\"", "\"c\""),
+                select("$.orders[*].items[*].sku", jsog));
+        assertEquals(Arrays.asList("1", "2"), select("$.orders.*.id", jsog));
+        assertEquals(Arrays.asList("1"), select("$.*.*.id", JSOG.parse("{\"a\": [{\"id\": 1}]}")));
+        assertFalse(JsogPath.compile("$.orders[*]").isDefinite());
+        assertTrue(JsogPath.compile("$.orders[0]").isDefinite());
+    }
+
+    @Test
+    public void testDescent() throws Exception {
+        System.out.println("testDescent");
+        JSOG jsog = JSOG.parse(ORDERS);
+        assertEquals(Arrays.asList("1", "5", "12.5", "20"), select("$..price", jsog));
+        assertEquals(Arrays.asList("\"sale\""), select("$..tags[0]", jsog));
+        assertEquals(Arrays.asList("\"c\""), select("$..['sku', 'x'][-1]", JSOG.parse(
+                "{\"a\": {\"sku\": [\"c\"]}}")));
+        assertEquals(Arrays.asList("[1,{\"b\":2}]", "3", "1", "{\"b\":2}", "2"),
+                select("$..*", JSOG.parse("{\"a\": [1, {\"b\": 2}], \"c\": 3}")));
+    }
+
+    @Test
+    public void testSlice() throws Exception {
+        System.out.println("testSlice");
+        JSOG jsog = JSOG.array(0, 1, 2, 3, 4, 5);
+        assertEquals(Arrays.asList("1", "2"), select("$[1:3]", jsog));
+        assertEquals(Arrays.asList("4", "5"), select("$[-2:]", jsog));
+        assertEquals(Arrays.asList("0", "2", "4"), select("$[::2]", jsog));
+        assertEquals(Arrays.asList("5", "4", "3"), select("$[:2:-1]", jsog));
+        assertEquals(Arrays.asList("5", "3", "1"), select("$[::-2]", jsog));
+        assertTrue(select("$[10:]", jsog).isEmpty());
+        assertTrue(select("$[1:3]", JSOG.object("a", 1)).isEmpty());
+        assertEquals("$[1:3]", JsogPath.compile("$[1:3]").toString());
+        assertEquals("$[:-1:2]", JsogPath.compile("$[:-1:2]").toString());
+        try {
+            JsogPath.compile("$[::0]");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testUnion() throws Exception {
+        System.out.println("testUnion");
+        assertEquals(Arrays.asList("0", "5", "2"), select("$[0, -1, 2, 9]",
+                JSOG.array(0, 1, 2, 3, 4, 5)));
+        JSOG jsog = JSOG.object("a", 1).put("b", 2).put("c", 3);
+        assertEquals(Arrays.asList("3", "1"), select("$['c', \"a\", 'x']", jsog));
+        assertEquals("$[\"c\",\"a\"]", JsogPath.compile("$['c','a']").toString());
+        assertEquals(3, (int) JsogPath.compile("$[-1]").evaluate(JSOG.array(1, 2, 3))
+                .getIntegerValue());
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        System.out.println("testFilter");
+        JSOG jsog = JSOG.parse(ORDERS);
+        assertEquals(Arrays.asList("\"b\"", "\"c\""),
+                select("$.orders[*].items[?(@.price > 10)].sku", jsog));
+        assertEquals(Arrays.asList("\"a\""),
+                select("$..items[?(@.price <= 5 && @.sku == 'a')].sku", jsog));
+        assertEquals(Arrays.asList("\"c\""),
+                select("$..items[?(@.tags)].sku", jsog));
+        assertEquals(Arrays.asList("\"a\"", "\"b\""),
+                select("$..items[?(!@.tags)].sku", jsog));
+        assertEquals(Arrays.asList("\"a\"", "\"c\""),
+                select("$..items[?(@.sku == \"a\" || (@.tags[0] == 'sale'))].sku", jsog));
+        assertEquals(Arrays.asList("2"), select("$.orders[?(@.items[0].sku != 'a')].id", jsog));
+        assertEquals(Arrays.asList("3", "4"), select("$[?(@ >= 3)]", JSOG.array(1, 2, 3, 4)));
+        assertEquals(Arrays.asList("null"), select("$[?(@ == null)]", JSOG.array(1, new JSOG())));
+        assertEquals(Arrays.asList("\"b\""), select("$[?(@ > 'a')]", JSOG.array("a", "b", 1)));
+        assertEquals("$[\"orders\"][?(@.id == 1)]",
+                JsogPath.compile("$.orders[?(@.id == 1)]").toString());
+
+        String[] invalid = {"$[?(@.a >)]", "$[?(@.a == 1]", "$[?@.a]", "$[?(@.a 1)]",
+                "$[?(@.a[*] == 1)]"};
+        for (String path : invalid) {
+            try {
+                JsogPath.compile(path);
+                fail("Expected IllegalArgumentException for " + path);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorLazy() throws Exception {
+        System.out.println("testIteratorLazy");
+        JSOG jsog = JSOG.parse(ORDERS);
+        String json = jsog.toString();
+        Iterator<JSOG> it = JsogPath.compile("$..sku").iterator(jsog);
+        assertTrue(it.hasNext());
+        assertTrue(it.hasNext());
+        assertEquals("a", it.next().getStringValue());
+        assertEquals("b", it.next().getStringValue());
+        assertEquals("c", it.next().getStringValue());
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+        }
+
+        // Nothing is created, and matches are the JSOGs themselves
+        assertFalse(JsogPath.compile("$.x[*].y").iterator(jsog).hasNext());
+        assertEquals(json, jsog.toString());
+        assertSame(jsog.get("orders").get(0),
+                JsogPath.compile("$.orders[:1]").iterator(jsog).next());
+    }
+
+    @Test
+    public void testIndefiniteEvaluate() throws Exception {
+        System.out.println("testIndefiniteEvaluate");
+        try {
+            JsogPath.compile("$.a[*]").evaluate(new JSOG());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            JsogPath.compile("$..a").lookup(new JSOG());
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            JsogPath.compile("$.a[0:1]").find(JSOG.object("a", JSOG.array(1)));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+
+    @Test
+    public void testSet() throws Exception {
+        System.out.println("testSet");
+        JSOG jsog = JSOG.parse("{\"a\":{\"b\":1}}");
+
+        assertSame(jsog, JsogPath.compile("$.a.c").set(jsog, "x"));
+        JsogPath.compile("$.a.b").set(jsog, 2);
+        JsogPath.compile("$.d.e[2].f").set(jsog, true);
+        assertEquals(JSOG.parse("{\"a\":{\"b\":2,\"c\":\"x\"},"
+                + "\"d\":{\"e\":[null,null,{\"f\":true}]}}"), jsog);
+
+        // Existing arrays are replaced in place or padded
+        JsogPath.compile("$.d.e[0]").set(jsog, 0);
+        JsogPath.compile("$.d.e[-1].g").set(jsog, 1);
+        JsogPath.compile("$.d.e[4]").set(jsog, 4);
+        assertEquals(JSOG.parse("[0,null,{\"f\":true,\"g\":1},null,4]"),
+                jsog.get("d").get("e"));
+    }
+
+    @Test
+    public void testSetErrors() throws Exception {
+        System.out.println("testSetErrors");
+        JSOG jsog = JSOG.parse("{\"a\":1,\"b\":[]}");
+        try {
+            JsogPath.compile("$.a.b").set(jsog, 2);
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("not be implicitly coerced"));
+        }
+        try {
+            JsogPath.compile("$.b.c").set(jsog, 2);
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("object"));
+        }
+        try {
+            JsogPath.compile("$.b[-1]").set(jsog, 2);
+            fail("Expected an exception.");
+        } catch (IndexOutOfBoundsException e) {
+            // Expected
+        }
+        try {
+            JsogPath.compile("$").set(jsog, 2);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("root"));
+        }
+        try {
+            JsogPath.compile("$.c").set(jsog, new Object());
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("primitive"));
+        }
+        try {
+            JsogPath.compile("$.b[*]").set(jsog, 2);
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("several values"));
+        }
+        assertEquals(JSOG.parse("{\"a\":1,\"b\":[]}"), jsog);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        System.out.println("testRemove");
+        JSOG jsog = JSOG.raw("{\"a\":{\"b\":[1,2,3],\"c\":\"x\"}}");
+
+        assertEquals("x", JSOG.wrap(JsogPath.compile("$.a.c").remove(jsog))
+                .getStringValue());
+        assertEquals(3, JSOG.wrap(JsogPath.compile("$.a.b[-1]").remove(jsog))
+                .getIntegerValue().intValue());
+        assertNull(JsogPath.compile("$.a.b[5]").remove(jsog));
+        assertNull(JsogPath.compile("$.a.x.y").remove(jsog));
+        assertNull(JsogPath.compile("$.a.b.c").remove(jsog));
+        assertEquals(JSOG.parse("{\"a\":{\"b\":[1,2]}}"), jsog);
+    }
+}
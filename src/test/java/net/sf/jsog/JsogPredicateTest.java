@@ -0,0 +1,104 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import org.junit.Test;
+import static net.sf.jsog.JsogPredicate.*;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogPredicate.
+ * @author jrodriguez
+ */
+public class JsogPredicateTest {
+
+    @Test
+    public void testEq() throws Exception {
+        System.out.println("testEq");
+        JSOG jsog = JSOG.parse("{\"a\":5,\"b\":\"x\",\"c\":null,\"d\":[1]}");
+        assertTrue(eq("$.a", 5L).matches(jsog));
+        assertTrue(eq("$.a", 5.0).matches(jsog));
+        assertFalse(eq("$.a", "5").matches(jsog));
+        assertTrue(eq("$.b", "x").matches(jsog));
+        assertTrue(eq("$.c", null).matches(jsog));
+        assertTrue(eq("$.missing", null).matches(jsog));
+        assertFalse(eq("$.d", null).matches(jsog));
+        assertTrue(in("$.a", 1, 3, 5).matches(jsog));
+        assertFalse(in("$.a").matches(jsog));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        System.out.println("testRange");
+        JSOG jsog = JSOG.parse("{\"a\":5,\"b\":\"m\",\"c\":null}");
+        assertTrue(lt("$.a", 6).matches(jsog));
+        assertFalse(lt("$.a", 5).matches(jsog));
+        assertTrue(le("$.a", 5).matches(jsog));
+        assertTrue(gt("$.a", 4.5).matches(jsog));
+        assertTrue(ge("$.a", 5).matches(jsog));
+        assertFalse(gt("$.a", 5).matches(jsog));
+        assertTrue(range("$.b", "a", true, "n", false).matches(jsog));
+
+        // Ranges only match values of the same kind as their bounds
+        assertFalse(gt("$.b", 0).matches(jsog));
+        assertFalse(lt("$.a", "z").matches(jsog));
+        assertFalse(gt("$.c", 0).matches(jsog));
+    }
+
+    @Test
+    public void testAndOr() throws Exception {
+        System.out.println("testAndOr");
+        JSOG jsog = JSOG.parse("{\"a\":5,\"b\":\"x\"}");
+        assertTrue(and(eq("$.a", 5), eq("$.b", "x")).matches(jsog));
+        assertFalse(and(eq("$.a", 5), eq("$.b", "y")).matches(jsog));
+        assertTrue(or(eq("$.a", 6), eq("$.b", "x")).matches(jsog));
+        assertFalse(or().matches(jsog));
+        assertTrue(and().matches(jsog));
+    }
+
+    @Test
+    public void testInvalid() {
+        System.out.println("testInvalid");
+        try {
+            range("$.a", null, true, null, true);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("bound"));
+        }
+        try {
+            range("$.a", 1, true, "z", true);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("same kind"));
+        }
+        try {
+            eq("$.a[*]", 1);
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("several values"));
+        }
+    }
+}
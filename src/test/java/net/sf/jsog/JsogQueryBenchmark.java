@@ -0,0 +1,141 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares JsogQuery with the equivalent hand-written loop.
+ *
+ * Not run by the build; run it with a warmed-up, otherwise idle JVM:
+ * <pre>
+ * java -cp target/classes:target/test-classes:... \
+ *     net.sf.jsog.JsogQueryBenchmark [records] [rounds]
+ * </pre>
+ * @author jrodriguez
+ */
+public final class JsogQueryBenchmark {
+
+    /**
+     * Static use only.
+     */
+    private JsogQueryBenchmark() {
+    }
+
+    /**
+     * Groups the sales by region with a hand-written loop, the way reporting
+     * code does today.
+     * @param sales the sales.
+     * @return the units sold and revenue by region.
+     */
+    static JSOG byHand(JSOG sales) {
+        Map<String, double[]> totals = new LinkedHashMap<String, double[]>();
+        for (JSOG sale : sales.arrayIterable()) {
+            if (sale.path("$.units").getLongValue() < 2) {
+                continue;
+            }
+            String region = sale.path("$.region").getStringValue();
+            double[] total = totals.get(region);
+            if (total == null) {
+                total = new double[3];
+                totals.put(region, total);
+            }
+            total[0]++;
+            total[1] += sale.path("$.units").getLongValue();
+            JSOG price = sale.path("$.price");
+            if (price.getValue() instanceof Number) {
+                total[2] += price.getDoubleValue();
+            }
+        }
+
+        JSOG rows = JSOG.array();
+        for (Map.Entry<String, double[]> entry : totals.entrySet()) {
+            double[] total = entry.getValue();
+            rows.add(JSOG.object("region", entry.getKey())
+                    .put("n", (long) total[0])
+                    .put("units", (long) total[1])
+                    .put("revenue", total[2]));
+        }
+        return rows;
+    }
+
+    /**
+     * Creates the equivalent query.
+     * @return the query.
+     */
+    static JsogQuery query() {
+        return new JsogQuery()
+                .filter(JsogPredicate.ge("$.units", 2))
+                .groupBy("region", "$.region")
+                .count("n")
+                .sum("units", "$.units")
+                .sum("revenue", "$.price");
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args the number of records, and the number of rounds.
+     * @throws Exception if the benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        JSOG sales = JsogQueryTest.sales(records);
+
+        JsogQuery sequential = query();
+        JsogQuery parallel = query();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        parallel.setExecutor(executor);
+
+        try {
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                int a = byHand(sales).size();
+                long hand = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int b = sequential.execute(sales).size();
+                long query = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int c = parallel.execute(sales).size();
+                long threads = System.nanoTime() - start;
+
+                System.out.println(String.format(
+                        "round %d: by hand %d ms, query %d ms,"
+                        + " parallel query %d ms (%d/%d/%d rows)",
+                        round, hand / 1000000, query / 1000000,
+                        threads / 1000000, a, b, c));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogQuery.
+ * @author jrodriguez
+ */
+public class JsogQueryTest {
+
+    /**
+     * Creates an array of sales records.
+     * @param size the number of records.
+     * @return the records.
+     */
+    static JSOG sales(int size) {
+        JSOG sales = JSOG.arrayWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            JSOG sale = JSOG.object("id", i)
+                    .put("region", "r" + (i % 7))
+                    .put("units", i % 13)
+                    .put("price", (i % 100) / 4.0);
+            if (i % 11 == 0) {
+                sale.put("price", "n/a");
+            }
+            sales.add(sale);
+        }
+        return sales;
+    }
+
+    @Test
+    public void testFilterProjectSort() throws Exception {
+        System.out.println("testFilterProjectSort");
+        JSOG sales = JSOG.parse("[{\"id\":1,\"a\":{\"b\":3},\"c\":\"x\"},"
+                + "{\"id\":2,\"a\":{\"b\":1}},{\"id\":3,\"a\":{\"b\":2}},"
+                + "{\"id\":4,\"c\":\"y\"}]");
+
+        JSOG rows = new JsogQuery()
+                .filter(JsogPredicate.gt("$.id", 1))
+                .project("key", "$.id")
+                .project("b", "$.a.b")
+                .sort("$.b", true)
+                .execute(sales);
+        assertEquals(JSOG.parse("[{\"key\":2,\"b\":1},{\"key\":3,\"b\":2},"
+                + "{\"key\":4,\"b\":null}]"), rows);
+
+        // Without projections, the rows are copies of the elements
+        rows = new JsogQuery()
+                .filter(JsogPredicate.lt("$.a.b", 3))
+                .sort("$.id", false)
+                .execute(sales);
+        assertEquals(2, rows.size());
+        assertEquals(sales.get(2), rows.get(0));
+        assertEquals(sales.get(1), rows.get(1));
+        rows.get(0).get("a").put("b", 5);
+        assertEquals(2, sales.get(2).get("a").get("b").getIntegerValue()
+                .intValue());
+
+        // Projected values are copies too
+        rows = new JsogQuery().project("a", "$.a").execute(sales);
+        rows.get(0).get("a").put("b", 5);
+        assertEquals(3, sales.get(0).get("a").get("b").getIntegerValue()
+                .intValue());
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        System.out.println("testGroupBy");
+        JSOG sales = sales(1000);
+        JSOG rows = new JsogQuery()
+                .filter(JsogPredicate.ge("$.units", 2))
+                .groupBy("region", "$.region")
+                .count("n")
+                .sum("units", "$.units")
+                .sum("revenue", "$.price")
+                .min("cheapest", "$.price")
+                .max("most", "$.units")
+                .avg("average", "$.price")
+                .sort("$.region", true)
+                .execute(sales);
+        assertEquals(7, rows.size());
+
+        // The same by hand
+        for (int r = 0; r < 7; r++) {
+            long n = 0;
+            long units = 0;
+            double revenue = 0;
+            double cheapest = Double.MAX_VALUE;
+            long most = Long.MIN_VALUE;
+            long priced = 0;
+            for (JSOG sale : sales.arrayIterable()) {
+                if (sale.get("units").getLongValue() < 2
+                        || !sale.get("region").getStringValue()
+                            .equals("r" + r)) {
+                    continue;
+                }
+                n++;
+                units += sale.get("units").getLongValue();
+                most = Math.max(most, sale.get("units").getLongValue());
+                if (sale.get("price").getValue() instanceof Number) {
+                    double price = sale.get("price").getDoubleValue();
+                    revenue += price;
+                    cheapest = Math.min(cheapest, price);
+                    priced++;
+                }
+            }
+
+            JSOG row = rows.get(r);
+            assertEquals("r" + r, row.get("region").getStringValue());
+            assertEquals(n, row.get("n").getLongValue().longValue());
+            assertEquals(Long.valueOf(units), row.get("units").getValue());
+            assertEquals(revenue, row.get("revenue").getDoubleValue(), 1e-9);
+            assertEquals(cheapest, row.get("cheapest").getDoubleValue(), 0);
+            assertEquals(Long.valueOf(most), row.get("most").getValue());
+            assertEquals(revenue / priced,
+                    row.get("average").getDoubleValue(), 1e-9);
+        }
+    }
+
+    @Test
+    public void testAggregateWithoutGroups() throws Exception {
+        System.out.println("testAggregateWithoutGroups");
+        JsogQuery query = new JsogQuery()
+                .count("n")
+                .sum("total", "$.v")
+                .max("max", "$.v");
+
+        assertEquals(JSOG.parse("[{\"n\":3,\"total\":6.5,\"max\":4}]"),
+                query.execute(JSOG.parse(
+                        "[{\"v\":4},{\"v\":2.5},{\"v\":\"x\"}]")));
+        assertEquals(JSOG.parse("[{\"n\":0,\"total\":null,\"max\":null}]"),
+                query.execute(new JSOG()));
+
+        // Sums overflowing a long continue as doubles
+        JSOG rows = query.execute(JSOG.array(
+                JSOG.object("v", Long.MAX_VALUE), JSOG.object("v", 1)));
+        assertEquals(Long.MAX_VALUE + 1.0,
+                rows.get(0).get("total").getDoubleValue(), 0);
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        System.out.println("testParallel");
+        JSOG sales = sales(20000);
+        JsogQuery query = new JsogQuery()
+                .filter(JsogPredicate.lt("$.units", 10))
+                .groupBy("region", "$.region")
+                .count("n")
+                .sum("units", "$.units")
+                .min("cheapest", "$.price")
+                .avg("average", "$.price");
+        JSOG expected = query.execute(sales);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            query.setExecutor(executor);
+            query.setParallelism(4);
+            query.setParallelThreshold(1000);
+            JSOG actual = query.execute(sales);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                JSOG e = expected.get(i);
+                JSOG a = actual.get(i);
+                assertEquals(e.get("region"), a.get("region"));
+                assertEquals(e.get("n"), a.get("n"));
+                assertEquals(e.get("units"), a.get("units"));
+                assertEquals(e.get("cheapest"), a.get("cheapest"));
+                assertEquals(e.get("average").getDoubleValue(),
+                        a.get("average").getDoubleValue(), 1e-9);
+            }
+
+            // Element order is kept
+            JSOG ids = new JsogQuery()
+                    .filter(JsogPredicate.eq("$.units", 0))
+                    .project("id", "$.id")
+                    .execute(sales);
+            query = new JsogQuery()
+                    .filter(JsogPredicate.eq("$.units", 0))
+                    .project("id", "$.id");
+            query.setExecutor(executor);
+            query.setParallelThreshold(1000);
+            assertEquals(ids, query.execute(sales));
+
+            // Fractional sums don't depend on how the array is split
+            JSOG values = JSOG.parse("[{\"v\":1e16},{\"v\":1},{\"v\":1},"
+                    + "{\"v\":1},{\"v\":-1e16},{\"v\":1}]");
+            query = new JsogQuery().sum("total", "$.v");
+            assertEquals(4.0, query.execute(values).get(0).get("total")
+                    .getDoubleValue(), 0);
+            query.setExecutor(executor);
+            query.setParallelism(2);
+            query.setParallelThreshold(1);
+            assertEquals(4.0, query.execute(values).get(0).get("total")
+                    .getDoubleValue(), 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        System.out.println("testInvalid");
+        try {
+            new JsogQuery().project("a", "$.a").count("n");
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("Projecting"));
+        }
+        try {
+            new JsogQuery().sum("a", "$.a").project("b", "$.b");
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("Grouped"));
+        }
+        try {
+            new JsogQuery().sum("a", "$..a");
+            fail("Expected an exception.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("several values"));
+        }
+        try {
+            new JsogQuery().execute(JSOG.object("a", 1));
+            fail("Expected an exception.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("not an array"));
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogSizeEstimator.
+ * @author jrodriguez
+ */
+public class JsogSizeEstimatorTest {
+
+    @Test
+    public void testNull() {
+        System.out.println("testNull");
+        assertEquals(0, JsogSizeEstimator.estimate(null));
+        assertEquals(24, JsogSizeEstimator.estimate(new JSOG()));
+        assertEquals(24, JsogSizeEstimator.estimate(new JSOG(true)));
+    }
+
+    @Test
+    public void testPrimitives() {
+        System.out.println("testPrimitives");
+        assertEquals(24 + 16, JsogSizeEstimator.estimate(new JSOG(1)));
+        assertEquals(24 + 24, JsogSizeEstimator.estimate(new JSOG(1L)));
+        assertEquals(24 + 24, JsogSizeEstimator.estimate(new JSOG(1.5)));
+
+        // 24 for the String, 16 + 2 * 4 rounded up to 24 for the characters
+        assertEquals(24 + 24 + 24, JsogSizeEstimator.estimate(
+                new JSOG("abcd")));
+
+        long small = JsogSizeEstimator.estimate(new JSOG(BigInteger.ONE));
+        long big = JsogSizeEstimator.estimate(
+                new JSOG(BigInteger.ONE.shiftLeft(1000)));
+        assertTrue(big > small + 100);
+    }
+
+    @Test
+    public void testGrowsWithContent() throws Exception {
+        System.out.println("testGrowsWithContent");
+        JSOG array = JSOG.array();
+        long previous = JsogSizeEstimator.estimate(array);
+        for (int i = 0; i < 100; i++) {
+            array.add(JSOG.object("key", "value" + i));
+            long size = JsogSizeEstimator.estimate(array);
+            assertTrue(size > previous);
+            previous = size;
+        }
+
+        // Parsed and built JSOGs of the same shape weigh about the same
+        JSOG parsed = JSOG.parse(array.toString());
+        long parsedSize = JsogSizeEstimator.estimate(parsed);
+        assertTrue(Math.abs(parsedSize - previous) < previous / 10);
+    }
+
+    @Test
+    public void testLazySourceCountedOnce() throws Exception {
+        System.out.println("testLazySourceCountedOnce");
+        JsogParser parser = new JsogParser();
+        parser.setLazyScalars(true);
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 0 ? "" : ",").append(i);
+        }
+        String json = sb.append("]").toString();
+        JSOG jsog = parser.parse(json);
+
+        long size = JsogSizeEstimator.estimate(jsog);
+        long source = 24 + 16 + json.length() * 2;
+        assertTrue(size > source);
+        assertTrue(size < source * 2 + 1000 * (24 + 24 + 4));
+    }
+
+    @Test
+    public void testDeep() {
+        System.out.println("testDeep");
+        JSOG root = JSOG.array();
+        JSOG current = root;
+        for (int i = 0; i < 100000; i++) {
+            JSOG child = JSOG.array();
+            current.add(child);
+            current = child;
+        }
+        assertTrue(JsogSizeEstimator.estimate(root) > 100000 * 24);
+    }
+
+    @Test
+    public void testShared() throws Exception {
+        System.out.println("testShared");
+        JSOG value = JSOG.object("key", "value");
+        JSOG copies = JSOG.array(value, value.clone());
+        JSOG shared = JSOG.array(value, value);
+        assertSame(shared.get(0), shared.get(1));
+        assertEquals(JsogSizeEstimator.estimate(copies)
+                - JsogSizeEstimator.estimate(value),
+                JsogSizeEstimator.estimate(shared));
+    }
+
+    @Test
+    public void testOverlay() throws Exception {
+        System.out.println("testOverlay");
+        JSOG base = JSOG.array();
+        for (int i = 0; i < 100; i++) {
+            base.add("value" + i);
+        }
+        JSOG overlay = JSOG.overlay(JSOG.object("a", 1),
+                                    JSOG.object("b", base));
+
+        // Only the top layer belongs to the overlay
+        assertTrue(JsogSizeEstimator.estimate(overlay)
+                < JsogSizeEstimator.estimate(base));
+    }
+}
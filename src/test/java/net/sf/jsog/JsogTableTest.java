@@ -0,0 +1,344 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogTable.
+ * @author jrodriguez
+ */
+public class JsogTableTest {
+
+    /**
+     * Records with regular, missing, null and irregular values.
+     */
+    private static final String RECORDS = "["
+            + "{\"id\":1,\"name\":\"a\",\"score\":1.5,\"ok\":true,"
+            + "\"tag\":\"x\"},"
+            + "{\"id\":2,\"name\":\"b\",\"score\":2,\"ok\":false,"
+            + "\"tag\":{\"k\":1}},"
+            + "{\"id\":3,\"name\":null,\"score\":null,\"tag\":7},"
+            + "{\"id\":4,\"name\":\"a\",\"score\":-1,\"ok\":true,"
+            + "\"tag\":[1,2]}]";
+
+    @Test
+    public void testFrom() throws Exception {
+        System.out.println("testFrom");
+        JsogTable table = JsogTable.from(JSOG.parse(RECORDS));
+
+        assertEquals(4, table.size());
+        assertEquals(Arrays.asList("id", "name", "score", "ok", "tag"),
+                     table.getColumnNames());
+        assertEquals(Long.class, table.getColumn("id").getType());
+        assertEquals(String.class, table.getColumn("name").getType());
+        assertEquals(Double.class, table.getColumn("score").getType());
+        assertEquals(Boolean.class, table.getColumn("ok").getType());
+        assertEquals(JSOG.class, table.getColumn("tag").getType());
+        assertNull(table.getColumn("nope"));
+
+        JsogTable.Column id = table.getColumn("id");
+        assertEquals(4, id.size());
+        assertEquals("id", id.getName());
+        assertEquals(3L, id.getLong(2));
+        assertEquals(3.0, id.getDouble(2), 0);
+        assertEquals(Long.valueOf(3), id.get(2));
+
+        JsogTable.Column name = table.getColumn("name");
+        assertEquals("a", name.get(0));
+        assertEquals("a", name.get(3));
+        assertTrue(name.isNull(2));
+        assertFalse(name.isMissing(2));
+        assertNull(name.get(2));
+
+        JsogTable.Column score = table.getColumn("score");
+        assertEquals(Long.valueOf(2), score.get(1));
+        assertEquals(1.5, score.get(0));
+        assertEquals(-1.0, score.getDouble(3), 0);
+
+        JsogTable.Column ok = table.getColumn("ok");
+        assertEquals(Boolean.TRUE, ok.get(0));
+        assertEquals(Boolean.FALSE, ok.get(1));
+        assertTrue(ok.isNull(2));
+        assertTrue(ok.isMissing(2));
+        assertFalse(ok.isMissing(1));
+
+        JsogTable.Column tag = table.getColumn("tag");
+        assertEquals("x", tag.get(0));
+        assertEquals(JSOG.parse("{\"k\":1}"), tag.get(1));
+        assertEquals(JSOG.parse("[1,2]"), tag.get(3));
+
+        // Structured values are copies
+        ((JSOG) tag.get(1)).put("k", 2);
+        assertEquals(JSOG.parse("{\"k\":1}"), tag.get(1));
+
+        try {
+            name.getLong(0);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        try {
+            id.get(4);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testFromErrors() throws Exception {
+        System.out.println("testFromErrors");
+        assertEquals(0, JsogTable.from(new JSOG()).size());
+        assertEquals(0, JsogTable.from(JSOG.array()).size());
+
+        try {
+            JsogTable.from(JSOG.object("a", 1));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        try {
+            JsogTable.from(JSOG.parse("[{\"a\":1},2]"));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testColumnTypes() throws Exception {
+        System.out.println("testColumnTypes");
+        JsogTable table = JsogTable.from(JSOG.parse("["
+                + "{\"big\":9007199254740993,\"wide\":9007199254740993,"
+                + "\"mixed\":1,\"nulls\":null},"
+                + "{\"big\":1,\"wide\":0.5,\"mixed\":\"1\",\"nulls\":null}]"));
+
+        // Large integers stay exact
+        assertEquals(Long.class, table.getColumn("big").getType());
+        assertEquals(9007199254740993L, table.getColumn("big").getLong(0));
+        assertEquals(JSOG.class, table.getColumn("wide").getType());
+        assertEquals(9007199254740993L,
+                     ((Number) table.getColumn("wide").get(0)).longValue());
+        assertEquals(JSOG.class, table.getColumn("mixed").getType());
+        assertEquals(JSOG.class, table.getColumn("nulls").getType());
+        assertEquals(0, table.count("nulls"));
+    }
+
+    @Test
+    public void testToJSOG() throws Exception {
+        System.out.println("testToJSOG");
+        JSOG records = JSOG.parse(RECORDS);
+        JsogTable table = JsogTable.from(records);
+
+        // Missing keys stay missing, null values stay null
+        JSOG row = table.getRow(2);
+        assertFalse(row.hasKey("ok"));
+        assertTrue(row.hasKey("name"));
+        assertNull(row.get("name").getValue());
+
+        assertTrue(records.equals(table.toJSOG()));
+        assertEquals(records.toString(), table.toJSOG().toString());
+
+        // Integers among fractions read back as integers
+        JSOG mixed = JSOG.parse("[{\"a\":1},{\"a\":1.5}]");
+        JsogTable numbers = JsogTable.from(mixed);
+        assertEquals(Double.class, numbers.getColumn("a").getType());
+        assertEquals(1L, numbers.getColumn("a").get(0));
+        assertTrue(mixed.equals(numbers.toJSOG()));
+        assertEquals("[{\"a\":1},{\"a\":1.5}]", numbers.toJSOG().toString());
+
+        // The table is a copy
+        records.get(0).put("id", 10);
+        assertEquals(1L, table.getColumn("id").getLong(0));
+    }
+
+    @Test
+    public void testProject() throws Exception {
+        System.out.println("testProject");
+        JsogTable table = JsogTable.from(JSOG.parse(RECORDS))
+                .project("tag", "id");
+
+        assertEquals(Arrays.asList("tag", "id"), table.getColumnNames());
+        assertEquals(JSOG.parse("{\"tag\":7,\"id\":3}"), table.getRow(2));
+
+        try {
+            table.project("name");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        System.out.println("testFilter");
+        JsogTable table = JsogTable.from(JSOG.parse(RECORDS));
+
+        JsogTable filtered = table.filter(JsogPredicate.eq("$.name", "a"));
+        assertEquals(2, filtered.size());
+        assertEquals(1L, filtered.getColumn("id").getLong(0));
+        assertEquals(4L, filtered.getColumn("id").getLong(1));
+        assertEquals(JSOG.parse("[1,2]"), filtered.getColumn("tag").get(1));
+
+        // Missing keys survive filtering
+        filtered = table.filter(JsogPredicate.eq("$.ok", null));
+        assertEquals(1, filtered.size());
+        assertTrue(filtered.getColumn("ok").isMissing(0));
+        assertEquals(3L, filtered.getColumn("id").getLong(0));
+
+        // A missing column only matches null
+        assertEquals(4, table.count(JsogPredicate.eq("$.nope", null)));
+        assertEquals(0, table.count(JsogPredicate.eq("$.nope", 1)));
+        assertEquals(0, table.count(JsogPredicate.gt("$.nope", 1)));
+
+        // Structured values never match
+        assertEquals(1, table.count(JsogPredicate.ge("$.tag", 1)));
+        assertEquals(1, table.count(JsogPredicate.eq("$.tag", "x")));
+    }
+
+    @Test
+    public void testScans() throws Exception {
+        System.out.println("testScans");
+        JSOG sales = JsogQueryTest.sales(500);
+        JsogTable table = JsogTable.from(sales);
+        assertEquals(Long.class, table.getColumn("units").getType());
+        assertEquals(String.class, table.getColumn("region").getType());
+        assertEquals(JSOG.class, table.getColumn("price").getType());
+
+        JsogPredicate[] predicates = {
+            JsogPredicate.eq("$.region", "r3"),
+            JsogPredicate.in("$.region", "r1", "r2", "zz"),
+            JsogPredicate.range("$.region", "r2", false, "r5", true),
+            JsogPredicate.eq("$.units", 4),
+            JsogPredicate.eq("$.units", 4.0),
+            JsogPredicate.in("$.units", 1, 2.5, "3", null),
+            JsogPredicate.range("$.units", 3, true, 8, false),
+            JsogPredicate.gt("$.units", 2.5),
+            JsogPredicate.le("$.id", 100),
+            JsogPredicate.lt("$.price", 10),
+            JsogPredicate.eq("$.price", "n/a"),
+            JsogPredicate.ge("$.price", "a"),
+            JsogPredicate.and(JsogPredicate.eq("$.region", "r1"),
+                              JsogPredicate.gt("$.units", 5)),
+            JsogPredicate.or(JsogPredicate.eq("$.region", "r1"),
+                             JsogPredicate.lt("$.id", 10),
+                             JsogPredicate.eq("$.price", "n/a"))
+        };
+        for (JsogPredicate predicate : predicates) {
+            List<Long> expected = new ArrayList<Long>();
+            for (JSOG sale : sales.arrayIterable()) {
+                if (predicate.matches(sale)) {
+                    expected.add(sale.get("id").getLongValue());
+                }
+            }
+
+            JsogTable filtered = table.filter(predicate);
+            List<Long> actual = new ArrayList<Long>();
+            for (int row = 0; row < filtered.size(); row++) {
+                actual.add(filtered.getColumn("id").getLong(row));
+            }
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), table.count(predicate));
+        }
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        System.out.println("testAggregates");
+        JsogTable table = JsogTable.from(JSOG.parse(RECORDS));
+
+        assertEquals(4, table.count("id"));
+        assertEquals(3, table.count("score"));
+        assertEquals(3, table.count("ok"));
+        assertEquals(Long.valueOf(10), table.sum("id"));
+        assertEquals(Long.valueOf(1), table.min("id"));
+        assertEquals(Long.valueOf(4), table.max("id"));
+        assertEquals(2.5, table.avg("id"), 0);
+        assertEquals(2.5, table.sum("score").doubleValue(), 0);
+        assertEquals(-1.0, table.min("score"));
+        assertEquals(2.0, table.max("score"));
+        assertEquals(2.5 / 3, table.avg("score"), 1e-9);
+
+        JsogTable none = table.filter(JsogPredicate.eq("$.id", 0));
+        assertNull(none.sum("id"));
+        assertNull(none.min("score"));
+        assertNull(none.avg("id"));
+
+        // Integer sums overflow into doubles
+        JsogTable big = JsogTable.from(JSOG.parse("[{\"a\":"
+                + Long.MAX_VALUE + "},{\"a\":" + Long.MAX_VALUE + "}]"));
+        assertEquals(2.0 * Long.MAX_VALUE,
+                     big.sum("a").doubleValue(), 1e4);
+
+        try {
+            table.sum("name");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        try {
+            table.max("nope");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+    }
+
+    @Test
+    public void testMixedAggregates() throws Exception {
+        System.out.println("testMixedAggregates");
+        JsogTable table = JsogTable.from(JSOG.parse("["
+                + "{\"a\":9007199254740993,\"b\":\"x\"},"
+                + "{\"a\":1.5,\"b\":1},{\"a\":null}]"));
+
+        // Wide integers and fractions are summed exactly
+        assertEquals(JSOG.class, table.getColumn("a").getType());
+        assertEquals(new BigDecimal("9007199254740994.5"), table.sum("a"));
+        assertEquals(1.5, table.min("a"));
+        assertEquals(9007199254740993L, table.max("a").longValue());
+        assertEquals(9007199254740994.5 / 2, table.avg("a"), 1);
+
+        // Columns holding anything but numbers still aren't numeric
+        try {
+            table.sum("b");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+        try {
+            table.min("b");
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Success
+        }
+    }
+}
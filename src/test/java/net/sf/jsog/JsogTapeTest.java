@@ -0,0 +1,331 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogTape.
+ * @author jrodriguez
+ */
+public class JsogTapeTest {
+
+    private static final String DOCUMENT = "{\"zeta\": 1, \"alpha\": [true,"
+            + " false, null, 2.5, \"foo\"], \"mid\": {\"foo\": \"bar\","
+            + " \"big\": 123456789012345678901234567890, \"long\":"
+            + " 12345678901}, \"\\u00e9\": \"\\u4e2d\"}";
+
+    @Test
+    public void testNavigation() throws Exception {
+        System.out.println("testNavigation");
+        JsogTape tape = JsogTape.wrap(ByteBuffer.wrap(
+                JsogTape.encode(JSOG.parse(DOCUMENT))));
+
+        assertTrue(tape.isObject());
+        assertEquals(4, tape.size());
+        assertEquals(1, tape.get("zeta").getValue());
+        assertTrue(tape.get("alpha").isArray());
+        assertEquals(5, tape.get("alpha").size());
+        assertEquals(Boolean.TRUE, tape.get("alpha").get(0).getValue());
+        assertEquals(Boolean.FALSE, tape.get("alpha").get(1).getValue());
+        assertTrue(tape.get("alpha").get(2).isNull());
+        assertEquals(2.5, tape.get("alpha").get(3).getValue());
+        assertEquals("foo", tape.get("alpha").get(4).getValue());
+        assertEquals("bar", tape.get("mid").get("foo").getValue());
+        assertEquals(new BigInteger("123456789012345678901234567890"),
+                     tape.get("mid").get("big").getValue());
+        assertEquals(12345678901L, tape.get("mid").get("long").getValue());
+        assertEquals("\u4e2d", tape.get("\u00e9").getValue());
+    }
+
+    @Test
+    public void testMissingKey() throws Exception {
+        System.out.println("testMissingKey");
+        JsogTape tape = JsogTape.allocateDirect(JSOG.parse(DOCUMENT));
+        assertFalse(tape.hasKey("nope"));
+        assertTrue(tape.hasKey("mid"));
+        assertTrue(tape.get("nope").isNull());
+        assertTrue(tape.get("nope").get("deeper").isNull());
+        assertEquals(4, tape.size());
+    }
+
+    @Test
+    public void testKeyLookup() {
+        System.out.println("testKeyLookup");
+        JSOG jsog = JSOG.object();
+        for (int i = 0; i < 500; i++) {
+            jsog.put("key" + (i * 7919 % 500), i);
+        }
+
+        JsogTape tape = JsogTape.allocateDirect(jsog);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(jsog.get("key" + i).getValue(),
+                         tape.get("key" + i).getValue());
+        }
+        assertFalse(tape.hasKey("key500"));
+        assertFalse(tape.hasKey(""));
+    }
+
+    @Test
+    public void testDocumentOrder() throws Exception {
+        System.out.println("testDocumentOrder");
+        JsogTape tape = JsogTape.allocateDirect(JSOG.parse(DOCUMENT));
+        assertEquals(Arrays.asList("zeta", "alpha", "mid", "\u00e9"),
+                     new ArrayList<String>(tape.keySet()));
+
+        List<String> keys = new ArrayList<String>();
+        for (Entry<String, JsogTape> entry : tape.objectIterable()) {
+            keys.add(entry.getKey());
+        }
+        assertEquals(new ArrayList<String>(tape.keySet()), keys);
+    }
+
+    @Test
+    public void testArrayIterable() throws Exception {
+        System.out.println("testArrayIterable");
+        JsogTape tape = JsogTape.allocateDirect(JSOG.array(1, 2, 3));
+        int sum = 0;
+        for (JsogTape element : tape.arrayIterable()) {
+            sum += element.getIntegerValue();
+        }
+        assertEquals(6, sum);
+
+        Iterator<JsogTape> it = tape.arrayIterable().iterator();
+        it.next();
+        try {
+            it.remove();
+            fail("Expected an exception");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testPath() throws Exception {
+        System.out.println("testPath");
+        JsogTape tape = JsogTape.allocateDirect(JSOG.parse(DOCUMENT));
+        assertEquals("foo", tape.path("$.alpha[4]").getValue());
+        assertEquals("bar", tape.path("$['mid'].foo").getStringValue());
+        assertSame(tape, tape.path("$"));
+        assertEquals("bar",
+                     tape.path(JsogPath.compile("$.mid.foo")).getValue());
+    }
+
+    @Test
+    public void testTypedAccessors() throws Exception {
+        System.out.println("testTypedAccessors");
+        JsogTape tape = JsogTape.allocateDirect(JSOG.object("int", 42)
+                .put("string", "12")
+                .put("decimal", new BigDecimal("1.25"))
+                .put("bool", "true"));
+
+        assertEquals(Long.valueOf(42), tape.get("int").getLongValue());
+        assertEquals("42", tape.get("int").getStringValue());
+        assertEquals(Integer.valueOf(12), tape.get("string").getIntegerValue());
+        assertEquals(new BigDecimal("1.25"),
+                     tape.get("decimal").getBigDecimalValue());
+        assertEquals(Double.valueOf(1.25),
+                     tape.get("decimal").getDoubleValue());
+        assertEquals(Boolean.TRUE, tape.get("bool").getBooleanValue());
+        assertEquals(BigInteger.valueOf(42),
+                     tape.get("int").getBigIntegerValue());
+        assertNull(tape.get("missing").getStringValue());
+    }
+
+    @Test
+    public void testToJsog() throws Exception {
+        System.out.println("testToJsog");
+        JSOG expected = JSOG.parse(DOCUMENT);
+        JsogTape tape = JsogTape.allocateDirect(expected);
+        assertEquals(expected, tape.toJsog());
+        assertEquals(expected.toString(), tape.toString());
+    }
+
+    @Test
+    public void testNarrowTypes() {
+        System.out.println("testNarrowTypes");
+        JsogTape tape = JsogTape.allocateDirect(JSOG.array(
+                (byte) 1, (short) 2, 'c', 1.5f));
+        assertEquals(1, tape.get(0).getValue());
+        assertEquals(2, tape.get(1).getValue());
+        assertEquals("c", tape.get(2).getValue());
+        assertEquals(1.5f, tape.get(3).getValue());
+    }
+
+    @Test
+    public void testMap() throws Exception {
+        System.out.println("testMap");
+        File file = File.createTempFile("jsog", ".tape");
+        file.deleteOnExit();
+
+        JSOG expected = JSOG.parse(DOCUMENT);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            JsogTape.write(expected, out);
+        } finally {
+            out.close();
+        }
+
+        JsogTape tape = JsogTape.map(file);
+        assertEquals("bar", tape.path("$.mid.foo").getValue());
+        assertEquals(expected, tape.toJsog());
+    }
+
+    @Test
+    public void testWrapAtPosition() {
+        System.out.println("testWrapAtPosition");
+        byte[] encoded = JsogTape.encode(JSOG.object("foo", "bar"));
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 10);
+        buffer.position(7);
+        buffer.put(encoded);
+        buffer.position(7);
+
+        JsogTape tape = JsogTape.wrap(buffer);
+        assertEquals("bar", tape.get("foo").getValue());
+        assertEquals(7, buffer.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapNotATape() {
+        System.out.println("testWrapNotATape");
+        JsogTape.wrap(ByteBuffer.wrap(new byte[32]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrapTruncated() {
+        System.out.println("testWrapTruncated");
+        byte[] encoded = JsogTape.encode(JSOG.array(1, 2, 3));
+        JsogTape.wrap(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    @Test
+    public void testWrapCorrupt() throws Exception {
+        System.out.println("testWrapCorrupt");
+        byte[] encoded = JsogTape.encode(JSOG.parse(DOCUMENT));
+
+        // An element past the end of the tape
+        byte[] bytes = JsogTape.encode(JSOG.array(1, 2));
+        ByteBuffer.wrap(bytes).putInt(bytes.length - 4, bytes.length);
+        try {
+            JsogTape.wrap(ByteBuffer.wrap(bytes));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+
+        // Any damage is either caught up front or harmless
+        for (int i = 16; i < encoded.length; i++) {
+            for (int b : new int[] {0, 1, 0x7F, 0x80, 0xFF}) {
+                bytes = encoded.clone();
+                bytes[i] = (byte) b;
+                JsogTape tape;
+                try {
+                    tape = JsogTape.wrap(ByteBuffer.wrap(bytes));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                tape.toString();
+                for (String key : tape.keySet()) {
+                    tape.get(key);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDeepNesting() {
+        System.out.println("testDeepNesting");
+
+        // The encoder stops at its limit
+        JSOG jsog = new JSOG(1);
+        for (int i = 0; i < JsogTape.MAX_DEPTH; i++) {
+            jsog = JSOG.array(jsog);
+        }
+        assertEquals(jsog, JsogTape.allocateDirect(jsog).toJsog());
+        try {
+            JsogTape.encode(JSOG.array(jsog));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Success
+        }
+
+        // Decoding a deeper tape from elsewhere doesn't overflow the stack
+        int depth = 100000;
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 1 + depth * 9);
+        buffer.putInt(0x4A534F47).putInt(1).putInt(0).putInt(0);
+        buffer.put((byte) 0);
+        int previous = 16;
+        for (int i = 0; i < depth; i++) {
+            int at = buffer.position();
+            buffer.put((byte) 10).putInt(1).putInt(previous);
+            previous = at;
+        }
+        buffer.putInt(8, previous).putInt(12, buffer.position());
+        buffer.flip();
+
+        JSOG decoded = JsogTape.wrap(buffer).toJsog();
+        for (int i = 0; i < depth; i++) {
+            decoded = decoded.get(0);
+        }
+        assertTrue(decoded.isNull());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetIndexNotArray() {
+        System.out.println("testGetIndexNotArray");
+        JsogTape.allocateDirect(JSOG.object()).get(0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetIndexOutOfBounds() {
+        System.out.println("testGetIndexOutOfBounds");
+        JsogTape.allocateDirect(JSOG.array(1)).get(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetKeyNotObject() {
+        System.out.println("testGetKeyNotObject");
+        JsogTape.allocateDirect(JSOG.array()).get("foo");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetValueNotPrimitive() {
+        System.out.println("testGetValueNotPrimitive");
+        JsogTape.allocateDirect(JSOG.array()).getValue();
+    }
+
+}
@@ -0,0 +1,185 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests JsogWriter.
+ * @author jrodriguez
+ */
+public class JsogWriterTest {
+
+    private static final String DOCUMENT = "{\"zeta\": 1, \"alpha\": [true,"
+            + " false, null, 2.5, \"foo\", -9223372036854775808],"
+            + " \"mid\": {\"foo\": \"b\\\"a\\\\r\\n\\t\\u0001\\u001f/\","
+            + " \"big\": 123456789012345678901234567890, \"long\":"
+            + " 12345678901, \"dec\": 1.25E-9}, \"\\u00e9\": \"\\u4e2d\","
+            + " \"emoji\": \"\\ud83d\\ude00\"}";
+
+    private static String write(final JSOG jsog, final boolean escape)
+            throws Exception {
+        JsogWriter writer = new JsogWriter();
+        writer.setEscapeNonAscii(escape);
+        return new String(writer.write(jsog).toByteArray(),
+                escape ? "US-ASCII" : "UTF-8");
+    }
+
+    @Test
+    public void testMatchesToString() throws Exception {
+        System.out.println("testMatchesToString");
+        JSOG jsog = JSOG.parse(DOCUMENT);
+        assertEquals(jsog.toString(), write(jsog, false));
+    }
+
+    @Test
+    public void testPrimitives() throws Exception {
+        System.out.println("testPrimitives");
+        JSOG jsog = JSOG.array((byte) -1, (short) 2, 'c', 1.5f, 0.1f,
+                Integer.MIN_VALUE, Long.MIN_VALUE, 1e23, -0.0,
+                Double.MIN_VALUE, new BigDecimal("1.50"),
+                BigInteger.ONE.shiftLeft(70), null, true, "");
+
+        assertEquals("[-1,2,99,1.5,0.1,-2147483648,-9223372036854775808,"
+                + "1.0E23,-0.0,4.9E-324,1.50,1180591620717411303424,"
+                + "null,true,\"\"]", write(jsog, false));
+        assertEquals(jsog.toString(), write(jsog, false));
+    }
+
+    @Test
+    public void testEscapeNonAscii() throws Exception {
+        System.out.println("testEscapeNonAscii");
+        JSOG jsog = JSOG.parse(DOCUMENT);
+        String ascii = write(jsog, true);
+
+        for (int i = 0; i < ascii.length(); i++) {
+            assertTrue(ascii.charAt(i) < 0x80);
+        }
+        assertTrue(ascii.contains("\"\\u00E9\":\"\\u4E2D\""));
+        assertTrue(ascii.contains("\"\\uD83D\\uDE00\""));
+        assertEquals(jsog, JSOG.parse(ascii));
+    }
+
+    @Test
+    public void testUnpairedSurrogate() throws Exception {
+        System.out.println("testUnpairedSurrogate");
+        JSOG jsog = new JSOG("a\ud800b\udc00");
+        assertEquals("\"a?b?\"", write(jsog, false));
+        assertEquals("\"a\\uD800b\\uDC00\"", write(jsog, true));
+    }
+
+    @Test
+    public void testLazyScalars() throws Exception {
+        System.out.println("testLazyScalars");
+        JsogParser parser = new JsogParser();
+        parser.setLazyScalars(true);
+        JSOG jsog = parser.parse("{\"a\": 1.50, \"b\": \"\\u00e9\\n\","
+                + " \"c\": \"\u00e9\"}");
+
+        assertEquals("{\"a\":1.50,\"b\":\"\\u00e9\\n\",\"c\":\"\u00e9\"}",
+                write(jsog, false));
+        assertEquals("{\"a\":1.50,\"b\":\"\\u00e9\\n\",\"c\":\"\\u00E9\"}",
+                write(jsog, true));
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+        System.out.println("testKeys");
+        JSOG jsog = JSOG.object("a\"b", 1).put("\u00e9", 2).put("a\"b", 3);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            key.append('k');
+        }
+        jsog.put(key.toString(), 4);
+
+        String expected = "{\"a\\\"b\":3,\"\u00e9\":2,\"" + key + "\":4}";
+        assertEquals(expected, write(jsog, false));
+
+        // Cached keys must be reused correctly
+        assertEquals(expected, write(jsog, false));
+        assertEquals("{\"a\\\"b\":3,\"\\u00E9\":2,\"" + key + "\":4}",
+                write(jsog, true));
+    }
+
+    @Test
+    public void testAppendAndReset() throws Exception {
+        System.out.println("testAppendAndReset");
+        JsogWriter writer = new JsogWriter();
+        writer.write(new JSOG(1)).write(new JSOG("x"));
+        assertEquals(4, writer.size());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        assertEquals("1\"x\"", out.toString("UTF-8"));
+
+        writer.reset();
+        assertEquals(0, writer.size());
+
+        // Large documents grow the buffer, which reset releases
+        JSOG array = JSOG.array();
+        for (int i = 0; i < 20000; i++) {
+            array.add("value" + i);
+        }
+        writer.write(array);
+        assertEquals(array.toString(), new String(writer.toByteArray(),
+                "UTF-8"));
+        writer.reset();
+        writer.write(JSOG.object());
+        assertEquals("{}", new String(writer.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void testRaw() throws Exception {
+        System.out.println("testRaw");
+        JSOG jsog = JSOG.object("text", JSOG.raw("[1, \"\u00e9\"]"))
+                .put("bytes", JSOG.raw("{\"k\": \"\u4e2d\"}".getBytes("UTF-8")));
+
+        assertEquals("{\"text\":[1, \"\u00e9\"],\"bytes\":{\"k\": \"\u4e2d\"}}",
+                write(jsog, false));
+        assertEquals("{\"text\":[1, \"\\u00E9\"],"
+                + "\"bytes\":{\"k\": \"\\u4E2D\"}}", write(jsog, true));
+        assertEquals(jsog.toString(), write(jsog, false));
+    }
+
+    @Test
+    public void testDeepNesting() throws Exception {
+        System.out.println("testDeepNesting");
+        JSOG jsog = JSOG.array(1, JSOG.raw("[2]"));
+        for (int i = 0; i < 50000; i++) {
+            jsog = i % 2 == 0 ? JSOG.object("k", jsog) : JSOG.array(jsog);
+        }
+
+        String json = write(jsog, false);
+        assertEquals(jsog.toString(), json);
+        assertTrue(json.startsWith("[{\"k\":[{\"k\":"));
+        assertTrue(json.contains("[{\"k\":[1,[2]]}]}]"));
+        assertTrue(json.endsWith("}]}]"));
+    }
+}
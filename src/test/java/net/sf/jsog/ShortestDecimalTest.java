@@ -0,0 +1,105 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ShortestDecimal.
+ * @author jrodriguez
+ */
+public class ShortestDecimalTest {
+
+    @Test
+    public void testDoubles() {
+        System.out.println("testDoubles");
+        assertEquals("0.0", ShortestDecimal.toString(0.0));
+        assertEquals("-0.0", ShortestDecimal.toString(-0.0));
+        assertEquals("1.0", ShortestDecimal.toString(1.0));
+        assertEquals("0.1", ShortestDecimal.toString(0.1));
+        assertEquals("0.3", ShortestDecimal.toString(0.3));
+        assertEquals("0.30000000000000004", ShortestDecimal.toString(0.1 + 0.2));
+        assertEquals("2.0E23", ShortestDecimal.toString(2e23));
+        assertEquals("1.0E23", ShortestDecimal.toString(1e23));
+        assertEquals("4.9E-324", ShortestDecimal.toString(Double.MIN_VALUE));
+        assertEquals("1.7976931348623157E308",
+                ShortestDecimal.toString(Double.MAX_VALUE));
+        assertEquals("NaN", ShortestDecimal.toString(Double.NaN));
+        assertEquals("Infinity",
+                ShortestDecimal.toString(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity",
+                ShortestDecimal.toString(Double.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    public void testLayout() {
+        System.out.println("testLayout");
+        assertEquals("9999999.0", ShortestDecimal.toString(9999999.0));
+        assertEquals("1.0E7", ShortestDecimal.toString(1e7));
+        assertEquals("1.2345678E7", ShortestDecimal.toString(12345678.0));
+        assertEquals("0.001", ShortestDecimal.toString(0.001));
+        assertEquals("1.0E-4", ShortestDecimal.toString(0.0001));
+        assertEquals("-123.456", ShortestDecimal.toString(-123.456));
+    }
+
+    @Test
+    public void testFloats() {
+        System.out.println("testFloats");
+        assertEquals("0.1", ShortestDecimal.toString(0.1f));
+        assertEquals("1.5", ShortestDecimal.toString(1.5f));
+        assertEquals("3.4028235E38", ShortestDecimal.toString(Float.MAX_VALUE));
+        assertEquals("1.4E-45", ShortestDecimal.toString(Float.MIN_VALUE));
+        assertEquals("NaN", ShortestDecimal.toString(Float.NaN));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        System.out.println("testRoundTrip");
+        Random random = new Random(42);
+        char[] out = new char[ShortestDecimal.MAX_CHARS + 1];
+        for (int i = 0; i < 100000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(d)) {
+                continue;
+            }
+            int end = ShortestDecimal.format(d, out, 1);
+            String s = new String(out, 1, end - 1);
+            assertEquals(s, ShortestDecimal.toString(d));
+            assertEquals(d, Double.parseDouble(s), 0.0);
+
+            // Never longer than the JDK's own output
+            assertTrue(s.length() <= Double.toString(d).length());
+
+            float f = Float.intBitsToFloat(random.nextInt());
+            if (!Float.isNaN(f)) {
+                assertEquals(f, Float.parseFloat(ShortestDecimal.toString(f)),
+                        0.0f);
+            }
+        }
+    }
+}
@@ -32,6 +32,8 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.Header;
 import java.io.UnsupportedEncodingException;
 import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogCbor;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
@@ -621,5 +623,145 @@ public class DefaultJsogClientImplTest {
         fail("Expected an exception");
     }
 
-}
+    @Test
+    public void testGetCbor() throws Exception {
+
+        String url = "http://www.example.com";
+        JSOG expected = JSOG.object("foo", JSOG.array(1, 2.5, "bar"));
+
+        // Create and prepare the mock
+        final HttpClient client = createMock(HttpClient.class);
+        Capture<HttpGet> request = new Capture<HttpGet>();
+
+        ByteArrayEntity entity = new ByteArrayEntity(JsogCbor.encode(expected));
+        entity.setContentType(JsogCbor.MEDIA_TYPE);
+
+        HttpResponse response = new BasicHttpResponse(createStatusLine(200, "OK"));
+        response.setEntity(entity);
+        expect(client.execute(capture(request))).andReturn(response);
+
+        // Create the instance
+        DefaultJsogClientImpl instance = new DefaultJsogClientImpl() {
+            @Override
+            protected HttpClient getClient() {
+                return client;
+            }
+        };
+        instance.setCborAccepted(true);
+
+        // Run the test
+        replay(client);
+
+        JSOG actual = instance.getJsog(url);
+        assertEquals(expected, actual);
+
+        verify(client);
+
+        Header[] headers = request.getValue().getHeaders("Accept");
+        assertEquals(1, headers.length);
+        assertEquals("application/cbor, application/json;q=0.9",
+                     headers[0].getValue());
+    }
+
+    @Test
+    public void testGetCborAcceptedJsonResponse() throws Exception {
+
+        String url = "http://www.example.com";
+        JSOG expected = JSOG.object("foo", "bar");
+
+        // Create and prepare the mock
+        final HttpClient client = createMock(HttpClient.class);
+        Capture<HttpGet> request = new Capture<HttpGet>();
+
+        HttpResponse response = new BasicHttpResponse(createStatusLine(200, "OK"));
+        response.setEntity(createStringEntity(expected));
+        expect(client.execute(capture(request))).andReturn(response);
+
+        // Create the instance
+        DefaultJsogClientImpl instance = new DefaultJsogClientImpl() {
+            @Override
+            protected HttpClient getClient() {
+                return client;
+            }
+        };
+        instance.setCborAccepted(true);
 
+        // Run the test
+        replay(client);
+
+        JSOG actual = instance.getJsog(url);
+        assertEquals(expected, actual);
+
+        verify(client);
+    }
+
+    @Test(expected=InvalidJsogException.class)
+    public void testGetCborInvalid() throws Exception {
+
+        String url = "http://www.example.com";
+
+        // Create and prepare the mock
+        final HttpClient client = createMock(HttpClient.class);
+
+        ByteArrayEntity entity = new ByteArrayEntity(new byte[] {(byte) 0x83});
+        entity.setContentType(JsogCbor.MEDIA_TYPE);
+
+        HttpResponse response = new BasicHttpResponse(createStatusLine(200, "OK"));
+        response.setEntity(entity);
+        expect(client.execute((HttpGet) anyObject())).andReturn(response);
+
+        // Create the instance
+        DefaultJsogClientImpl instance = new DefaultJsogClientImpl() {
+            @Override
+            protected HttpClient getClient() {
+                return client;
+            }
+        };
+
+        // Run the test
+        replay(client);
+
+        instance.getJsog(url);
+    }
+
+    @Test
+    public void testPostCbor() throws Exception {
+
+        String url = "http://www.example.com";
+        JSOG expectedResult = JSOG.object("foo", "bar");
+        JSOG expectedRequest = JSOG.object("baz", JSOG.array(1, 2, 3));
+
+        // Create and prepare the mock
+        final HttpClient client = createMock(HttpClient.class);
+        Capture<HttpPost> request = new Capture<HttpPost>();
+
+        HttpResponse response = new BasicHttpResponse(createStatusLine(200, "OK"));
+        response.setEntity(createStringEntity(expectedResult));
+        expect(client.execute(capture(request))).andReturn(response);
+
+        // Create the instance
+        DefaultJsogClientImpl instance = new DefaultJsogClientImpl() {
+            @Override
+            protected HttpClient getClient() {
+                return client;
+            }
+        };
+        instance.setCborPosted(true);
+
+        // Run the test
+        replay(client);
+
+        JSOG actual = instance.postJsog(url, expectedRequest);
+        assertEquals(expectedResult, actual);
+
+        verify(client);
+
+        assertArrayEquals(JsogCbor.encode(expectedRequest),
+                EntityUtils.toByteArray(request.getValue().getEntity()));
+
+        Header[] headers = request.getValue().getHeaders("Content-Type");
+        assertEquals(1, headers.length);
+        assertEquals(JsogCbor.MEDIA_TYPE, headers[0].getValue());
+    }
+
+}
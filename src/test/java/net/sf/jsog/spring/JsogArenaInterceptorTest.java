@@ -0,0 +1,73 @@
+/* This is free and unencumbered software released into the public domain.
+ *
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ *
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package net.sf.jsog.spring;
+
+import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogArena;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author jrodriguez
+ */
+public class JsogArenaInterceptorTest {
+
+    @Test
+    public void testScope() throws Exception {
+        JsogArenaInterceptor instance = new JsogArenaInterceptor();
+        JsogArena arena = JsogArena.forCurrentThread();
+
+        assertTrue(instance.preHandle(null, null, null));
+        assertTrue(arena.isOpen());
+        JSOG jsog = JSOG.object("a", 1);
+
+        instance.afterCompletion(null, null, null, null);
+        assertFalse(arena.isOpen());
+        assertTrue(jsog.isNull());
+
+        // Closing twice is harmless
+        instance.afterCompletion(null, null, null, null);
+    }
+
+    @Test
+    public void testAlreadyOpen() throws Exception {
+        JsogArenaInterceptor instance = new JsogArenaInterceptor();
+        JsogArena arena = JsogArena.forCurrentThread();
+
+        // An arena opened elsewhere is left to its owner
+        arena.open();
+        try {
+            assertTrue(instance.preHandle(null, null, null));
+            JSOG jsog = JSOG.object("a", 1);
+            instance.afterCompletion(null, null, null, null);
+            assertTrue(arena.isOpen());
+            assertEquals("{\"a\":1}", jsog.toString());
+        } finally {
+            arena.close();
+        }
+    }
+}
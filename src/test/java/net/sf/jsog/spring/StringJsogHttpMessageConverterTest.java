@@ -30,6 +30,7 @@ import java.io.ByteArrayOutputStream;
 import org.springframework.http.HttpOutputMessage;
 import java.io.ByteArrayInputStream;
 import net.sf.jsog.JSOG;
+import net.sf.jsog.JsogCbor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import java.util.ArrayList;
@@ -446,4 +447,121 @@ public class StringJsogHttpMessageConverterTest {
         assertEquals(expected, baos.toString(encoding));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGetSupportedMediaTypesCbor() {
+        System.out.println("testGetSupportedMediaTypesCbor");
+        instance.setCborEnabled(true);
+        List<MediaType> types = instance.getSupportedMediaTypes();
+        assertEquals(MediaType.parseMediaType(JsogCbor.MEDIA_TYPE),
+                     types.get(types.size() - 1));
+    }
+
+    @Test
+    public void testCanReadCbor() {
+        System.out.println("testCanReadCbor");
+        MediaType cbor = MediaType.parseMediaType(JsogCbor.MEDIA_TYPE);
+        assertFalse(instance.canRead(JSOG.class, cbor));
+
+        instance.setCborEnabled(true);
+        assertTrue(instance.canRead(JSOG.class, cbor));
+    }
+
+    @Test
+    public void testCanWriteCbor() {
+        System.out.println("testCanWriteCbor");
+        MediaType cbor = MediaType.parseMediaType(JsogCbor.MEDIA_TYPE);
+        assertFalse(instance.canWrite(JSOG.class, cbor));
+
+        instance.setCborEnabled(true);
+        assertTrue(instance.canWrite(JSOG.class, cbor));
+        assertFalse(instance.canWrite(String.class, cbor));
+    }
+
+    @Test
+    public void testReadCbor() throws Exception {
+        System.out.println("testReadCbor");
+
+        // Setup
+        instance.setCborEnabled(true);
+        JSOG expected = JSOG.object("foo", JSOG.array(1, "bar", null));
+
+        HttpHeaders headers = createMock(HttpHeaders.class);
+        expect(headers.getContentType()).andReturn(
+                MediaType.parseMediaType(JsogCbor.MEDIA_TYPE));
+
+        HttpInputMessage message = createMock(HttpInputMessage.class);
+        expect(message.getHeaders()).andReturn(headers);
+        expect(message.getBody()).andReturn(new ByteArrayInputStream(
+                JsogCbor.encode(expected)));
+
+        // Execute
+        replay(headers, message);
+        JSOG actual = instance.read(JSOG.class, message);
+
+        // Verify
+        verify(message);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testWriteCbor() throws Exception {
+        System.out.println("testWriteCbor");
+
+        // Setup
+        instance.setCborEnabled(true);
+        JSOG jsog = JSOG.object("foo", JSOG.array(1, "bar", null));
+        byte[] expected = JsogCbor.encode(jsog);
+        MediaType cbor = MediaType.parseMediaType(JsogCbor.MEDIA_TYPE);
+
+        HttpOutputMessage output = createMock(HttpOutputMessage.class);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        expect(output.getBody()).andReturn(baos);
+
+        HttpHeaders headers = createMock(HttpHeaders.class);
+        expect(output.getHeaders()).andReturn(headers).anyTimes();
+
+        headers.setContentType(cbor);
+        expectLastCall();
+        headers.setContentLength(expected.length);
+        expectLastCall();
+
+        // Execution
+        replay(headers, output);
+        instance.write(jsog, cbor, output);
+
+        // Verification
+        verify(headers, output);
+        assertArrayEquals(expected, baos.toByteArray());
+    }
+
+    @Test
+    public void testWriteCborWildcard() throws Exception {
+        System.out.println("testWriteCborWildcard");
+
+        // Setup
+        instance.setCborEnabled(true);
+        String encoding = "ISO-8859-1";
+        String expected = "\"foobar\"";
+
+        HttpOutputMessage output = createMock(HttpOutputMessage.class);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        expect(output.getBody()).andReturn(baos);
+
+        HttpHeaders headers = createMock(HttpHeaders.class);
+        expect(output.getHeaders()).andReturn(headers).anyTimes();
+
+        headers.setContentType(JSON_CONTENT_TYPE);
+        expectLastCall();
+        headers.setContentLength(expected.getBytes(encoding).length);
+        expectLastCall();
+
+        // Execution
+        replay(headers, output);
+        instance.write(JSOG.parse(expected), MediaType.ALL, output);
+
+        // Verification
+        verify(headers, output);
+        assertEquals(expected, baos.toString(encoding));
+    }
+
+}